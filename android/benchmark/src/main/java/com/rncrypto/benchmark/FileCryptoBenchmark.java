@@ -0,0 +1,210 @@
+package com.rncrypto.benchmark;
+
+import com.rncrypto.CryptoWorkerPool;
+import com.rncrypto.DecryptFileRepository;
+import com.rncrypto.EncryptFileRepository;
+import com.rncrypto.FileChannelCipher;
+import com.rncrypto.ParallelCtrFileCipher;
+import com.rncrypto.util.BufferSizer;
+import com.rncrypto.util.CtrCipherFactory;
+import com.rncrypto.util.FileJobOptions;
+import com.rncrypto.util.OnlyErrorCallback;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encryption and decryption of whole files and chunks through the
+ * repositories, for every payload size, buffer size and executor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileCryptoBenchmark {
+
+  private static final OnlyErrorCallback FAIL_ON_ERROR = ex -> {
+    if (ex != null) {
+      throw new IllegalStateException(ex);
+    }
+  };
+
+  @Param({ "1024", "1048576", "67108864", "1073741824" })
+  public long payloadSize;
+
+  @Param({ "4096", "65536", "262144", "1048576" })
+  public int bufferSize;
+
+  @Param({ "5242880" })
+  public int chunkSize;
+
+  /** Executor of the parallel helpers: the calling thread or a worker pool */
+  @Param({ "direct", "pool" })
+  public String executor;
+
+  private File directory;
+  private File plainFile;
+  private File encryptedFile;
+  private File outputFile;
+  private String[] chunkPaths;
+
+  private CryptoWorkerPool workerPool;
+  private EncryptFileRepository encryptRepository;
+  private DecryptFileRepository decryptRepository;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    directory = Payloads.createDirectory();
+    plainFile = Payloads.create(directory, payloadSize);
+    encryptedFile = new File(directory, "encrypted.bin");
+    outputFile = new File(directory, "output.bin");
+
+    int chunks = (int) Math.max(1, (payloadSize + chunkSize - 1) / chunkSize);
+    chunkPaths = new String[chunks];
+    for (int i = 0; i < chunks; i++) {
+      chunkPaths[i] = new File(directory, "chunk-" + i).getAbsolutePath();
+    }
+
+    workerPool = new CryptoWorkerPool();
+    Executor helpers = "pool".equals(executor) ? workerPool : Runnable::run;
+    BufferSizer bufferSizer = new BufferSizer(bufferSize);
+    ParallelCtrFileCipher parallelCipher = new ParallelCtrFileCipher(
+      helpers,
+      Runtime.getRuntime().availableProcessors(),
+      ParallelCtrFileCipher.DEFAULT_SEGMENT_SIZE,
+      bufferSizer
+    );
+    FileChannelCipher channelCipher = new FileChannelCipher(
+      bufferSizer,
+      false,
+      FileChannelCipher.DEFAULT_MAP_THRESHOLD
+    );
+
+    // Operations run on the benchmark thread, only helpers use the executor
+    encryptRepository = new EncryptFileRepository(Runnable::run, parallelCipher, channelCipher, bufferSizer);
+    decryptRepository = new DecryptFileRepository(Runnable::run, parallelCipher, channelCipher, bufferSizer);
+
+    encryptRepository.encryptFile(
+      plainFile.getAbsolutePath(),
+      encryptedFile.getAbsolutePath(),
+      Payloads.KEY,
+      Payloads.IV,
+      FAIL_ON_ERROR
+    );
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    workerPool.shutdown();
+    Payloads.delete(directory);
+  }
+
+  @Benchmark
+  public void encryptStream(Throughput throughput) throws Exception {
+    encryptRepository.encrypt(
+      new FileInputStream(plainFile),
+      new FileOutputStream(outputFile),
+      CtrCipherFactory.create(Cipher.ENCRYPT_MODE, Payloads.KEY, Payloads.IV)
+    );
+    throughput.bytes += payloadSize;
+  }
+
+  @Benchmark
+  public void encryptFile(Throughput throughput) {
+    encryptRepository.encryptFile(
+      plainFile.getAbsolutePath(),
+      outputFile.getAbsolutePath(),
+      Payloads.KEY,
+      Payloads.IV,
+      FAIL_ON_ERROR
+    );
+    throughput.bytes += payloadSize;
+  }
+
+  @Benchmark
+  public void encryptFileParallel(Throughput throughput) {
+    encryptRepository.encryptFile(
+      plainFile.getAbsolutePath(),
+      outputFile.getAbsolutePath(),
+      Payloads.KEY,
+      Payloads.IV,
+      FileJobOptions.DEFAULT.withParallel(true),
+      (ex, digests) -> FAIL_ON_ERROR.onComplete(ex)
+    );
+    throughput.bytes += payloadSize;
+  }
+
+  @Benchmark
+  public void decryptStream(Throughput throughput) throws Exception {
+    decryptRepository.decrypt(
+      new FileInputStream(encryptedFile),
+      new FileOutputStream(outputFile),
+      CtrCipherFactory.create(Cipher.DECRYPT_MODE, Payloads.KEY, Payloads.IV)
+    );
+    throughput.bytes += payloadSize;
+  }
+
+  @Benchmark
+  public void decryptFile(Throughput throughput) {
+    decryptRepository.decryptFile(
+      encryptedFile.getAbsolutePath(),
+      outputFile.getAbsolutePath(),
+      Payloads.KEY,
+      Payloads.IV,
+      FAIL_ON_ERROR
+    );
+    throughput.bytes += payloadSize;
+  }
+
+  @Benchmark
+  public void encryptToMultipleChunks(Throughput throughput) throws Exception {
+    OutputStream[] outputs = new OutputStream[chunkPaths.length];
+    for (int i = 0; i < outputs.length; i++) {
+      outputs[i] = new FileOutputStream(chunkPaths[i]);
+    }
+
+    encryptRepository.encryptToMultipleChunks(
+      new FileInputStream(plainFile),
+      outputs,
+      CtrCipherFactory.create(Cipher.ENCRYPT_MODE, Payloads.KEY, Payloads.IV),
+      chunkSize,
+      bufferSize,
+      FileJobOptions.DEFAULT
+    );
+    throughput.bytes += payloadSize;
+  }
+
+  @Benchmark
+  public void encryptFileToChunksParallel(Throughput throughput) {
+    encryptRepository.encryptFileToChunksInParallel(
+      plainFile.getAbsolutePath(),
+      chunkPaths,
+      Payloads.KEY,
+      Payloads.IV,
+      chunkSize,
+      Runtime.getRuntime().availableProcessors(),
+      null,
+      FAIL_ON_ERROR
+    );
+    throughput.bytes += payloadSize;
+  }
+}
@@ -0,0 +1,137 @@
+package com.rncrypto.benchmark;
+
+import com.rncrypto.DecryptFileRepository;
+import com.rncrypto.EncryptFileRepository;
+import com.rncrypto.HashFileRepository;
+import com.rncrypto.util.BufferSizer;
+import com.rncrypto.util.CryptoService;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hashing and key derivation through CryptoService, and hashing of files
+ * through HashFileRepository
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashBenchmark {
+
+  private final CryptoService cryptoService = new CryptoService(
+    new EncryptFileRepository(Runnable::run),
+    new DecryptFileRepository(Runnable::run)
+  );
+
+  @State(Scope.Benchmark)
+  public static class HashInput {
+
+    /** Size of the whole input given to sha512 */
+    @Param({ "1024", "1048576", "67108864" })
+    public int payloadSize;
+
+    /** Size of each of the pieces the input is split in, as createHash does */
+    @Param({ "4096", "65536" })
+    public int updateSize;
+
+    List<byte[]> inputs;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      Random random = new Random(payloadSize);
+      inputs = new ArrayList<>();
+      for (int remaining = payloadSize; remaining > 0; remaining -= updateSize) {
+        byte[] input = new byte[Math.min(updateSize, remaining)];
+        random.nextBytes(input);
+        inputs.add(input);
+      }
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class FileInput {
+
+    @Param({ "1048576", "67108864", "1073741824" })
+    public long fileSize;
+
+    @Param({ "SHA-256", "SHA-512" })
+    public String algorithm;
+
+    @Param({ "65536", "1048576" })
+    public int bufferSize;
+
+    File directory;
+    File file;
+    HashFileRepository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+      directory = Payloads.createDirectory();
+      file = Payloads.create(directory, fileSize);
+      repository = new HashFileRepository(Runnable::run, new BufferSizer(bufferSize));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      Payloads.delete(directory);
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class Pbkdf2Input {
+
+    @Param({ "10000", "100000" })
+    public int rounds;
+
+    final byte[] salt = new byte[32];
+  }
+
+  @Benchmark
+  public byte[] sha512(HashInput input, Throughput throughput) throws Exception {
+    throughput.bytes += input.payloadSize;
+    return cryptoService.sha512(input.inputs);
+  }
+
+  @Benchmark
+  public byte[] hashFile(FileInput input, Throughput throughput) {
+    byte[][] digest = new byte[1][];
+    input.repository.hashFile(
+      input.file.getAbsolutePath(),
+      input.algorithm,
+      0,
+      HashFileRepository.UNTIL_END,
+      (ex, result) -> {
+        if (ex != null) {
+          throw new IllegalStateException(ex);
+        }
+        digest[0] = result;
+      }
+    );
+
+    throughput.bytes += input.fileSize;
+    return digest[0];
+  }
+
+  @Benchmark
+  public byte[] pbkdf2(Pbkdf2Input input) throws Exception {
+    return cryptoService.pbkdf2("benchmark password", input.salt, input.rounds, 32);
+  }
+}
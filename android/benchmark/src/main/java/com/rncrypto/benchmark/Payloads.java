@@ -0,0 +1,52 @@
+package com.rncrypto.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Files used as benchmark inputs
+ */
+class Payloads {
+
+  static final byte[] KEY = new byte[32];
+  static final byte[] IV = new byte[16];
+
+  /**
+   * Creates a temporary file of the given size filled with random bytes
+   */
+  static File create(File directory, long size) throws IOException {
+    File file = File.createTempFile("payload", ".bin", directory);
+    byte[] block = new byte[(int) Math.min(size, 1024 * 1024)];
+    new Random(size).nextBytes(block);
+
+    try (FileOutputStream output = new FileOutputStream(file)) {
+      long remaining = size;
+      while (remaining > 0) {
+        int length = (int) Math.min(block.length, remaining);
+        output.write(block, 0, length);
+        remaining -= length;
+      }
+    }
+
+    return file;
+  }
+
+  static File createDirectory() throws IOException {
+    File directory = File.createTempFile("rn-crypto-benchmark", "");
+    directory.delete();
+    directory.mkdirs();
+    return directory;
+  }
+
+  static void delete(File directory) {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    directory.delete();
+  }
+}
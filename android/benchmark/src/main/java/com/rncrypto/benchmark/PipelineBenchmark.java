@@ -0,0 +1,132 @@
+package com.rncrypto.benchmark;
+
+import com.rncrypto.CryptoWorkerPool;
+import com.rncrypto.FileChannelCipher;
+import com.rncrypto.PipelinedChannelCipher;
+import com.rncrypto.util.BufferSizer;
+import com.rncrypto.util.CtrCipherFactory;
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole file encryption with the sequential loop of FileChannelCipher and
+ * with the reader, cipher and writer of PipelinedChannelCipher, on the
+ * storage of the machine (flash) and on a simulated SD card.
+ *
+ * The SD card serves reads and writes one at a time at class 10 speeds, so
+ * the pipeline can only hide the cipher behind the card, not reads behind
+ * writes. The host cipher is much faster than the one of a phone, which
+ * makes the gain here a lower bound.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+  @Param({ "16777216", "67108864" })
+  public long payloadSize;
+
+  @Param({ "262144" })
+  public int bufferSize;
+
+  /** flash uses the channels as they are, sdcard throttles them */
+  @Param({ "flash", "sdcard" })
+  public String storage;
+
+  private File directory;
+  private File plainFile;
+  private File outputFile;
+  private ThrottledChannel.Device device;
+  private CryptoWorkerPool stagePool;
+  private FileChannelCipher sequential;
+  private PipelinedChannelCipher pipelined;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    directory = Payloads.createDirectory();
+    plainFile = Payloads.create(directory, payloadSize);
+    outputFile = new File(directory, "output.bin");
+    device = "sdcard".equals(storage) ? new ThrottledChannel.Device(80, 20) : null;
+
+    BufferSizer bufferSizer = new BufferSizer(bufferSize);
+    stagePool = new CryptoWorkerPool(
+      "benchmark-io",
+      2,
+      2,
+      CryptoWorkerPool.RejectionPolicy.ABORT
+    );
+    sequential = new FileChannelCipher(
+      bufferSizer,
+      false,
+      FileChannelCipher.DEFAULT_MAP_THRESHOLD
+    );
+    pipelined = new PipelinedChannelCipher(
+      stagePool,
+      bufferSizer,
+      PipelinedChannelCipher.DEFAULT_DEPTH,
+      0
+    );
+    pipelined.setEnabled(true);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    stagePool.shutdown();
+    Payloads.delete(directory);
+  }
+
+  private FileChannel open(File file, StandardOpenOption... options)
+    throws Exception {
+    FileChannel channel = FileChannel.open(file.toPath(), options);
+    return device != null ? new ThrottledChannel(channel, device) : channel;
+  }
+
+  private void encrypt(FileChannelCipher channelCipher, Throughput throughput)
+    throws Exception {
+    try (
+      FileChannel source = open(plainFile, StandardOpenOption.READ);
+      FileChannel destination = open(
+        outputFile,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING
+      )
+    ) {
+      channelCipher.process(
+        source,
+        destination,
+        CtrCipherFactory.create(Cipher.ENCRYPT_MODE, Payloads.KEY, Payloads.IV)
+      );
+    }
+    throughput.bytes += payloadSize;
+  }
+
+  @Benchmark
+  public void encryptSequential(Throughput throughput) throws Exception {
+    encrypt(sequential, throughput);
+  }
+
+  @Benchmark
+  public void encryptPipelined(Throughput throughput) throws Exception {
+    encrypt(pipelined, throughput);
+  }
+}
@@ -0,0 +1,120 @@
+package com.rncrypto.benchmark;
+
+import com.rncrypto.FileChannelCipher;
+import com.rncrypto.util.BufferSizer;
+import com.rncrypto.util.CtrCipherFactory;
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encryption of batches of small files, each one with its own key and IV,
+ * creating a Cipher per file or re-initialising the cached one of the thread.
+ * Each operation encrypts the whole batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SmallFilesBenchmark {
+
+  @Param({ "4096", "20480", "102400" })
+  public int fileSize;
+
+  @Param({ "256" })
+  public int files;
+
+  private File directory;
+  private String[] sources;
+  private String[] destinations;
+  private byte[][] keys;
+  private byte[][] ivs;
+  private FileChannelCipher channelCipher;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    directory = Payloads.createDirectory();
+    sources = new String[files];
+    destinations = new String[files];
+    keys = new byte[files][32];
+    ivs = new byte[files][16];
+
+    Random random = new Random(files);
+    for (int i = 0; i < files; i++) {
+      sources[i] = Payloads.create(directory, fileSize).getAbsolutePath();
+      destinations[i] = new File(directory, "encrypted-" + i).getAbsolutePath();
+      random.nextBytes(keys[i]);
+      random.nextBytes(ivs[i]);
+    }
+
+    channelCipher = new FileChannelCipher(
+      new BufferSizer(),
+      false,
+      FileChannelCipher.DEFAULT_MAP_THRESHOLD
+    );
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    Payloads.delete(directory);
+  }
+
+  @Benchmark
+  public void encryptNewCipher(Throughput throughput) throws Exception {
+    for (int i = 0; i < files; i++) {
+      channelCipher.processFile(
+        sources[i],
+        destinations[i],
+        CtrCipherFactory.create(Cipher.ENCRYPT_MODE, keys[i], ivs[i])
+      );
+    }
+    throughput.bytes += (long) files * fileSize;
+  }
+
+  @Benchmark
+  public void encryptCachedCipher(Throughput throughput) throws Exception {
+    for (int i = 0; i < files; i++) {
+      channelCipher.processFile(
+        sources[i],
+        destinations[i],
+        CtrCipherFactory.obtain(Cipher.ENCRYPT_MODE, keys[i], ivs[i])
+      );
+    }
+    throughput.bytes += (long) files * fileSize;
+  }
+
+  /** Cipher setup alone, without the file I/O */
+  @Benchmark
+  public Cipher setUpNewCipher() throws Exception {
+    Cipher cipher = null;
+    for (int i = 0; i < files; i++) {
+      cipher = CtrCipherFactory.create(Cipher.ENCRYPT_MODE, keys[i], ivs[i]);
+    }
+    return cipher;
+  }
+
+  @Benchmark
+  public Cipher setUpCachedCipher() throws Exception {
+    Cipher cipher = null;
+    for (int i = 0; i < files; i++) {
+      cipher = CtrCipherFactory.obtain(Cipher.ENCRYPT_MODE, keys[i], ivs[i]);
+    }
+    return cipher;
+  }
+}
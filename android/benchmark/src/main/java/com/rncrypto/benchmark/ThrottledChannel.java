@@ -0,0 +1,170 @@
+package com.rncrypto.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * FileChannel that delays reads and writes as a slower storage would. Every
+ * channel of the same Device shares its bandwidth, reads and writes are served
+ * one after the other as by a single SD card, so overlapping them gains
+ * nothing, only overlapping them with the cipher does.
+ */
+class ThrottledChannel extends FileChannel {
+
+  static class Device {
+
+    private final long readBytesPerSecond;
+    private final long writeBytesPerSecond;
+    private long busyUntil;
+
+    /**
+     * @param readMegabytesPerSecond  Sequential read speed
+     * @param writeMegabytesPerSecond Sequential write speed
+     */
+    Device(int readMegabytesPerSecond, int writeMegabytesPerSecond) {
+      this.readBytesPerSecond = readMegabytesPerSecond * 1024L * 1024;
+      this.writeBytesPerSecond = writeMegabytesPerSecond * 1024L * 1024;
+    }
+
+    /**
+     * Waits until the device would have transferred the bytes, after any
+     * transfer it is already busy with
+     */
+    void transfer(long bytes, boolean write) {
+      long rate = write ? writeBytesPerSecond : readBytesPerSecond;
+      long end;
+      synchronized (this) {
+        long now = System.nanoTime();
+        end = Math.max(now, busyUntil) + bytes * 1_000_000_000L / rate;
+        busyUntil = end;
+      }
+
+      long left;
+      while ((left = end - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(left);
+      }
+    }
+  }
+
+  private final FileChannel channel;
+  private final Device device;
+
+  ThrottledChannel(FileChannel channel, Device device) {
+    this.channel = channel;
+    this.device = device;
+  }
+
+  private <T extends Number> T afterRead(T bytes) {
+    if (bytes.longValue() > 0) {
+      device.transfer(bytes.longValue(), false);
+    }
+    return bytes;
+  }
+
+  private <T extends Number> T afterWrite(T bytes) {
+    if (bytes.longValue() > 0) {
+      device.transfer(bytes.longValue(), true);
+    }
+    return bytes;
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+    return afterRead(channel.read(dst));
+  }
+
+  @Override
+  public long read(ByteBuffer[] dsts, int offset, int length)
+    throws IOException {
+    return afterRead(channel.read(dsts, offset, length));
+  }
+
+  @Override
+  public int read(ByteBuffer dst, long position) throws IOException {
+    return afterRead(channel.read(dst, position));
+  }
+
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    return afterWrite(channel.write(src));
+  }
+
+  @Override
+  public long write(ByteBuffer[] srcs, int offset, int length)
+    throws IOException {
+    return afterWrite(channel.write(srcs, offset, length));
+  }
+
+  @Override
+  public int write(ByteBuffer src, long position) throws IOException {
+    return afterWrite(channel.write(src, position));
+  }
+
+  @Override
+  public long position() throws IOException {
+    return channel.position();
+  }
+
+  @Override
+  public FileChannel position(long newPosition) throws IOException {
+    channel.position(newPosition);
+    return this;
+  }
+
+  @Override
+  public long size() throws IOException {
+    return channel.size();
+  }
+
+  @Override
+  public FileChannel truncate(long size) throws IOException {
+    channel.truncate(size);
+    return this;
+  }
+
+  @Override
+  public void force(boolean metaData) throws IOException {
+    channel.force(metaData);
+  }
+
+  @Override
+  public long transferTo(long position, long count, WritableByteChannel target)
+    throws IOException {
+    return afterRead(channel.transferTo(position, count, target));
+  }
+
+  @Override
+  public long transferFrom(ReadableByteChannel src, long position, long count)
+    throws IOException {
+    return afterWrite(channel.transferFrom(src, position, count));
+  }
+
+  @Override
+  public MappedByteBuffer map(MapMode mode, long position, long size)
+    throws IOException {
+    throw new UnsupportedOperationException("Mapped buffers cannot be throttled.");
+  }
+
+  @Override
+  public FileLock lock(long position, long size, boolean shared)
+    throws IOException {
+    return channel.lock(position, size, shared);
+  }
+
+  @Override
+  public FileLock tryLock(long position, long size, boolean shared)
+    throws IOException {
+    return channel.tryLock(position, size, shared);
+  }
+
+  @Override
+  protected void implCloseChannel() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,250 @@
+package com.rncrypto;
+
+import com.rncrypto.util.CancellationToken;
+import com.rncrypto.util.FileUtils;
+import com.rncrypto.util.OnProgressCallback;
+import com.rncrypto.util.OnlyErrorCallback;
+import com.rncrypto.util.OperationCancelledException;
+import com.rncrypto.util.ResultCallback;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import javax.crypto.AEADBadTagException;
+
+/**
+ * Encrypts, decrypts and verifies files in the authenticated format of
+ * SegmentedGcmFileCipher.
+ *
+ * A decryption that fails verification deletes its output, so plaintext that
+ * did not verify is never left behind. Cancelled operations delete their
+ * output too, as in the CTR repositories.
+ */
+public class AuthenticatedFileRepository {
+
+  private final Executor executor;
+  private final SegmentedGcmFileCipher gcmCipher;
+
+  public AuthenticatedFileRepository(Executor executor) {
+    this(executor, new SegmentedGcmFileCipher(executor));
+  }
+
+  /**
+   * @param executor  Executor running the operations
+   * @param gcmCipher Cipher processing the segments of each file
+   */
+  public AuthenticatedFileRepository(
+    Executor executor,
+    SegmentedGcmFileCipher gcmCipher
+  ) {
+    this.executor = executor;
+    this.gcmCipher = gcmCipher;
+  }
+
+  public void encryptFileInBackground(
+    String sourcePath,
+    String destinationPath,
+    byte[] key,
+    final OnProgressCallback progress,
+    final CancellationToken cancellation,
+    final OnlyErrorCallback callback
+  ) {
+    try {
+      executor.execute(() ->
+        encryptFile(
+          sourcePath,
+          destinationPath,
+          key,
+          progress,
+          cancellation,
+          callback
+        )
+      );
+    } catch (RejectedExecutionException e) {
+      callback.onComplete(e);
+    }
+  }
+
+  /**
+   * Encrypts a file into segments, each one with its own tag
+   *
+   * @param sourcePath      Path where file to encrypt is
+   * @param destinationPath Path where encrypted content is going to be written
+   * @param key             Key of 32 bytes
+   * @param progress        Notified after every segment, nullable
+   * @param cancellation    Stops the encryption when cancelled, nullable
+   */
+  public void encryptFile(
+    String sourcePath,
+    String destinationPath,
+    byte[] key,
+    final OnProgressCallback progress,
+    final CancellationToken cancellation,
+    final OnlyErrorCallback onlyErrorCallback
+  ) {
+    try {
+      gcmCipher.encryptFile(
+        sourcePath,
+        destinationPath,
+        key,
+        progress,
+        cancellation
+      );
+      onlyErrorCallback.onComplete(null);
+    } catch (IOException | GeneralSecurityException | IllegalArgumentException e) {
+      if (e instanceof OperationCancelledException) {
+        FileUtils.deleteQuietly(destinationPath);
+      }
+      e.printStackTrace();
+      onlyErrorCallback.onComplete(e);
+    }
+  }
+
+  public void decryptFileInBackground(
+    String sourcePath,
+    String destinationPath,
+    byte[] key,
+    final OnProgressCallback progress,
+    final CancellationToken cancellation,
+    final OnlyErrorCallback callback
+  ) {
+    try {
+      executor.execute(() ->
+        decryptFile(
+          sourcePath,
+          destinationPath,
+          key,
+          progress,
+          cancellation,
+          callback
+        )
+      );
+    } catch (RejectedExecutionException e) {
+      callback.onComplete(e);
+    }
+  }
+
+  /**
+   * Decrypts and verifies every segment of a file. Fails with an
+   * AEADBadTagException if the file was modified or encrypted with another
+   * key.
+   *
+   * @param sourcePath      Path where file to decrypt is
+   * @param destinationPath Path where decrypted content is going to be written
+   * @param key             Key the file was encrypted with
+   * @param progress        Notified after every segment, nullable
+   * @param cancellation    Stops the decryption when cancelled, nullable
+   */
+  public void decryptFile(
+    String sourcePath,
+    String destinationPath,
+    byte[] key,
+    final OnProgressCallback progress,
+    final CancellationToken cancellation,
+    final OnlyErrorCallback onlyErrorCallback
+  ) {
+    try {
+      gcmCipher.decryptFile(
+        sourcePath,
+        destinationPath,
+        key,
+        progress,
+        cancellation
+      );
+      onlyErrorCallback.onComplete(null);
+    } catch (IOException | GeneralSecurityException | IllegalArgumentException e) {
+      FileUtils.deleteQuietly(destinationPath);
+      e.printStackTrace();
+      onlyErrorCallback.onComplete(e);
+    }
+  }
+
+  public void verifyFileInBackground(
+    String sourcePath,
+    byte[] key,
+    final OnProgressCallback progress,
+    final CancellationToken cancellation,
+    final ResultCallback<Boolean> callback
+  ) {
+    try {
+      executor.execute(() ->
+        verifyFile(sourcePath, key, progress, cancellation, callback)
+      );
+    } catch (RejectedExecutionException e) {
+      callback.onComplete(e, null);
+    }
+  }
+
+  /**
+   * Verifies every segment of a file without writing its plaintext
+   *
+   * @param sourcePath   Path where file to verify is
+   * @param key          Key the file was encrypted with
+   * @param progress     Notified after every segment, nullable
+   * @param cancellation Stops the verification when cancelled, nullable
+   * @param callback     Receives false if any segment does not verify, and
+   *                     an error only if the file could not be checked
+   */
+  public void verifyFile(
+    String sourcePath,
+    byte[] key,
+    final OnProgressCallback progress,
+    final CancellationToken cancellation,
+    final ResultCallback<Boolean> callback
+  ) {
+    try {
+      gcmCipher.verifyFile(sourcePath, key, progress, cancellation);
+      callback.onComplete(null, true);
+    } catch (AEADBadTagException e) {
+      callback.onComplete(null, false);
+    } catch (IOException | GeneralSecurityException | IllegalArgumentException e) {
+      e.printStackTrace();
+      callback.onComplete(e, null);
+    }
+  }
+
+  public void decryptRangeInBackground(
+    String sourcePath,
+    String destinationPath,
+    byte[] key,
+    long offset,
+    long length,
+    final OnlyErrorCallback callback
+  ) {
+    try {
+      executor.execute(() ->
+        decryptRange(sourcePath, destinationPath, key, offset, length, callback)
+      );
+    } catch (RejectedExecutionException e) {
+      callback.onComplete(e);
+    }
+  }
+
+  /**
+   * Decrypts only length bytes of plaintext starting at offset, reading and
+   * verifying only the segments containing them
+   *
+   * @param sourcePath      Path where file to decrypt is
+   * @param destinationPath Path where decrypted range is going to be written
+   * @param key             Key the file was encrypted with
+   * @param offset          Position of the first plaintext byte to decrypt
+   * @param length          Amount of bytes to decrypt, less if EOF is reached
+   */
+  public void decryptRange(
+    String sourcePath,
+    String destinationPath,
+    byte[] key,
+    long offset,
+    long length,
+    final OnlyErrorCallback onlyErrorCallback
+  ) {
+    try {
+      gcmCipher.decryptRange(sourcePath, destinationPath, key, offset, length);
+      onlyErrorCallback.onComplete(null);
+    } catch (IOException | GeneralSecurityException | IllegalArgumentException e) {
+      FileUtils.deleteQuietly(destinationPath);
+      e.printStackTrace();
+      onlyErrorCallback.onComplete(e);
+    }
+  }
+}
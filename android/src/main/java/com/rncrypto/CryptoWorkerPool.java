@@ -0,0 +1,290 @@
+package com.rncrypto;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of worker threads used to run file crypto operations.
+ *
+ * At most maxConcurrency operations run at the same time, the rest wait in a
+ * queue of queueCapacity slots. What happens when that queue is full is
+ * decided by the RejectionPolicy.
+ */
+public class CryptoWorkerPool implements Executor {
+
+  public enum RejectionPolicy {
+    /** Fails the submission with a RejectedExecutionException */
+    ABORT,
+    /** Blocks the submitting thread until a slot in the queue is free */
+    BLOCK,
+    /** Runs the task on the submitting thread */
+    CALLER_RUNS,
+  }
+
+  public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  private static CryptoWorkerPool shared = null;
+  private static CryptoWorkerPool compute = null;
+  private static final ThreadLocal<Long> currentQueueWait = new ThreadLocal<>();
+
+  private final ThreadPoolExecutor executor;
+  private final LinkedBlockingQueue<Runnable> queue;
+  private final RejectionPolicy rejectionPolicy;
+  private final AtomicLong rejectedCount = new AtomicLong();
+
+  public CryptoWorkerPool() {
+    this(
+      Runtime.getRuntime().availableProcessors(),
+      DEFAULT_QUEUE_CAPACITY,
+      RejectionPolicy.ABORT
+    );
+  }
+
+  /**
+   * @param maxConcurrency  Max amount of operations running at the same time
+   * @param queueCapacity   Max amount of operations waiting for a worker
+   * @param rejectionPolicy What to do when the queue is full
+   */
+  public CryptoWorkerPool(
+    int maxConcurrency,
+    int queueCapacity,
+    RejectionPolicy rejectionPolicy
+  ) {
+    this("rn-crypto-worker", maxConcurrency, queueCapacity, rejectionPolicy);
+  }
+
+  /**
+   * @param name            Prefix of the worker thread names
+   * @param maxConcurrency  Max amount of operations running at the same time
+   * @param queueCapacity   Max amount of operations waiting for a worker
+   * @param rejectionPolicy What to do when the queue is full
+   */
+  public CryptoWorkerPool(
+    String name,
+    int maxConcurrency,
+    int queueCapacity,
+    RejectionPolicy rejectionPolicy
+  ) {
+    if (maxConcurrency <= 0) {
+      throw new IllegalArgumentException(
+        "Max concurrency must be greater than zero."
+      );
+    }
+
+    if (queueCapacity <= 0) {
+      throw new IllegalArgumentException(
+        "Queue capacity must be greater than zero."
+      );
+    }
+
+    this.rejectionPolicy = rejectionPolicy;
+    this.queue = new LinkedBlockingQueue<>(queueCapacity);
+    this.executor =
+      new ThreadPoolExecutor(
+        maxConcurrency,
+        maxConcurrency,
+        KEEP_ALIVE_SECONDS,
+        TimeUnit.SECONDS,
+        queue,
+        new WorkerThreadFactory(name),
+        new PolicyHandler()
+      );
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  public static synchronized CryptoWorkerPool getShared() {
+    if (shared == null) {
+      shared = new CryptoWorkerPool();
+    }
+    return shared;
+  }
+
+  /**
+   * Pool for CPU bound work like key derivations, so file I/O on the shared
+   * pool never waits behind it
+   */
+  public static synchronized CryptoWorkerPool getCompute() {
+    if (compute == null) {
+      compute =
+        new CryptoWorkerPool(
+          "rn-crypto-compute",
+          Runtime.getRuntime().availableProcessors(),
+          DEFAULT_QUEUE_CAPACITY,
+          RejectionPolicy.ABORT
+        );
+    }
+    return compute;
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    executor.execute(new QueuedTask(task));
+  }
+
+  /**
+   * @return Time the task running on the calling thread waited in the queue
+   * of its pool, 0 if the calling thread is not running a pool task
+   */
+  public static long currentQueueWaitNanos() {
+    Long wait = currentQueueWait.get();
+    return wait != null ? wait : 0;
+  }
+
+  /**
+   * Changes the amount of operations that can run at the same time. Running
+   * operations are not interrupted, the new limit applies to the next ones.
+   *
+   * @param maxConcurrency New max amount of concurrent operations
+   */
+  public synchronized void setMaxConcurrency(int maxConcurrency) {
+    if (maxConcurrency <= 0) {
+      throw new IllegalArgumentException(
+        "Max concurrency must be greater than zero."
+      );
+    }
+
+    // Core size can never be greater than max size, so the order matters
+    if (maxConcurrency > executor.getMaximumPoolSize()) {
+      executor.setMaximumPoolSize(maxConcurrency);
+      executor.setCorePoolSize(maxConcurrency);
+    } else {
+      executor.setCorePoolSize(maxConcurrency);
+      executor.setMaximumPoolSize(maxConcurrency);
+    }
+  }
+
+  public int getMaxConcurrency() {
+    return executor.getMaximumPoolSize();
+  }
+
+  public RejectionPolicy getRejectionPolicy() {
+    return rejectionPolicy;
+  }
+
+  /**
+   * @return Amount of operations being run right now
+   */
+  public int getActiveCount() {
+    return executor.getActiveCount();
+  }
+
+  /**
+   * @return Amount of operations waiting for a worker
+   */
+  public int getQueuedCount() {
+    return queue.size();
+  }
+
+  /**
+   * @return Amount of operations already finished, approximated
+   */
+  public long getCompletedCount() {
+    return executor.getCompletedTaskCount();
+  }
+
+  /**
+   * @return Amount of operations refused because the queue was full
+   */
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  /**
+   * Remembers when the task was submitted, so it knows how long it waited
+   * once a worker runs it
+   */
+  private static class QueuedTask implements Runnable {
+
+    private final Runnable task;
+    private final long queuedNanos = System.nanoTime();
+
+    QueuedTask(Runnable task) {
+      this.task = task;
+    }
+
+    @Override
+    public void run() {
+      // Tasks run by the caller may be nested inside another pool task
+      Long previous = currentQueueWait.get();
+      currentQueueWait.set(System.nanoTime() - queuedNanos);
+      try {
+        task.run();
+      } finally {
+        if (previous != null) {
+          currentQueueWait.set(previous);
+        } else {
+          currentQueueWait.remove();
+        }
+      }
+    }
+  }
+
+  private class PolicyHandler implements RejectedExecutionHandler {
+
+    @Override
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor pool) {
+      if (pool.isShutdown()) {
+        rejectedCount.incrementAndGet();
+        throw new RejectedExecutionException("Crypto worker pool is shut down");
+      }
+
+      switch (rejectionPolicy) {
+        case CALLER_RUNS:
+          task.run();
+          break;
+        case BLOCK:
+          try {
+            queue.put(task);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejectedCount.incrementAndGet();
+            throw new RejectedExecutionException(
+              "Interrupted while waiting for a free slot",
+              e
+            );
+          }
+          break;
+        case ABORT:
+        default:
+          rejectedCount.incrementAndGet();
+          throw new RejectedExecutionException(
+            "Crypto worker queue is full (" + queue.size() + " pending)"
+          );
+      }
+    }
+  }
+
+  private static class WorkerThreadFactory implements ThreadFactory {
+
+    private final String name;
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    WorkerThreadFactory(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public Thread newThread(Runnable task) {
+      Thread thread = new Thread(
+        task,
+        name + "-" + threadCount.incrementAndGet()
+      );
+      thread.setDaemon(true);
+      // Below the UI thread, crypto work should never steal frames
+      thread.setPriority(Thread.NORM_PRIORITY - 1);
+      return thread;
+    }
+  }
+}
@@ -1,29 +1,57 @@
 package com.rncrypto;
 
-import com.facebook.common.util.Hex;
+import com.rncrypto.util.BufferSizer;
+import com.rncrypto.util.CancellationToken;
+import com.rncrypto.util.CtrCipherFactory;
+import com.rncrypto.util.FileBatchItem;
+import com.rncrypto.util.FileJobOptions;
+import com.rncrypto.util.FileUtils;
+import com.rncrypto.util.OnProgressCallback;
 import com.rncrypto.util.OnlyErrorCallback;
+import com.rncrypto.util.OperationCancelledException;
+import com.rncrypto.util.ResultCallback;
 
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.NoSuchPaddingException;
-import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
 
 public class DecryptFileRepository {
   private final Executor executor;
+  private final ParallelCtrFileCipher parallelCipher;
+  private final FileChannelCipher channelCipher;
+  private final BufferSizer bufferSizer;
 
   public DecryptFileRepository(Executor executor) {
+    this(executor, new ParallelCtrFileCipher(executor));
+  }
+
+  public DecryptFileRepository(Executor executor, ParallelCtrFileCipher parallelCipher) {
+    this(executor, parallelCipher, new FileChannelCipher(), new BufferSizer());
+  }
+
+  public DecryptFileRepository(
+    Executor executor,
+    ParallelCtrFileCipher parallelCipher,
+    FileChannelCipher channelCipher,
+    BufferSizer bufferSizer
+  ) {
     this.executor = executor;
+    this.parallelCipher = parallelCipher;
+    this.channelCipher = channelCipher;
+    this.bufferSizer = bufferSizer;
   }
 
   public void decryptFileInBackground(
@@ -33,7 +61,25 @@ public class DecryptFileRepository {
     byte[] iv,
     final OnlyErrorCallback callback
   ) {
-    executor.execute(() -> decryptFile(sourcePath, destinationPath, key, iv, callback));
+    decryptFileInBackground(sourcePath, destinationPath, key, iv, FileJobOptions.DEFAULT, callback);
+  }
+
+  /**
+   * Decrypts a file in background, see decryptFile
+   */
+  public void decryptFileInBackground(
+    String sourcePath,
+    String destinationPath,
+    byte[] key,
+    byte[] iv,
+    final FileJobOptions options,
+    final OnlyErrorCallback callback
+  ) {
+    try {
+      executor.execute(() -> decryptFile(sourcePath, destinationPath, key, iv, options, callback));
+    } catch (RejectedExecutionException e) {
+      callback.onComplete(e);
+    }
   }
 
   public void decryptFile(
@@ -43,33 +89,203 @@ public class DecryptFileRepository {
     byte[] iv,
     final OnlyErrorCallback onlyErrorCallback
   ) {
+    decryptFile(sourcePath, destinationPath, key, iv, FileJobOptions.DEFAULT, onlyErrorCallback);
+  }
+
+  /**
+   * Decrypts a file. If cancelled, the partial output is deleted and the
+   * callback receives an OperationCancelledException.
+   *
+   * @param options Parallel, progress and cancellation
+   */
+  public void decryptFile(
+    String sourcePath,
+    String destinationPath,
+    byte[] key,
+    byte[] iv,
+    final FileJobOptions options,
+    final OnlyErrorCallback onlyErrorCallback
+  ) {
+    OnProgressCallback progress = options.getProgress();
+    CancellationToken cancellation = options.getCancellation();
     try {
-      this.decryptFile(sourcePath, destinationPath, this.getAES256CTRCipher(key, iv));
+      if (options.isParallel()) {
+        parallelCipher.processFile(sourcePath, destinationPath, Cipher.DECRYPT_MODE, key, iv, progress, cancellation);
+      } else {
+        this.decryptFile(sourcePath, destinationPath, this.getAES256CTRCipher(key, iv), progress, cancellation);
+      }
 
       onlyErrorCallback.onComplete(null);
-    } catch (IOException | NoSuchPaddingException | InvalidAlgorithmParameterException | NoSuchAlgorithmException | InvalidKeyException e) {
+    } catch (IOException | GeneralSecurityException e) {
+      if (e instanceof OperationCancelledException) {
+        FileUtils.deleteQuietly(destinationPath);
+      }
       e.printStackTrace();
       onlyErrorCallback.onComplete(e);
     }
   }
 
+  public void decryptChunksToFileInBackground(
+    String[] sourcePaths,
+    String destinationPath,
+    byte[] key,
+    byte[] iv,
+    final FileJobOptions options,
+    final OnlyErrorCallback callback
+  ) {
+    try {
+      executor.execute(() -> decryptChunksToFile(sourcePaths, destinationPath, key, iv, options, callback));
+    } catch (RejectedExecutionException e) {
+      callback.onComplete(e);
+    }
+  }
+
   /**
-   * Generates an AES-256-CTR Cipher
+   * Decrypts a file encrypted into chunks, the inverse of
+   * encryptFileToChunks. Each chunk is decrypted straight into its place in
+   * the destination, so chunks do not have to be joined first. Chunks are
+   * left untouched.
+   *
+   * @param sourcePaths     Paths of the encrypted chunks, in order
+   * @param destinationPath Path where decrypted content is going to be written
+   * @param key             Decryption key
+   * @param iv              Initialization vector of the whole file
+   * @param options         Progress and cancellation
+   */
+  public void decryptChunksToFile(
+    String[] sourcePaths,
+    String destinationPath,
+    byte[] key,
+    byte[] iv,
+    final FileJobOptions options,
+    final OnlyErrorCallback onlyErrorCallback
+  ) {
+    try {
+      parallelCipher.processChunksToFile(sourcePaths, destinationPath, Cipher.DECRYPT_MODE, key, iv, options.getProgress(), options.getCancellation());
+
+      onlyErrorCallback.onComplete(null);
+    } catch (IOException | GeneralSecurityException | IllegalArgumentException e) {
+      if (e instanceof OperationCancelledException) {
+        FileUtils.deleteQuietly(destinationPath);
+      }
+      e.printStackTrace();
+      onlyErrorCallback.onComplete(e);
+    }
+  }
+
+  public void decryptFilesInBackground(
+    List<FileBatchItem> items,
+    int parallelism,
+    final ResultCallback<List<Exception>> callback
+  ) {
+    try {
+      executor.execute(() -> decryptFiles(items, parallelism, callback));
+    } catch (RejectedExecutionException e) {
+      callback.onComplete(e, null);
+    }
+  }
+
+  /**
+   * Decrypts a batch of files, up to parallelism at the same time. A file
+   * failing does not stop the rest of the batch.
+   *
+   * @param items       Files to decrypt, each one with its own key and IV
+   * @param parallelism Max amount of files decrypted at the same time
+   * @param callback    Receives the error of each file in the order of items,
+   *                    null for the ones decrypted
+   */
+  public void decryptFiles(
+    List<FileBatchItem> items,
+    int parallelism,
+    final ResultCallback<List<Exception>> callback
+  ) {
+    try {
+      List<Exception> errors = FileBatch.run(executor, items.size(), parallelism, (index, itemCallback) -> {
+        FileBatchItem item = items.get(index);
+        decryptFile(item.getSourcePath(), item.getDestinationPath(), item.getKey(), item.getIv(), itemCallback);
+      });
+      callback.onComplete(null, errors);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      callback.onComplete(e, null);
+    } catch (IllegalArgumentException e) {
+      callback.onComplete(e, null);
+    }
+  }
+
+  public void decryptRangeInBackground(
+    String sourcePath,
+    String destinationPath,
+    byte[] key,
+    byte[] iv,
+    long offset,
+    long length,
+    final OnlyErrorCallback callback
+  ) {
+    try {
+      executor.execute(() -> decryptRange(sourcePath, destinationPath, key, iv, offset, length, callback));
+    } catch (RejectedExecutionException e) {
+      callback.onComplete(e);
+    }
+  }
+
+  /**
+   * Decrypts only length bytes of the file starting at offset. The input is
+   * seeked and the cipher counter starts at the block containing offset, so
+   * the cost depends on length and not on the size of the file.
+   *
+   * @param sourcePath      Path where file to decrypt is
+   * @param destinationPath Path where decrypted range is going to be written
+   * @param key             Decryption key
+   * @param iv              Initialization vector used for byte 0 of the file
+   * @param offset          Position of the first byte to decrypt
+   * @param length          Amount of bytes to decrypt, less if EOF is reached
+   */
+  public void decryptRange(
+    String sourcePath,
+    String destinationPath,
+    byte[] key,
+    byte[] iv,
+    long offset,
+    long length,
+    final OnlyErrorCallback onlyErrorCallback
+  ) {
+    try {
+      if (offset < 0 || length < 0) {
+        throw new IllegalArgumentException("Offset and length cannot be negative.");
+      }
+
+      try (
+        FileInputStream inputStream = new FileInputStream(sourcePath);
+        FileOutputStream outputStream = new FileOutputStream(destinationPath)
+      ) {
+        inputStream.getChannel().position(offset);
+
+        this.decryptRange(
+          inputStream,
+          outputStream,
+          CtrCipherFactory.createAt(Cipher.DECRYPT_MODE, key, iv, offset),
+          length
+        );
+      }
+
+      onlyErrorCallback.onComplete(null);
+    } catch (IOException | GeneralSecurityException | IllegalArgumentException e) {
+      e.printStackTrace();
+      onlyErrorCallback.onComplete(e);
+    }
+  }
+
+  /**
+   * Initialises the AES-256-CTR Cipher of the calling thread, which is reused
+   * across files instead of created for each one
    *
    * @param key
    * @param iv
    * @return
    */
   private Cipher getAES256CTRCipher(byte[] key, byte[] iv) throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException {
-    SecretKeySpec secretKey = new SecretKeySpec(key, 0, key.length, "AES");
-    Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
-
-    if (!cipher.getAlgorithm().toUpperCase().startsWith(("AES/CTR")))
-      throw new IllegalArgumentException("Invalid algorithm, only AES/CTR mode supported");
-
-    cipher.init(Cipher.DECRYPT_MODE, secretKey, new IvParameterSpec(iv));
-
-    return cipher;
+    return CtrCipherFactory.obtain(Cipher.DECRYPT_MODE, key, iv);
   }
 
   /**
@@ -78,17 +294,17 @@ public class DecryptFileRepository {
    * @param sourcePath      Path where file to decrypt is
    * @param destinationPath Path where decrypted content is going to be written
    * @param cipher          Cipher used to decrypt the content
+   * @param progress        Notified after every buffer, nullable
+   * @param cancellation    Checked before every buffer, nullable
    */
   private void decryptFile(
     String sourcePath,
     String destinationPath,
-    Cipher cipher
-  ) throws IOException {
-    this.decrypt(
-      new FileInputStream(sourcePath),
-      new FileOutputStream(destinationPath),
-      cipher
-    );
+    Cipher cipher,
+    OnProgressCallback progress,
+    CancellationToken cancellation
+  ) throws IOException, GeneralSecurityException {
+    channelCipher.processFile(sourcePath, destinationPath, cipher, null, progress, cancellation);
   }
 
   /**
@@ -106,7 +322,7 @@ public class DecryptFileRepository {
     CipherInputStream cis = new CipherInputStream(inputStream, cipher);
 
     int b;
-    byte[] buffer = new byte[4096];
+    byte[] buffer = new byte[bufferSizer.sizeFor(BufferSizer.UNKNOWN_LENGTH)];
 
     while ((b = cis.read(buffer)) != -1) {
       outputStream.write(buffer, 0, b);
@@ -116,4 +332,38 @@ public class DecryptFileRepository {
     outputStream.close();
     cis.close();
   }
+
+  /**
+   * Decrypts up to length bytes received from an input and writes them to an
+   * output. The cipher must be positioned at the input current position.
+   *
+   * @param inputStream  Source to decrypt
+   * @param outputStream Source to write decrypted content
+   * @param cipher       Cipher used to decrypt data
+   * @param length       Max amount of bytes to decrypt
+   */
+  private void decryptRange(
+    InputStream inputStream,
+    OutputStream outputStream,
+    Cipher cipher,
+    long length
+  ) throws IOException, GeneralSecurityException {
+    byte[] buffer = new byte[bufferSizer.sizeFor(length)];
+    byte[] decrypted = new byte[buffer.length + CtrCipherFactory.BLOCK_SIZE];
+    long remaining = length;
+    int b;
+
+    while (
+      remaining > 0 &&
+      (b = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1
+    ) {
+      int written = cipher.update(buffer, 0, b, decrypted, 0);
+      outputStream.write(decrypted, 0, written);
+      remaining -= b;
+    }
+
+    int written = cipher.doFinal(decrypted, 0);
+    outputStream.write(decrypted, 0, written);
+    outputStream.flush();
+  }
 }
@@ -1,29 +1,69 @@
 package com.rncrypto;
 
+import com.rncrypto.util.BufferSizer;
+import com.rncrypto.util.CancellationToken;
+import com.rncrypto.util.ChunkPlan;
+import com.rncrypto.util.CtrCipherFactory;
+import com.rncrypto.util.DigestSpec;
+import com.rncrypto.util.FileBatchItem;
+import com.rncrypto.util.FileDigests;
+import com.rncrypto.util.FileJobOptions;
+import com.rncrypto.util.FileUtils;
+import com.rncrypto.util.OnChunkEncryptedCallback;
+import com.rncrypto.util.OnProgressCallback;
 import com.rncrypto.util.OnlyErrorCallback;
+import com.rncrypto.util.OperationCancelledException;
+import com.rncrypto.util.ResultCallback;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.CipherOutputStream;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
-import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
+import javax.crypto.ShortBufferException;
 
 public class EncryptFileRepository {
 
   private final Executor executor;
+  private final ParallelCtrFileCipher parallelCipher;
+  private final FileChannelCipher channelCipher;
+  private final BufferSizer bufferSizer;
+  private final ResumableFileCipher resumableCipher;
 
   public EncryptFileRepository(Executor executor) {
+    this(executor, new ParallelCtrFileCipher(executor));
+  }
+
+  public EncryptFileRepository(
+    Executor executor,
+    ParallelCtrFileCipher parallelCipher
+  ) {
+    this(executor, parallelCipher, new FileChannelCipher(), new BufferSizer());
+  }
+
+  public EncryptFileRepository(
+    Executor executor,
+    ParallelCtrFileCipher parallelCipher,
+    FileChannelCipher channelCipher,
+    BufferSizer bufferSizer
+  ) {
     this.executor = executor;
+    this.parallelCipher = parallelCipher;
+    this.channelCipher = channelCipher;
+    this.bufferSizer = bufferSizer;
+    this.resumableCipher = new ResumableFileCipher(bufferSizer);
   }
 
   public void encryptFileInBackground(
@@ -33,78 +73,238 @@ public class EncryptFileRepository {
     byte[] iv,
     final OnlyErrorCallback callback
   ) {
-    executor.execute(() ->
-      encryptFile(sourcePath, destinationPath, key, iv, callback)
+    encryptFileInBackground(
+      sourcePath,
+      destinationPath,
+      key,
+      iv,
+      FileJobOptions.DEFAULT,
+      (Exception ex, FileDigests digests) -> callback.onComplete(ex)
     );
   }
 
+  /**
+   * Encrypts a file in background, see encryptFile
+   */
+  public void encryptFileInBackground(
+    String sourcePath,
+    String destinationPath,
+    byte[] key,
+    byte[] iv,
+    final FileJobOptions options,
+    final ResultCallback<FileDigests> callback
+  ) {
+    try {
+      executor.execute(() ->
+        encryptFile(sourcePath, destinationPath, key, iv, options, callback)
+      );
+    } catch (RejectedExecutionException e) {
+      callback.onComplete(e, null);
+    }
+  }
+
   public void encryptFile(
     String sourcePath,
     String destinationPath,
     byte[] key,
     byte[] iv,
     final OnlyErrorCallback onlyErrorCallback
+  ) {
+    encryptFile(
+      sourcePath,
+      destinationPath,
+      key,
+      iv,
+      FileJobOptions.DEFAULT,
+      (Exception ex, FileDigests digests) -> onlyErrorCallback.onComplete(ex)
+    );
+  }
+
+  /**
+   * Encrypts a file. If cancelled, the partial output is deleted and the
+   * callback receives an OperationCancelledException.
+   *
+   * With digests, those of its plaintext and ciphertext are computed in the
+   * same pass, so the output does not have to be read again to hash it.
+   * Digests need the bytes in order, so the file is then encrypted by a
+   * single thread even if parallel is set.
+   *
+   * @param options  Parallel, progress, cancellation and digests
+   * @param callback Receives the digests once the file is encrypted, null
+   *                 without digests
+   */
+  public void encryptFile(
+    String sourcePath,
+    String destinationPath,
+    byte[] key,
+    byte[] iv,
+    final FileJobOptions options,
+    final ResultCallback<FileDigests> callback
   ) {
     try {
-      this.encryptFile(
+      DigestSpec digestSpec = options.getDigestSpec();
+      FileDigests digests = null;
+      if (options.isParallel() && digestSpec == null) {
+        parallelCipher.processFile(
           sourcePath,
           destinationPath,
-          this.getAES256CTRCipher(key, iv)
+          Cipher.ENCRYPT_MODE,
+          key,
+          iv,
+          options.getProgress(),
+          options.getCancellation()
         );
+      } else {
+        digests = digestSpec != null ? digestSpec.newDigests() : null;
+        channelCipher.processFile(
+          sourcePath,
+          destinationPath,
+          this.getAES256CTRCipher(key, iv),
+          digests,
+          options.getProgress(),
+          options.getCancellation()
+        );
+        if (digests != null) {
+          digests.finish();
+        }
+      }
 
-      onlyErrorCallback.onComplete(null);
-    } catch (
-      IOException
-      | NoSuchPaddingException
-      | InvalidAlgorithmParameterException
-      | NoSuchAlgorithmException
-      | InvalidKeyException e
-    ) {
+      callback.onComplete(null, digests);
+    } catch (IOException | GeneralSecurityException e) {
+      if (e instanceof OperationCancelledException) {
+        FileUtils.deleteQuietly(destinationPath);
+      }
       e.printStackTrace();
-      onlyErrorCallback.onComplete(e);
+      callback.onComplete(e, null);
     }
   }
 
   /**
-   * Generates an AES-256-CTR Cipher
-   *
-   * @param key Cipher key
-   * @param iv Initialization vector
-   * @return Cipher used for encrypting with AES-256-CTR
+   * Encrypts a file in background, resuming a previous interrupted encryption
+   * to the same destination when possible
    */
-  private Cipher getAES256CTRCipher(byte[] key, byte[] iv)
-    throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException {
-    SecretKeySpec secretKey = new SecretKeySpec(key, 0, key.length, "AES");
-    Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
-
-    if (
-      !cipher.getAlgorithm().toUpperCase().startsWith(("AES/CTR"))
-    ) throw new IllegalArgumentException(
-      "Invalid algorithm, only AES/CTR mode supported"
-    );
-
-    cipher.init(Cipher.ENCRYPT_MODE, secretKey, new IvParameterSpec(iv));
-
-    return cipher;
+  public void encryptFileResumableInBackground(
+    String sourcePath,
+    String destinationPath,
+    byte[] key,
+    byte[] iv,
+    final FileJobOptions options,
+    final ResultCallback<Long> callback
+  ) {
+    try {
+      executor.execute(() ->
+        encryptFileResumable(
+          sourcePath,
+          destinationPath,
+          key,
+          iv,
+          options,
+          callback
+        )
+      );
+    } catch (RejectedExecutionException e) {
+      callback.onComplete(e, null);
+    }
   }
 
   /**
-   * Encrypts a file at sourcePath, writes the output to destinationPath
+   * Encrypts a file writing checkpoints, so if it is interrupted a later call
+   * with the same arguments continues from the last checkpoint. If cancelled,
+   * the partial output and its checkpoint are kept like on any other error,
+   * so work already done is never redone. Neither digests nor
+   * parallel are supported in this mode, the state of digests cannot be saved
+   * in the checkpoint.
    *
-   * @param sourcePath      Path where file to encrypt is
-   * @param destinationPath Path where encrypted content is going to be written
-   * @param cipher          Cipher used to encrypt the content
+   * @param options  Progress and cancellation
+   * @param callback Receives the offset the encryption resumed from, 0 if it
+   *                 started from the beginning
    */
-  private void encryptFile(
+  public void encryptFileResumable(
     String sourcePath,
     String destinationPath,
-    Cipher cipher
-  ) throws IOException {
-    this.encrypt(
-        new FileInputStream(sourcePath),
-        new FileOutputStream(destinationPath),
-        cipher
+    byte[] key,
+    byte[] iv,
+    final FileJobOptions options,
+    final ResultCallback<Long> callback
+  ) {
+    try {
+      long resumedFrom = resumableCipher.encryptFile(
+        sourcePath,
+        destinationPath,
+        key,
+        iv,
+        options.getProgress(),
+        options.getCancellation()
+      );
+      callback.onComplete(null, resumedFrom);
+    } catch (IOException | GeneralSecurityException e) {
+      e.printStackTrace();
+      callback.onComplete(e, null);
+    }
+  }
+
+  public void encryptFilesInBackground(
+    List<FileBatchItem> items,
+    int parallelism,
+    final ResultCallback<List<Exception>> callback
+  ) {
+    try {
+      executor.execute(() -> encryptFiles(items, parallelism, callback));
+    } catch (RejectedExecutionException e) {
+      callback.onComplete(e, null);
+    }
+  }
+
+  /**
+   * Encrypts a batch of files, up to parallelism at the same time. A file
+   * failing does not stop the rest of the batch.
+   *
+   * @param items       Files to encrypt, each one with its own key and IV
+   * @param parallelism Max amount of files encrypted at the same time
+   * @param callback    Receives the error of each file in the order of items,
+   *                    null for the ones encrypted
+   */
+  public void encryptFiles(
+    List<FileBatchItem> items,
+    int parallelism,
+    final ResultCallback<List<Exception>> callback
+  ) {
+    try {
+      List<Exception> errors = FileBatch.run(
+        executor,
+        items.size(),
+        parallelism,
+        (index, itemCallback) -> {
+          FileBatchItem item = items.get(index);
+          encryptFile(
+            item.getSourcePath(),
+            item.getDestinationPath(),
+            item.getKey(),
+            item.getIv(),
+            itemCallback
+          );
+        }
       );
+      callback.onComplete(null, errors);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      callback.onComplete(e, null);
+    } catch (IllegalArgumentException e) {
+      callback.onComplete(e, null);
+    }
+  }
+
+  /**
+   * Initialises the AES-256-CTR Cipher of the calling thread, which is reused
+   * across files instead of created for each one
+   *
+   * @param key Cipher key
+   * @param iv Initialization vector
+   * @return Cipher used for encrypting with AES-256-CTR
+   */
+  private Cipher getAES256CTRCipher(byte[] key, byte[] iv)
+    throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException {
+    return CtrCipherFactory.obtain(Cipher.ENCRYPT_MODE, key, iv);
   }
 
   /**
@@ -122,7 +322,7 @@ public class EncryptFileRepository {
     CipherOutputStream cos = new CipherOutputStream(outputStream, cipher);
 
     int b;
-    byte[] buffer = new byte[4096];
+    byte[] buffer = new byte[bufferSizer.sizeFor(BufferSizer.UNKNOWN_LENGTH)];
 
     while ((b = inputStream.read(buffer)) != -1) {
       cos.write(buffer, 0, b);
@@ -133,6 +333,54 @@ public class EncryptFileRepository {
     inputStream.close();
   }
 
+  public void encryptFileToChunksInBackground(
+    String sourcePath,
+    String[] destinationPaths,
+    byte[] key,
+    byte[] iv,
+    int chunkSize,
+    final OnlyErrorCallback callback
+  ) {
+    encryptFileToChunksInBackground(
+      sourcePath,
+      destinationPaths,
+      key,
+      iv,
+      chunkSize,
+      FileJobOptions.DEFAULT,
+      (Exception ex, List<FileDigests> digests) -> callback.onComplete(ex)
+    );
+  }
+
+  /**
+   * Encrypts a file into chunks in background, see encryptFileToChunks
+   */
+  public void encryptFileToChunksInBackground(
+    String sourcePath,
+    String[] destinationPaths,
+    byte[] key,
+    byte[] iv,
+    int chunkSize,
+    final FileJobOptions options,
+    final ResultCallback<List<FileDigests>> callback
+  ) {
+    try {
+      executor.execute(() ->
+        encryptFileToChunks(
+          sourcePath,
+          destinationPaths,
+          key,
+          iv,
+          chunkSize,
+          options,
+          callback
+        )
+      );
+    } catch (RejectedExecutionException e) {
+      callback.onComplete(e, null);
+    }
+  }
+
   public void encryptFileToChunks(
     String sourcePath,
     String[] destinationPaths,
@@ -140,18 +388,311 @@ public class EncryptFileRepository {
     byte[] iv,
     int chunkSize,
     final OnlyErrorCallback callback
+  ) {
+    encryptFileToChunks(
+      sourcePath,
+      destinationPaths,
+      key,
+      iv,
+      chunkSize,
+      FileJobOptions.DEFAULT,
+      (Exception ex, List<FileDigests> digests) -> callback.onComplete(ex)
+    );
+  }
+
+  /**
+   * Encrypts a file into chunks, computing the digests of each chunk while it
+   * is encrypted. If cancelled, every chunk is deleted and the callback
+   * receives an OperationCancelledException.
+   *
+   * @param sourcePath       Source file path
+   * @param destinationPaths Array of destination paths for chunks
+   * @param key              Encryption key
+   * @param iv               Initialization vector
+   * @param chunkSize        Size of each chunk in bytes
+   * @param options          Progress, cancellation and digests of each chunk
+   * @param callback         Receives the digests of each chunk in the order of
+   *                         destinationPaths, null without digests
+   */
+  public void encryptFileToChunks(
+    String sourcePath,
+    String[] destinationPaths,
+    byte[] key,
+    byte[] iv,
+    int chunkSize,
+    final FileJobOptions options,
+    final ResultCallback<List<FileDigests>> callback
   ) {
     try (FileInputStream input = new FileInputStream(sourcePath)) {
-      OutputStream[] outputs = new OutputStream[destinationPaths.length];
+      List<FileDigests> digests = encryptToChunks(
+        input,
+        input.getChannel().size(),
+        destinationPaths,
+        key,
+        iv,
+        chunkSize,
+        options
+      );
+      callback.onComplete(null, digests);
+    } catch (Exception e) {
+      if (e instanceof OperationCancelledException) {
+        FileUtils.deleteQuietly(destinationPaths);
+      }
+      callback.onComplete(e, null);
+    }
+  }
 
-      for (int i = 0; i < destinationPaths.length; i++) {
-        outputs[i] = new FileOutputStream(destinationPaths[i]);
+  public void encryptFileToChunksInBackground(
+    String sourcePath,
+    String outputDirectory,
+    String namePattern,
+    byte[] key,
+    byte[] iv,
+    int chunkSize,
+    final FileJobOptions options,
+    final ResultCallback<ChunkPlan> callback
+  ) {
+    try {
+      executor.execute(() ->
+        encryptFileToChunks(
+          sourcePath,
+          outputDirectory,
+          namePattern,
+          key,
+          iv,
+          chunkSize,
+          options,
+          callback
+        )
+      );
+    } catch (RejectedExecutionException e) {
+      callback.onComplete(e, null);
+    }
+  }
+
+  /**
+   * Encrypts a file into as many chunks as its length needs, named after
+   * namePattern inside outputDirectory. The chunks are planned from the file
+   * once it is open, so there is always one path per chunk.
+   *
+   * @param sourcePath      Source file path
+   * @param outputDirectory Directory where chunks are written, created if missing
+   * @param namePattern     Name of each chunk, see ChunkPlan
+   * @param key             Encryption key
+   * @param iv              Initialization vector
+   * @param chunkSize       Size of each chunk in bytes
+   * @param options         Progress, cancellation and digests of each chunk
+   * @param callback        Receives the path, offset, size and digests of
+   *                        each chunk
+   */
+  public void encryptFileToChunks(
+    String sourcePath,
+    String outputDirectory,
+    String namePattern,
+    byte[] key,
+    byte[] iv,
+    int chunkSize,
+    final FileJobOptions options,
+    final ResultCallback<ChunkPlan> callback
+  ) {
+    ChunkPlan plan = null;
+    try (FileInputStream input = new FileInputStream(sourcePath)) {
+      long length = input.getChannel().size();
+      plan = ChunkPlan.create(
+        sourcePath,
+        length,
+        chunkSize,
+        outputDirectory,
+        namePattern
+      );
+      List<FileDigests> digests = encryptToChunks(
+        input,
+        length,
+        plan.getPaths(),
+        key,
+        iv,
+        chunkSize,
+        options
+      );
+      callback.onComplete(null, plan.withDigests(digests));
+    } catch (Exception e) {
+      if (e instanceof OperationCancelledException && plan != null) {
+        FileUtils.deleteQuietly(plan.getPaths());
+      }
+      callback.onComplete(e, null);
+    }
+  }
+
+  private List<FileDigests> encryptToChunks(
+    FileInputStream input,
+    long length,
+    String[] destinationPaths,
+    byte[] key,
+    byte[] iv,
+    int chunkSize,
+    FileJobOptions options
+  ) throws IOException, GeneralSecurityException {
+    Cipher cipher = getAES256CTRCipher(key, iv);
+    int bufferSize = bufferSizer.sizeFor(length);
+    OnProgressCallback progress = options.getProgress();
+    return encryptToMultipleChunks(
+      input,
+      new ChunkFiles(destinationPaths),
+      cipher,
+      chunkSize,
+      bufferSize,
+      // The stream does not know its length, the file does
+      options.withProgress(
+        progress != null
+          ? (processed, total) -> progress.onProgress(processed, length)
+          : null
+      )
+    );
+  }
+
+  public void encryptFileToChunksInParallelInBackground(
+    String sourcePath,
+    String[] destinationPaths,
+    byte[] key,
+    byte[] iv,
+    int chunkSize,
+    int parallelism,
+    final OnChunkEncryptedCallback chunkCallback,
+    final OnlyErrorCallback callback
+  ) {
+    encryptFileToChunksInParallelInBackground(
+      sourcePath,
+      destinationPaths,
+      key,
+      iv,
+      chunkSize,
+      parallelism,
+      FileJobOptions.DEFAULT,
+      chunkCallback,
+      (Exception ex, List<FileDigests> digests) -> callback.onComplete(ex)
+    );
+  }
+
+  /**
+   * Encrypts a file into chunks in background, see
+   * encryptFileToChunksInParallel
+   */
+  public void encryptFileToChunksInParallelInBackground(
+    String sourcePath,
+    String[] destinationPaths,
+    byte[] key,
+    byte[] iv,
+    int chunkSize,
+    int parallelism,
+    final FileJobOptions options,
+    final OnChunkEncryptedCallback chunkCallback,
+    final ResultCallback<List<FileDigests>> callback
+  ) {
+    try {
+      executor.execute(() ->
+        encryptFileToChunksInParallel(
+          sourcePath,
+          destinationPaths,
+          key,
+          iv,
+          chunkSize,
+          parallelism,
+          options,
+          chunkCallback,
+          callback
+        )
+      );
+    } catch (RejectedExecutionException e) {
+      callback.onComplete(e, null);
+    }
+  }
+
+  /**
+   * Encrypts a file into chunks, encrypting up to parallelism chunks at the
+   * same time. Output is the same as encryptFileToChunks.
+   *
+   * @param sourcePath       Source file path
+   * @param destinationPaths Array of destination paths for chunks
+   * @param key              Encryption key
+   * @param iv               Initialization vector
+   * @param chunkSize        Size of each chunk in bytes
+   * @param parallelism      Max amount of chunks encrypted at the same time
+   * @param chunkCallback    Notified as soon as each chunk is ready, nullable
+   * @param callback         Callback for handling errors
+   */
+  public void encryptFileToChunksInParallel(
+    String sourcePath,
+    String[] destinationPaths,
+    byte[] key,
+    byte[] iv,
+    int chunkSize,
+    int parallelism,
+    final OnChunkEncryptedCallback chunkCallback,
+    final OnlyErrorCallback callback
+  ) {
+    encryptFileToChunksInParallel(
+      sourcePath,
+      destinationPaths,
+      key,
+      iv,
+      chunkSize,
+      parallelism,
+      FileJobOptions.DEFAULT,
+      chunkCallback,
+      (Exception ex, List<FileDigests> digests) -> callback.onComplete(ex)
+    );
+  }
+
+  /**
+   * Encrypts a file into chunks, encrypting up to parallelism chunks at the
+   * same time and computing the digests of each chunk while it is encrypted
+   *
+   * @param options       Progress, notified from any thread, cancellation and
+   *                      digests of each chunk
+   * @param chunkCallback Notified as soon as each chunk is ready, nullable
+   * @param callback      Receives the digests of each chunk in the order of
+   *                      destinationPaths, null without digests
+   */
+  public void encryptFileToChunksInParallel(
+    String sourcePath,
+    String[] destinationPaths,
+    byte[] key,
+    byte[] iv,
+    int chunkSize,
+    int parallelism,
+    final FileJobOptions options,
+    final OnChunkEncryptedCallback chunkCallback,
+    final ResultCallback<List<FileDigests>> callback
+  ) {
+    try {
+      // Same limit as the serial path so both accept the same chunk sizes
+      if (
+        chunkSize >= Integer.MAX_VALUE - bufferSizer.sizeFor(BufferSizer.UNKNOWN_LENGTH)
+      ) {
+        throw new IllegalArgumentException(
+          "Chunk size too large, could cause overflow."
+        );
       }
-      Cipher cipher = getAES256CTRCipher(key, iv);
-      encryptToMultipleChunks(input, outputs, cipher, chunkSize);
-      callback.onComplete(null);
+
+      List<FileDigests> digests = parallelCipher.processFileToChunks(
+        sourcePath,
+        destinationPaths,
+        Cipher.ENCRYPT_MODE,
+        key,
+        iv,
+        chunkSize,
+        parallelism,
+        options.getDigestSpec(),
+        options.getProgress(),
+        options.getCancellation(),
+        chunkCallback
+      );
+      callback.onComplete(null, digests);
     } catch (Exception e) {
-      callback.onComplete(e);
+      if (e instanceof OperationCancelledException) {
+        FileUtils.deleteQuietly(destinationPaths);
+      }
+      callback.onComplete(e, null);
     }
   }
 
@@ -160,6 +701,57 @@ public class EncryptFileRepository {
     OutputStream[] outputs,
     Cipher cipher,
     int chunkSize
+  ) throws IOException, BadPaddingException, IllegalBlockSizeException {
+    encryptToMultipleChunks(
+      inputStream,
+      outputs,
+      cipher,
+      chunkSize,
+      bufferSizer.sizeFor(BufferSizer.UNKNOWN_LENGTH),
+      FileJobOptions.DEFAULT
+    );
+  }
+
+  /**
+   * Encrypts content received from an input splitting it in chunks of
+   * chunkSize bytes, each one written to its own output, and computes the
+   * digests of each chunk while it is encrypted
+   *
+   * @param inputStream Source to encrypt
+   * @param outputs     One output per chunk, in order
+   * @param cipher      Cipher used to encrypt data
+   * @param chunkSize   Size of each chunk in bytes
+   * @param bufferSize  Size of the buffer used to read the input
+   * @param options     Progress, notified with an unknown total, cancellation,
+   *                    checked before every buffer, and digests of each chunk
+   * @return The digests of each output, null without digests
+   * @throws OperationCancelledException If cancelled, outputs are left partial
+   */
+  public List<FileDigests> encryptToMultipleChunks(
+    InputStream inputStream,
+    OutputStream[] outputs,
+    Cipher cipher,
+    int chunkSize,
+    int bufferSize,
+    FileJobOptions options
+  ) throws IOException, BadPaddingException, IllegalBlockSizeException {
+    return encryptToMultipleChunks(
+      inputStream,
+      new ChunkStreams(outputs),
+      cipher,
+      chunkSize,
+      bufferSize,
+      options
+    );
+  }
+
+  private List<FileDigests> encryptToMultipleChunks(
+    InputStream inputStream,
+    ChunkOutputs outputs,
+    Cipher cipher,
+    int chunkSize,
+    int bufferSize,
+    FileJobOptions options
   ) throws IOException, BadPaddingException, IllegalBlockSizeException {
     if (chunkSize <= 0) {
       throw new IllegalArgumentException(
@@ -168,14 +760,13 @@ public class EncryptFileRepository {
     }
 
     // Overflow check
-    int bufferSize = 4096;
     if (chunkSize >= Integer.MAX_VALUE - bufferSize) {
       throw new IllegalArgumentException(
         "Chunk size too large, could cause overflow."
       );
     }
 
-    if (outputs == null || outputs.length == 0) {
+    if (outputs.count() == 0) {
       throw new IllegalArgumentException("Outputs array cannot be empty.");
     }
 
@@ -183,14 +774,36 @@ public class EncryptFileRepository {
       throw new IllegalArgumentException("Input stream cannot be null.");
     }
 
-    byte[] buffer = new byte[4096];
+    DigestSpec digestSpec = options.getDigestSpec();
+    OnProgressCallback progress = options.getProgress();
+    CancellationToken cancellation = options.getCancellation();
+
+    // Scratch buffers live for the whole operation, nothing is allocated per block
+    byte[] buffer = new byte[bufferSize];
+    byte[] encrypted = new byte[buffer.length + CtrCipherFactory.BLOCK_SIZE];
     int currentChunkIndex = 0;
     int bytesWrittenInChunk = 0;
-    OutputStream currentOutput = outputs[currentChunkIndex];
+    long processed = 0;
+    OutputStream currentOutput = null;
+
+    // Created up front so the loop does not allocate, empty outputs get the
+    // digests of no bytes
+    List<FileDigests> chunkDigests = null;
+    FileDigests currentDigests = null;
+    if (digestSpec != null) {
+      chunkDigests = new ArrayList<>(outputs.count());
+      for (int i = 0; i < outputs.count(); i++) {
+        chunkDigests.add(digestSpec.newDigests());
+      }
+      currentDigests = chunkDigests.get(currentChunkIndex);
+    }
 
     try {
+      // Only the chunk being written is open, each one is closed when full
+      currentOutput = outputs.open(currentChunkIndex);
       int bytesRead;
       while (true) {
+        CancellationToken.check(cancellation);
         bytesRead = inputStream.read(buffer);
         if (bytesRead == -1) {
           break; // EOF
@@ -205,56 +818,90 @@ public class EncryptFileRepository {
         while (remaining > 0) {
           int spaceLeftInChunk = chunkSize - bytesWrittenInChunk;
           if (spaceLeftInChunk <= 0) {
-            byte[] finalBlock = cipher.update(new byte[0]);
-            if (finalBlock != null) {
-              currentOutput.write(finalBlock);
-            }
+            // CTR keeps no pending bytes, the next chunk continues the keystream
             currentOutput.flush();
             currentOutput.close();
+            currentOutput = null;
 
             currentChunkIndex++;
-            if (currentChunkIndex >= outputs.length) {
+            if (currentChunkIndex >= outputs.count()) {
               throw new IOException(
                 "Not enough output streams for the file size"
               );
             }
 
-            currentOutput = outputs[currentChunkIndex];
+            currentOutput = outputs.open(currentChunkIndex);
+            if (chunkDigests != null) {
+              currentDigests = chunkDigests.get(currentChunkIndex);
+            }
             bytesWrittenInChunk = 0;
             spaceLeftInChunk = chunkSize;
           }
 
           int bytesToWrite = Math.min(remaining, spaceLeftInChunk);
 
-          byte[] encryptedData = cipher.update(buffer, offset, bytesToWrite);
-          if (encryptedData != null) {
-            try {
-              currentOutput.write(encryptedData);
-            } catch (IOException e) {
-              throw new IOException(
-                "Error writing to output stream " + currentChunkIndex,
-                e
-              );
-            }
+          int encryptedLength = updateCipher(
+            cipher,
+            buffer,
+            offset,
+            bytesToWrite,
+            encrypted
+          );
+          if (currentDigests != null) {
+            currentDigests.updatePlaintext(buffer, offset, bytesToWrite);
+            currentDigests.updateCiphertext(encrypted, 0, encryptedLength);
+          }
+          try {
+            currentOutput.write(encrypted, 0, encryptedLength);
+          } catch (IOException e) {
+            throw new IOException(
+              "Error writing to output stream " + currentChunkIndex,
+              e
+            );
           }
 
           remaining -= bytesToWrite;
           offset += bytesToWrite;
           bytesWrittenInChunk += bytesToWrite;
         }
+
+        processed += bytesRead;
+        if (progress != null) {
+          progress.onProgress(processed, OnProgressCallback.UNKNOWN_TOTAL);
+        }
       }
 
       // Final block
-      byte[] finalBlock = cipher.doFinal();
-      if (finalBlock != null) {
-        currentOutput.write(finalBlock);
+      int finalLength = finishCipher(cipher, encrypted);
+      if (currentDigests != null) {
+        currentDigests.updateCiphertext(encrypted, 0, finalLength);
       }
+      currentOutput.write(encrypted, 0, finalLength);
       currentOutput.flush();
-    } catch (IOException | IllegalBlockSizeException | BadPaddingException e) {
-      closeAllStreams(outputs, currentChunkIndex);
-      throw e;
+      currentOutput.close();
+      currentOutput = null;
+
+      // Outputs past the data are left empty, opened one at a time
+      while (++currentChunkIndex < outputs.count()) {
+        OutputStream unused = outputs.open(currentChunkIndex);
+        if (unused != null) {
+          unused.close();
+        }
+      }
+
+      if (chunkDigests != null) {
+        for (FileDigests digests : chunkDigests) {
+          digests.finish();
+        }
+      }
+      return chunkDigests;
     } finally {
-      closeAllStreams(outputs, currentChunkIndex);
+      if (currentOutput != null) {
+        closeQuietly(currentOutput, currentChunkIndex);
+      }
+      for (int i = currentChunkIndex + 1; i < outputs.count(); i++) {
+        outputs.discard(i);
+      }
       try {
         inputStream.close();
       } catch (IOException e) {
@@ -263,17 +910,107 @@ public class EncryptFileRepository {
     }
   }
 
-  private void closeAllStreams(OutputStream[] outputs, int currentIndex) {
-    for (int i = currentIndex; i < outputs.length; i++) {
-      try {
-        if (outputs[i] != null) {
-          outputs[i].close();
-        }
-      } catch (IOException e) {
-        System.err.println(
-          "Error closing output stream " + i + ": " + e.getMessage()
-        );
+  private static int updateCipher(
+    Cipher cipher,
+    byte[] input,
+    int offset,
+    int length,
+    byte[] output
+  ) throws IOException {
+    try {
+      return cipher.update(input, offset, length, output, 0);
+    } catch (ShortBufferException e) {
+      // Output is sized for the input plus a block, a CTR cipher cannot exceed it
+      throw new IOException("Cipher output does not fit in the buffer", e);
+    }
+  }
+
+  private static int finishCipher(Cipher cipher, byte[] output)
+    throws IOException, IllegalBlockSizeException, BadPaddingException {
+    try {
+      return cipher.doFinal(output, 0);
+    } catch (ShortBufferException e) {
+      throw new IOException("Cipher output does not fit in the buffer", e);
+    }
+  }
+
+  private static void closeQuietly(OutputStream output, int index) {
+    try {
+      output.close();
+    } catch (IOException e) {
+      System.err.println(
+        "Error closing output stream " + index + ": " + e.getMessage()
+      );
+    }
+  }
+
+  /**
+   * Outputs of a chunked encryption, opened when the encryption reaches them
+   */
+  private interface ChunkOutputs {
+    int count();
+
+    OutputStream open(int index) throws IOException;
+
+    /**
+     * Releases an output the encryption did not reach because it failed
+     */
+    void discard(int index);
+  }
+
+  /**
+   * Streams opened by the caller, the ones not reached are closed
+   */
+  private static class ChunkStreams implements ChunkOutputs {
+
+    private final OutputStream[] streams;
+
+    ChunkStreams(OutputStream[] streams) {
+      this.streams = streams != null ? streams : new OutputStream[0];
+    }
+
+    @Override
+    public int count() {
+      return streams.length;
+    }
+
+    @Override
+    public OutputStream open(int index) {
+      return streams[index];
+    }
+
+    @Override
+    public void discard(int index) {
+      if (streams[index] != null) {
+        closeQuietly(streams[index], index);
       }
     }
   }
+
+  /**
+   * Files created when the encryption reaches them, so at most one is open
+   */
+  private static class ChunkFiles implements ChunkOutputs {
+
+    private final String[] paths;
+
+    ChunkFiles(String[] paths) {
+      this.paths = paths != null ? paths : new String[0];
+    }
+
+    @Override
+    public int count() {
+      return paths.length;
+    }
+
+    @Override
+    public OutputStream open(int index) throws IOException {
+      return new FileOutputStream(paths[index]);
+    }
+
+    @Override
+    public void discard(int index) {
+      // Never opened
+    }
+  }
 }
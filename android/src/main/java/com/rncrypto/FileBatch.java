@@ -0,0 +1,82 @@
+package com.rncrypto;
+
+import com.rncrypto.util.OnlyErrorCallback;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a batch of independent operations, like files to encrypt or keys to
+ * derive, up to parallelism at the same time, collecting the outcome of each
+ * one instead of stopping at the first failure.
+ *
+ * As in ParallelCtrFileCipher, the calling thread always takes part in the
+ * work and helpers are only a speed up, so a batch running on the same
+ * executor as its helpers cannot deadlock.
+ */
+class FileBatch {
+
+  interface Operation {
+    /**
+     * Runs the operation of the given item, calling the callback before
+     * returning
+     */
+    void run(int index, OnlyErrorCallback callback);
+  }
+
+  /**
+   * @param executor    Executor running the helpers
+   * @param size        Amount of items in the batch
+   * @param parallelism Max amount of items processed at the same time
+   * @param operation   Operation to run for each item
+   * @return The error of each item, null for the ones that succeeded
+   */
+  static List<Exception> run(
+    Executor executor,
+    int size,
+    int parallelism,
+    Operation operation
+  ) throws InterruptedException {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException(
+        "Parallelism must be greater than zero."
+      );
+    }
+
+    Exception[] errors = new Exception[size];
+    AtomicInteger nextItem = new AtomicInteger();
+    CountDownLatch pendingItems = new CountDownLatch(size);
+
+    Runnable worker = () -> {
+      int index;
+      while ((index = nextItem.getAndIncrement()) < size) {
+        final int item = index;
+        try {
+          operation.run(item, (Exception ex) -> errors[item] = ex);
+        } catch (RuntimeException e) {
+          errors[item] = e;
+        } finally {
+          pendingItems.countDown();
+        }
+      }
+    };
+
+    int helpers = Math.min(parallelism, size) - 1;
+    for (int i = 0; i < helpers; i++) {
+      try {
+        executor.execute(worker);
+      } catch (RejectedExecutionException e) {
+        // Not an error, the items left are processed by the caller
+        break;
+      }
+    }
+
+    worker.run();
+    pendingItems.await();
+
+    return Arrays.asList(errors);
+  }
+}
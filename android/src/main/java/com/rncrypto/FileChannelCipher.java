@@ -0,0 +1,295 @@
+package com.rncrypto;
+
+import com.rncrypto.util.BufferSizer;
+import com.rncrypto.util.CancellationToken;
+import com.rncrypto.util.CtrCipherFactory;
+import com.rncrypto.util.FileDigests;
+import com.rncrypto.util.OnProgressCallback;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import javax.crypto.Cipher;
+
+/**
+ * Runs a Cipher over a whole file using FileChannels and ByteBuffers.
+ *
+ * Unlike CipherInputStream and CipherOutputStream, data goes from the channel
+ * to the cipher and from the cipher to the channel without intermediate heap
+ * arrays. Direct buffers are kept per thread and reused between operations,
+ * since workers of the pool run many of them. Their size is decided per file
+ * by the BufferSizer.
+ *
+ * Optionally, inputs bigger than the map threshold are memory mapped in
+ * windows so the kernel pages them in instead of copying them with read().
+ */
+public class FileChannelCipher {
+
+  public static final long DEFAULT_MAP_THRESHOLD = 32L * 1024 * 1024;
+  private static final long MAP_WINDOW_SIZE = 64L * 1024 * 1024;
+  private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+  private static final ThreadLocal<ByteBuffer[]> threadBuffers = new ThreadLocal<>();
+
+  private final BufferSizer bufferSizer;
+  private final boolean memoryMappedInput;
+  private final long mapThreshold;
+
+  public FileChannelCipher() {
+    this(new BufferSizer(), false, DEFAULT_MAP_THRESHOLD);
+  }
+
+  /**
+   * @param bufferSizer       Decides the size of the buffers for each file
+   * @param memoryMappedInput Maps big inputs into memory instead of reading them
+   * @param mapThreshold      Min input size, in bytes, to map it into memory
+   */
+  public FileChannelCipher(
+    BufferSizer bufferSizer,
+    boolean memoryMappedInput,
+    long mapThreshold
+  ) {
+    this.bufferSizer = bufferSizer;
+    this.memoryMappedInput = memoryMappedInput;
+    this.mapThreshold = mapThreshold;
+  }
+
+  /**
+   * Processes the file at sourcePath with the given cipher, writes the output
+   * to destinationPath
+   *
+   * @param sourcePath      Path where file to process is
+   * @param destinationPath Path where processed content is going to be written
+   * @param cipher          Initialized cipher used to process the content
+   * @return Amount of bytes written
+   */
+  public long processFile(String sourcePath, String destinationPath, Cipher cipher)
+    throws IOException, GeneralSecurityException {
+    return processFile(sourcePath, destinationPath, cipher, null, null, null);
+  }
+
+  /**
+   * Processes the file at sourcePath with the given cipher, writes the output
+   * to destinationPath and updates the digests with the input and the output
+   *
+   * @param sourcePath      Path where file to process is
+   * @param destinationPath Path where processed content is going to be written
+   * @param cipher          Initialized cipher used to process the content
+   * @param digests         Digests of the plaintext and ciphertext, nullable
+   * @param progress        Notified after every buffer, nullable
+   * @param cancellation    Checked before every buffer, nullable
+   * @return Amount of bytes written
+   */
+  public long processFile(
+    String sourcePath,
+    String destinationPath,
+    Cipher cipher,
+    FileDigests digests,
+    OnProgressCallback progress,
+    CancellationToken cancellation
+  ) throws IOException, GeneralSecurityException {
+    CancellationToken.check(cancellation);
+
+    try (
+      FileInputStream inputStream = new FileInputStream(sourcePath);
+      FileOutputStream outputStream = new FileOutputStream(destinationPath)
+    ) {
+      return process(
+        inputStream.getChannel(),
+        outputStream.getChannel(),
+        cipher,
+        digests,
+        progress,
+        cancellation
+      );
+    }
+  }
+
+  /**
+   * Processes the source channel from its current position to the end,
+   * writing to the destination channel at its current position
+   *
+   * @param source      Channel to read from
+   * @param destination Channel to write to
+   * @param cipher      Initialized cipher used to process the content
+   * @return Amount of bytes written
+   */
+  public long process(FileChannel source, FileChannel destination, Cipher cipher)
+    throws IOException, GeneralSecurityException {
+    return process(source, destination, cipher, null, null, null);
+  }
+
+  /**
+   * Processes the source channel from its current position to the end,
+   * writing to the destination channel at its current position
+   *
+   * @param source       Channel to read from
+   * @param destination  Channel to write to
+   * @param cipher       Initialized cipher used to process the content
+   * @param digests      Digests of the plaintext and ciphertext, nullable
+   * @param progress     Notified after every buffer, nullable
+   * @param cancellation Checked before every buffer, nullable
+   * @return Amount of bytes written
+   */
+  public long process(
+    FileChannel source,
+    FileChannel destination,
+    Cipher cipher,
+    FileDigests digests,
+    OnProgressCallback progress,
+    CancellationToken cancellation
+  ) throws IOException, GeneralSecurityException {
+    long remaining = source.size() - source.position();
+    int bufferSize = bufferSizer.sizeFor(remaining);
+
+    ByteBuffer[] buffers = getBuffers(bufferSize);
+    ByteBuffer input = buffers[0];
+    ByteBuffer output = buffers[1];
+    long written = 0;
+
+    if (memoryMappedInput && remaining >= mapThreshold) {
+      written +=
+        processMapped(
+          source,
+          destination,
+          cipher,
+          digests,
+          progress,
+          cancellation,
+          output,
+          bufferSize
+        );
+    } else {
+      long processed = 0;
+      while (true) {
+        CancellationToken.check(cancellation);
+        input.clear();
+        input.limit(bufferSize);
+        if (source.read(input) < 0) {
+          break;
+        }
+        input.flip();
+        processed += input.remaining();
+
+        output.clear();
+        update(cipher, input, output, digests);
+        written += writeFully(destination, output);
+
+        if (progress != null) {
+          progress.onProgress(processed, remaining);
+        }
+      }
+    }
+
+    output.clear();
+    cipher.doFinal(EMPTY, output);
+    output.flip();
+    if (digests != null) {
+      digests.updateCiphertext(output);
+    }
+    written += writeFully(destination, output);
+
+    return written;
+  }
+
+  private long processMapped(
+    FileChannel source,
+    FileChannel destination,
+    Cipher cipher,
+    FileDigests digests,
+    OnProgressCallback progress,
+    CancellationToken cancellation,
+    ByteBuffer output,
+    int bufferSize
+  ) throws IOException, GeneralSecurityException {
+    long start = source.position();
+    long position = start;
+    long end = source.size();
+    long written = 0;
+
+    while (position < end) {
+      long windowSize = Math.min(MAP_WINDOW_SIZE, end - position);
+      MappedByteBuffer window = source.map(
+        FileChannel.MapMode.READ_ONLY,
+        position,
+        windowSize
+      );
+
+      // Fed in steps of bufferSize so the output buffer is always big enough
+      while (window.hasRemaining()) {
+        CancellationToken.check(cancellation);
+        window.limit(Math.min(window.position() + bufferSize, window.capacity()));
+
+        output.clear();
+        update(cipher, window, output, digests);
+        written += writeFully(destination, output);
+
+        if (progress != null) {
+          progress.onProgress(position + window.position() - start, end - start);
+        }
+
+        window.limit(window.capacity());
+      }
+
+      position += windowSize;
+    }
+
+    source.position(end);
+    return written;
+  }
+
+  /**
+   * Processes the input into the output, leaving the output ready to be
+   * written
+   */
+  private static void update(
+    Cipher cipher,
+    ByteBuffer input,
+    ByteBuffer output,
+    FileDigests digests
+  ) throws GeneralSecurityException {
+    if (digests != null) {
+      digests.updatePlaintext(input);
+    }
+
+    cipher.update(input, output);
+    output.flip();
+
+    if (digests != null) {
+      digests.updateCiphertext(output);
+    }
+  }
+
+  private static int writeFully(FileChannel destination, ByteBuffer buffer)
+    throws IOException {
+    int written = 0;
+    while (buffer.hasRemaining()) {
+      written += destination.write(buffer);
+    }
+    return written;
+  }
+
+  /**
+   * @param bufferSize Min size of the input buffer
+   * @return The input and output buffers of the current thread
+   */
+  private static ByteBuffer[] getBuffers(int bufferSize) {
+    ByteBuffer[] buffers = threadBuffers.get();
+
+    // Bigger buffers are kept, only the part needed is used
+    if (buffers == null || buffers[0].capacity() < bufferSize) {
+      buffers =
+        new ByteBuffer[] {
+          ByteBuffer.allocateDirect(bufferSize),
+          // A cipher may return a block it kept from a previous call
+          ByteBuffer.allocateDirect(bufferSize + CtrCipherFactory.BLOCK_SIZE),
+        };
+      threadBuffers.set(buffers);
+    }
+
+    return buffers;
+  }
+}
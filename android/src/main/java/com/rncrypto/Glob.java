@@ -0,0 +1,124 @@
+package com.rncrypto;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiles glob patterns to regular expressions, with the syntax of
+ * FileSystem.getPathMatcher("glob:..."): *, **, ?, [...], [!...], {a,b} and
+ * backslash escapes. That matcher needs java.nio.file, only available from
+ * API 26.
+ */
+final class Glob {
+
+  private static final String REGEX_META = "\\^$.|?*+()[]{}";
+
+  private Glob() {}
+
+  /**
+   * @throws PatternSyntaxException If the glob is not valid, like an unclosed
+   *                                group or class
+   */
+  static Pattern compile(String glob) {
+    StringBuilder regex = new StringBuilder("^");
+    boolean inGroup = false;
+    int i = 0;
+
+    while (i < glob.length()) {
+      char c = glob.charAt(i++);
+      switch (c) {
+        case '\\':
+          if (i == glob.length()) {
+            throw new PatternSyntaxException(
+              "No character to escape",
+              glob,
+              i - 1
+            );
+          }
+          appendLiteral(regex, glob.charAt(i++));
+          break;
+        case '[':
+          i = appendClass(regex, glob, i);
+          break;
+        case '{':
+          if (inGroup) {
+            throw new PatternSyntaxException("Cannot nest groups", glob, i - 1);
+          }
+          regex.append("(?:(?:");
+          inGroup = true;
+          break;
+        case '}':
+          if (inGroup) {
+            regex.append("))");
+            inGroup = false;
+          } else {
+            appendLiteral(regex, c);
+          }
+          break;
+        case ',':
+          if (inGroup) {
+            regex.append(")|(?:");
+          } else {
+            regex.append(c);
+          }
+          break;
+        case '*':
+          if (i < glob.length() && glob.charAt(i) == '*') {
+            regex.append(".*");
+            i++;
+          } else {
+            regex.append("[^/]*");
+          }
+          break;
+        case '?':
+          regex.append("[^/]");
+          break;
+        default:
+          appendLiteral(regex, c);
+      }
+    }
+
+    if (inGroup) {
+      throw new PatternSyntaxException("Missing '}'", glob, i - 1);
+    }
+    return Pattern.compile(regex.append('$').toString());
+  }
+
+  /**
+   * Appends the class starting after the '[' at start
+   *
+   * @return Index after the closing ']'
+   */
+  private static int appendClass(StringBuilder regex, String glob, int start) {
+    int i = start;
+    regex.append('[');
+    if (i < glob.length() && glob.charAt(i) == '!') {
+      regex.append('^');
+      i++;
+    }
+
+    // A ']' right after the opening is part of the class, as in POSIX
+    int first = i;
+    while (i < glob.length()) {
+      char c = glob.charAt(i++);
+      if (c == ']' && i - 1 > first) {
+        regex.append(c);
+        return i;
+      }
+      // Plain characters in a glob class, but operators in a regex one
+      if (c == '\\' || c == '[' || c == ']' || c == '&' || c == '^') {
+        regex.append('\\');
+      }
+      regex.append(c);
+    }
+
+    throw new PatternSyntaxException("Missing ']'", glob, start - 1);
+  }
+
+  private static void appendLiteral(StringBuilder regex, char c) {
+    if (REGEX_META.indexOf(c) >= 0) {
+      regex.append('\\');
+    }
+    regex.append(c);
+  }
+}
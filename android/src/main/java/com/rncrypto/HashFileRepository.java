@@ -0,0 +1,131 @@
+package com.rncrypto;
+
+import com.rncrypto.util.BufferSizer;
+import com.rncrypto.util.DigestSpec;
+import com.rncrypto.util.ResultCallback;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Hashes files, or ranges of them, streaming them from disk so their content
+ * never has to be loaded in memory or sent through the bridge.
+ */
+public class HashFileRepository {
+
+  public static final long UNTIL_END = -1;
+
+  private final Executor executor;
+  private final BufferSizer bufferSizer;
+
+  public HashFileRepository(Executor executor) {
+    this(executor, new BufferSizer());
+  }
+
+  public HashFileRepository(Executor executor, BufferSizer bufferSizer) {
+    this.executor = executor;
+    this.bufferSizer = bufferSizer;
+  }
+
+  public void hashFileInBackground(
+    String path,
+    String algorithm,
+    long offset,
+    long length,
+    final ResultCallback<byte[]> callback
+  ) {
+    try {
+      executor.execute(() ->
+        hashFile(path, algorithm, offset, length, callback)
+      );
+    } catch (RejectedExecutionException e) {
+      callback.onComplete(e, null);
+    }
+  }
+
+  /**
+   * Hashes length bytes of a file starting at offset. Bytes past the end of
+   * the file are not hashed, so a range bigger than the file hashes up to its
+   * end.
+   *
+   * @param path      Path of the file to hash
+   * @param algorithm Digest algorithm, like SHA-256 or SHA-512
+   * @param offset    Position of the first byte to hash
+   * @param length    Amount of bytes to hash, or UNTIL_END
+   * @param callback  Receives the digest
+   */
+  public void hashFile(
+    String path,
+    String algorithm,
+    long offset,
+    long length,
+    final ResultCallback<byte[]> callback
+  ) {
+    try {
+      if (offset < 0) {
+        throw new IllegalArgumentException("Offset cannot be negative.");
+      }
+
+      if (length < 0 && length != UNTIL_END) {
+        throw new IllegalArgumentException("Length cannot be negative.");
+      }
+
+      MessageDigest digest = DigestSpec.createDigest(algorithm);
+
+      try (
+        FileChannel source = new FileInputStream(path).getChannel()
+      ) {
+        long end = source.size();
+        if (length != UNTIL_END && length < end - offset) {
+          end = offset + length;
+        }
+
+        update(digest, source, offset, end);
+      }
+
+      callback.onComplete(null, digest.digest());
+    } catch (
+      IOException | GeneralSecurityException | IllegalArgumentException e
+    ) {
+      e.printStackTrace();
+      callback.onComplete(e, null);
+    }
+  }
+
+  /**
+   * Updates the digest with the bytes of the source in [start, end)
+   */
+  private void update(
+    MessageDigest digest,
+    FileChannel source,
+    long start,
+    long end
+  ) throws IOException {
+    if (start >= end) {
+      return;
+    }
+
+    // A heap buffer, the digest reads its array without copying it
+    byte[] buffer = new byte[bufferSizer.sizeFor(end - start)];
+    ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+    long position = start;
+
+    while (position < end) {
+      wrapped.clear();
+      wrapped.limit((int) Math.min(buffer.length, end - position));
+
+      int read = source.read(wrapped, position);
+      if (read < 0) {
+        break;
+      }
+
+      digest.update(buffer, 0, read);
+      position += read;
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package com.rncrypto;
+
+import com.rncrypto.util.FileUtils;
+import com.rncrypto.util.OnlyErrorCallback;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Joins part files into a single file.
+ *
+ * Parts are copied with FileChannel.transferTo, so the kernel moves the bytes
+ * without them going through the Java heap. The output is written to a
+ * temporary file next to it, preallocated to the final size, and renamed
+ * over the output once complete: a failure never leaves a half joined file.
+ */
+public class JoinFilesRepository {
+
+  private static final String TEMP_SUFFIX = ".joining";
+
+  private final Executor executor;
+
+  public JoinFilesRepository(Executor executor) {
+    this.executor = executor;
+  }
+
+  public void joinFilesInBackground(
+    String[] inputPaths,
+    String outputPath,
+    final OnlyErrorCallback callback
+  ) {
+    try {
+      executor.execute(() -> joinFiles(inputPaths, outputPath, callback));
+    } catch (RejectedExecutionException e) {
+      callback.onComplete(e);
+    }
+  }
+
+  /**
+   * Writes the content of every input, in order, to outputPath, replacing it
+   * if it exists. Inputs are deleted once the output is complete, and left
+   * untouched if joining them fails.
+   *
+   * @param inputPaths Paths of the parts to join, in order
+   * @param outputPath Path where the joined file is going to be written
+   */
+  public void joinFiles(
+    String[] inputPaths,
+    String outputPath,
+    final OnlyErrorCallback callback
+  ) {
+    File output = new File(outputPath).getAbsoluteFile();
+    File temp = null;
+
+    try {
+      long length = 0;
+      for (String inputPath : inputPaths) {
+        length += FileUtils.sizeOf(inputPath);
+      }
+
+      // Same directory as the output, so the rename never crosses filesystems
+      temp = File.createTempFile(
+        "." + output.getName() + "-",
+        TEMP_SUFFIX,
+        output.getParentFile()
+      );
+
+      try (RandomAccessFile file = new RandomAccessFile(temp, "rw")) {
+        // Space is reserved up front instead of growing the file on each part
+        file.setLength(length);
+        FileChannel destination = file.getChannel();
+
+        for (String inputPath : inputPaths) {
+          try (FileChannel source = FileUtils.openForReading(inputPath)) {
+            transferFully(source, destination);
+          }
+        }
+
+        if (destination.position() != length) {
+          throw new IOException("Parts changed while joining them");
+        }
+        destination.force(false);
+      }
+
+      moveReplacing(temp, output);
+      temp = null;
+
+      FileUtils.deleteQuietly(inputPaths);
+
+      callback.onComplete(null);
+    } catch (IOException | RuntimeException e) {
+      e.printStackTrace();
+      callback.onComplete(e);
+    } finally {
+      if (temp != null) {
+        FileUtils.deleteQuietly(temp.getPath());
+      }
+    }
+  }
+
+  /**
+   * Copies the whole source at the destination current position
+   */
+  private static void transferFully(FileChannel source, FileChannel destination)
+    throws IOException {
+    long size = source.size();
+    long position = 0;
+
+    while (position < size) {
+      long transferred = source.transferTo(
+        position,
+        size - position,
+        destination
+      );
+      if (transferred <= 0) {
+        throw new EOFException("Part was truncated while joining it");
+      }
+      position += transferred;
+    }
+  }
+
+  /**
+   * Renames source over target. On Android, as on any POSIX system, the
+   * rename replaces an existing target atomically.
+   */
+  private static void moveReplacing(File source, File target)
+    throws IOException {
+    if (!source.renameTo(target)) {
+      throw new IOException("Could not move " + source + " to " + target);
+    }
+  }
+}
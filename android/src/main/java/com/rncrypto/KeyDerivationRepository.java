@@ -0,0 +1,151 @@
+package com.rncrypto;
+
+import com.rncrypto.util.KeyDerivationItem;
+import com.rncrypto.util.ProviderRegistry;
+import com.rncrypto.util.ResultCallback;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Derives keys with PBKDF2WithHmacSHA512. Derivations are CPU bound and take
+ * as long as their rounds ask for, so they run on their own executor instead
+ * of the thread asking for them or the workers doing file I/O.
+ */
+public class KeyDerivationRepository {
+
+  private final Executor executor;
+
+  /**
+   * @param executor Executor running the derivations, sized for the cores
+   */
+  public KeyDerivationRepository(Executor executor) {
+    this.executor = executor;
+  }
+
+  public void pbkdf2InBackground(
+    String password,
+    byte[] salt,
+    int rounds,
+    int derivedKeyLength,
+    final ResultCallback<byte[]> callback
+  ) {
+    try {
+      executor.execute(() -> {
+        try {
+          callback.onComplete(
+            null,
+            pbkdf2(password, salt, rounds, derivedKeyLength)
+          );
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+          e.printStackTrace();
+          callback.onComplete(e, null);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      callback.onComplete(e, null);
+    }
+  }
+
+  /**
+   * @param password         Password to derive the key from
+   * @param salt             Salt
+   * @param rounds           Amount of iterations
+   * @param derivedKeyLength Length of the derived key in bytes
+   * @return The derived key
+   */
+  public byte[] pbkdf2(
+    String password,
+    byte[] salt,
+    int rounds,
+    int derivedKeyLength
+  ) throws NoSuchAlgorithmException, InvalidKeySpecException {
+    PBEKeySpec spec = new PBEKeySpec(
+      password.toCharArray(),
+      salt,
+      rounds,
+      derivedKeyLength * 8
+    );
+    SecretKeyFactory factory = ProviderRegistry.getShared()
+      .secretKeyFactory(ProviderRegistry.PBKDF2);
+
+    try {
+      SecretKey key = factory.generateSecret(spec);
+      return key.getEncoded();
+    } finally {
+      spec.clearPassword();
+    }
+  }
+
+  public void pbkdf2BatchInBackground(
+    List<KeyDerivationItem> items,
+    int parallelism,
+    final ResultCallback<List<byte[]>> callback
+  ) {
+    try {
+      executor.execute(() -> pbkdf2Batch(items, parallelism, callback));
+    } catch (RejectedExecutionException e) {
+      callback.onComplete(e, null);
+    }
+  }
+
+  /**
+   * Derives a batch of keys, up to parallelism at the same time. Unlike file
+   * batches, a key failing fails the whole batch, since it can only fail for
+   * invalid parameters.
+   *
+   * @param items       Keys to derive
+   * @param parallelism Max amount of keys derived at the same time
+   * @param callback    Receives the keys in the order of items
+   */
+  public void pbkdf2Batch(
+    List<KeyDerivationItem> items,
+    int parallelism,
+    final ResultCallback<List<byte[]>> callback
+  ) {
+    byte[][] keys = new byte[items.size()][];
+
+    try {
+      List<Exception> errors = FileBatch.run(
+        executor,
+        items.size(),
+        parallelism,
+        (index, itemCallback) -> {
+          KeyDerivationItem item = items.get(index);
+          try {
+            keys[index] =
+              pbkdf2(
+                item.getPassword(),
+                item.getSalt(),
+                item.getRounds(),
+                item.getDerivedKeyLength()
+              );
+            itemCallback.onComplete(null);
+          } catch (GeneralSecurityException e) {
+            itemCallback.onComplete(e);
+          }
+        }
+      );
+
+      for (Exception error : errors) {
+        if (error != null) {
+          callback.onComplete(error, null);
+          return;
+        }
+      }
+      callback.onComplete(null, Arrays.asList(keys));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      callback.onComplete(e, null);
+    } catch (IllegalArgumentException e) {
+      callback.onComplete(e, null);
+    }
+  }
+}
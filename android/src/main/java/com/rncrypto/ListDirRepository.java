@@ -0,0 +1,605 @@
+package com.rncrypto;
+
+import com.rncrypto.util.DirectoryEntry;
+import com.rncrypto.util.DirectoryPage;
+import com.rncrypto.util.FileUtils;
+import com.rncrypto.util.InvalidCursorException;
+import com.rncrypto.util.ResultCallback;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Lists directories a page at a time.
+ *
+ * From API 26, entries are read lazily with a DirectoryStream, a page only
+ * reads as many entries as it returns, and the stream is kept open between
+ * pages under a cursor. Below it java.nio.file is not available, and the
+ * names of each directory are read at once with File.listFiles, still
+ * returned a page at a time. Attributes are optional, listing only names costs
+ * no stat calls. When they are needed, the entries of each page are stat'ed
+ * in parallel. Entries whose attributes cannot be read, like broken links, are
+ * still listed, without attributes.
+ *
+ * Listings not read for longer than the idle timeout are considered
+ * abandoned and closed. Eviction runs while opening listings, so no thread is
+ * needed for it.
+ */
+public class ListDirRepository {
+
+  public static final int DEFAULT_PAGE_SIZE = 1000;
+  public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+  public static final int DEFAULT_MAX_LISTINGS = 64;
+
+  private final Executor executor;
+  private final int statParallelism;
+  private final long idleTimeoutNanos;
+  private final int maxListings;
+  private final boolean nio;
+  private final ConcurrentMap<Integer, Listing> listings = new ConcurrentHashMap<>();
+  private final AtomicInteger nextCursor = new AtomicInteger(DirectoryPage.END + 1);
+
+  public ListDirRepository(Executor executor) {
+    this(
+      executor,
+      Runtime.getRuntime().availableProcessors(),
+      DEFAULT_IDLE_TIMEOUT_MILLIS,
+      DEFAULT_MAX_LISTINGS
+    );
+  }
+
+  /**
+   * @param executor          Executor running the listings and the helpers
+   *                          stat'ing their entries
+   * @param statParallelism   Max amount of entries stat'ed at the same time
+   * @param idleTimeoutMillis Time without reads after which a listing is closed
+   * @param maxListings       Max amount of listings open at the same time
+   */
+  public ListDirRepository(
+    Executor executor,
+    int statParallelism,
+    long idleTimeoutMillis,
+    int maxListings
+  ) {
+    this(
+      executor,
+      statParallelism,
+      idleTimeoutMillis,
+      maxListings,
+      FileUtils.isNioFileAvailable()
+    );
+  }
+
+  /**
+   * @param nio Whether to read directories with java.nio.file, only available
+   *            from API 26
+   */
+  ListDirRepository(
+    Executor executor,
+    int statParallelism,
+    long idleTimeoutMillis,
+    int maxListings,
+    boolean nio
+  ) {
+    if (statParallelism <= 0 || idleTimeoutMillis <= 0 || maxListings <= 0) {
+      throw new IllegalArgumentException(
+        "Parallelism, idle timeout and max listings must be greater than zero."
+      );
+    }
+
+    this.executor = executor;
+    this.statParallelism = statParallelism;
+    this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+    this.maxListings = maxListings;
+    this.nio = nio;
+  }
+
+  public void listDirInBackground(
+    String directoryPath,
+    String glob,
+    boolean recursive,
+    boolean withAttributes,
+    int pageSize,
+    final ResultCallback<DirectoryPage> callback
+  ) {
+    try {
+      executor.execute(() ->
+        listDir(
+          directoryPath,
+          glob,
+          recursive,
+          withAttributes,
+          pageSize,
+          callback
+        )
+      );
+    } catch (RejectedExecutionException e) {
+      callback.onComplete(e, null);
+    }
+  }
+
+  /**
+   * Opens a listing and reads its first page
+   *
+   * @param directoryPath  Directory to list
+   * @param glob           Pattern entry names must match, like "*.part",
+   *                       nullable
+   * @param recursive      Whether to list the content of subdirectories too,
+   *                       which needs the attributes of every entry
+   * @param withAttributes Whether to read the modification time, size and
+   *                       type of each entry
+   * @param pageSize       Max amount of entries of each page
+   * @param callback       Receives the first page, its cursor gets the next
+   */
+  public void listDir(
+    String directoryPath,
+    String glob,
+    boolean recursive,
+    boolean withAttributes,
+    int pageSize,
+    final ResultCallback<DirectoryPage> callback
+  ) {
+    Listing listing = null;
+    DirectoryPage page;
+    try {
+      if (pageSize <= 0) {
+        throw new IllegalArgumentException(
+          "Page size must be greater than zero."
+        );
+      }
+
+      long now = System.nanoTime();
+      evictIdle(now);
+      if (listings.size() >= maxListings) {
+        throw new IllegalStateException(
+          "Too many directory listings open, read or close some of them."
+        );
+      }
+
+      File directory = new File(directoryPath).getAbsoluteFile();
+      listing = nio
+        ? new NioListing(directory, glob, recursive, withAttributes, pageSize)
+        : new FileListing(directory, glob, recursive, withAttributes, pageSize);
+      page = readPage(listing);
+    } catch (IOException | RuntimeException e) {
+      if (listing != null) {
+        listing.close();
+      }
+      callback.onComplete(e, null);
+      return;
+    }
+    callback.onComplete(null, page);
+  }
+
+  public void nextPageInBackground(
+    int cursor,
+    final ResultCallback<DirectoryPage> callback
+  ) {
+    try {
+      executor.execute(() -> nextPage(cursor, callback));
+    } catch (RejectedExecutionException e) {
+      callback.onComplete(e, null);
+    }
+  }
+
+  /**
+   * Reads the next page of a listing. A page may have less entries than the
+   * page size, even none if a glob filters them, only a page whose cursor is
+   * DirectoryPage.END is the last one. Fails with an InvalidCursorException
+   * if the listing was closed, expired or its page was already read.
+   *
+   * @param cursor Cursor of the previous page
+   */
+  public void nextPage(int cursor, final ResultCallback<DirectoryPage> callback) {
+    // Taken out while it is read, so it cannot be evicted or read twice
+    Listing listing = listings.remove(cursor);
+    if (listing == null) {
+      callback.onComplete(new InvalidCursorException(cursor), null);
+      return;
+    }
+
+    DirectoryPage page;
+    try {
+      page = readPage(listing);
+    } catch (IOException | RuntimeException e) {
+      listing.close();
+      callback.onComplete(e, null);
+      return;
+    }
+    callback.onComplete(null, page);
+  }
+
+  /**
+   * Closes a listing before reading all of its pages
+   *
+   * @return False if it does not exist, was already read or expired
+   */
+  public boolean close(int cursor) {
+    Listing listing = listings.remove(cursor);
+    if (listing == null) {
+      return false;
+    }
+
+    listing.close();
+    return true;
+  }
+
+  /**
+   * @return Amount of listings open
+   */
+  public int size() {
+    return listings.size();
+  }
+
+  /**
+   * Closes every listing not read within the idle timeout
+   *
+   * @param now Current System.nanoTime()
+   * @return Amount of listings closed
+   */
+  int evictIdle(long now) {
+    int evicted = 0;
+
+    for (Map.Entry<Integer, Listing> entry : listings.entrySet()) {
+      Listing listing = entry.getValue();
+      // Only if it was not taken to be read in the meantime
+      if (
+        now - listing.lastAccessNanos >= idleTimeoutNanos &&
+        listings.remove(entry.getKey(), listing)
+      ) {
+        listing.close();
+        evicted++;
+      }
+    }
+
+    return evicted;
+  }
+
+  /**
+   * Reads a page of the listing, keeping the listing open under a new cursor
+   * if there are more entries, and closing it otherwise
+   */
+  private DirectoryPage readPage(Listing listing) throws IOException {
+    List<DirectoryEntry> entries = new ArrayList<>();
+    List<File> batch = new ArrayList<>();
+
+    while (entries.size() < listing.pageSize) {
+      batch.clear();
+      listing.read(batch, listing.pageSize - entries.size());
+      if (batch.isEmpty()) {
+        break;
+      }
+
+      DirectoryEntry[] stats = listing.withAttributes
+        ? stat(listing, batch)
+        : new DirectoryEntry[batch.size()];
+      for (int i = 0; i < batch.size(); i++) {
+        File file = batch.get(i);
+        if (listing.recursive && stats[i] != null && stats[i].isDirectory()) {
+          listing.pending.add(file);
+        }
+        if (listing.matches(file)) {
+          entries.add(
+            stats[i] != null
+              ? stats[i]
+              : new DirectoryEntry(file.getName(), file.getPath())
+          );
+        }
+      }
+    }
+
+    if (!listing.hasMore()) {
+      listing.close();
+      return new DirectoryPage(entries, DirectoryPage.END);
+    }
+
+    int cursor = nextCursor.getAndIncrement();
+    listing.lastAccessNanos = System.nanoTime();
+    listings.put(cursor, listing);
+    return new DirectoryPage(entries, cursor);
+  }
+
+  /**
+   * Reads the attributes of every file on the calling thread and on up to
+   * statParallelism - 1 helpers
+   *
+   * @return The entry of each file with its attributes, null for the ones
+   *         that could not be read, like a broken link or an entry deleted
+   *         since it was listed
+   */
+  private DirectoryEntry[] stat(Listing listing, List<File> files)
+    throws IOException {
+    DirectoryEntry[] stats = new DirectoryEntry[files.size()];
+
+    try {
+      FileBatch.run(
+        executor,
+        files.size(),
+        statParallelism,
+        (index, callback) -> {
+          try {
+            stats[index] = listing.stat(files.get(index));
+            callback.onComplete(null);
+          } catch (IOException e) {
+            callback.onComplete(e);
+          }
+        }
+      );
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+
+    return stats;
+  }
+
+  private abstract static class Listing implements Closeable {
+
+    final boolean recursive;
+    final boolean withAttributes;
+    final int pageSize;
+    final ArrayDeque<File> pending = new ArrayDeque<>();
+    Iterator<File> iterator;
+    volatile long lastAccessNanos;
+
+    Listing(boolean recursive, boolean withAttributes, int pageSize) {
+      this.recursive = recursive;
+      // Subdirectories have to be stat'ed to be found
+      this.withAttributes = withAttributes || recursive;
+      this.pageSize = pageSize;
+    }
+
+    /**
+     * Starts reading a directory, closing the previous one
+     */
+    abstract void open(File directory) throws IOException;
+
+    abstract boolean matches(File file);
+
+    /**
+     * Reads the attributes of a file. Links are not followed when recursing,
+     * a link to a parent would never end.
+     *
+     * @return The entry of the file with its attributes, null if they cannot
+     *         be read
+     */
+    abstract DirectoryEntry stat(File file) throws IOException;
+
+    @Override
+    public abstract void close();
+
+    boolean hasMore() {
+      return (iterator != null && iterator.hasNext()) || !pending.isEmpty();
+    }
+
+    /**
+     * Adds up to max files to the batch, moving on to the pending
+     * subdirectories once the current one has been read
+     */
+    void read(List<File> batch, int max) throws IOException {
+      while (batch.size() < max) {
+        if (iterator != null && iterator.hasNext()) {
+          batch.add(iterator.next());
+          continue;
+        }
+
+        File next = pending.poll();
+        if (next == null) {
+          return;
+        }
+        try {
+          open(next);
+        } catch (IOException e) {
+          // Removed or not readable since it was found, the rest go on
+          iterator = null;
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads each directory lazily with a DirectoryStream, API 26+
+   */
+  private static class NioListing extends Listing {
+
+    final String glob;
+    final PathMatcher matcher;
+    final LinkOption[] linkOptions;
+    DirectoryStream<Path> stream;
+
+    /**
+     * Opens the directory, so a missing directory fails the listing
+     */
+    NioListing(
+      File directory,
+      String glob,
+      boolean recursive,
+      boolean withAttributes,
+      int pageSize
+    ) throws IOException {
+      super(recursive, withAttributes, pageSize);
+      this.glob = glob;
+      // The stream filters by itself unless subdirectories not matching the
+      // glob have to be found too
+      this.matcher = glob != null && recursive
+        ? FileSystems.getDefault().getPathMatcher("glob:" + glob)
+        : null;
+      this.linkOptions = recursive
+        ? new LinkOption[] { LinkOption.NOFOLLOW_LINKS }
+        : new LinkOption[0];
+      open(directory);
+    }
+
+    @Override
+    void open(File directory) throws IOException {
+      close();
+      stream = glob != null && matcher == null
+        ? Files.newDirectoryStream(directory.toPath(), glob)
+        : Files.newDirectoryStream(directory.toPath());
+      Iterator<Path> paths = stream.iterator();
+      iterator = new Iterator<File>() {
+        @Override
+        public boolean hasNext() {
+          return paths.hasNext();
+        }
+
+        @Override
+        public File next() {
+          return paths.next().toFile();
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+
+    @Override
+    boolean matches(File file) {
+      return matcher == null || matcher.matches(file.toPath().getFileName());
+    }
+
+    @Override
+    DirectoryEntry stat(File file) throws IOException {
+      BasicFileAttributes attributes = Files.readAttributes(
+        file.toPath(),
+        BasicFileAttributes.class,
+        linkOptions
+      );
+      return new DirectoryEntry(
+        file.getName(),
+        file.getPath(),
+        attributes.lastModifiedTime().toMillis(),
+        attributes.size(),
+        attributes.isDirectory()
+      );
+    }
+
+    @Override
+    void read(List<File> batch, int max) throws IOException {
+      try {
+        super.read(batch, max);
+      } catch (DirectoryIteratorException e) {
+        throw e.getCause();
+      }
+    }
+
+    @Override
+    public void close() {
+      if (stream == null) {
+        return;
+      }
+
+      try {
+        stream.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      stream = null;
+      iterator = null;
+    }
+  }
+
+  /**
+   * Reads each directory with File.listFiles, for API 23 to 25. Nothing is
+   * kept open between pages.
+   */
+  private static class FileListing extends Listing {
+
+    final Pattern pattern;
+
+    /**
+     * Lists the directory, so a missing directory fails the listing
+     */
+    FileListing(
+      File directory,
+      String glob,
+      boolean recursive,
+      boolean withAttributes,
+      int pageSize
+    ) throws IOException {
+      super(recursive, withAttributes, pageSize);
+      this.pattern = glob != null ? Glob.compile(glob) : null;
+      open(directory);
+    }
+
+    @Override
+    void open(File directory) throws IOException {
+      File[] files = directory.listFiles();
+      if (files == null) {
+        throw new FileNotFoundException(
+          directory + " is not a readable directory"
+        );
+      }
+      iterator = Arrays.asList(files).iterator();
+    }
+
+    @Override
+    boolean matches(File file) {
+      return pattern == null || pattern.matcher(file.getName()).matches();
+    }
+
+    /**
+     * Without lstat, a link is stat'ed through to its target, only reported
+     * as not being a directory when recursing
+     */
+    @Override
+    DirectoryEntry stat(File file) throws IOException {
+      long lastModified = file.lastModified();
+      // 0 for a missing file or a broken link
+      if (lastModified == 0 && !file.exists()) {
+        return null;
+      }
+
+      boolean directory = file.isDirectory() && !(recursive && isLink(file));
+      return new DirectoryEntry(
+        file.getName(),
+        file.getPath(),
+        lastModified,
+        file.length(),
+        directory
+      );
+    }
+
+    /**
+     * @return Whether the file is a link, its canonical path does not end in
+     *         its own name under the canonical parent
+     */
+    private static boolean isLink(File file) throws IOException {
+      File parent = file.getParentFile().getCanonicalFile();
+      File unresolved = new File(parent, file.getName());
+      return !unresolved
+        .getCanonicalFile()
+        .equals(unresolved.getAbsoluteFile());
+    }
+
+    @Override
+    public void close() {
+      iterator = null;
+    }
+  }
+}
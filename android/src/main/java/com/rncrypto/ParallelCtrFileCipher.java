@@ -0,0 +1,475 @@
+package com.rncrypto;
+
+import com.rncrypto.util.BufferSizer;
+import com.rncrypto.util.CancellationToken;
+import com.rncrypto.util.CtrCipherFactory;
+import com.rncrypto.util.DigestSpec;
+import com.rncrypto.util.FileDigests;
+import com.rncrypto.util.FileUtils;
+import com.rncrypto.util.OnChunkEncryptedCallback;
+import com.rncrypto.util.OnProgressCallback;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import javax.crypto.Cipher;
+
+/**
+ * Encrypts or decrypts a whole file with AES-256-CTR using several threads.
+ *
+ * The file is split in segments, each one is processed by its own Cipher
+ * positioned at the segment offset and written with positional writes, so the
+ * output is byte identical to processing the file with a single Cipher.
+ *
+ * The same engine encrypts a file into several chunk files, where every
+ * chunk is a segment with its own destination, and processes chunk files back
+ * into a single file.
+ *
+ * The calling thread always takes part in the work, helpers are only an
+ * speed up: if the executor is saturated the caller processes every segment by
+ * itself, so sharing the executor with the calling operation cannot deadlock.
+ */
+public class ParallelCtrFileCipher {
+
+  public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+  private final Executor executor;
+  private final int parallelism;
+  private final int segmentSize;
+  private final BufferSizer bufferSizer;
+
+  public ParallelCtrFileCipher(Executor executor) {
+    this(
+      executor,
+      Runtime.getRuntime().availableProcessors(),
+      DEFAULT_SEGMENT_SIZE
+    );
+  }
+
+  /**
+   * @param executor    Executor running the helper threads
+   * @param parallelism Max amount of threads working on the same file
+   * @param segmentSize Size of each segment, must be a multiple of 16
+   */
+  public ParallelCtrFileCipher(
+    Executor executor,
+    int parallelism,
+    int segmentSize
+  ) {
+    this(executor, parallelism, segmentSize, new BufferSizer());
+  }
+
+  /**
+   * @param executor    Executor running the helper threads
+   * @param parallelism Max amount of threads working on the same file
+   * @param segmentSize Size of each segment, must be a multiple of 16
+   * @param bufferSizer Decides the size of the buffers of each thread
+   */
+  public ParallelCtrFileCipher(
+    Executor executor,
+    int parallelism,
+    int segmentSize,
+    BufferSizer bufferSizer
+  ) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException(
+        "Parallelism must be greater than zero."
+      );
+    }
+
+    if (segmentSize <= 0 || segmentSize % CtrCipherFactory.BLOCK_SIZE != 0) {
+      throw new IllegalArgumentException(
+        "Segment size must be a positive multiple of " +
+        CtrCipherFactory.BLOCK_SIZE +
+        "."
+      );
+    }
+
+    this.executor = executor;
+    this.parallelism = parallelism;
+    this.segmentSize = segmentSize;
+    this.bufferSizer = bufferSizer;
+  }
+
+  /**
+   * Processes the file at sourcePath, writes the output to destinationPath
+   *
+   * @param sourcePath      Path where file to process is
+   * @param destinationPath Path where processed content is going to be written
+   * @param mode            Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE
+   * @param key             Cipher key
+   * @param iv              Initialization vector
+   */
+  public void processFile(
+    String sourcePath,
+    String destinationPath,
+    int mode,
+    byte[] key,
+    byte[] iv
+  ) throws IOException, GeneralSecurityException {
+    processFile(sourcePath, destinationPath, mode, key, iv, null, null);
+  }
+
+  /**
+   * Processes the file at sourcePath, writes the output to destinationPath
+   *
+   * @param sourcePath      Path where file to process is
+   * @param destinationPath Path where processed content is going to be written
+   * @param mode            Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE
+   * @param key             Cipher key
+   * @param iv              Initialization vector
+   * @param progress        Notified after every buffer from any thread, nullable
+   * @param cancellation    Checked before every buffer, nullable
+   */
+  public void processFile(
+    String sourcePath,
+    String destinationPath,
+    int mode,
+    byte[] key,
+    byte[] iv,
+    OnProgressCallback progress,
+    CancellationToken cancellation
+  ) throws IOException, GeneralSecurityException {
+    CancellationToken.check(cancellation);
+
+    try (
+      FileChannel source = FileUtils.openForReading(sourcePath);
+      FileChannel destination = FileUtils.openForWriting(destinationPath)
+    ) {
+      long length = source.size();
+      int segments = (int) ((length + segmentSize - 1) / segmentSize);
+      SegmentJob.Progress sharedProgress = SegmentJob.Progress.of(progress, length);
+
+      SegmentJob.run(
+        executor,
+        segments,
+        parallelism,
+        bufferSizer.sizeFor(Math.min(length, segmentSize)),
+        (segment, input, output) -> {
+          long start = (long) segment * segmentSize;
+          long end = Math.min(start + segmentSize, length);
+
+          transform(
+            source,
+            start,
+            end,
+            destination,
+            start,
+            CtrCipherFactory.createAt(mode, key, iv, start),
+            null,
+            sharedProgress,
+            cancellation,
+            input,
+            output
+          );
+        }
+      );
+      destination.force(false);
+    }
+  }
+
+  /**
+   * Processes the file at sourcePath splitting the output in chunks of
+   * chunkSize bytes, each one written to its own destination path. Chunks are
+   * processed concurrently, the output is the same as processing the file with
+   * a single Cipher and splitting the result.
+   *
+   * @param sourcePath       Path where file to process is
+   * @param destinationPaths Paths where each chunk is going to be written
+   * @param mode             Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE
+   * @param key              Cipher key
+   * @param iv               Initialization vector
+   * @param chunkSize        Size of each chunk in bytes
+   * @param parallelism      Max amount of chunks processed at the same time
+   * @param chunkCallback    Notified as soon as each chunk is written, nullable
+   */
+  public void processFileToChunks(
+    String sourcePath,
+    String[] destinationPaths,
+    int mode,
+    byte[] key,
+    byte[] iv,
+    int chunkSize,
+    int parallelism,
+    OnChunkEncryptedCallback chunkCallback
+  ) throws IOException, GeneralSecurityException {
+    processFileToChunks(
+      sourcePath,
+      destinationPaths,
+      mode,
+      key,
+      iv,
+      chunkSize,
+      parallelism,
+      null,
+      null,
+      null,
+      chunkCallback
+    );
+  }
+
+  /**
+   * Same as processFileToChunks, also computing the digests of each chunk
+   * input and output while it is processed
+   *
+   * @param digestSpec    Digests to compute for each chunk, nullable
+   * @param progress      Notified after every buffer from any thread, nullable
+   * @param cancellation  Checked before every buffer, nullable
+   * @param chunkCallback Notified as soon as each chunk is written, nullable
+   * @return The digests of each chunk, in the order of the destination paths,
+   *         or null if digestSpec is null
+   */
+  public List<FileDigests> processFileToChunks(
+    String sourcePath,
+    String[] destinationPaths,
+    int mode,
+    byte[] key,
+    byte[] iv,
+    int chunkSize,
+    int parallelism,
+    DigestSpec digestSpec,
+    OnProgressCallback progress,
+    CancellationToken cancellation,
+    OnChunkEncryptedCallback chunkCallback
+  ) throws IOException, GeneralSecurityException {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException(
+        "Chunk size must be greater than zero."
+      );
+    }
+
+    if (destinationPaths == null || destinationPaths.length == 0) {
+      throw new IllegalArgumentException("Outputs array cannot be empty.");
+    }
+
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException(
+        "Parallelism must be greater than zero."
+      );
+    }
+
+    CancellationToken.check(cancellation);
+
+    try (
+      FileChannel source = FileUtils.openForReading(sourcePath)
+    ) {
+      long length = source.size();
+      long neededChunks = (length + chunkSize - 1) / chunkSize;
+
+      // Checked before any work is done, not halfway through the file
+      if (neededChunks > destinationPaths.length) {
+        throw new IOException("Not enough output streams for the file size");
+      }
+
+      // As in the serial path, every destination is created even if empty
+      int chunks = destinationPaths.length;
+      FileDigests[] digests = new FileDigests[chunks];
+      SegmentJob.Progress sharedProgress = SegmentJob.Progress.of(progress, length);
+
+      SegmentJob.run(
+        executor,
+        chunks,
+        parallelism,
+        bufferSizer.sizeFor(Math.min(length, chunkSize)),
+        (chunk, input, output) -> {
+          long start = Math.min((long) chunk * chunkSize, length);
+          long end = Math.min(start + chunkSize, length);
+          if (digestSpec != null) {
+            digests[chunk] = digestSpec.newDigests();
+          }
+
+          try (
+            FileChannel destination = FileUtils.openForWriting(
+              destinationPaths[chunk]
+            )
+          ) {
+            if (end > start) {
+              transform(
+                source,
+                start,
+                end,
+                destination,
+                0,
+                CtrCipherFactory.createAt(mode, key, iv, start),
+                digests[chunk],
+                sharedProgress,
+                cancellation,
+                input,
+                output
+              );
+            }
+          }
+
+          if (digests[chunk] != null) {
+            digests[chunk].finish();
+          }
+
+          if (chunkCallback != null) {
+            chunkCallback.onChunkEncrypted(chunk, destinationPaths[chunk]);
+          }
+        }
+      );
+
+      return digestSpec != null ? Arrays.asList(digests) : null;
+    }
+  }
+
+  /**
+   * Processes several files as if they were a single one, the inverse of
+   * processFileToChunks: every source is processed at the offset where it
+   * starts in the concatenated input, and written there in the destination.
+   * The sources are split in segments, so even a single big source is
+   * processed by several threads.
+   *
+   * @param sourcePaths     Paths of the files to process, in order
+   * @param destinationPath Path where the processed content is going to be written
+   * @param mode            Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE
+   * @param key             Cipher key
+   * @param iv              Initialization vector of the first source byte
+   * @param progress        Notified after every buffer from any thread, nullable
+   * @param cancellation    Checked before every buffer, nullable
+   */
+  public void processChunksToFile(
+    String[] sourcePaths,
+    String destinationPath,
+    int mode,
+    byte[] key,
+    byte[] iv,
+    OnProgressCallback progress,
+    CancellationToken cancellation
+  ) throws IOException, GeneralSecurityException {
+    if (sourcePaths == null || sourcePaths.length == 0) {
+      throw new IllegalArgumentException("Inputs array cannot be empty.");
+    }
+
+    CancellationToken.check(cancellation);
+
+    // Where each source starts in the concatenated input
+    long[] offsets = new long[sourcePaths.length + 1];
+    List<long[]> segments = new ArrayList<>();
+    for (int i = 0; i < sourcePaths.length; i++) {
+      long size = FileUtils.sizeOf(sourcePaths[i]);
+      offsets[i + 1] = offsets[i] + size;
+
+      for (long start = 0; start < size; start += segmentSize) {
+        segments.add(new long[] { i, start, Math.min(start + segmentSize, size) });
+      }
+    }
+    long length = offsets[sourcePaths.length];
+
+    try (
+      FileChannel destination = FileUtils.openForWriting(destinationPath)
+    ) {
+      SegmentJob.Progress sharedProgress = SegmentJob.Progress.of(progress, length);
+
+      SegmentJob.run(
+        executor,
+        segments.size(),
+        parallelism,
+        bufferSizer.sizeFor(Math.min(length, segmentSize)),
+        (index, input, output) -> {
+          long[] segment = segments.get(index);
+          int chunk = (int) segment[0];
+          long start = segment[1];
+          long offset = offsets[chunk] + start;
+
+          try (
+            FileChannel source = FileUtils.openForReading(sourcePaths[chunk])
+          ) {
+            transform(
+              source,
+              start,
+              segment[2],
+              destination,
+              offset,
+              CtrCipherFactory.createAt(mode, key, iv, offset),
+              null,
+              sharedProgress,
+              cancellation,
+              input,
+              output
+            );
+          }
+        }
+      );
+    }
+  }
+
+  /**
+   * Processes the source bytes in [start, end) with the given cipher, writing
+   * them to the destination from destinationPosition on, and updating the
+   * digests with the input and the output when given. Stops between buffers
+   * once cancelled.
+   */
+  private static void transform(
+    FileChannel source,
+    long start,
+    long end,
+    FileChannel destination,
+    long destinationPosition,
+    Cipher cipher,
+    FileDigests digests,
+    SegmentJob.Progress progress,
+    CancellationToken cancellation,
+    ByteBuffer input,
+    ByteBuffer output
+  ) throws IOException, GeneralSecurityException {
+    long readPosition = start;
+    long writePosition = destinationPosition;
+
+    while (readPosition < end) {
+      CancellationToken.check(cancellation);
+      input.clear();
+      input.limit((int) Math.min(input.capacity(), end - readPosition));
+
+      while (input.hasRemaining()) {
+        int read = source.read(input, readPosition + input.position());
+        if (read < 0) {
+          throw new EOFException("File was truncated while processing it");
+        }
+      }
+      readPosition += input.limit();
+      input.flip();
+      if (digests != null) {
+        digests.updatePlaintext(input);
+      }
+
+      output.clear();
+      cipher.update(input, output);
+      output.flip();
+      if (digests != null) {
+        digests.updateCiphertext(output);
+      }
+      writePosition += writeFully(destination, output, writePosition);
+
+      if (progress != null) {
+        progress.add(input.limit());
+      }
+    }
+
+    output.clear();
+    cipher.doFinal(ByteBuffer.allocate(0), output);
+    output.flip();
+    if (digests != null) {
+      digests.updateCiphertext(output);
+    }
+    writeFully(destination, output, writePosition);
+  }
+
+  private static int writeFully(
+    FileChannel destination,
+    ByteBuffer buffer,
+    long position
+  ) throws IOException {
+    int written = 0;
+    while (buffer.hasRemaining()) {
+      written += destination.write(buffer, position + written);
+    }
+    return written;
+  }
+}
@@ -0,0 +1,466 @@
+package com.rncrypto;
+
+import com.rncrypto.util.BufferSizer;
+import com.rncrypto.util.CancellationToken;
+import com.rncrypto.util.CtrCipherFactory;
+import com.rncrypto.util.FileDigests;
+import com.rncrypto.util.OnProgressCallback;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.crypto.Cipher;
+
+/**
+ * FileChannelCipher that overlaps reading, ciphering and writing. A reader
+ * and a writer run on helper threads while the calling thread runs the
+ * cipher, handing a fixed ring of buffers to each other through bounded
+ * queues. Storage stays busy while AES runs, which pays off on slow storage
+ * like SD cards, where a sequential loop leaves the disk idle during the
+ * cipher and the cipher idle during the disk.
+ *
+ * The output is the same as the sequential one. Memory is bounded by the ring,
+ * depth times twice the buffer size per running operation, and rings are kept
+ * per calling thread and reused like the buffers of FileChannelCipher.
+ *
+ * As in ParallelCtrFileCipher, helpers are only a speed up: if either of them
+ * does not start in time, because the executor is busy or rejects it, the
+ * input is processed sequentially on the calling thread. Inputs smaller than
+ * the threshold are always processed sequentially, handing off buffers costs
+ * more than it saves for them. It is disabled until setEnabled(true), processing
+ * every input sequentially as FileChannelCipher does: on flash the pipeline
+ * was slower than the sequential loop.
+ */
+public class PipelinedChannelCipher extends FileChannelCipher {
+
+  public static final int DEFAULT_DEPTH = 4;
+  public static final long DEFAULT_THRESHOLD = 4L * 1024 * 1024;
+  private static final long START_TIMEOUT_MILLIS = 20;
+  private static final long POLL_MILLIS = 50;
+  private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+  private static final ThreadLocal<Ring> threadRings = new ThreadLocal<>();
+
+  private final Executor executor;
+  private final BufferSizer bufferSizer;
+  private final int depth;
+  private final long threshold;
+  private volatile boolean enabled = false;
+
+  /**
+   * @param executor Executor running the reader and the writer
+   */
+  public PipelinedChannelCipher(Executor executor) {
+    this(executor, new BufferSizer(), DEFAULT_DEPTH, DEFAULT_THRESHOLD);
+  }
+
+  /**
+   * @param executor    Executor running the reader and the writer
+   * @param bufferSizer Decides the size of the buffers for each file
+   * @param depth       Amount of buffers in the ring, at least 3 so every
+   *                    stage can hold one
+   * @param threshold   Min input size, in bytes, to pipeline it
+   */
+  public PipelinedChannelCipher(
+    Executor executor,
+    BufferSizer bufferSizer,
+    int depth,
+    long threshold
+  ) {
+    super(bufferSizer, false, DEFAULT_MAP_THRESHOLD);
+    if (depth < 3) {
+      throw new IllegalArgumentException("Depth must be at least 3.");
+    }
+
+    this.executor = executor;
+    this.bufferSizer = bufferSizer;
+    this.depth = depth;
+    this.threshold = threshold;
+  }
+
+  /**
+   * @param enabled Whether inputs over the threshold are pipelined, otherwise
+   *                all of them are processed sequentially
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @Override
+  public long process(
+    FileChannel source,
+    FileChannel destination,
+    Cipher cipher,
+    FileDigests digests,
+    OnProgressCallback progress,
+    CancellationToken cancellation
+  ) throws IOException, GeneralSecurityException {
+    long remaining = source.size() - source.position();
+    if (!enabled || remaining < threshold) {
+      return super.process(
+        source,
+        destination,
+        cipher,
+        digests,
+        progress,
+        cancellation
+      );
+    }
+
+    int bufferSize = bufferSizer.sizeFor(remaining);
+    Pipeline pipeline = new Pipeline(
+      source,
+      destination,
+      getRing(depth, bufferSize),
+      bufferSize
+    );
+
+    if (!pipeline.start()) {
+      return super.process(
+        source,
+        destination,
+        cipher,
+        digests,
+        progress,
+        cancellation
+      );
+    }
+
+    return pipeline.run(cipher, digests, progress, cancellation, remaining);
+  }
+
+  /**
+   * One pipelined operation. Channels are read and written with absolute
+   * positions, so a pipeline that could not start leaves them untouched.
+   */
+  private class Pipeline {
+
+    private final FileChannel source;
+    private final FileChannel destination;
+    private final Ring ring;
+    private final int bufferSize;
+    private final long sourceStart;
+    private final long destinationStart;
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private final Stage reader = new Stage(this::read);
+    private final Stage writer = new Stage(this::write);
+    private final CountDownLatch started = new CountDownLatch(2);
+    private long sourceEnd;
+    private long written;
+
+    Pipeline(
+      FileChannel source,
+      FileChannel destination,
+      Ring ring,
+      int bufferSize
+    ) throws IOException {
+      this.source = source;
+      this.destination = destination;
+      this.ring = ring;
+      this.bufferSize = bufferSize;
+      this.sourceStart = source.position();
+      this.destinationStart = destination.position();
+      ring.reset();
+    }
+
+    /**
+     * Starts the reader and the writer
+     *
+     * @return false if they could not both start, nothing was processed then
+     */
+    boolean start() throws IOException {
+      try {
+        executor.execute(writer);
+        executor.execute(reader);
+        if (started.await(START_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+          return true;
+        }
+      } catch (RejectedExecutionException e) {
+        // Not an error, the caller processes the input alone
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        stop(new InterruptedIOException());
+        throw new InterruptedIOException();
+      }
+
+      // A stage that did start stops at its next handoff
+      stop(new InterruptedIOException("Pipeline not started."));
+      return false;
+    }
+
+    /**
+     * Runs the cipher stage on the calling thread until the writer is done
+     *
+     * @return Amount of bytes written
+     */
+    long run(
+      Cipher cipher,
+      FileDigests digests,
+      OnProgressCallback progress,
+      CancellationToken cancellation,
+      long total
+    ) throws IOException, GeneralSecurityException {
+      try {
+        long processed = 0;
+        boolean last = false;
+        while (!last) {
+          Slot slot = take(ring.filled);
+          CancellationToken.check(cancellation);
+          last = slot.last;
+          processed += slot.input.remaining();
+
+          if (digests != null) {
+            digests.updatePlaintext(slot.input);
+          }
+
+          slot.output.clear();
+          cipher.update(slot.input, slot.output);
+          if (last) {
+            cipher.doFinal(EMPTY, slot.output);
+          }
+          slot.output.flip();
+
+          if (digests != null) {
+            digests.updateCiphertext(slot.output);
+          }
+
+          ring.encrypted.add(slot);
+
+          if (progress != null) {
+            progress.onProgress(processed, total);
+          }
+        }
+      } catch (IOException | GeneralSecurityException | RuntimeException e) {
+        failure.compareAndSet(null, e);
+      }
+
+      stop(null);
+
+      Exception e = failure.get();
+      if (e instanceof IOException) {
+        throw (IOException) e;
+      }
+      if (e instanceof GeneralSecurityException) {
+        throw (GeneralSecurityException) e;
+      }
+      if (e instanceof RuntimeException) {
+        throw (RuntimeException) e;
+      }
+
+      // Leaves the channels where the sequential loop would
+      source.position(sourceEnd);
+      destination.position(destinationStart + written);
+      return written;
+    }
+
+    /**
+     * Waits for the stages to finish, making them finish first if given a
+     * failure. Stages that did not start yet never will.
+     *
+     * @param cause Failure stopping the pipeline, nullable
+     */
+    private void stop(Exception cause) {
+      if (cause != null) {
+        failure.compareAndSet(null, cause);
+      }
+      reader.revoke();
+      writer.revoke();
+
+      boolean interrupted = false;
+      for (Stage stage : new Stage[] { reader, writer }) {
+        while (true) {
+          try {
+            stage.finished.await();
+            break;
+          } catch (InterruptedException e) {
+            // Stages stop soon once failed, buffers must not be reused before
+            interrupted = true;
+            failure.compareAndSet(null, new InterruptedIOException());
+          }
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void read() throws IOException, InterruptedException {
+      long position = sourceStart;
+      boolean last = false;
+      while (!last) {
+        Slot slot = take(ring.free);
+        slot.input.clear();
+        slot.input.limit(bufferSize);
+
+        while (slot.input.hasRemaining()) {
+          int read = source.read(slot.input, position);
+          if (read < 0) {
+            last = true;
+            break;
+          }
+          position += read;
+        }
+
+        slot.input.flip();
+        slot.last = last;
+        ring.filled.add(slot);
+      }
+      sourceEnd = position;
+    }
+
+    private void write() throws IOException, InterruptedException {
+      long position = destinationStart;
+      boolean last = false;
+      while (!last) {
+        Slot slot = take(ring.encrypted);
+        while (slot.output.hasRemaining()) {
+          position += destination.write(slot.output, position);
+        }
+
+        last = slot.last;
+        ring.free.add(slot);
+      }
+      written = position - destinationStart;
+    }
+
+    /**
+     * Takes the next slot of the queue, unless the pipeline fails meanwhile.
+     * Adding never blocks, the queues can hold every slot of the ring.
+     */
+    private Slot take(ArrayBlockingQueue<Slot> queue)
+      throws InterruptedIOException {
+      try {
+        while (true) {
+          Slot slot = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+          if (slot != null) {
+            return slot;
+          }
+          if (failure.get() != null) {
+            throw new InterruptedIOException("Pipeline stopped.");
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+    }
+
+    /**
+     * Reader or writer. Runs once, either on a helper or not at all if it was
+     * revoked first.
+     */
+    private class Stage implements Runnable {
+
+      private final Work work;
+      private final AtomicBoolean claimed = new AtomicBoolean();
+      private final CountDownLatch finished = new CountDownLatch(1);
+
+      Stage(Work work) {
+        this.work = work;
+      }
+
+      @Override
+      public void run() {
+        if (!claimed.compareAndSet(false, true)) {
+          return;
+        }
+
+        started.countDown();
+        try {
+          work.run();
+        } catch (Exception e) {
+          failure.compareAndSet(null, e);
+        } finally {
+          finished.countDown();
+        }
+      }
+
+      /** Prevents the stage from starting if it has not yet */
+      void revoke() {
+        if (claimed.compareAndSet(false, true)) {
+          finished.countDown();
+        }
+      }
+    }
+  }
+
+  private interface Work {
+    void run() throws IOException, InterruptedException;
+  }
+
+  private static class Slot {
+
+    final ByteBuffer input;
+    // A cipher may return a block it kept from a previous call
+    final ByteBuffer output;
+    boolean last;
+
+    Slot(int bufferSize) {
+      input = ByteBuffer.allocateDirect(bufferSize);
+      output = ByteBuffer.allocateDirect(bufferSize + CtrCipherFactory.BLOCK_SIZE);
+    }
+  }
+
+  /**
+   * Buffers of a pipeline and the queues they go through: free to the reader,
+   * filled to the cipher, encrypted to the writer and back to free
+   */
+  private static class Ring {
+
+    final Slot[] slots;
+    final int bufferSize;
+    final ArrayBlockingQueue<Slot> free;
+    final ArrayBlockingQueue<Slot> filled;
+    final ArrayBlockingQueue<Slot> encrypted;
+
+    Ring(int depth, int bufferSize) {
+      this.slots = new Slot[depth];
+      this.bufferSize = bufferSize;
+      this.free = new ArrayBlockingQueue<>(depth);
+      this.filled = new ArrayBlockingQueue<>(depth);
+      this.encrypted = new ArrayBlockingQueue<>(depth);
+      for (int i = 0; i < depth; i++) {
+        slots[i] = new Slot(bufferSize);
+      }
+    }
+
+    /** Puts every slot back in free, a failed pipeline leaves them anywhere */
+    void reset() {
+      free.clear();
+      filled.clear();
+      encrypted.clear();
+      for (Slot slot : slots) {
+        slot.last = false;
+        free.add(slot);
+      }
+    }
+  }
+
+  /**
+   * @return The ring of the current thread, with buffers of at least
+   * bufferSize bytes
+   */
+  private static Ring getRing(int depth, int bufferSize) {
+    Ring ring = threadRings.get();
+
+    // Bigger buffers are kept, only the part needed is used
+    if (ring == null || ring.slots.length != depth || ring.bufferSize < bufferSize) {
+      ring = new Ring(depth, bufferSize);
+      threadRings.set(ring);
+    }
+
+    return ring;
+  }
+}
@@ -0,0 +1,266 @@
+package com.rncrypto;
+
+import com.rncrypto.util.BufferSizer;
+import com.rncrypto.util.CancellationToken;
+import com.rncrypto.util.CtrCipherFactory;
+import com.rncrypto.util.EncryptionJournal;
+import com.rncrypto.util.FileUtils;
+import com.rncrypto.util.OnProgressCallback;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import javax.crypto.Cipher;
+
+/**
+ * Encrypts a file with AES-256-CTR so that an interrupted encryption can be
+ * continued instead of started over.
+ *
+ * Every checkpointInterval bytes the output is flushed to disk and a journal
+ * next to it records how much of it is done. A later call with the same
+ * source, key and IV verifies the tail of the existing output, truncates
+ * whatever was written after the checkpoint and continues from it with the
+ * counter advanced to that offset, so the result is byte identical to an
+ * uninterrupted encryption. If the journal belongs to another operation or
+ * the tail does not match, the file is encrypted again from the start.
+ *
+ * The journal is deleted once the encryption completes. On errors, including
+ * cancellation, both the output and the journal are kept for the caller to
+ * decide whether to resume or discard them.
+ */
+public class ResumableFileCipher {
+
+  public static final long DEFAULT_CHECKPOINT_INTERVAL = 32 * 1024 * 1024;
+  public static final String JOURNAL_EXTENSION = ".journal";
+
+  private static final int VERIFY_SIZE = 64 * 1024;
+
+  private final BufferSizer bufferSizer;
+  private final long checkpointInterval;
+
+  public ResumableFileCipher(BufferSizer bufferSizer) {
+    this(bufferSizer, DEFAULT_CHECKPOINT_INTERVAL);
+  }
+
+  /**
+   * @param bufferSizer        Decides the size of the buffers
+   * @param checkpointInterval Bytes encrypted between two checkpoints
+   */
+  public ResumableFileCipher(BufferSizer bufferSizer, long checkpointInterval) {
+    if (checkpointInterval <= 0) {
+      throw new IllegalArgumentException(
+        "Checkpoint interval must be greater than zero."
+      );
+    }
+
+    this.bufferSizer = bufferSizer;
+    this.checkpointInterval = checkpointInterval;
+  }
+
+  /**
+   * @return Path of the journal kept while encrypting to destinationPath
+   */
+  public static String journalPathOf(String destinationPath) {
+    return destinationPath + JOURNAL_EXTENSION;
+  }
+
+  /**
+   * Encrypts the file at sourcePath into destinationPath, continuing from the
+   * last checkpoint of a previous interrupted call when there is a valid one
+   *
+   * @param sourcePath      Path where file to encrypt is
+   * @param destinationPath Path where encrypted file is going to be written
+   * @param key             Cipher key
+   * @param iv              Initialization vector
+   * @param progress        Notified after every buffer, nullable
+   * @param cancellation    Stops the encryption when cancelled, nullable
+   * @return Offset the encryption was resumed from, 0 if it started over
+   */
+  public long encryptFile(
+    String sourcePath,
+    String destinationPath,
+    byte[] key,
+    byte[] iv,
+    OnProgressCallback progress,
+    CancellationToken cancellation
+  ) throws IOException, GeneralSecurityException {
+    CancellationToken.check(cancellation);
+
+    File journalFile = new File(journalPathOf(destinationPath));
+
+    try (
+      FileChannel source = FileUtils.openForReading(sourcePath);
+      // Not truncated, the existing output may be resumed
+      FileChannel destination = new RandomAccessFile(destinationPath, "rw")
+        .getChannel()
+    ) {
+      long length = source.size();
+      EncryptionJournal journal = new EncryptionJournal(
+        length,
+        new File(sourcePath).lastModified(),
+        EncryptionJournal.fingerprint(key, iv),
+        0
+      );
+      int bufferSize = bufferSizer.sizeFor(length);
+      ByteBuffer input = ByteBuffer.allocate(bufferSize);
+      ByteBuffer output = ByteBuffer.allocate(
+        bufferSize + CtrCipherFactory.BLOCK_SIZE
+      );
+
+      long offset = resumableOffset(
+        EncryptionJournal.read(journalFile),
+        journal,
+        source,
+        destination,
+        key,
+        iv,
+        input,
+        output
+      );
+
+      // Anything after the checkpoint may be incomplete, encrypt it again
+      destination.truncate(offset);
+      if (offset == 0) {
+        journal.write(journalFile);
+      }
+
+      encrypt(
+        source,
+        offset,
+        length,
+        destination,
+        CtrCipherFactory.createAt(Cipher.ENCRYPT_MODE, key, iv, offset),
+        journal,
+        journalFile,
+        progress,
+        cancellation,
+        input,
+        output
+      );
+
+      destination.force(true);
+      FileUtils.deleteQuietly(journalFile.getPath());
+      return offset;
+    }
+  }
+
+  /**
+   * @return The checkpoint of saved if it belongs to the same operation as
+   * expected and the output matches it, otherwise 0
+   */
+  private static long resumableOffset(
+    EncryptionJournal saved,
+    EncryptionJournal expected,
+    FileChannel source,
+    FileChannel destination,
+    byte[] key,
+    byte[] iv,
+    ByteBuffer input,
+    ByteBuffer output
+  ) throws IOException, GeneralSecurityException {
+    if (
+      saved == null ||
+      saved.getOffset() == 0 ||
+      !expected.isSameOperation(saved) ||
+      destination.size() < saved.getOffset()
+    ) {
+      return 0;
+    }
+
+    long end = saved.getOffset();
+    long start = end - Math.min(end, Math.min(VERIFY_SIZE, input.capacity()));
+
+    // Encrypting the tail again must produce what is already written
+    Cipher cipher = CtrCipherFactory.createAt(Cipher.ENCRYPT_MODE, key, iv, start);
+    input.clear();
+    input.limit((int) (end - start));
+    readFully(source, input, start);
+    input.flip();
+    output.clear();
+    cipher.doFinal(input, output);
+    output.flip();
+
+    ByteBuffer written = ByteBuffer.allocate((int) (end - start));
+    readFully(destination, written, start);
+    written.flip();
+
+    return written.equals(output) ? end : 0;
+  }
+
+  private void encrypt(
+    FileChannel source,
+    long start,
+    long end,
+    FileChannel destination,
+    Cipher cipher,
+    EncryptionJournal journal,
+    File journalFile,
+    OnProgressCallback progress,
+    CancellationToken cancellation,
+    ByteBuffer input,
+    ByteBuffer output
+  ) throws IOException, GeneralSecurityException {
+    long readPosition = start;
+    long writePosition = start;
+    long lastCheckpoint = start;
+
+    while (readPosition < end) {
+      CancellationToken.check(cancellation);
+      input.clear();
+      input.limit((int) Math.min(input.capacity(), end - readPosition));
+      readFully(source, input, readPosition);
+      readPosition += input.limit();
+      input.flip();
+
+      output.clear();
+      cipher.update(input, output);
+      output.flip();
+      writePosition += writeFully(destination, output, writePosition);
+
+      if (writePosition - lastCheckpoint >= checkpointInterval) {
+        // The journal must never point past what is durable
+        destination.force(false);
+        journal.at(writePosition).write(journalFile);
+        lastCheckpoint = writePosition;
+      }
+
+      if (progress != null) {
+        progress.onProgress(readPosition, end);
+      }
+    }
+
+    output.clear();
+    cipher.doFinal(ByteBuffer.allocate(0), output);
+    output.flip();
+    writeFully(destination, output, writePosition);
+  }
+
+  private static void readFully(
+    FileChannel channel,
+    ByteBuffer buffer,
+    long position
+  ) throws IOException {
+    int start = buffer.position();
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position() - start);
+      if (read < 0) {
+        throw new EOFException("File was truncated while processing it");
+      }
+    }
+  }
+
+  private static int writeFully(
+    FileChannel destination,
+    ByteBuffer buffer,
+    long position
+  ) throws IOException {
+    int written = 0;
+    while (buffer.hasRemaining()) {
+      written += destination.write(buffer, position + written);
+    }
+    return written;
+  }
+}
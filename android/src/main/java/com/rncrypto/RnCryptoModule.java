@@ -1,8 +1,12 @@
 package com.rncrypto;
 
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
 import android.os.Environment;
 import androidx.annotation.NonNull;
-import com.facebook.common.util.Hex;
+import androidx.core.content.pm.PackageInfoCompat;
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Callback;
 import com.facebook.react.bridge.Promise;
@@ -10,28 +14,59 @@ import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.module.annotations.ReactModule;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.rncrypto.util.ChunkPlan;
+import com.rncrypto.util.CryptoMetrics;
 import com.rncrypto.util.CryptoService;
+import com.rncrypto.util.DigestSpec;
+import com.rncrypto.util.DirectoryEntry;
+import com.rncrypto.util.DirectoryPage;
+import com.rncrypto.util.FileBatchItem;
+import com.rncrypto.util.FileDigests;
+import com.rncrypto.util.FileJobOptions;
+import com.rncrypto.util.HexUtils;
+import com.rncrypto.util.InvalidCursorException;
+import com.rncrypto.util.KeyDerivationItem;
+import com.rncrypto.util.OnProgressCallback;
+import com.rncrypto.util.OnlyErrorCallback;
+import com.rncrypto.util.ProgressThrottle;
+import com.rncrypto.util.ProviderRegistry;
+import com.rncrypto.util.ResultCallback;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @ReactModule(name = RnCryptoModule.NAME)
 public class RnCryptoModule extends ReactContextBaseJavaModule {
 
   public static final String NAME = "RnCrypto";
+  public static final String CHUNK_ENCRYPTED_EVENT = "RnCryptoChunkEncrypted";
+  public static final String PROGRESS_EVENT = "RnCryptoProgress";
+
+  private static final String PROVIDERS_PREFERENCES = "RnCryptoProviders";
+  private static final String PROVIDERS_CALIBRATION_KEY = "calibration";
 
   public RnCryptoModule(ReactApplicationContext reactContext) {
     super(reactContext);
+
+    Context context = reactContext.getApplicationContext();
+    try {
+      CryptoWorkerPool.getShared().execute(() -> selectProviders(context));
+    } catch (RejectedExecutionException e) {
+      // Default providers are used until getProviderReport selects them
+    }
   }
 
   @Override
@@ -40,6 +75,18 @@ public class RnCryptoModule extends ReactContextBaseJavaModule {
     return NAME;
   }
 
+  /**
+   * JOB_ID_BASE: job ids of this JS runtime start after it. A reloaded
+   * runtime gets a new base, so its ids never refer to jobs of the previous
+   * one still running.
+   */
+  @Override
+  public Map<String, Object> getConstants() {
+    Map<String, Object> constants = new HashMap<>();
+    constants.put("JOB_ID_BASE", CryptoService.getInstance().reserveJobIds());
+    return constants;
+  }
+
   @ReactMethod
   public void getDocumentsPath(Promise promise) {
     promise.resolve(
@@ -56,236 +103,1603 @@ public class RnCryptoModule extends ReactContextBaseJavaModule {
     );
   }
 
+  /**
+   * Changes how many file operations can run at the same time. Operations
+   * over that limit wait in the worker pool queue.
+   *
+   * @param maxConcurrency Max amount of concurrent file operations
+   * @param promise        Resolves with the applied limit
+   */
   @ReactMethod
-  public void listDir(String dirPath, Promise promise) {
+  public void setMaxConcurrency(Double maxConcurrency, Promise promise) {
     try {
-      File file = new File(dirPath);
+      CryptoWorkerPool workerPool = CryptoWorkerPool.getShared();
+      workerPool.setMaxConcurrency(maxConcurrency.intValue());
 
-      if (!file.exists()) {
-        throw new Exception("Folder does not exist");
-      }
+      promise.resolve(workerPool.getMaxConcurrency());
+    } catch (IllegalArgumentException e) {
+      promise.reject("INVALID_ARGUMENT", e.getMessage());
+    }
+  }
 
-      File[] files = file.listFiles();
+  /**
+   * Sets the size of the buffers used to read and write files. 0 lets the
+   * library decide it for each file.
+   *
+   * @param bufferSize Buffer size in bytes, or 0 for automatic
+   * @param promise    Resolves with the applied size
+   */
+  @ReactMethod
+  public void setBufferSize(Double bufferSize, Promise promise) {
+    try {
+      CryptoService.getInstance().setBufferSize(bufferSize.intValue());
 
-      if (files == null) {
-        promise.resolve(null);
-        return;
-      }
+      promise.resolve(CryptoService.getInstance().getBufferSize());
+    } catch (IllegalArgumentException e) {
+      promise.reject("INVALID_ARGUMENT", e.getMessage());
+    }
+  }
+
+  /**
+   * Sets whether whole files overlap reads, cipher and writes, which pays off
+   * on slow storage like SD cards. Disabled by default.
+   *
+   * @param enabled Whether whole files are pipelined
+   * @param promise Resolves with the applied value
+   */
+  @ReactMethod
+  public void setPipelinedIo(Boolean enabled, Promise promise) {
+    try {
+      CryptoService.getInstance().setPipelinedIo(enabled);
+
+      promise.resolve(CryptoService.getInstance().isPipelinedIo());
+    } catch (IllegalStateException e) {
+      promise.reject("NOT_AVAILABLE", e.getMessage());
+    }
+  }
+
+  /**
+   * Measures in background which buffer size performs better on this device.
+   * Used from then on when the buffer size is automatic.
+   *
+   * @param promise Resolves with the buffer size found
+   */
+  @ReactMethod
+  public void calibrateBufferSize(Promise promise) {
+    File cacheDir = this.getReactApplicationContext().getCacheDir();
+
+    try {
+      CryptoWorkerPool.getShared()
+        .execute(() -> {
+          try {
+            promise.resolve(
+              CryptoService.getInstance().calibrateBufferSize(cacheDir)
+            );
+          } catch (IOException | GeneralSecurityException e) {
+            e.printStackTrace();
+            promise.reject("CALIBRATION_FAILED", e.getMessage());
+          }
+        });
+    } catch (RejectedExecutionException e) {
+      promise.reject("QUEUE_FULL", e.getMessage());
+    }
+  }
 
-      WritableArray fileMaps = Arguments.createArray();
+  /**
+   * Reports the metrics of the operations run so far and the state of the
+   * worker pool, for telemetry. Times are in milliseconds and throughput
+   * histograms count the operations below each bucket of throughputBuckets
+   * MB/s, the last one counting the rest.
+   *
+   * @param promise Resolves with { operations, throughputBuckets, workers, runningJobs }
+   */
+  @ReactMethod
+  public void getStats(Promise promise) {
+    CryptoService cryptoService = CryptoService.getInstance();
 
-      for (File childFile : files) {
-        WritableMap fileMap = Arguments.createMap();
+    WritableMap operations = Arguments.createMap();
+    for (Map.Entry<String, CryptoMetrics.OperationStats.Snapshot> entry : cryptoService
+      .getMetrics()
+      .snapshot()
+      .entrySet()) {
+      CryptoMetrics.OperationStats.Snapshot stats = entry.getValue();
 
-        fileMap.putDouble("mtime", (double) childFile.lastModified() / 1000);
-        fileMap.putString("name", childFile.getName());
-        fileMap.putString("path", childFile.getAbsolutePath());
-        fileMap.putDouble("size", (double) childFile.length());
-        fileMap.putInt("type", childFile.isDirectory() ? 1 : 0);
+      WritableArray histogram = Arguments.createArray();
+      for (long bucket : stats.getThroughputHistogram()) {
+        histogram.pushDouble(bucket);
+      }
 
-        fileMaps.pushMap(fileMap);
+      WritableMap errorTypes = Arguments.createMap();
+      for (Map.Entry<String, Long> errorType : stats.getErrorTypes().entrySet()) {
+        errorTypes.putDouble(errorType.getKey(), errorType.getValue());
       }
 
-      promise.resolve(fileMaps);
-    } catch (Exception ex) {
-      ex.printStackTrace();
-      promise.reject(ex);
+      WritableMap operation = Arguments.createMap();
+      operation.putDouble("count", stats.getCount());
+      operation.putDouble("errors", stats.getErrors());
+      operation.putDouble("cancelled", stats.getCancelled());
+      operation.putDouble("bytes", stats.getBytes());
+      operation.putDouble("wallMs", stats.getWallNanos() / 1e6);
+      operation.putDouble("maxWallMs", stats.getMaxWallNanos() / 1e6);
+      operation.putDouble("queueWaitMs", stats.getQueueWaitNanos() / 1e6);
+      operation.putArray("throughputHistogram", histogram);
+      operation.putMap("errorTypes", errorTypes);
+      operations.putMap(entry.getKey(), operation);
+    }
+
+    WritableArray buckets = Arguments.createArray();
+    for (int bucket : CryptoMetrics.THROUGHPUT_BUCKETS) {
+      buckets.pushInt(bucket);
     }
+
+    CryptoWorkerPool workerPool = CryptoWorkerPool.getShared();
+    WritableMap workers = Arguments.createMap();
+    workers.putInt("maxConcurrency", workerPool.getMaxConcurrency());
+    workers.putInt("active", workerPool.getActiveCount());
+    workers.putInt("queued", workerPool.getQueuedCount());
+    workers.putDouble("completed", workerPool.getCompletedCount());
+    workers.putDouble("rejected", workerPool.getRejectedCount());
+
+    WritableMap stats = Arguments.createMap();
+    stats.putMap("operations", operations);
+    stats.putArray("throughputBuckets", buckets);
+    stats.putMap("workers", workers);
+    stats.putInt("runningJobs", cryptoService.getRunningJobs());
+    promise.resolve(stats);
   }
 
   /**
-   * Encrypts a file in background
+   * Reports which security provider is used for each algorithm and the score
+   * each provider got in the calibration, for telemetry. Waits for the
+   * calibration if it has not finished yet.
    *
-   * @param sourcePath      Path where file is located
-   * @param destinationPath Path where encrypted file is going to be written
-   * @param hexKey          Encryption key in hex format
-   * @param hexIv           Initialization vector in hex format
-   * @param cb              Only error callback
+   * @param promise Resolves with { appVersion, cached, selected, scores }
    */
   @ReactMethod
-  public void encryptFile(
-    String sourcePath,
-    String destinationPath,
-    String hexKey,
-    String hexIv,
-    Callback cb
-  ) {
-    CryptoService.getInstance()
-      .encryptFile(
-        sourcePath,
-        destinationPath,
-        hexKey,
-        hexIv,
-        true,
-        (Exception ex) -> {
-          if (ex == null) {
-            cb.invoke((Object) null);
-          } else {
-            cb.invoke(ex);
+  public void getProviderReport(Promise promise) {
+    Context context = this.getReactApplicationContext().getApplicationContext();
+
+    try {
+      CryptoWorkerPool.getShared()
+        .execute(() -> {
+          try {
+            promise.resolve(providerReport(context));
+          } catch (RuntimeException e) {
+            e.printStackTrace();
+            promise.reject("PROVIDER_SELECTION_FAILED", e.getMessage());
           }
-        }
+        });
+    } catch (RejectedExecutionException e) {
+      promise.reject("QUEUE_FULL", e.getMessage());
+    }
+  }
+
+  /**
+   * Selects the providers if they were not yet, and reports the selection
+   */
+  private static WritableMap providerReport(Context context) {
+    boolean cached = selectProviders(context);
+    ProviderRegistry registry = ProviderRegistry.getShared();
+
+    WritableMap selected = Arguments.createMap();
+    for (Map.Entry<String, String> entry : registry.getSelection().entrySet()) {
+      if (entry.getValue() != null) {
+        selected.putString(entry.getKey(), entry.getValue());
+      } else {
+        selected.putNull(entry.getKey());
+      }
+    }
+
+    WritableMap scores = Arguments.createMap();
+    for (Map.Entry<String, Map<String, Double>> algorithm : registry.getScores().entrySet()) {
+      WritableMap algorithmScores = Arguments.createMap();
+      for (Map.Entry<String, Double> score : algorithm.getValue().entrySet()) {
+        algorithmScores.putDouble(score.getKey(), score.getValue());
+      }
+      scores.putMap(algorithm.getKey(), algorithmScores);
+    }
+
+    WritableMap report = Arguments.createMap();
+    report.putString("appVersion", registry.getVersion());
+    report.putBoolean("cached", cached);
+    report.putMap("selected", selected);
+    report.putMap("scores", scores);
+    return report;
+  }
+
+  /**
+   * Loads the provider calibration of this app version, running and saving
+   * it when there is none yet
+   *
+   * @return true if it was already done, false if it had to run
+   */
+  private static synchronized boolean selectProviders(Context context) {
+    ProviderRegistry registry = ProviderRegistry.getShared();
+    String appVersion = appVersion(context);
+
+    if (appVersion.equals(registry.getVersion())) {
+      return true;
+    }
+
+    SharedPreferences preferences = context.getSharedPreferences(
+      PROVIDERS_PREFERENCES,
+      Context.MODE_PRIVATE
+    );
+    if (
+      registry.load(
+        preferences.getString(PROVIDERS_CALIBRATION_KEY, null),
+        appVersion
+      )
+    ) {
+      return true;
+    }
+
+    registry.calibrate(appVersion);
+    preferences
+      .edit()
+      .putString(PROVIDERS_CALIBRATION_KEY, registry.save())
+      .apply();
+    return false;
+  }
+
+  private static String appVersion(Context context) {
+    try {
+      PackageInfo info = context
+        .getPackageManager()
+        .getPackageInfo(context.getPackageName(), 0);
+      return (
+        info.versionName + " (" + PackageInfoCompat.getLongVersionCode(info) + ")"
       );
+    } catch (PackageManager.NameNotFoundException e) {
+      return "unknown";
+    }
   }
 
   /**
-   * Decrypts a file in background.
+   * Lists every entry of a directory with its attributes, in background
    *
-   * @param sourcePath      Path where encrypted file is located
-   * @param destinationPath Path where decrypted file is going to be written
-   * @param hexKey          Decryption key in hex format
-   * @param hexIv           Initialization vector in hex format
-   * @param cb              Only error callback
+   * @param dirPath Directory to list
+   * @param promise Resolves with the entries, or null if dirPath is not a
+   *                directory
    */
   @ReactMethod
-  public void decryptFile(
-    String sourcePath,
-    String destinationPath,
-    String hexKey,
-    String hexIv,
-    Callback cb
-  ) {
+  public void listDir(String dirPath, Promise promise) {
+    File file = new File(dirPath);
+
+    if (!file.exists()) {
+      promise.reject(new Exception("Folder does not exist"));
+      return;
+    }
+    if (!file.isDirectory()) {
+      promise.resolve(null);
+      return;
+    }
+
     CryptoService.getInstance()
-      .decryptFile(
-        sourcePath,
-        destinationPath,
-        hexKey,
-        hexIv,
+      .listDir(
+        dirPath,
+        null,
+        false,
+        true,
+        Integer.MAX_VALUE,
         true,
-        (Exception ex) -> {
+        (Exception ex, DirectoryPage page) -> {
           if (ex == null) {
-            cb.invoke((Object) null);
+            promise.resolve(toWritableArray(page.getEntries(), true));
           } else {
-            cb.invoke(ex);
+            ex.printStackTrace();
+            promise.reject(ex);
           }
         }
       );
   }
 
+  /**
+   * Lists the first page of a directory in background. The rest of pages are
+   * read with listDirNext, a listing not read for a few minutes is closed.
+   *
+   * @param dirPath Directory to list
+   * @param options { glob, recursive, attributes, pageSize }, all optional.
+   *                Without attributes only the name and path of each entry
+   *                are read, recursive listings always read them.
+   * @param promise Resolves with { entries, cursor }, cursor is null on the
+   *                last page
+   */
   @ReactMethod
-  public void joinFiles(
-    ReadableArray inputFiles,
-    String outputFile,
-    Callback cb
-  ) {
-    FileOutputStream outputStream = null;
-    try {
-      outputStream = new FileOutputStream(outputFile, true);
-      for (int i = 0; i < inputFiles.size(); i++) {
-        String inputFile = inputFiles.getString(i);
-        FileInputStream inputStream = null;
-        try {
-          inputStream = new FileInputStream(inputFile);
-          byte[] buffer = new byte[8192];
-          int bytesRead;
-          while ((bytesRead = inputStream.read(buffer)) != -1) {
-            outputStream.write(buffer, 0, bytesRead);
-          }
-        } finally {
-          if (inputStream != null) {
-            inputStream.close();
-          }
+  public void listDirPage(String dirPath, ReadableMap options, Promise promise) {
+    String glob = null;
+    boolean recursive = false;
+    boolean attributes = true;
+    int pageSize = ListDirRepository.DEFAULT_PAGE_SIZE;
 
-          try {
-            new File(inputFile).delete();
-          } catch (Exception e) {}
-        }
+    if (options != null) {
+      if (options.hasKey("glob") && !options.isNull("glob")) {
+        glob = options.getString("glob");
+      }
+      if (options.hasKey("recursive") && !options.isNull("recursive")) {
+        recursive = options.getBoolean("recursive");
       }
-      cb.invoke((Object) null);
-    } catch (IOException e) {
-      cb.invoke(e.getMessage());
-    } finally {
-      try {
-        if (outputStream != null) outputStream.close();
-      } catch (IOException e) {
-        cb.invoke("Error closing output file: " + e.getMessage());
+      if (options.hasKey("attributes") && !options.isNull("attributes")) {
+        attributes = options.getBoolean("attributes");
+      }
+      if (options.hasKey("pageSize") && !options.isNull("pageSize")) {
+        pageSize = options.getInt("pageSize");
       }
     }
+
+    CryptoService.getInstance()
+      .listDir(
+        dirPath,
+        glob,
+        recursive,
+        attributes,
+        pageSize,
+        true,
+        pageResolver(promise)
+      );
   }
 
+  /**
+   * @param cursor  Cursor of the previous page
+   * @param promise Resolves with { entries, cursor }, cursor is null on the
+   *                last page
+   */
   @ReactMethod
-  public void sha256() {}
+  public void listDirNext(Double cursor, Promise promise) {
+    CryptoService.getInstance()
+      .listDirNextPage(cursor.intValue(), true, pageResolver(promise));
+  }
 
+  /**
+   * Closes a listing without reading the rest of its pages
+   *
+   * @param cursor  Cursor of the last page read
+   * @param promise Resolves with false if the listing was already closed
+   */
   @ReactMethod
-  public void sha512(ReadableArray inputs, Promise promise) {
-    List<byte[]> byteInputs = new ArrayList<byte[]>();
+  public void listDirClose(Double cursor, Promise promise) {
+    promise.resolve(CryptoService.getInstance().closeListDir(cursor.intValue()));
+  }
 
-    for (int i = 0; i < inputs.size(); i++) {
-      byteInputs.add(Hex.decodeHex(inputs.getString(i)));
-    }
+  /**
+   * Completes a file operation callback with null, or with the message of its
+   * error. The bridge cannot convert an Exception, invoking the callback with
+   * one throws on the worker thread.
+   */
+  static OnlyErrorCallback completion(Callback cb) {
+    return (Exception ex) -> {
+      if (ex == null) {
+        cb.invoke((Object) null);
+      } else {
+        cb.invoke(errorMessage(ex));
+      }
+    };
+  }
 
-    try {
-      byte[] result = CryptoService.getInstance().sha512(byteInputs);
+  /**
+   * @return Message of the error for JS, never null so it is not taken as a
+   * success
+   */
+  static String errorMessage(Exception ex) {
+    return ex.getMessage() != null ? ex.getMessage() : ex.toString();
+  }
 
-      promise.resolve(Hex.encodeHex(result, false));
-    } catch (NoSuchAlgorithmException e) {
-      e.printStackTrace();
-      promise.reject("NO_ALGORITHM", e.getMessage());
-    }
+  private static ResultCallback<DirectoryPage> pageResolver(Promise promise) {
+    return (Exception ex, DirectoryPage page) -> {
+      if (ex == null) {
+        WritableMap result = Arguments.createMap();
+        result.putArray("entries", toWritableArray(page.getEntries(), false));
+        if (page.hasMore()) {
+          result.putInt("cursor", page.getCursor());
+        } else {
+          result.putNull("cursor");
+        }
+        promise.resolve(result);
+      } else if (ex instanceof InvalidCursorException) {
+        promise.reject("INVALID_CURSOR", ex.getMessage());
+      } else {
+        ex.printStackTrace();
+        promise.reject(ex);
+      }
+    };
   }
 
+  /**
+   * Encrypts a file in background
+   *
+   * @param sourcePath      Path where file is located
+   * @param destinationPath Path where encrypted file is going to be written
+   * @param hexKey          Encryption key in hex format
+   * @param hexIv           Initialization vector in hex format
+   * @param jobId           Id to cancel the operation with
+   * @param reportProgress  Whether to emit PROGRESS_EVENT
+   * @param cb              Only error callback
+   */
   @ReactMethod
-  public void pbkdf2(
-    String password,
-    String salt,
-    Double rounds,
-    Double derivedKeyLength,
-    Promise promise
+  public void encryptFile(
+    String sourcePath,
+    String destinationPath,
+    String hexKey,
+    String hexIv,
+    Double jobId,
+    Boolean reportProgress,
+    Callback cb
   ) {
     try {
-      byte[] result = CryptoService.getInstance()
-        .pbkdf2(
-          password,
-          salt.getBytes(),
-          rounds.intValue(),
-          derivedKeyLength.intValue()
+      CryptoService.getInstance()
+        .encryptFile(
+          sourcePath,
+          destinationPath,
+          hexKey,
+          hexIv,
+          true,
+          jobOptions(sourcePath, jobId, reportProgress),
+          (Exception ex, FileDigests digests) ->
+            completion(cb).onComplete(ex)
         );
-
-      promise.resolve(Hex.encodeHex(result, false));
-    } catch (NoSuchAlgorithmException e) {
-      e.printStackTrace();
-      promise.reject("NO_ALGORITHM", e.getMessage());
-    } catch (InvalidKeySpecException e) {
-      e.printStackTrace();
-      promise.reject("INVALID_KEY_SPEC", e.getMessage());
+    } catch (Exception e) {
+      cb.invoke(errorMessage(e));
     }
   }
 
+  /**
+   * Encrypts a file in background computing, in the same pass, the digests
+   * of its plaintext and ciphertext.
+   *
+   * @param sourcePath      Path where file is located
+   * @param destinationPath Path where encrypted file is going to be written
+   * @param hexKey          Encryption key in hex format
+   * @param hexIv           Initialization vector in hex format
+   * @param digests         Algorithms to compute, as { plaintext, ciphertext }
+   * @param jobId           Id to cancel the operation with
+   * @param reportProgress  Whether to emit PROGRESS_EVENT
+   * @param cb              Called with an error or with the digests in hex
+   */
   @ReactMethod
-  public void encryptFileToChunks(
+  public void encryptFileWithDigests(
     String sourcePath,
-    ReadableArray destinationPaths,
+    String destinationPath,
     String hexKey,
     String hexIv,
-    Double chunkSize,
+    ReadableMap digests,
+    Double jobId,
+    Boolean reportProgress,
     Callback cb
   ) {
     try {
-      String[] paths = new String[destinationPaths.size()];
-      for (int i = 0; i < destinationPaths.size(); i++) {
-        paths[i] = destinationPaths.getString(i);
-      }
-
-      byte[] key = Hex.decodeHex(hexKey);
-      byte[] iv = Hex.decodeHex(hexIv);
+      CryptoService.getInstance()
+        .encryptFile(
+          sourcePath,
+          destinationPath,
+          hexKey,
+          hexIv,
+          true,
+          jobOptions(sourcePath, jobId, reportProgress).withDigests(
+            toDigestSpec(digests)
+          ),
+          (Exception ex, FileDigests result) -> {
+            if (ex == null) {
+              cb.invoke(null, toWritableMap(result));
+            } else {
+              cb.invoke(errorMessage(ex));
+            }
+          }
+        );
+    } catch (Exception e) {
+      cb.invoke(errorMessage(e));
+    }
+  }
 
+  /**
+   * Encrypts a file in background with checkpoints. Calling it again with the
+   * same arguments after an interruption continues from the last checkpoint.
+   *
+   * @param sourcePath      Path where file is located
+   * @param destinationPath Path where encrypted file is going to be written
+   * @param hexKey          Encryption key in hex format
+   * @param hexIv           Initialization vector in hex format
+   * @param jobId           Id to cancel the operation with
+   * @param reportProgress  Whether to emit PROGRESS_EVENT
+   * @param cb              Called with an error or with the offset the
+   *                        encryption resumed from
+   */
+  @ReactMethod
+  public void encryptFileResumable(
+    String sourcePath,
+    String destinationPath,
+    String hexKey,
+    String hexIv,
+    Double jobId,
+    Boolean reportProgress,
+    Callback cb
+  ) {
+    try {
       CryptoService.getInstance()
-        .encryptFileToChunks(
+        .encryptFileResumable(
           sourcePath,
-          paths,
-          key,
-          iv,
-          chunkSize.intValue(),
+          destinationPath,
+          hexKey,
+          hexIv,
           true,
-          (Exception ex) -> {
+          jobOptions(sourcePath, jobId, reportProgress),
+          (Exception ex, Long resumedFrom) -> {
             if (ex == null) {
-              cb.invoke((Object) null);
+              cb.invoke(null, resumedFrom.doubleValue());
             } else {
-              cb.invoke(ex);
+              cb.invoke(errorMessage(ex));
             }
           }
         );
     } catch (Exception e) {
-      cb.invoke(e.getMessage());
+      cb.invoke(errorMessage(e));
     }
   }
+
+  /**
+   * Decrypts a file in background.
+   *
+   * @param sourcePath      Path where encrypted file is located
+   * @param destinationPath Path where decrypted file is going to be written
+   * @param hexKey          Decryption key in hex format
+   * @param hexIv           Initialization vector in hex format
+   * @param jobId           Id to cancel the operation with
+   * @param reportProgress  Whether to emit PROGRESS_EVENT
+   * @param cb              Only error callback
+   */
+  @ReactMethod
+  public void decryptFile(
+    String sourcePath,
+    String destinationPath,
+    String hexKey,
+    String hexIv,
+    Double jobId,
+    Boolean reportProgress,
+    Callback cb
+  ) {
+    try {
+      CryptoService.getInstance()
+        .decryptFile(
+          sourcePath,
+          destinationPath,
+          hexKey,
+          hexIv,
+          true,
+          jobOptions(sourcePath, jobId, reportProgress),
+          completion(cb)
+        );
+    } catch (Exception e) {
+      cb.invoke(errorMessage(e));
+    }
+  }
+
+  /**
+   * Encrypts a file in background splitting it in segments that are encrypted
+   * on several threads. Output is the same as encryptFile.
+   *
+   * @param sourcePath      Path where file is located
+   * @param destinationPath Path where encrypted file is going to be written
+   * @param hexKey          Encryption key in hex format
+   * @param hexIv           Initialization vector in hex format
+   * @param jobId           Id to cancel the operation with
+   * @param reportProgress  Whether to emit PROGRESS_EVENT
+   * @param cb              Only error callback
+   */
+  @ReactMethod
+  public void encryptFileParallel(
+    String sourcePath,
+    String destinationPath,
+    String hexKey,
+    String hexIv,
+    Double jobId,
+    Boolean reportProgress,
+    Callback cb
+  ) {
+    try {
+      CryptoService.getInstance()
+        .encryptFile(
+          sourcePath,
+          destinationPath,
+          hexKey,
+          hexIv,
+          true,
+          jobOptions(sourcePath, jobId, reportProgress).withParallel(true),
+          (Exception ex, FileDigests digests) ->
+            completion(cb).onComplete(ex)
+        );
+    } catch (Exception e) {
+      cb.invoke(errorMessage(e));
+    }
+  }
+
+  /**
+   * Decrypts a file in background splitting it in segments that are decrypted
+   * on several threads. Output is the same as decryptFile.
+   *
+   * @param sourcePath      Path where encrypted file is located
+   * @param destinationPath Path where decrypted file is going to be written
+   * @param hexKey          Decryption key in hex format
+   * @param hexIv           Initialization vector in hex format
+   * @param jobId           Id to cancel the operation with
+   * @param reportProgress  Whether to emit PROGRESS_EVENT
+   * @param cb              Only error callback
+   */
+  @ReactMethod
+  public void decryptFileParallel(
+    String sourcePath,
+    String destinationPath,
+    String hexKey,
+    String hexIv,
+    Double jobId,
+    Boolean reportProgress,
+    Callback cb
+  ) {
+    try {
+      CryptoService.getInstance()
+        .decryptFile(
+          sourcePath,
+          destinationPath,
+          hexKey,
+          hexIv,
+          true,
+          jobOptions(sourcePath, jobId, reportProgress).withParallel(true),
+          completion(cb)
+        );
+    } catch (Exception e) {
+      cb.invoke(errorMessage(e));
+    }
+  }
+
+  /**
+   * Encrypts a batch of files in background with a single bridge call. A
+   * file failing does not stop the rest of the batch.
+   *
+   * @param items       Files to encrypt, as { source, destination, key, iv }
+   *                    with the key and IV in hex format
+   * @param parallelism Max amount of files encrypted at the same time, or 0
+   *                    for one per core
+   * @param promise     Resolves with { source, destination, error } for each
+   *                    file, in the same order
+   */
+  @ReactMethod
+  public void encryptFiles(
+    ReadableArray items,
+    Double parallelism,
+    Promise promise
+  ) {
+    final List<FileBatchItem> batch;
+    try {
+      batch = toBatchItems(items);
+    } catch (Exception e) {
+      promise.reject("INVALID_ARGUMENT", e.getMessage());
+      return;
+    }
+
+    CryptoService.getInstance()
+      .encryptFiles(
+        batch,
+        parallelism.intValue(),
+        true,
+        (Exception ex, List<Exception> errors) ->
+          resolveBatch(promise, batch, ex, errors)
+      );
+  }
+
+  /**
+   * Decrypts a batch of files in background with a single bridge call. A
+   * file failing does not stop the rest of the batch.
+   *
+   * @param items       Files to decrypt, as { source, destination, key, iv }
+   *                    with the key and IV in hex format
+   * @param parallelism Max amount of files decrypted at the same time, or 0
+   *                    for one per core
+   * @param promise     Resolves with { source, destination, error } for each
+   *                    file, in the same order
+   */
+  @ReactMethod
+  public void decryptFiles(
+    ReadableArray items,
+    Double parallelism,
+    Promise promise
+  ) {
+    final List<FileBatchItem> batch;
+    try {
+      batch = toBatchItems(items);
+    } catch (Exception e) {
+      promise.reject("INVALID_ARGUMENT", e.getMessage());
+      return;
+    }
+
+    CryptoService.getInstance()
+      .decryptFiles(
+        batch,
+        parallelism.intValue(),
+        true,
+        (Exception ex, List<Exception> errors) ->
+          resolveBatch(promise, batch, ex, errors)
+      );
+  }
+
+  /**
+   * Decrypts in background a file encrypted into chunks, writing the
+   * plaintext to a single file. Chunks are decrypted in place, so they do not
+   * need to be joined before.
+   *
+   * @param sourcePaths     Paths of the encrypted chunks, in order
+   * @param destinationPath Path where decrypted file is going to be written
+   * @param hexKey          Decryption key in hex format
+   * @param hexIv           Initialization vector of the whole file in hex format
+   * @param jobId           Id to cancel the operation with
+   * @param reportProgress  Whether to emit PROGRESS_EVENT
+   * @param cb              Only error callback
+   */
+  @ReactMethod
+  public void decryptChunksToFile(
+    ReadableArray sourcePaths,
+    String destinationPath,
+    String hexKey,
+    String hexIv,
+    Double jobId,
+    Boolean reportProgress,
+    Callback cb
+  ) {
+    try {
+      String[] paths = new String[sourcePaths.size()];
+      for (int i = 0; i < sourcePaths.size(); i++) {
+        paths[i] = sourcePaths.getString(i);
+      }
+
+      CryptoService.getInstance()
+        .decryptChunksToFile(
+          paths,
+          destinationPath,
+          hexKey,
+          hexIv,
+          true,
+          jobOptions(destinationPath, jobId, reportProgress),
+          completion(cb)
+        );
+    } catch (Exception e) {
+      cb.invoke(errorMessage(e));
+    }
+  }
+
+  /**
+   * Decrypts a range of a file in background, without decrypting what is
+   * before or after it.
+   *
+   * @param sourcePath      Path where encrypted file is located
+   * @param destinationPath Path where decrypted range is going to be written
+   * @param hexKey          Decryption key in hex format
+   * @param hexIv           Initialization vector of the file in hex format
+   * @param offset          Position of the first byte to decrypt
+   * @param length          Amount of bytes to decrypt
+   * @param cb              Only error callback
+   */
+  @ReactMethod
+  public void decryptRange(
+    String sourcePath,
+    String destinationPath,
+    String hexKey,
+    String hexIv,
+    Double offset,
+    Double length,
+    Callback cb
+  ) {
+    CryptoService.getInstance()
+      .decryptRange(
+        sourcePath,
+        destinationPath,
+        hexKey,
+        hexIv,
+        offset.longValue(),
+        length.longValue(),
+        true,
+        completion(cb)
+      );
+  }
+
+  /**
+   * Encrypts a file in background with AES-256-GCM in segments, so its
+   * integrity is checked when it is decrypted.
+   *
+   * @param sourcePath      Path where file is located
+   * @param destinationPath Path where encrypted file is going to be written
+   * @param hexKey          Encryption key of 32 bytes in hex format
+   * @param jobId           Id to cancel the operation with
+   * @param reportProgress  Whether to emit PROGRESS_EVENT
+   * @param cb              Only error callback
+   */
+  @ReactMethod
+  public void encryptFileAuthenticated(
+    String sourcePath,
+    String destinationPath,
+    String hexKey,
+    Double jobId,
+    Boolean reportProgress,
+    Callback cb
+  ) {
+    try {
+      CryptoService.getInstance()
+        .encryptFileAuthenticated(
+          sourcePath,
+          destinationPath,
+          hexKey,
+          true,
+          jobOptions(sourcePath, jobId, reportProgress),
+          completion(cb)
+        );
+    } catch (Exception e) {
+      cb.invoke(errorMessage(e));
+    }
+  }
+
+  /**
+   * Decrypts a file encrypted with encryptFileAuthenticated in background.
+   * Fails, leaving no output, if the file was modified.
+   *
+   * @param sourcePath      Path where encrypted file is located
+   * @param destinationPath Path where decrypted file is going to be written
+   * @param hexKey          Decryption key in hex format
+   * @param jobId           Id to cancel the operation with
+   * @param reportProgress  Whether to emit PROGRESS_EVENT
+   * @param cb              Only error callback
+   */
+  @ReactMethod
+  public void decryptFileAuthenticated(
+    String sourcePath,
+    String destinationPath,
+    String hexKey,
+    Double jobId,
+    Boolean reportProgress,
+    Callback cb
+  ) {
+    try {
+      CryptoService.getInstance()
+        .decryptFileAuthenticated(
+          sourcePath,
+          destinationPath,
+          hexKey,
+          true,
+          jobOptions(sourcePath, jobId, reportProgress),
+          completion(cb)
+        );
+    } catch (Exception e) {
+      cb.invoke(errorMessage(e));
+    }
+  }
+
+  /**
+   * Checks a file encrypted with encryptFileAuthenticated in background,
+   * without writing its plaintext.
+   *
+   * @param sourcePath     Path where encrypted file is located
+   * @param hexKey         Decryption key in hex format
+   * @param jobId          Id to cancel the operation with
+   * @param reportProgress Whether to emit PROGRESS_EVENT
+   * @param promise    Resolves with whether the file is intact
+   */
+  @ReactMethod
+  public void verifyFileAuthenticated(
+    String sourcePath,
+    String hexKey,
+    Double jobId,
+    Boolean reportProgress,
+    Promise promise
+  ) {
+    try {
+      CryptoService.getInstance()
+        .verifyFileAuthenticated(
+          sourcePath,
+          hexKey,
+          true,
+          jobOptions(sourcePath, jobId, reportProgress),
+          (Exception ex, Boolean valid) -> {
+            if (ex == null) {
+              promise.resolve(valid);
+            } else {
+              promise.reject("VERIFY_FAILED", ex.getMessage());
+            }
+          }
+        );
+    } catch (Exception e) {
+      promise.reject("VERIFY_FAILED", errorMessage(e));
+    }
+  }
+
+  /**
+   * Decrypts a range of a file encrypted with encryptFileAuthenticated in
+   * background, reading and verifying only the segments containing it.
+   *
+   * @param sourcePath      Path where encrypted file is located
+   * @param destinationPath Path where decrypted range is going to be written
+   * @param hexKey          Decryption key in hex format
+   * @param offset          Position of the first plaintext byte to decrypt
+   * @param length          Amount of bytes to decrypt
+   * @param cb              Only error callback
+   */
+  @ReactMethod
+  public void decryptRangeAuthenticated(
+    String sourcePath,
+    String destinationPath,
+    String hexKey,
+    Double offset,
+    Double length,
+    Callback cb
+  ) {
+    CryptoService.getInstance()
+      .decryptRangeAuthenticated(
+        sourcePath,
+        destinationPath,
+        hexKey,
+        offset.longValue(),
+        length.longValue(),
+        true,
+        completion(cb)
+      );
+  }
+
+  /**
+   * Joins the input files, in order, into outputFile in background. The
+   * output is replaced only once it is complete, and inputs are deleted then.
+   *
+   * @param inputFiles Paths of the files to join, in order
+   * @param outputFile Path where the joined file is going to be written
+   * @param cb         Only error callback
+   */
+  @ReactMethod
+  public void joinFiles(
+    ReadableArray inputFiles,
+    String outputFile,
+    Callback cb
+  ) {
+    String[] paths = new String[inputFiles.size()];
+    for (int i = 0; i < inputFiles.size(); i++) {
+      paths[i] = inputFiles.getString(i);
+    }
+
+    CryptoService.getInstance()
+      .joinFiles(
+        paths,
+        outputFile,
+        true,
+        completion(cb)
+      );
+  }
+
+  @ReactMethod
+  public void sha256(ReadableArray inputs, Promise promise) {
+    List<byte[]> byteInputs = new ArrayList<byte[]>();
+
+    for (int i = 0; i < inputs.size(); i++) {
+      byteInputs.add(HexUtils.decode(inputs.getString(i)));
+    }
+
+    try {
+      byte[] result = CryptoService.getInstance().sha256(byteInputs);
+
+      promise.resolve(HexUtils.encode(result));
+    } catch (NoSuchAlgorithmException e) {
+      e.printStackTrace();
+      promise.reject("NO_ALGORITHM", e.getMessage());
+    }
+  }
+
+  @ReactMethod
+  public void sha512(ReadableArray inputs, Promise promise) {
+    List<byte[]> byteInputs = new ArrayList<byte[]>();
+
+    for (int i = 0; i < inputs.size(); i++) {
+      byteInputs.add(HexUtils.decode(inputs.getString(i)));
+    }
+
+    try {
+      byte[] result = CryptoService.getInstance().sha512(byteInputs);
+
+      promise.resolve(HexUtils.encode(result));
+    } catch (NoSuchAlgorithmException e) {
+      e.printStackTrace();
+      promise.reject("NO_ALGORITHM", e.getMessage());
+    }
+  }
+
+  /**
+   * Starts an incremental hash, fed with hashUpdate and finished with
+   * hashDigest. Sessions not updated for a while are discarded.
+   *
+   * @param algorithm Digest algorithm, like SHA-256 or SHA-512
+   * @param promise   Resolves with the handle of the session
+   */
+  @ReactMethod
+  public void hashInit(String algorithm, Promise promise) {
+    try {
+      promise.resolve(CryptoService.getInstance().hashInit(algorithm));
+    } catch (NoSuchAlgorithmException e) {
+      e.printStackTrace();
+      promise.reject("NO_ALGORITHM", e.getMessage());
+    } catch (IllegalStateException e) {
+      promise.reject("TOO_MANY_SESSIONS", e.getMessage());
+    }
+  }
+
+  /**
+   * @param handle  Handle returned by hashInit
+   * @param hexData Data to hash in hex format
+   * @param promise Resolves once the data is hashed
+   */
+  @ReactMethod
+  public void hashUpdate(Double handle, String hexData, Promise promise) {
+    // Decoded first, so bad data is not reported as a bad session
+    byte[] data;
+    try {
+      data = HexUtils.decode(hexData);
+    } catch (IllegalArgumentException e) {
+      promise.reject("INVALID_HEX", e.getMessage());
+      return;
+    }
+
+    try {
+      CryptoService.getInstance().hashUpdate(handle.intValue(), data);
+
+      promise.resolve(null);
+    } catch (IllegalArgumentException e) {
+      promise.reject("INVALID_SESSION", e.getMessage());
+    }
+  }
+
+  /**
+   * @param handle  Handle returned by hashInit, freed after this call
+   * @param promise Resolves with the digest in hex format
+   */
+  @ReactMethod
+  public void hashDigest(Double handle, Promise promise) {
+    try {
+      byte[] result = CryptoService.getInstance().hashDigest(handle.intValue());
+
+      promise.resolve(HexUtils.encode(result));
+    } catch (IllegalArgumentException e) {
+      promise.reject("INVALID_SESSION", e.getMessage());
+    }
+  }
+
+  /**
+   * Hashes a file, or a range of it, in background reading it from disk. The
+   * content of the file never goes through the bridge.
+   *
+   * @param path      Path of the file to hash
+   * @param algorithm Digest algorithm, like SHA-256 or SHA-512
+   * @param offset    Position of the first byte to hash
+   * @param length    Amount of bytes to hash, or -1 to hash until the end
+   * @param promise   Resolves with the digest in hex format
+   */
+  @ReactMethod
+  public void hashFile(
+    String path,
+    String algorithm,
+    Double offset,
+    Double length,
+    Promise promise
+  ) {
+    CryptoService.getInstance()
+      .hashFile(
+        path,
+        algorithm,
+        offset.longValue(),
+        length.longValue(),
+        true,
+        (Exception ex, byte[] digest) -> {
+          if (ex == null) {
+            promise.resolve(HexUtils.encode(digest));
+          } else if (ex instanceof NoSuchAlgorithmException) {
+            promise.reject("NO_ALGORITHM", ex.getMessage());
+          } else {
+            promise.reject("HASH_FAILED", ex.getMessage());
+          }
+        }
+      );
+  }
+
+  /**
+   * Derives a key with PBKDF2WithHmacSHA512 on the compute executor, so long
+   * derivations do not block the rest of the module methods.
+   *
+   * @param password         Password to derive the key from
+   * @param salt             Salt
+   * @param rounds           Amount of iterations
+   * @param derivedKeyLength Length of the derived key in bytes
+   * @param promise          Resolves with the key in hex format
+   */
+  @ReactMethod
+  public void pbkdf2(
+    String password,
+    String salt,
+    Double rounds,
+    Double derivedKeyLength,
+    Promise promise
+  ) {
+    CryptoService.getInstance()
+      .pbkdf2(
+        password,
+        salt.getBytes(),
+        rounds.intValue(),
+        derivedKeyLength.intValue(),
+        (Exception ex, byte[] result) -> {
+          if (ex == null) {
+            promise.resolve(HexUtils.encode(result));
+          } else {
+            rejectKeyDerivation(promise, ex);
+          }
+        }
+      );
+  }
+
+  /**
+   * Derives several keys with PBKDF2WithHmacSHA512 in parallel, across the
+   * cores of the device.
+   *
+   * @param items       Keys to derive, as [{ password, salt, rounds, length }]
+   * @param parallelism Max amount of keys derived at the same time, 0 for one
+   *                    per core
+   * @param promise     Resolves with the keys in hex format, in the order of
+   *                    items
+   */
+  @ReactMethod
+  public void pbkdf2Batch(
+    ReadableArray items,
+    Double parallelism,
+    Promise promise
+  ) {
+    List<KeyDerivationItem> derivations = new ArrayList<>(items.size());
+    for (int i = 0; i < items.size(); i++) {
+      ReadableMap item = items.getMap(i);
+      derivations.add(
+        new KeyDerivationItem(
+          item.getString("password"),
+          item.getString("salt").getBytes(),
+          item.getInt("rounds"),
+          item.getInt("length")
+        )
+      );
+    }
+
+    CryptoService.getInstance()
+      .pbkdf2Batch(
+        derivations,
+        parallelism.intValue(),
+        (Exception ex, List<byte[]> keys) -> {
+          if (ex != null) {
+            rejectKeyDerivation(promise, ex);
+            return;
+          }
+
+          WritableArray result = Arguments.createArray();
+          for (byte[] key : keys) {
+            result.pushString(HexUtils.encode(key));
+          }
+          promise.resolve(result);
+        }
+      );
+  }
+
+  private static void rejectKeyDerivation(Promise promise, Exception ex) {
+    if (ex instanceof NoSuchAlgorithmException) {
+      promise.reject("NO_ALGORITHM", ex.getMessage());
+    } else if (ex instanceof InvalidKeySpecException) {
+      promise.reject("INVALID_KEY_SPEC", ex.getMessage());
+    } else if (ex instanceof RejectedExecutionException) {
+      promise.reject("QUEUE_FULL", ex.getMessage());
+    } else {
+      promise.reject("KEY_DERIVATION_FAILED", ex.getMessage());
+    }
+  }
+
+  @ReactMethod
+  public void encryptFileToChunks(
+    String sourcePath,
+    ReadableArray destinationPaths,
+    String hexKey,
+    String hexIv,
+    Double chunkSize,
+    Double jobId,
+    Boolean reportProgress,
+    Callback cb
+  ) {
+    try {
+      String[] paths = new String[destinationPaths.size()];
+      for (int i = 0; i < destinationPaths.size(); i++) {
+        paths[i] = destinationPaths.getString(i);
+      }
+
+      byte[] key = HexUtils.decode(hexKey);
+      byte[] iv = HexUtils.decode(hexIv);
+
+      CryptoService.getInstance()
+        .encryptFileToChunks(
+          sourcePath,
+          paths,
+          key,
+          iv,
+          chunkSize.intValue(),
+          true,
+          jobOptions(sourcePath, jobId, reportProgress),
+          (Exception ex, List<FileDigests> digests) ->
+            completion(cb).onComplete(ex)
+        );
+    } catch (Exception e) {
+      cb.invoke(errorMessage(e));
+    }
+  }
+
+  /**
+   * Encrypts a file into chunks in background computing, in the same pass,
+   * the digests of each chunk plaintext and ciphertext.
+   *
+   * @param sourcePath       Path where file is located
+   * @param destinationPaths Paths where each chunk is going to be written
+   * @param hexKey           Encryption key in hex format
+   * @param hexIv            Initialization vector in hex format
+   * @param chunkSize        Size of each chunk in bytes
+   * @param digests          Algorithms to compute, as { plaintext, ciphertext }
+   * @param jobId            Id to cancel the operation with
+   * @param reportProgress   Whether to emit PROGRESS_EVENT
+   * @param cb               Called with an error or with the digests of each
+   *                         chunk in hex, in the order of destinationPaths
+   */
+  @ReactMethod
+  public void encryptFileToChunksWithDigests(
+    String sourcePath,
+    ReadableArray destinationPaths,
+    String hexKey,
+    String hexIv,
+    Double chunkSize,
+    ReadableMap digests,
+    Double jobId,
+    Boolean reportProgress,
+    Callback cb
+  ) {
+    try {
+      String[] paths = new String[destinationPaths.size()];
+      for (int i = 0; i < destinationPaths.size(); i++) {
+        paths[i] = destinationPaths.getString(i);
+      }
+
+      byte[] key = HexUtils.decode(hexKey);
+      byte[] iv = HexUtils.decode(hexIv);
+
+      CryptoService.getInstance()
+        .encryptFileToChunks(
+          sourcePath,
+          paths,
+          key,
+          iv,
+          chunkSize.intValue(),
+          true,
+          jobOptions(sourcePath, jobId, reportProgress).withDigests(
+            toDigestSpec(digests)
+          ),
+          (Exception ex, List<FileDigests> result) -> {
+            if (ex == null) {
+              WritableArray chunks = Arguments.createArray();
+              for (FileDigests chunk : result) {
+                chunks.pushMap(toWritableMap(chunk));
+              }
+              cb.invoke(null, chunks);
+            } else {
+              cb.invoke(errorMessage(ex));
+            }
+          }
+        );
+    } catch (Exception e) {
+      cb.invoke(errorMessage(e));
+    }
+  }
+
+  /**
+   * Encrypts a file into chunks in background, working out how many chunks
+   * the file needs from its length, so no destination paths are passed.
+   *
+   * @param sourcePath      Path where file is located
+   * @param outputDirectory Directory where chunks are written, created if missing
+   * @param namePattern     Name of each chunk, {index} is replaced by the index
+   *                        of the chunk and {name} by the source file name
+   * @param hexKey          Encryption key in hex format
+   * @param hexIv           Initialization vector in hex format
+   * @param chunkSize       Size of each chunk in bytes
+   * @param digests         Algorithms to compute, as { plaintext, ciphertext },
+   *                        nullable
+   * @param jobId           Id to cancel the operation with
+   * @param reportProgress  Whether to emit PROGRESS_EVENT
+   * @param cb              Called with an error or with the path, offset,
+   *                        size and digests of each chunk
+   */
+  @ReactMethod
+  public void encryptFileToChunksPlanned(
+    String sourcePath,
+    String outputDirectory,
+    String namePattern,
+    String hexKey,
+    String hexIv,
+    Double chunkSize,
+    ReadableMap digests,
+    Double jobId,
+    Boolean reportProgress,
+    Callback cb
+  ) {
+    try {
+      byte[] key = HexUtils.decode(hexKey);
+      byte[] iv = HexUtils.decode(hexIv);
+
+      CryptoService.getInstance()
+        .encryptFileToChunks(
+          sourcePath,
+          outputDirectory,
+          namePattern,
+          key,
+          iv,
+          chunkSize.intValue(),
+          true,
+          jobOptions(sourcePath, jobId, reportProgress).withDigests(
+            digests != null ? toDigestSpec(digests) : null
+          ),
+          (Exception ex, ChunkPlan plan) -> {
+            if (ex == null) {
+              WritableArray chunks = Arguments.createArray();
+              for (ChunkPlan.Chunk chunk : plan.getChunks()) {
+                chunks.pushMap(toWritableMap(chunk));
+              }
+              cb.invoke(null, chunks);
+            } else {
+              cb.invoke(errorMessage(ex));
+            }
+          }
+        );
+    } catch (Exception e) {
+      cb.invoke(errorMessage(e));
+    }
+  }
+
+  /**
+   * Encrypts a file into chunks, encrypting up to parallelism chunks at the
+   * same time. Every time a chunk is ready a CHUNK_ENCRYPTED_EVENT is emitted
+   * with its index and path, so it can be used before the rest are done.
+   *
+   * @param sourcePath       Path where file is located
+   * @param destinationPaths Paths where each chunk is going to be written
+   * @param hexKey           Encryption key in hex format
+   * @param hexIv            Initialization vector in hex format
+   * @param chunkSize        Size of each chunk in bytes
+   * @param parallelism      Max amount of chunks encrypted at the same time
+   * @param jobId            Id to cancel the operation with
+   * @param reportProgress   Whether to emit PROGRESS_EVENT
+   * @param cb               Only error callback
+   */
+  @ReactMethod
+  public void encryptFileToChunksParallel(
+    String sourcePath,
+    ReadableArray destinationPaths,
+    String hexKey,
+    String hexIv,
+    Double chunkSize,
+    Double parallelism,
+    Double jobId,
+    Boolean reportProgress,
+    Callback cb
+  ) {
+    try {
+      String[] paths = new String[destinationPaths.size()];
+      for (int i = 0; i < destinationPaths.size(); i++) {
+        paths[i] = destinationPaths.getString(i);
+      }
+
+      byte[] key = HexUtils.decode(hexKey);
+      byte[] iv = HexUtils.decode(hexIv);
+
+      CryptoService.getInstance()
+        .encryptFileToChunksInParallel(
+          sourcePath,
+          paths,
+          key,
+          iv,
+          chunkSize.intValue(),
+          parallelism.intValue(),
+          true,
+          jobOptions(sourcePath, jobId, reportProgress),
+          (int index, String path) -> {
+            WritableMap chunk = Arguments.createMap();
+            chunk.putInt("jobId", jobId.intValue());
+            chunk.putInt("index", index);
+            chunk.putString("path", path);
+            emit(CHUNK_ENCRYPTED_EVENT, chunk);
+          },
+          (Exception ex, List<FileDigests> digests) ->
+            completion(cb).onComplete(ex)
+        );
+    } catch (Exception e) {
+      cb.invoke(errorMessage(e));
+    }
+  }
+
+  /**
+   * Cancels a file operation started with the given job id. It stops before
+   * its next buffer, deletes its partial output, unless it is resumable, and
+   * its callback receives an "Operation cancelled." error.
+   *
+   * @param jobId   Id the operation was started with
+   * @param promise Resolves with false if no operation runs with that id
+   */
+  @ReactMethod
+  public void cancel(Double jobId, Promise promise) {
+    promise.resolve(CryptoService.getInstance().cancel(jobId.intValue()));
+  }
+
+  private static List<FileBatchItem> toBatchItems(ReadableArray items) {
+    List<FileBatchItem> batch = new ArrayList<FileBatchItem>(items.size());
+    // Batches usually share keys, each distinct one is decoded once
+    Map<String, byte[]> decoded = new HashMap<String, byte[]>();
+
+    for (int i = 0; i < items.size(); i++) {
+      ReadableMap item = items.getMap(i);
+      batch.add(
+        new FileBatchItem(
+          item.getString("source"),
+          item.getString("destination"),
+          decodeHex(decoded, item.getString("key")),
+          decodeHex(decoded, item.getString("iv"))
+        )
+      );
+    }
+
+    return batch;
+  }
+
+  private static byte[] decodeHex(Map<String, byte[]> decoded, String hex) {
+    byte[] bytes = decoded.get(hex);
+    if (bytes == null) {
+      bytes = HexUtils.decode(hex);
+      decoded.put(hex, bytes);
+    }
+    return bytes;
+  }
+
+  private static void resolveBatch(
+    Promise promise,
+    List<FileBatchItem> batch,
+    Exception ex,
+    List<Exception> errors
+  ) {
+    if (ex != null) {
+      promise.reject("BATCH_FAILED", ex.getMessage());
+      return;
+    }
+
+    WritableArray results = Arguments.createArray();
+    for (int i = 0; i < batch.size(); i++) {
+      WritableMap result = Arguments.createMap();
+      result.putString("source", batch.get(i).getSourcePath());
+      result.putString("destination", batch.get(i).getDestinationPath());
+      if (errors.get(i) == null) {
+        result.putNull("error");
+      } else {
+        result.putString("error", errors.get(i).getMessage());
+      }
+      results.pushMap(result);
+    }
+
+    promise.resolve(results);
+  }
+
+  private static DigestSpec toDigestSpec(ReadableMap digests)
+    throws NoSuchAlgorithmException {
+    return new DigestSpec(
+      toStringList(digests, "plaintext"),
+      toStringList(digests, "ciphertext")
+    );
+  }
+
+  private static List<String> toStringList(ReadableMap map, String key) {
+    List<String> list = new ArrayList<String>();
+    if (map == null || !map.hasKey(key) || map.isNull(key)) {
+      return list;
+    }
+
+    ReadableArray array = map.getArray(key);
+    for (int i = 0; i < array.size(); i++) {
+      list.add(array.getString(i));
+    }
+    return list;
+  }
+
+  /**
+   * @param alwaysAttributes Whether entries without attributes get them as 0,
+   *                         as listDir always did for entries it could not stat
+   */
+  private static WritableArray toWritableArray(
+    List<DirectoryEntry> entries,
+    boolean alwaysAttributes
+  ) {
+    WritableArray result = Arguments.createArray();
+    for (DirectoryEntry entry : entries) {
+      WritableMap map = Arguments.createMap();
+      map.putString("name", entry.getName());
+      map.putString("path", entry.getPath());
+      if (entry.hasAttributes() || alwaysAttributes) {
+        map.putDouble("mtime", (double) entry.getLastModified() / 1000);
+        map.putDouble("size", (double) entry.getSize());
+        map.putInt("type", entry.isDirectory() ? 1 : 0);
+      }
+      result.pushMap(map);
+    }
+    return result;
+  }
+
+  private static WritableMap toWritableMap(ChunkPlan.Chunk chunk) {
+    WritableMap result = Arguments.createMap();
+    result.putString("path", chunk.getPath());
+    result.putDouble("offset", (double) chunk.getOffset());
+    result.putDouble("size", (double) chunk.getSize());
+    if (chunk.getDigests() != null) {
+      result.putMap("digests", toWritableMap(chunk.getDigests()));
+    }
+    return result;
+  }
+
+  private static WritableMap toWritableMap(FileDigests digests) {
+    WritableMap result = Arguments.createMap();
+    result.putMap("plaintext", toWritableMap(digests.getPlaintext()));
+    result.putMap("ciphertext", toWritableMap(digests.getCiphertext()));
+    return result;
+  }
+
+  private static WritableMap toWritableMap(Map<String, byte[]> digests) {
+    WritableMap result = Arguments.createMap();
+    for (Map.Entry<String, byte[]> digest : digests.entrySet()) {
+      result.putString(digest.getKey(), HexUtils.encode(digest.getValue()));
+    }
+    return result;
+  }
+
+  /**
+   * @return Options of a file operation cancelled through jobId that emits
+   *         its progress if asked for
+   */
+  private FileJobOptions jobOptions(
+    String path,
+    Double jobId,
+    Boolean reportProgress
+  ) {
+    return FileJobOptions.DEFAULT
+      .withProgress(progressEmitter(path, jobId, reportProgress))
+      .withJobId(jobId.intValue());
+  }
+
+  /**
+   * Emits PROGRESS_EVENT with the job id and the path of the file being
+   * processed and the bytes processed out of the total, a few times per
+   * second at most
+   *
+   * @return The emitter, or null if nobody listens to the progress of the job
+   */
+  private OnProgressCallback progressEmitter(
+    String path,
+    Double jobId,
+    Boolean reportProgress
+  ) {
+    if (!reportProgress) {
+      return null;
+    }
+
+    return new ProgressThrottle((long processed, long total) -> {
+      WritableMap progress = Arguments.createMap();
+      progress.putInt("jobId", jobId.intValue());
+      progress.putString("path", path);
+      progress.putDouble("processed", (double) processed);
+      progress.putDouble("total", (double) total);
+      emit(PROGRESS_EVENT, progress);
+    });
+  }
+
+  private void emit(String eventName, Object params) {
+    getReactApplicationContext()
+      .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+      .emit(eventName, params);
+  }
 }
@@ -0,0 +1,148 @@
+package com.rncrypto;
+
+import com.rncrypto.util.CtrCipherFactory;
+import com.rncrypto.util.OnProgressCallback;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Processes the segments of a file concurrently, for ParallelCtrFileCipher
+ * and SegmentedGcmFileCipher. Every thread claims segments until there are
+ * none left, once one of them fails the rest are skipped.
+ *
+ * The calling thread always takes part in the work, helpers are only an
+ * speed up: if the executor is saturated the caller processes every segment by
+ * itself, so sharing the executor with the calling operation cannot deadlock.
+ */
+class SegmentJob {
+
+  interface Processor {
+    void process(int segment, ByteBuffer input, ByteBuffer output)
+      throws IOException, GeneralSecurityException;
+  }
+
+  private final int segments;
+  private final int bufferSize;
+  private final Processor processor;
+
+  private final AtomicInteger nextSegment = new AtomicInteger();
+  private final AtomicReference<Exception> failure = new AtomicReference<>();
+  private final CountDownLatch pendingSegments;
+
+  private SegmentJob(int segments, int bufferSize, Processor processor) {
+    this.segments = segments;
+    this.bufferSize = bufferSize;
+    this.processor = processor;
+    this.pendingSegments = new CountDownLatch(segments);
+  }
+
+  /**
+   * Runs every segment, on the calling thread and on up to parallelism - 1
+   * helpers, returning once all of them are done.
+   *
+   * @param bufferSize Size of the input buffer of each thread, the output one
+   *                   has an extra block
+   */
+  static void run(
+    Executor executor,
+    int segments,
+    int parallelism,
+    int bufferSize,
+    Processor processor
+  ) throws IOException, GeneralSecurityException {
+    SegmentJob job = new SegmentJob(segments, bufferSize, processor);
+
+    int helpers = Math.min(parallelism, segments) - 1;
+    for (int i = 0; i < helpers; i++) {
+      try {
+        executor.execute(job::work);
+      } catch (RejectedExecutionException e) {
+        // Not an error, the segments left are processed by the caller
+        break;
+      }
+    }
+
+    job.work();
+    job.await();
+  }
+
+  /**
+   * Claims and processes segments until there are none left
+   */
+  private void work() {
+    ByteBuffer input = null;
+    ByteBuffer output = null;
+    int segment;
+
+    while ((segment = nextSegment.getAndIncrement()) < segments) {
+      try {
+        // Once something failed the rest of segments are only released
+        if (failure.get() == null) {
+          if (input == null) {
+            input = ByteBuffer.allocate(bufferSize);
+            output = ByteBuffer.allocate(bufferSize + CtrCipherFactory.BLOCK_SIZE);
+          }
+          processor.process(segment, input, output);
+        }
+      } catch (Exception e) {
+        failure.compareAndSet(null, e);
+      } finally {
+        pendingSegments.countDown();
+      }
+    }
+  }
+
+  private void await() throws IOException, GeneralSecurityException {
+    try {
+      pendingSegments.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      failure.compareAndSet(null, new InterruptedIOException());
+    }
+
+    Exception e = failure.get();
+    if (e instanceof IOException) {
+      throw (IOException) e;
+    }
+    if (e instanceof GeneralSecurityException) {
+      throw (GeneralSecurityException) e;
+    }
+    if (e instanceof RuntimeException) {
+      throw (RuntimeException) e;
+    }
+    if (e != null) {
+      throw new IOException("Error processing file segment", e);
+    }
+  }
+
+  /**
+   * Bytes processed by every thread working on the same file
+   */
+  static class Progress {
+
+    private final OnProgressCallback callback;
+    private final long total;
+    private final AtomicLong processed = new AtomicLong();
+
+    private Progress(OnProgressCallback callback, long total) {
+      this.callback = callback;
+      this.total = total;
+    }
+
+    static Progress of(OnProgressCallback callback, long total) {
+      return callback != null ? new Progress(callback, total) : null;
+    }
+
+    void add(long bytes) {
+      callback.onProgress(processed.addAndGet(bytes), total);
+    }
+  }
+}
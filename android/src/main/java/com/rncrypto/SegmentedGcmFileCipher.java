@@ -0,0 +1,509 @@
+package com.rncrypto;
+
+import com.rncrypto.util.CancellationToken;
+import com.rncrypto.util.FileUtils;
+import com.rncrypto.util.OnProgressCallback;
+import com.rncrypto.util.ProviderRegistry;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Authenticated file encryption with AES-256-GCM in fixed size segments,
+ * following the STREAM construction. Unlike AES-256-CTR, corruption or
+ * tampering is detected while decrypting, without hashing the file again.
+ *
+ * An encrypted file is a header followed by one segment per segmentSize
+ * bytes of plaintext, each one being its ciphertext and a 16 byte GCM tag:
+ *
+ *   header:  magic "RNCG" | version | segment size (int) | salt (16) | nonce prefix (7)
+ *   segment: ciphertext | tag
+ *
+ * Every file is encrypted with its own key, derived with HKDF-SHA256 from the
+ * given key and the salt. The nonce of each segment is the prefix, the
+ * segment index and a flag marking the last segment, and the header is
+ * authenticated with every segment, so segments cannot be reordered, dropped,
+ * truncated or moved to another file without failing their tag. An empty
+ * file still has one empty segment.
+ *
+ * Segments are independent, so they are encrypted and verified in parallel
+ * like in ParallelCtrFileCipher, and any of them can be decrypted and
+ * verified reading only the header and itself.
+ */
+public class SegmentedGcmFileCipher {
+
+  public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+  /**
+   * Largest segment size encrypted or accepted in a header. Every thread holds
+   * two buffers of a segment, a corrupt header must not make them huge.
+   */
+  public static final int MAX_SEGMENT_SIZE = 4 * 1024 * 1024;
+  public static final int HEADER_SIZE = 32;
+  public static final int TAG_SIZE = 16;
+
+  private static final byte[] MAGIC = { 'R', 'N', 'C', 'G' };
+  private static final byte VERSION = 1;
+  private static final int SALT_SIZE = 16;
+  private static final int NONCE_PREFIX_SIZE = 7;
+  private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+  private static final String HMAC = "HmacSHA256";
+  private static final byte[] KEY_INFO = "rn-crypto gcm segments".getBytes(
+    Charset.forName("UTF-8")
+  );
+
+  private static final SecureRandom random = new SecureRandom();
+
+  private final Executor executor;
+  private final int parallelism;
+  private final int segmentSize;
+
+  public SegmentedGcmFileCipher(Executor executor) {
+    this(
+      executor,
+      Runtime.getRuntime().availableProcessors(),
+      DEFAULT_SEGMENT_SIZE
+    );
+  }
+
+  /**
+   * @param executor    Executor running the helper threads
+   * @param parallelism Max amount of threads working on the same file
+   * @param segmentSize Plaintext bytes per segment of the files it encrypts,
+   *                    decryption uses the size written in each file
+   */
+  public SegmentedGcmFileCipher(
+    Executor executor,
+    int parallelism,
+    int segmentSize
+  ) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException(
+        "Parallelism must be greater than zero."
+      );
+    }
+
+    if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE) {
+      throw new IllegalArgumentException(
+        "Segment size must be between 1 and " + MAX_SEGMENT_SIZE + "."
+      );
+    }
+
+    this.executor = executor;
+    this.parallelism = parallelism;
+    this.segmentSize = segmentSize;
+  }
+
+  /**
+   * @return Size of the encrypted file for a plaintext of the given size
+   */
+  public static long encryptedSize(long plaintextSize, int segmentSize) {
+    return HEADER_SIZE + plaintextSize + segmentsFor(plaintextSize, segmentSize) * TAG_SIZE;
+  }
+
+  /**
+   * Encrypts the file at sourcePath, writes the output to destinationPath
+   *
+   * @param sourcePath      Path where file to encrypt is
+   * @param destinationPath Path where encrypted content is going to be written
+   * @param key             Key of 32 bytes
+   * @param progress        Notified after every segment from any thread, nullable
+   * @param cancellation    Checked before every segment, nullable
+   */
+  public void encryptFile(
+    String sourcePath,
+    String destinationPath,
+    byte[] key,
+    OnProgressCallback progress,
+    CancellationToken cancellation
+  ) throws IOException, GeneralSecurityException {
+    CancellationToken.check(cancellation);
+
+    try (
+      FileChannel source = FileUtils.openForReading(sourcePath);
+      FileChannel destination = FileUtils.openForWriting(destinationPath)
+    ) {
+      long length = source.size();
+      Header header = Header.create(segmentSize);
+      SecretKeySpec fileKey = header.deriveKey(key);
+      int segments = segmentsFor(length, segmentSize);
+      SegmentJob.Progress sharedProgress = SegmentJob.Progress.of(progress, length);
+
+      writeFully(destination, ByteBuffer.wrap(header.bytes), 0);
+
+      SegmentJob.run(
+        executor,
+        segments,
+        parallelism,
+        bufferSizeFor(length, segmentSize),
+        (segment, input, output) -> {
+          CancellationToken.check(cancellation);
+          long start = (long) segment * segmentSize;
+          int size = (int) Math.min(segmentSize, length - start);
+
+          input.clear();
+          input.limit(size);
+          readFully(source, input, start);
+          input.flip();
+
+          output.clear();
+          header
+            .cipher(Cipher.ENCRYPT_MODE, fileKey, segment, segment == segments - 1)
+            .doFinal(input, output);
+          output.flip();
+          writeFully(destination, output, header.segmentOffset(segment));
+
+          if (sharedProgress != null) {
+            sharedProgress.add(size);
+          }
+        }
+      );
+    }
+  }
+
+  /**
+   * Decrypts the file at sourcePath, writes the output to destinationPath.
+   * Throws an AEADBadTagException if any segment does not verify, in which
+   * case the output holds plaintext that cannot be trusted and must be
+   * discarded.
+   *
+   * @param sourcePath      Path where file to decrypt is
+   * @param destinationPath Path where decrypted content is going to be written
+   * @param key             Key the file was encrypted with
+   * @param progress        Notified after every segment from any thread, nullable
+   * @param cancellation    Checked before every segment, nullable
+   */
+  public void decryptFile(
+    String sourcePath,
+    String destinationPath,
+    byte[] key,
+    OnProgressCallback progress,
+    CancellationToken cancellation
+  ) throws IOException, GeneralSecurityException {
+    CancellationToken.check(cancellation);
+
+    try (
+      FileChannel source = FileUtils.openForReading(sourcePath);
+      FileChannel destination = FileUtils.openForWriting(destinationPath)
+    ) {
+      decrypt(source, destination, key, progress, cancellation);
+    }
+  }
+
+  /**
+   * Checks every segment of the file at sourcePath without writing anything.
+   * Throws an AEADBadTagException if any of them does not verify.
+   *
+   * @param sourcePath   Path where file to verify is
+   * @param key          Key the file was encrypted with
+   * @param progress     Notified after every segment from any thread, nullable
+   * @param cancellation Checked before every segment, nullable
+   */
+  public void verifyFile(
+    String sourcePath,
+    byte[] key,
+    OnProgressCallback progress,
+    CancellationToken cancellation
+  ) throws IOException, GeneralSecurityException {
+    CancellationToken.check(cancellation);
+
+    try (
+      FileChannel source = FileUtils.openForReading(sourcePath)
+    ) {
+      decrypt(source, null, key, progress, cancellation);
+    }
+  }
+
+  /**
+   * Decrypts length bytes of plaintext starting at offset, reading and
+   * verifying only the segments containing them.
+   *
+   * @param sourcePath      Path where file to decrypt is
+   * @param destinationPath Path where decrypted range is going to be written
+   * @param key             Key the file was encrypted with
+   * @param offset          Position of the first plaintext byte to decrypt
+   * @param length          Amount of bytes to decrypt, less if EOF is reached
+   * @return Amount of bytes written
+   */
+  public long decryptRange(
+    String sourcePath,
+    String destinationPath,
+    byte[] key,
+    long offset,
+    long length
+  ) throws IOException, GeneralSecurityException {
+    if (offset < 0 || length < 0) {
+      throw new IllegalArgumentException("Offset and length cannot be negative.");
+    }
+
+    try (
+      FileChannel source = FileUtils.openForReading(sourcePath);
+      FileChannel destination = FileUtils.openForWriting(destinationPath)
+    ) {
+      Header header = Header.read(source);
+      Layout layout = new Layout(header, source.size());
+      long end = Math.min(layout.plaintextSize, offset + Math.min(length, Long.MAX_VALUE - offset));
+      if (offset >= end) {
+        return 0;
+      }
+
+      SecretKeySpec fileKey = header.deriveKey(key);
+      int first = (int) (offset / header.segmentSize);
+      int last = (int) ((end - 1) / header.segmentSize);
+
+      SegmentJob.run(
+        executor,
+        last - first + 1,
+        parallelism,
+        bufferSizeFor(layout.plaintextSize, header.segmentSize),
+        (index, input, output) -> {
+          int segment = first + index;
+          decryptSegment(source, header, layout, fileKey, segment, input, output);
+
+          // Only the part of the segment inside the range is written
+          long segmentStart = (long) segment * header.segmentSize;
+          long from = Math.max(offset, segmentStart);
+          long to = Math.min(end, segmentStart + output.limit());
+          output.position((int) (from - segmentStart));
+          output.limit((int) (to - segmentStart));
+          writeFully(destination, output, from - offset);
+        }
+      );
+
+      return end - offset;
+    }
+  }
+
+  /**
+   * Decrypts and verifies every segment of the source
+   *
+   * @param destination Channel the plaintext is written to, null to only verify
+   */
+  private void decrypt(
+    FileChannel source,
+    FileChannel destination,
+    byte[] key,
+    OnProgressCallback progress,
+    CancellationToken cancellation
+  ) throws IOException, GeneralSecurityException {
+    Header header = Header.read(source);
+    Layout layout = new Layout(header, source.size());
+    SecretKeySpec fileKey = header.deriveKey(key);
+    SegmentJob.Progress sharedProgress = SegmentJob.Progress.of(
+      progress,
+      layout.plaintextSize
+    );
+
+    SegmentJob.run(
+      executor,
+      layout.segments,
+      parallelism,
+      bufferSizeFor(layout.plaintextSize, header.segmentSize),
+      (segment, input, output) -> {
+        CancellationToken.check(cancellation);
+        decryptSegment(source, header, layout, fileKey, segment, input, output);
+        int size = output.remaining();
+
+        if (destination != null) {
+          writeFully(destination, output, (long) segment * header.segmentSize);
+        }
+        if (sharedProgress != null) {
+          sharedProgress.add(size);
+        }
+      }
+    );
+  }
+
+  /**
+   * Reads and decrypts one segment, leaving its plaintext in output ready to
+   * be written
+   */
+  private static void decryptSegment(
+    FileChannel source,
+    Header header,
+    Layout layout,
+    SecretKeySpec fileKey,
+    int segment,
+    ByteBuffer input,
+    ByteBuffer output
+  ) throws IOException, GeneralSecurityException {
+    boolean last = segment == layout.segments - 1;
+
+    input.clear();
+    input.limit(last ? layout.lastSegmentSize : header.segmentSize + TAG_SIZE);
+    readFully(source, input, header.segmentOffset(segment));
+    input.flip();
+
+    output.clear();
+    header
+      .cipher(Cipher.DECRYPT_MODE, fileKey, segment, last)
+      .doFinal(input, output);
+    output.flip();
+  }
+
+  /**
+   * @return Size of the buffers holding a segment, no bigger than the file
+   *         needs
+   */
+  private static int bufferSizeFor(long plaintextSize, int segmentSize) {
+    return (int) Math.min(plaintextSize, segmentSize) + TAG_SIZE;
+  }
+
+  private static int segmentsFor(long plaintextSize, int segmentSize) {
+    long segments = Math.max(1, (plaintextSize + segmentSize - 1) / segmentSize);
+    if (segments > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("File too large for the segment size.");
+    }
+    return (int) segments;
+  }
+
+  private static void readFully(
+    FileChannel source,
+    ByteBuffer buffer,
+    long position
+  ) throws IOException {
+    long start = position - buffer.position();
+    while (buffer.hasRemaining()) {
+      if (source.read(buffer, start + buffer.position()) < 0) {
+        throw new EOFException("File was truncated while processing it");
+      }
+    }
+  }
+
+  private static void writeFully(
+    FileChannel destination,
+    ByteBuffer buffer,
+    long position
+  ) throws IOException {
+    long start = position - buffer.position();
+    while (buffer.hasRemaining()) {
+      destination.write(buffer, start + buffer.position());
+    }
+  }
+
+  /**
+   * Parameters of a file, written at its start
+   */
+  private static class Header {
+
+    final byte[] bytes;
+    final int segmentSize;
+
+    private Header(byte[] bytes) {
+      this.bytes = bytes;
+      this.segmentSize = ByteBuffer.wrap(bytes, MAGIC.length + 1, 4).getInt();
+    }
+
+    static Header create(int segmentSize) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.put(MAGIC).put(VERSION).putInt(segmentSize);
+      byte[] random = new byte[SALT_SIZE + NONCE_PREFIX_SIZE];
+      SegmentedGcmFileCipher.random.nextBytes(random);
+      header.put(random);
+      return new Header(header.array());
+    }
+
+    static Header read(FileChannel source) throws IOException {
+      ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+      while (buffer.hasRemaining()) {
+        if (source.read(buffer, buffer.position()) < 0) {
+          throw new IOException("Not a segmented GCM file, header is missing.");
+        }
+      }
+
+      byte[] bytes = buffer.array();
+      if (!Arrays.equals(MAGIC, Arrays.copyOf(bytes, MAGIC.length))) {
+        throw new IOException("Not a segmented GCM file.");
+      }
+      if (bytes[MAGIC.length] != VERSION) {
+        throw new IOException(
+          "Unsupported segmented GCM version " + bytes[MAGIC.length] + "."
+        );
+      }
+
+      Header header = new Header(bytes);
+      if (header.segmentSize <= 0 || header.segmentSize > MAX_SEGMENT_SIZE) {
+        throw new IOException("Invalid segment size " + header.segmentSize + ".");
+      }
+      return header;
+    }
+
+    /**
+     * HKDF-SHA256 of the key with the salt of the header, a single block of
+     * output is the 32 bytes of an AES-256 key
+     */
+    SecretKeySpec deriveKey(byte[] key) throws GeneralSecurityException {
+      if (key == null || key.length != 32) {
+        throw new InvalidKeyException("Key must be 32 bytes long.");
+      }
+
+      Mac mac = Mac.getInstance(HMAC);
+      mac.init(new SecretKeySpec(bytes, MAGIC.length + 5, SALT_SIZE, HMAC));
+      byte[] pseudoRandomKey = mac.doFinal(key);
+
+      mac.init(new SecretKeySpec(pseudoRandomKey, HMAC));
+      mac.update(KEY_INFO);
+      mac.update((byte) 1);
+      return new SecretKeySpec(mac.doFinal(), "AES");
+    }
+
+    /**
+     * @return Cipher of the segment, with the header already authenticated
+     */
+    Cipher cipher(int mode, SecretKeySpec fileKey, int segment, boolean last)
+      throws GeneralSecurityException {
+      byte[] nonce = ByteBuffer
+        .allocate(NONCE_PREFIX_SIZE + 5)
+        .put(bytes, HEADER_SIZE - NONCE_PREFIX_SIZE, NONCE_PREFIX_SIZE)
+        .putInt(segment)
+        .put((byte) (last ? 1 : 0))
+        .array();
+
+      Cipher cipher = ProviderRegistry.getShared().cipher(TRANSFORMATION);
+      cipher.init(mode, fileKey, new GCMParameterSpec(TAG_SIZE * 8, nonce));
+      cipher.updateAAD(bytes);
+      return cipher;
+    }
+
+    long segmentOffset(int segment) {
+      return HEADER_SIZE + (long) segment * (segmentSize + TAG_SIZE);
+    }
+  }
+
+  /**
+   * Segments of an encrypted file, worked out from its size
+   */
+  private static class Layout {
+
+    final int segments;
+    final int lastSegmentSize;
+    final long plaintextSize;
+
+    Layout(Header header, long fileSize) throws AEADBadTagException {
+      long body = fileSize - HEADER_SIZE;
+      long stride = header.segmentSize + TAG_SIZE;
+      long segments = Math.max(1, (body + stride - 1) / stride);
+      long lastSegmentSize = body - (segments - 1) * stride;
+
+      // Cut inside a tag, the last segment cannot verify
+      if (lastSegmentSize < TAG_SIZE || segments > Integer.MAX_VALUE) {
+        throw new AEADBadTagException("File was truncated.");
+      }
+
+      this.segments = (int) segments;
+      this.lastSegmentSize = (int) lastSegmentSize;
+      this.plaintextSize = body - segments * TAG_SIZE;
+    }
+  }
+}
@@ -1,9 +0,0 @@
-package com.rncrypto;
-
-import java.util.concurrent.Executor;
-
-public class ThreadPerTaskExecutor implements Executor {
-  public void execute(Runnable r) {
-    new Thread(r).start();
-  }
-}
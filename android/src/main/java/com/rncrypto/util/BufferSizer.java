@@ -0,0 +1,188 @@
+package com.rncrypto.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.util.Random;
+import javax.crypto.Cipher;
+
+/**
+ * Decides the size of the buffers used to read, process and write files.
+ *
+ * The size can be fixed or, by default, automatic. In automatic mode the
+ * buffer is never bigger than the data to process, and big files use the size
+ * found by a one time calibration, or DEFAULT_AUTO_SIZE until it runs.
+ */
+public class BufferSizer {
+
+  public static final int AUTO = 0;
+  public static final int MIN_SIZE = 4 * 1024;
+  public static final int MAX_SIZE = 16 * 1024 * 1024;
+  public static final int DEFAULT_AUTO_SIZE = 256 * 1024;
+  public static final int UNKNOWN_LENGTH = -1;
+
+  private static final int[] CALIBRATION_CANDIDATES = {
+    64 * 1024,
+    128 * 1024,
+    256 * 1024,
+    512 * 1024,
+    1024 * 1024,
+  };
+  private static final int CALIBRATION_FILE_SIZE = 16 * 1024 * 1024;
+  // A bigger buffer has to be this much faster to be worth its memory
+  private static final double CALIBRATION_MIN_GAIN = 1.05;
+
+  private volatile int fixedSize;
+  private volatile int calibratedSize = 0;
+
+  public BufferSizer() {
+    this(AUTO);
+  }
+
+  /**
+   * @param fixedSize Size of every buffer, or AUTO to decide it per file
+   */
+  public BufferSizer(int fixedSize) {
+    setFixedSize(fixedSize);
+  }
+
+  /**
+   * @param fixedSize Size of every buffer, or AUTO to decide it per file
+   */
+  public void setFixedSize(int fixedSize) {
+    if (fixedSize != AUTO && (fixedSize < MIN_SIZE || fixedSize > MAX_SIZE)) {
+      throw new IllegalArgumentException(
+        "Buffer size must be between " + MIN_SIZE + " and " + MAX_SIZE + " bytes."
+      );
+    }
+
+    this.fixedSize = fixedSize;
+  }
+
+  /**
+   * @return The fixed buffer size, or AUTO
+   */
+  public int getFixedSize() {
+    return fixedSize;
+  }
+
+  /**
+   * @return The size chosen by the calibration, 0 if it has not run yet
+   */
+  public int getCalibratedSize() {
+    return calibratedSize;
+  }
+
+  /**
+   * @param length Amount of bytes to process, or UNKNOWN_LENGTH
+   * @return Buffer size to use for processing that amount of bytes
+   */
+  public int sizeFor(long length) {
+    int size = fixedSize;
+    if (size != AUTO) {
+      return size;
+    }
+
+    size = calibratedSize > 0 ? calibratedSize : DEFAULT_AUTO_SIZE;
+
+    if (length >= 0 && length < size) {
+      // Never allocate more than the data needs, rounded to a power of two
+      size = Math.max(MIN_SIZE, Integer.highestOneBit((int) length - 1) << 1);
+    }
+
+    return size;
+  }
+
+  /**
+   * Encrypts a temporary file with each candidate size and keeps the
+   * smallest one whose throughput is close to the best. Runs only once, the
+   * following calls return the size already found.
+   *
+   * @param directory Directory where the temporary files are written
+   * @return The calibrated size
+   */
+  public synchronized int calibrate(File directory)
+    throws IOException, GeneralSecurityException {
+    if (calibratedSize > 0) {
+      return calibratedSize;
+    }
+
+    File source = File.createTempFile("rn-crypto-calibration", ".bin", directory);
+    File destination = File.createTempFile("rn-crypto-calibration", ".enc", directory);
+
+    try {
+      byte[] block = new byte[1024 * 1024];
+      new Random().nextBytes(block);
+      try (FileOutputStream output = new FileOutputStream(source)) {
+        for (int i = 0; i < CALIBRATION_FILE_SIZE / block.length; i++) {
+          output.write(block);
+        }
+      }
+
+      byte[] key = new byte[32];
+      byte[] iv = new byte[16];
+      double[] throughputs = new double[CALIBRATION_CANDIDATES.length];
+      double best = 0;
+
+      for (int i = 0; i < CALIBRATION_CANDIDATES.length; i++) {
+        // First pass warms up the page cache and the JIT
+        long elapsed = Long.MAX_VALUE;
+        for (int pass = 0; pass < 3; pass++) {
+          long start = System.nanoTime();
+          encrypt(source, destination, CALIBRATION_CANDIDATES[i], key, iv);
+          if (pass > 0) {
+            elapsed = Math.min(elapsed, System.nanoTime() - start);
+          }
+        }
+        throughputs[i] = (double) CALIBRATION_FILE_SIZE / elapsed;
+        best = Math.max(best, throughputs[i]);
+      }
+
+      int chosen = CALIBRATION_CANDIDATES[CALIBRATION_CANDIDATES.length - 1];
+      for (int i = 0; i < CALIBRATION_CANDIDATES.length; i++) {
+        if (throughputs[i] * CALIBRATION_MIN_GAIN >= best) {
+          chosen = CALIBRATION_CANDIDATES[i];
+          break;
+        }
+      }
+
+      calibratedSize = chosen;
+      return chosen;
+    } finally {
+      source.delete();
+      destination.delete();
+    }
+  }
+
+  private static void encrypt(
+    File source,
+    File destination,
+    int bufferSize,
+    byte[] key,
+    byte[] iv
+  ) throws IOException, GeneralSecurityException {
+    Cipher cipher = CtrCipherFactory.create(Cipher.ENCRYPT_MODE, key, iv);
+    ByteBuffer input = ByteBuffer.allocateDirect(bufferSize);
+    ByteBuffer output = ByteBuffer.allocateDirect(bufferSize + CtrCipherFactory.BLOCK_SIZE);
+
+    try (
+      FileChannel in = new FileInputStream(source).getChannel();
+      FileChannel out = new FileOutputStream(destination).getChannel()
+    ) {
+      while (in.read(input) >= 0) {
+        input.flip();
+        output.clear();
+        cipher.update(input, output);
+        output.flip();
+        while (output.hasRemaining()) {
+          out.write(output);
+        }
+        input.clear();
+      }
+    }
+  }
+}
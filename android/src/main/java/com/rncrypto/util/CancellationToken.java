@@ -0,0 +1,29 @@
+package com.rncrypto.util;
+
+/**
+ * Cooperative cancellation of a file operation. The operation checks the
+ * token between buffers, so it stops within one buffer of being cancelled.
+ */
+public class CancellationToken {
+
+  private volatile boolean cancelled = false;
+
+  public void cancel() {
+    cancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * @param token Token to check, nullable
+   * @throws OperationCancelledException If the token was cancelled
+   */
+  public static void check(CancellationToken token)
+    throws OperationCancelledException {
+    if (token != null && token.cancelled) {
+      throw new OperationCancelledException();
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package com.rncrypto.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Chunks a file is going to be encrypted into, worked out from its length so
+ * there is always exactly one path per chunk.
+ *
+ * Chunk names come from a pattern where {index} is replaced by the index of
+ * the chunk, starting at 0, and {name} by the name of the source file, e.g.
+ * "{name}.part{index}".
+ */
+public class ChunkPlan {
+
+  public static final String INDEX_PLACEHOLDER = "{index}";
+  public static final String NAME_PLACEHOLDER = "{name}";
+
+  /**
+   * A chunk of the plan, size is the same for its plaintext and ciphertext
+   */
+  public static class Chunk {
+
+    private final int index;
+    private final String path;
+    private final long offset;
+    private final long size;
+    private final FileDigests digests;
+
+    Chunk(int index, String path, long offset, long size, FileDigests digests) {
+      this.index = index;
+      this.path = path;
+      this.offset = offset;
+      this.size = size;
+      this.digests = digests;
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    public String getPath() {
+      return path;
+    }
+
+    /**
+     * @return Position of the first byte of the chunk in the source file
+     */
+    public long getOffset() {
+      return offset;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    /**
+     * @return Digests computed while the chunk was encrypted, null if none
+     *         were requested
+     */
+    public FileDigests getDigests() {
+      return digests;
+    }
+  }
+
+  private final List<Chunk> chunks;
+
+  private ChunkPlan(List<Chunk> chunks) {
+    this.chunks = Collections.unmodifiableList(chunks);
+  }
+
+  /**
+   * Plans the chunks of a file and creates the directory they are written to.
+   * An empty file still gets one empty chunk.
+   *
+   * @param sourcePath      Path of the file to split
+   * @param sourceLength    Length of the file in bytes
+   * @param chunkSize       Size of each chunk in bytes, the last one may be smaller
+   * @param outputDirectory Directory where the chunks are going to be written
+   * @param namePattern     Name of each chunk, must contain {index}
+   */
+  public static ChunkPlan create(
+    String sourcePath,
+    long sourceLength,
+    int chunkSize,
+    String outputDirectory,
+    String namePattern
+  ) throws IOException {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException(
+        "Chunk size must be greater than zero."
+      );
+    }
+    if (namePattern == null || !namePattern.contains(INDEX_PLACEHOLDER)) {
+      throw new IllegalArgumentException(
+        "Name pattern must contain " + INDEX_PLACEHOLDER + "."
+      );
+    }
+    if (namePattern.indexOf('/') >= 0 || namePattern.indexOf('\\') >= 0) {
+      throw new IllegalArgumentException(
+        "Name pattern cannot contain path separators."
+      );
+    }
+
+    File directory = new File(outputDirectory);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create directory " + outputDirectory);
+    }
+
+    long count = Math.max(1, (sourceLength + chunkSize - 1) / chunkSize);
+    if (count > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Too many chunks for the file size.");
+    }
+
+    String name = namePattern.replace(
+      NAME_PLACEHOLDER,
+      new File(sourcePath).getName()
+    );
+    List<Chunk> chunks = new ArrayList<>((int) count);
+    for (int i = 0; i < count; i++) {
+      long offset = (long) i * chunkSize;
+      chunks.add(
+        new Chunk(
+          i,
+          new File(directory, name.replace(INDEX_PLACEHOLDER, String.valueOf(i)))
+            .getPath(),
+          offset,
+          Math.min(chunkSize, sourceLength - offset),
+          null
+        )
+      );
+    }
+    return new ChunkPlan(chunks);
+  }
+
+  /**
+   * @param digests Digests of each chunk in order, nullable
+   * @return The same plan with the digests of each chunk
+   */
+  public ChunkPlan withDigests(List<FileDigests> digests) {
+    if (digests == null) {
+      return this;
+    }
+
+    List<Chunk> result = new ArrayList<>(chunks.size());
+    for (Chunk chunk : chunks) {
+      result.add(
+        new Chunk(
+          chunk.index,
+          chunk.path,
+          chunk.offset,
+          chunk.size,
+          digests.get(chunk.index)
+        )
+      );
+    }
+    return new ChunkPlan(result);
+  }
+
+  public List<Chunk> getChunks() {
+    return chunks;
+  }
+
+  public String[] getPaths() {
+    String[] paths = new String[chunks.size()];
+    for (Chunk chunk : chunks) {
+      paths[chunk.index] = chunk.path;
+    }
+    return paths;
+  }
+}
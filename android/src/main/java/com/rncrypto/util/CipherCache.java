@@ -0,0 +1,81 @@
+package com.rncrypto.util;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Cipher instances kept per thread and transformation, re-initialised with
+ * every new key and IV instead of created again.
+ *
+ * Creating a Cipher looks up the provider and creating its key spec copies
+ * the key, which for small files costs more than encrypting them. Reusing the
+ * key spec while the key does not change also lets providers that remember
+ * the last key skip its expansion.
+ *
+ * A thread gets the same instance every time, so the Cipher returned must be
+ * finished before the same thread initialises another one of the same
+ * transformation, and must not be handed to other threads.
+ */
+public class CipherCache {
+
+  private static final ThreadLocal<Map<String, Entry>> ciphers = new ThreadLocal<Map<String, Entry>>() {
+    @Override
+    protected Map<String, Entry> initialValue() {
+      return new HashMap<>();
+    }
+  };
+
+  /**
+   * @param transformation Transformation like AES/CTR/NoPadding
+   * @param mode           Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE
+   * @param key            Cipher key
+   * @param iv             Initialization vector
+   * @return The Cipher of this thread for the transformation, initialised
+   */
+  public static Cipher init(String transformation, int mode, byte[] key, byte[] iv)
+    throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException {
+    Map<String, Entry> threadCiphers = ciphers.get();
+    Entry entry = threadCiphers.get(transformation);
+    ProviderRegistry providers = ProviderRegistry.getShared();
+    Provider provider = providers.providerFor(transformation);
+
+    // A calibration may have selected another provider since it was cached
+    if (entry == null || (provider != null && entry.cipher.getProvider() != provider)) {
+      entry = new Entry(providers.cipher(transformation));
+      threadCiphers.put(transformation, entry);
+    }
+
+    if (entry.keySpec == null || !Arrays.equals(entry.key, key)) {
+      entry.keySpec = new SecretKeySpec(key, keyAlgorithm(transformation));
+      entry.key = key.clone();
+    }
+
+    entry.cipher.init(mode, entry.keySpec, new IvParameterSpec(iv));
+    return entry.cipher;
+  }
+
+  private static String keyAlgorithm(String transformation) {
+    int separator = transformation.indexOf('/');
+    return separator < 0 ? transformation : transformation.substring(0, separator);
+  }
+
+  private static class Entry {
+
+    final Cipher cipher;
+    byte[] key;
+    SecretKeySpec keySpec;
+
+    Entry(Cipher cipher) {
+      this.cipher = cipher;
+    }
+  }
+}
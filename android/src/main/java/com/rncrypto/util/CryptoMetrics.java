@@ -0,0 +1,276 @@
+package com.rncrypto.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters of the operations run by the library, by operation name.
+ *
+ * Recording only updates atomic counters, so it takes no locks and adds no
+ * contention between workers. Reads are not atomic across counters: a
+ * snapshot taken while operations finish may be off by the ones finishing.
+ */
+public class CryptoMetrics {
+
+  /**
+   * Upper bounds in MB/s of every throughput histogram bucket but the last
+   * one, which counts everything above them
+   */
+  public static final int[] THROUGHPUT_BUCKETS = {
+    1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024,
+  };
+
+  // ConcurrentMap, Map.putIfAbsent is a default method that needs API 24
+  private final ConcurrentMap<String, OperationStats> operations =
+    new ConcurrentHashMap<>();
+  private final CopyOnWriteArrayList<MetricsListener> listeners = new CopyOnWriteArrayList<>();
+
+  public void addListener(MetricsListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(MetricsListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Records a finished operation and notifies the listeners
+   *
+   * @param operation      Name of the operation, like encryptFile
+   * @param bytes          Bytes of input processed
+   * @param queueWaitNanos Time waiting for a worker before starting
+   * @param wallNanos      Time since it was submitted until it finished,
+   *                       queue wait included
+   * @param error          Error of the operation, null if it succeeded
+   */
+  public void record(
+    String operation,
+    long bytes,
+    long queueWaitNanos,
+    long wallNanos,
+    Exception error
+  ) {
+    OperationStats stats = operations.get(operation);
+    if (stats == null) {
+      OperationStats created = new OperationStats();
+      stats = operations.putIfAbsent(operation, created);
+      if (stats == null) {
+        stats = created;
+      }
+    }
+
+    OperationRecord record = new OperationRecord(
+      operation,
+      bytes,
+      queueWaitNanos,
+      wallNanos,
+      error
+    );
+    stats.add(record);
+
+    for (MetricsListener listener : listeners) {
+      try {
+        listener.onOperationCompleted(record);
+      } catch (RuntimeException e) {
+        // A failing listener must not fail the operation
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * @return Counters of every operation recorded so far, by operation name
+   */
+  public Map<String, OperationStats.Snapshot> snapshot() {
+    Map<String, OperationStats.Snapshot> snapshot = new HashMap<>();
+    for (Map.Entry<String, OperationStats> entry : operations.entrySet()) {
+      snapshot.put(entry.getKey(), entry.getValue().snapshot());
+    }
+    return Collections.unmodifiableMap(snapshot);
+  }
+
+  public void reset() {
+    operations.clear();
+  }
+
+  /**
+   * @return Index of the histogram bucket the throughput falls in
+   */
+  static int bucketOf(double megabytesPerSecond) {
+    for (int i = 0; i < THROUGHPUT_BUCKETS.length; i++) {
+      if (megabytesPerSecond < THROUGHPUT_BUCKETS[i]) {
+        return i;
+      }
+    }
+    return THROUGHPUT_BUCKETS.length;
+  }
+
+  public static class OperationStats {
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong wallNanos = new AtomicLong();
+    private final AtomicLong maxWallNanos = new AtomicLong();
+    private final AtomicLong queueWaitNanos = new AtomicLong();
+    private final AtomicLongArray throughput = new AtomicLongArray(
+      THROUGHPUT_BUCKETS.length + 1
+    );
+    private final ConcurrentMap<String, AtomicLong> errorTypes =
+      new ConcurrentHashMap<>();
+
+    void add(OperationRecord record) {
+      count.incrementAndGet();
+      wallNanos.addAndGet(record.getWallNanos());
+      queueWaitNanos.addAndGet(record.getQueueWaitNanos());
+
+      long max;
+      while ((max = maxWallNanos.get()) < record.getWallNanos()) {
+        if (maxWallNanos.compareAndSet(max, record.getWallNanos())) {
+          break;
+        }
+      }
+
+      Exception error = record.getError();
+      if (error instanceof OperationCancelledException) {
+        cancelled.incrementAndGet();
+      } else if (error != null) {
+        errors.incrementAndGet();
+
+        String type = error.getClass().getSimpleName();
+        AtomicLong typeCount = errorTypes.get(type);
+        if (typeCount == null) {
+          AtomicLong created = new AtomicLong();
+          typeCount = errorTypes.putIfAbsent(type, created);
+          if (typeCount == null) {
+            typeCount = created;
+          }
+        }
+        typeCount.incrementAndGet();
+      } else {
+        bytes.addAndGet(record.getBytes());
+        if (record.getBytes() > 0) {
+          throughput.incrementAndGet(bucketOf(record.getMegabytesPerSecond()));
+        }
+      }
+    }
+
+    Snapshot snapshot() {
+      long[] histogram = new long[throughput.length()];
+      for (int i = 0; i < histogram.length; i++) {
+        histogram[i] = throughput.get(i);
+      }
+
+      Map<String, Long> types = new HashMap<>();
+      for (Map.Entry<String, AtomicLong> entry : errorTypes.entrySet()) {
+        types.put(entry.getKey(), entry.getValue().get());
+      }
+
+      return new Snapshot(
+        count.get(),
+        errors.get(),
+        cancelled.get(),
+        bytes.get(),
+        wallNanos.get(),
+        maxWallNanos.get(),
+        queueWaitNanos.get(),
+        histogram,
+        Collections.unmodifiableMap(types)
+      );
+    }
+
+    public static class Snapshot {
+
+      private final long count;
+      private final long errors;
+      private final long cancelled;
+      private final long bytes;
+      private final long wallNanos;
+      private final long maxWallNanos;
+      private final long queueWaitNanos;
+      private final long[] throughputHistogram;
+      private final Map<String, Long> errorTypes;
+
+      Snapshot(
+        long count,
+        long errors,
+        long cancelled,
+        long bytes,
+        long wallNanos,
+        long maxWallNanos,
+        long queueWaitNanos,
+        long[] throughputHistogram,
+        Map<String, Long> errorTypes
+      ) {
+        this.count = count;
+        this.errors = errors;
+        this.cancelled = cancelled;
+        this.bytes = bytes;
+        this.wallNanos = wallNanos;
+        this.maxWallNanos = maxWallNanos;
+        this.queueWaitNanos = queueWaitNanos;
+        this.throughputHistogram = throughputHistogram;
+        this.errorTypes = errorTypes;
+      }
+
+      /**
+       * @return Operations finished, including failed and cancelled ones
+       */
+      public long getCount() {
+        return count;
+      }
+
+      /**
+       * @return Operations failed, not counting cancelled ones
+       */
+      public long getErrors() {
+        return errors;
+      }
+
+      public long getCancelled() {
+        return cancelled;
+      }
+
+      /**
+       * @return Bytes processed by the operations that succeeded
+       */
+      public long getBytes() {
+        return bytes;
+      }
+
+      public long getWallNanos() {
+        return wallNanos;
+      }
+
+      public long getMaxWallNanos() {
+        return maxWallNanos;
+      }
+
+      public long getQueueWaitNanos() {
+        return queueWaitNanos;
+      }
+
+      /**
+       * @return Operations that succeeded by throughput, bucket i counts the
+       * ones below THROUGHPUT_BUCKETS[i] MB/s and the last one the rest
+       */
+      public long[] getThroughputHistogram() {
+        return throughputHistogram.clone();
+      }
+
+      /**
+       * @return Errors by exception class name
+       */
+      public Map<String, Long> getErrorTypes() {
+        return errorTypes;
+      }
+    }
+  }
+}
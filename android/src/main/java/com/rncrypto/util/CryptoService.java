@@ -1,39 +1,218 @@
 package com.rncrypto.util;
 
-import com.facebook.common.util.Hex;
+import com.rncrypto.AuthenticatedFileRepository;
 import com.rncrypto.DecryptFileRepository;
 import com.rncrypto.EncryptFileRepository;
-import com.rncrypto.ThreadPerTaskExecutor;
+import com.rncrypto.HashFileRepository;
+import com.rncrypto.JoinFilesRepository;
+import com.rncrypto.KeyDerivationRepository;
+import com.rncrypto.ListDirRepository;
+import com.rncrypto.ParallelCtrFileCipher;
+import com.rncrypto.PipelinedChannelCipher;
+import com.rncrypto.SegmentedGcmFileCipher;
+import com.rncrypto.CryptoWorkerPool;
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
 import java.sql.Array;
 import java.util.List;
-import javax.crypto.SecretKey;
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.PBEKeySpec;
 
 public class CryptoService {
 
   private static CryptoService instance = null;
   private final EncryptFileRepository encryptFileRepository;
   private final DecryptFileRepository decryptFileRepository;
+  private final HashFileRepository hashFileRepository;
+  private final JoinFilesRepository joinFilesRepository;
+  private final KeyDerivationRepository keyDerivationRepository;
+  private final AuthenticatedFileRepository authenticatedFileRepository;
+  private final ListDirRepository listDirRepository;
+  private final HashSessionRegistry hashSessions = new HashSessionRegistry();
+  private final JobRegistry jobs = new JobRegistry();
+  private final CryptoMetrics metrics = new CryptoMetrics();
+  private final BufferSizer bufferSizer;
+  private final PipelinedChannelCipher pipelinedCipher;
 
   public CryptoService(
     EncryptFileRepository encryptFileRepository,
     DecryptFileRepository decryptFileRepository
   ) {
-    this.decryptFileRepository = decryptFileRepository;
-    this.encryptFileRepository = encryptFileRepository;
+    this(new Builder(encryptFileRepository, decryptFileRepository));
+  }
+
+  private CryptoService(Builder builder) {
+    BufferSizer bufferSizer = builder.bufferSizer != null
+      ? builder.bufferSizer
+      : new BufferSizer();
+    this.encryptFileRepository = builder.encryptFileRepository;
+    this.decryptFileRepository = builder.decryptFileRepository;
+    this.hashFileRepository =
+      builder.hashFileRepository != null
+        ? builder.hashFileRepository
+        : new HashFileRepository(CryptoWorkerPool.getShared(), bufferSizer);
+    this.joinFilesRepository =
+      builder.joinFilesRepository != null
+        ? builder.joinFilesRepository
+        : new JoinFilesRepository(CryptoWorkerPool.getShared());
+    this.keyDerivationRepository =
+      builder.keyDerivationRepository != null
+        ? builder.keyDerivationRepository
+        : new KeyDerivationRepository(CryptoWorkerPool.getCompute());
+    this.authenticatedFileRepository =
+      builder.authenticatedFileRepository != null
+        ? builder.authenticatedFileRepository
+        : new AuthenticatedFileRepository(CryptoWorkerPool.getShared());
+    this.listDirRepository =
+      builder.listDirRepository != null
+        ? builder.listDirRepository
+        : new ListDirRepository(CryptoWorkerPool.getShared());
+    this.bufferSizer = bufferSizer;
+    this.pipelinedCipher = builder.pipelinedCipher;
+  }
+
+  /**
+   * Builds a CryptoService from its repositories. The ones not given are
+   * created on the shared worker pool, key derivations on the compute pool.
+   */
+  public static class Builder {
+
+    private final EncryptFileRepository encryptFileRepository;
+    private final DecryptFileRepository decryptFileRepository;
+    private HashFileRepository hashFileRepository;
+    private JoinFilesRepository joinFilesRepository;
+    private KeyDerivationRepository keyDerivationRepository;
+    private AuthenticatedFileRepository authenticatedFileRepository;
+    private ListDirRepository listDirRepository;
+    private BufferSizer bufferSizer;
+    private PipelinedChannelCipher pipelinedCipher;
+
+    public Builder(
+      EncryptFileRepository encryptFileRepository,
+      DecryptFileRepository decryptFileRepository
+    ) {
+      this.encryptFileRepository = encryptFileRepository;
+      this.decryptFileRepository = decryptFileRepository;
+    }
+
+    public Builder hashFileRepository(HashFileRepository hashFileRepository) {
+      this.hashFileRepository = hashFileRepository;
+      return this;
+    }
+
+    public Builder joinFilesRepository(
+      JoinFilesRepository joinFilesRepository
+    ) {
+      this.joinFilesRepository = joinFilesRepository;
+      return this;
+    }
+
+    public Builder keyDerivationRepository(
+      KeyDerivationRepository keyDerivationRepository
+    ) {
+      this.keyDerivationRepository = keyDerivationRepository;
+      return this;
+    }
+
+    public Builder authenticatedFileRepository(
+      AuthenticatedFileRepository authenticatedFileRepository
+    ) {
+      this.authenticatedFileRepository = authenticatedFileRepository;
+      return this;
+    }
+
+    public Builder listDirRepository(ListDirRepository listDirRepository) {
+      this.listDirRepository = listDirRepository;
+      return this;
+    }
+
+    /**
+     * @param bufferSizer Buffer sizer shared with the repositories, so changing
+     *                    the buffer size through the service applies to them
+     */
+    public Builder bufferSizer(BufferSizer bufferSizer) {
+      this.bufferSizer = bufferSizer;
+      return this;
+    }
+
+    /**
+     * @param pipelinedCipher Cipher the repositories use for whole files, so
+     *                        setPipelinedIo can turn it on and off
+     */
+    public Builder pipelinedCipher(PipelinedChannelCipher pipelinedCipher) {
+      this.pipelinedCipher = pipelinedCipher;
+      return this;
+    }
+
+    public CryptoService build() {
+      return new CryptoService(this);
+    }
   }
 
   private static synchronized void createInstance() {
     if (instance == null) {
-      instance = new CryptoService(
-        new EncryptFileRepository(new ThreadPerTaskExecutor()),
-        new DecryptFileRepository(new ThreadPerTaskExecutor())
+      CryptoWorkerPool workerPool = CryptoWorkerPool.getShared();
+      BufferSizer bufferSizer = new BufferSizer();
+      int cores = Runtime.getRuntime().availableProcessors();
+      // Every whole file running on the shared pool may use a reader and a
+      // writer. Disabled until setPipelinedIo asks for it
+      PipelinedChannelCipher channelCipher = new PipelinedChannelCipher(
+        new CryptoWorkerPool(
+          "rn-crypto-io",
+          cores * 2,
+          cores * 2,
+          CryptoWorkerPool.RejectionPolicy.ABORT
+        ),
+        bufferSizer,
+        PipelinedChannelCipher.DEFAULT_DEPTH,
+        PipelinedChannelCipher.DEFAULT_THRESHOLD
+      );
+      // Segments get their own workers so they never wait behind whole files
+      CryptoWorkerPool segmentPool = new CryptoWorkerPool(
+        "rn-crypto-segment",
+        cores,
+        cores * 4,
+        CryptoWorkerPool.RejectionPolicy.ABORT
       );
+      ParallelCtrFileCipher parallelCipher = new ParallelCtrFileCipher(
+        segmentPool,
+        cores,
+        ParallelCtrFileCipher.DEFAULT_SEGMENT_SIZE,
+        bufferSizer
+      );
+
+      instance =
+        new Builder(
+          new EncryptFileRepository(
+            workerPool,
+            parallelCipher,
+            channelCipher,
+            bufferSizer
+          ),
+          new DecryptFileRepository(
+            workerPool,
+            parallelCipher,
+            channelCipher,
+            bufferSizer
+          )
+        )
+          .hashFileRepository(new HashFileRepository(workerPool, bufferSizer))
+          .authenticatedFileRepository(
+            new AuthenticatedFileRepository(
+              workerPool,
+              new SegmentedGcmFileCipher(
+                segmentPool,
+                cores,
+                SegmentedGcmFileCipher.DEFAULT_SEGMENT_SIZE
+              )
+            )
+          )
+          .bufferSizer(bufferSizer)
+          .pipelinedCipher(channelCipher)
+          .build();
     }
   }
 
@@ -44,6 +223,63 @@ public class CryptoService {
     return instance;
   }
 
+  /**
+   * Sets the size of the buffers used to read and write files
+   *
+   * @param bufferSize Size in bytes, or BufferSizer.AUTO to decide it per file
+   */
+  public void setBufferSize(int bufferSize) {
+    this.bufferSizer.setFixedSize(bufferSize);
+  }
+
+  /**
+   * @return The fixed buffer size, or BufferSizer.AUTO
+   */
+  public int getBufferSize() {
+    return this.bufferSizer.getFixedSize();
+  }
+
+  /**
+   * @param length Amount of bytes to process, or BufferSizer.UNKNOWN_LENGTH
+   * @return Buffer size used for processing that amount of bytes
+   */
+  public int getBufferSizeFor(long length) {
+    return this.bufferSizer.sizeFor(length);
+  }
+
+  /**
+   * Measures which buffer size performs better on this device, used from
+   * then on when the buffer size is BufferSizer.AUTO. Only measured once.
+   *
+   * @param directory Directory where temporary files can be written
+   * @return The buffer size found
+   */
+  public int calibrateBufferSize(File directory)
+    throws IOException, GeneralSecurityException {
+    return this.bufferSizer.calibrate(directory);
+  }
+
+  /**
+   * Sets whether whole files overlap reads, cipher and writes. Pays off on
+   * slow storage like SD cards, on flash the sequential loop is as fast or
+   * faster. Disabled by default.
+   *
+   * @param enabled Whether whole files are pipelined
+   */
+  public void setPipelinedIo(boolean enabled) {
+    if (this.pipelinedCipher == null) {
+      throw new IllegalStateException("Pipelined I/O is not available.");
+    }
+    this.pipelinedCipher.setEnabled(enabled);
+  }
+
+  /**
+   * @return Whether whole files are pipelined
+   */
+  public boolean isPipelinedIo() {
+    return this.pipelinedCipher != null && this.pipelinedCipher.isEnabled();
+  }
+
   public static byte[] generateIv(int size) {
     byte[] iv = new byte[size];
     new SecureRandom().nextBytes(iv);
@@ -69,8 +305,50 @@ public class CryptoService {
     boolean runInBackground,
     OnlyErrorCallback onlyErrorCallback
   ) {
-    byte[] key = Hex.decodeHex(hexKey);
-    byte[] iv = Hex.decodeHex(hexIv);
+    encryptFile(
+      sourcePath,
+      destinationPath,
+      hexKey,
+      hexIv,
+      runInBackground,
+      FileJobOptions.DEFAULT,
+      (Exception ex, FileDigests digests) -> onlyErrorCallback.onComplete(ex)
+    );
+  }
+
+  /**
+   * Encrypts a file given in a sourcePath, writing output on destinationPath.
+   * With digests, those of its plaintext and ciphertext are computed in the
+   * same pass by a single thread.
+   *
+   * @param sourcePath
+   * @param destinationPath
+   * @param hexKey
+   * @param hexIv
+   * @param runInBackground Determines if encryption should be run on background
+   * @param options Parallel, progress, job id and digests
+   * @param callback Receives the digests once the file is encrypted, null
+   * without digests
+   */
+  public void encryptFile(
+    String sourcePath,
+    String destinationPath,
+    String hexKey,
+    String hexIv,
+    boolean runInBackground,
+    FileJobOptions options,
+    ResultCallback<FileDigests> callback
+  ) {
+    byte[] key = HexUtils.decode(hexKey);
+    byte[] iv = HexUtils.decode(hexIv);
+    FileJobOptions job = started(options);
+    ResultCallback<FileDigests> finishingCallback = measured(
+      job.getDigestSpec() != null
+        ? "encryptFileWithDigests"
+        : job.isParallel() ? "encryptFileParallel" : "encryptFile",
+      () -> sizeOf(sourcePath),
+      finishing(job, callback)
+    );
 
     if (runInBackground) {
       this.encryptFileRepository.encryptFileInBackground(
@@ -78,7 +356,8 @@ public class CryptoService {
           destinationPath,
           key,
           iv,
-          onlyErrorCallback
+          job,
+          finishingCallback
         );
     } else {
       this.encryptFileRepository.encryptFile(
@@ -86,7 +365,60 @@ public class CryptoService {
           destinationPath,
           key,
           iv,
-          onlyErrorCallback
+          job,
+          finishingCallback
+        );
+    }
+  }
+
+  /**
+   * Encrypts a file given in a sourcePath, writing output on destinationPath
+   * with checkpoints, so calling it again after an interruption continues
+   * from the last one instead of starting over
+   *
+   * @param sourcePath
+   * @param destinationPath
+   * @param hexKey
+   * @param hexIv
+   * @param runInBackground Determines if encryption should be run on background
+   * @param options Progress and job id
+   * @param callback Receives the offset the encryption resumed from
+   */
+  public void encryptFileResumable(
+    String sourcePath,
+    String destinationPath,
+    String hexKey,
+    String hexIv,
+    boolean runInBackground,
+    FileJobOptions options,
+    ResultCallback<Long> callback
+  ) {
+    byte[] key = HexUtils.decode(hexKey);
+    byte[] iv = HexUtils.decode(hexIv);
+    FileJobOptions job = started(options);
+    ResultCallback<Long> finishingCallback = measured(
+      "encryptFileResumable",
+      () -> sizeOf(sourcePath),
+      finishing(job, callback)
+    );
+
+    if (runInBackground) {
+      this.encryptFileRepository.encryptFileResumableInBackground(
+          sourcePath,
+          destinationPath,
+          key,
+          iv,
+          job,
+          finishingCallback
+        );
+    } else {
+      this.encryptFileRepository.encryptFileResumable(
+          sourcePath,
+          destinationPath,
+          key,
+          iv,
+          job,
+          finishingCallback
         );
     }
   }
@@ -99,8 +431,39 @@ public class CryptoService {
     boolean runInBackground,
     OnlyErrorCallback onlyErrorCallback
   ) {
-    byte[] key = Hex.decodeHex(hexKey);
-    byte[] iv = Hex.decodeHex(hexIv);
+    decryptFile(
+      sourcePath,
+      destinationPath,
+      hexKey,
+      hexIv,
+      runInBackground,
+      FileJobOptions.DEFAULT,
+      onlyErrorCallback
+    );
+  }
+
+  /**
+   * Decrypts a file given in a sourcePath, writing output on destinationPath
+   *
+   * @param options Parallel, progress and job id
+   */
+  public void decryptFile(
+    String sourcePath,
+    String destinationPath,
+    String hexKey,
+    String hexIv,
+    boolean runInBackground,
+    FileJobOptions options,
+    OnlyErrorCallback onlyErrorCallback
+  ) {
+    byte[] key = HexUtils.decode(hexKey);
+    byte[] iv = HexUtils.decode(hexIv);
+    FileJobOptions job = started(options);
+    OnlyErrorCallback callback = measured(
+      job.isParallel() ? "decryptFileParallel" : "decryptFile",
+      () -> sizeOf(sourcePath),
+      finishing(job, onlyErrorCallback)
+    );
 
     if (runInBackground) {
       this.decryptFileRepository.decryptFileInBackground(
@@ -108,7 +471,8 @@ public class CryptoService {
           destinationPath,
           key,
           iv,
-          onlyErrorCallback
+          job,
+          callback
         );
     } else {
       this.decryptFileRepository.decryptFile(
@@ -116,62 +480,1023 @@ public class CryptoService {
           destinationPath,
           key,
           iv,
-          onlyErrorCallback
+          job,
+          callback
         );
     }
   }
 
-  public byte[] pbkdf2(
-    String password,
-    byte[] salt,
-    int rounds,
-    int derivedKeyLength
-  ) throws NoSuchAlgorithmException, InvalidKeySpecException {
-    PBEKeySpec spec = new PBEKeySpec(
-      password.toCharArray(),
-      salt,
-      rounds,
-      derivedKeyLength * 8
+  /**
+   * Decrypts a file encrypted into chunks, writing the plaintext on
+   * destinationPath without joining the chunks first
+   *
+   * @param sourcePaths Paths of the encrypted chunks, in order
+   * @param destinationPath Path where the decrypted file is going to be written
+   * @param hexKey Decryption key in hex format
+   * @param hexIv Initialization vector of the whole file in hex format
+   * @param runInBackground Determines if decryption should be run on background
+   * @param options Progress and job id
+   * @param onlyErrorCallback
+   */
+  public void decryptChunksToFile(
+    String[] sourcePaths,
+    String destinationPath,
+    String hexKey,
+    String hexIv,
+    boolean runInBackground,
+    FileJobOptions options,
+    OnlyErrorCallback onlyErrorCallback
+  ) {
+    byte[] key = HexUtils.decode(hexKey);
+    byte[] iv = HexUtils.decode(hexIv);
+    FileJobOptions job = started(options);
+    OnlyErrorCallback callback = measured(
+      "decryptChunksToFile",
+      () -> sizeOf(sourcePaths),
+      finishing(job, onlyErrorCallback)
     );
-    SecretKeyFactory factory = SecretKeyFactory.getInstance(
-      "PBKDF2WithHmacSHA512"
+
+    if (runInBackground) {
+      this.decryptFileRepository.decryptChunksToFileInBackground(
+          sourcePaths,
+          destinationPath,
+          key,
+          iv,
+          job,
+          callback
+        );
+    } else {
+      this.decryptFileRepository.decryptChunksToFile(
+          sourcePaths,
+          destinationPath,
+          key,
+          iv,
+          job,
+          callback
+        );
+    }
+  }
+
+  /**
+   * Decrypts length bytes of a file starting at offset, writing them on
+   * destinationPath
+   *
+   * @param sourcePath Encrypted file path
+   * @param destinationPath Path where the decrypted range is going to be written
+   * @param hexKey Decryption key in hex format
+   * @param hexIv Initialization vector of the whole file in hex format
+   * @param offset Position of the first byte to decrypt
+   * @param length Amount of bytes to decrypt
+   * @param runInBackground Determines if decryption should be run on background
+   * @param onlyErrorCallback
+   */
+  public void decryptRange(
+    String sourcePath,
+    String destinationPath,
+    String hexKey,
+    String hexIv,
+    long offset,
+    long length,
+    boolean runInBackground,
+    OnlyErrorCallback onlyErrorCallback
+  ) {
+    byte[] key = HexUtils.decode(hexKey);
+    byte[] iv = HexUtils.decode(hexIv);
+    OnlyErrorCallback callback = measured(
+      "decryptRange",
+      () -> length,
+      onlyErrorCallback
     );
-    SecretKey key = factory.generateSecret(spec);
-    return key.getEncoded();
+
+    if (runInBackground) {
+      this.decryptFileRepository.decryptRangeInBackground(
+          sourcePath,
+          destinationPath,
+          key,
+          iv,
+          offset,
+          length,
+          callback
+        );
+    } else {
+      this.decryptFileRepository.decryptRange(
+          sourcePath,
+          destinationPath,
+          key,
+          iv,
+          offset,
+          length,
+          callback
+        );
+    }
   }
 
   /**
-   * Encrypts a file into chunks
+   * Encrypts a file in the authenticated format, AES-256-GCM in segments
+   * that are each verified when decrypted
    *
-   * @param sourcePath Source file path
-   * @param destinationPaths Array of destination paths for chunks
-   * @param key Encryption key
-   * @param iv Initialization vector
-   * @param chunkSize Size of each chunk in bytes
-   * @param runInBackground Whether to run in background
-   * @param onlyErrorCallback Callback for handling errors
+   * @param sourcePath File to encrypt
+   * @param destinationPath Path where the encrypted file is going to be written
+   * @param hexKey Encryption key of 32 bytes in hex format
+   * @param runInBackground Determines if encryption should be run on background
+   * @param options Progress, notified after every segment, and job id
+   * @param onlyErrorCallback
    */
-  public void encryptFileToChunks(
+  public void encryptFileAuthenticated(
     String sourcePath,
-    String[] destinationPaths,
-    byte[] key,
-    byte[] iv,
-    int chunkSize,
+    String destinationPath,
+    String hexKey,
     boolean runInBackground,
+    FileJobOptions options,
     OnlyErrorCallback onlyErrorCallback
   ) {
-    this.encryptFileRepository.encryptFileToChunks(
-        sourcePath,
-        destinationPaths,
-        key,
-        iv,
-        chunkSize,
-        onlyErrorCallback
-      );
+    byte[] key = HexUtils.decode(hexKey);
+    FileJobOptions job = started(options);
+    OnlyErrorCallback callback = measured(
+      "encryptFileAuthenticated",
+      () -> sizeOf(sourcePath),
+      finishing(job, onlyErrorCallback)
+    );
+
+    if (runInBackground) {
+      this.authenticatedFileRepository.encryptFileInBackground(
+          sourcePath,
+          destinationPath,
+          key,
+          job.getProgress(),
+          job.getCancellation(),
+          callback
+        );
+    } else {
+      this.authenticatedFileRepository.encryptFile(
+          sourcePath,
+          destinationPath,
+          key,
+          job.getProgress(),
+          job.getCancellation(),
+          callback
+        );
+    }
   }
 
-  public byte[] sha512(List<byte[]> inputs) throws NoSuchAlgorithmException {
-    MessageDigest md = MessageDigest.getInstance("SHA-512");
+  /**
+   * Decrypts a file encrypted with encryptFileAuthenticated, failing with an
+   * AEADBadTagException and deleting the output if it does not verify
+   *
+   * @param sourcePath Encrypted file path
+   * @param destinationPath Path where the decrypted file is going to be written
+   * @param hexKey Decryption key in hex format
+   * @param runInBackground Determines if decryption should be run on background
+   * @param options Progress, notified after every segment, and job id
+   * @param onlyErrorCallback
+   */
+  public void decryptFileAuthenticated(
+    String sourcePath,
+    String destinationPath,
+    String hexKey,
+    boolean runInBackground,
+    FileJobOptions options,
+    OnlyErrorCallback onlyErrorCallback
+  ) {
+    byte[] key = HexUtils.decode(hexKey);
+    FileJobOptions job = started(options);
+    OnlyErrorCallback callback = measured(
+      "decryptFileAuthenticated",
+      () -> sizeOf(sourcePath),
+      finishing(job, onlyErrorCallback)
+    );
+
+    if (runInBackground) {
+      this.authenticatedFileRepository.decryptFileInBackground(
+          sourcePath,
+          destinationPath,
+          key,
+          job.getProgress(),
+          job.getCancellation(),
+          callback
+        );
+    } else {
+      this.authenticatedFileRepository.decryptFile(
+          sourcePath,
+          destinationPath,
+          key,
+          job.getProgress(),
+          job.getCancellation(),
+          callback
+        );
+    }
+  }
+
+  /**
+   * Checks a file encrypted with encryptFileAuthenticated without writing
+   * its plaintext
+   *
+   * @param sourcePath Encrypted file path
+   * @param hexKey Decryption key in hex format
+   * @param runInBackground Determines if verification should be run on background
+   * @param options Progress, notified after every segment, and job id
+   * @param callback Receives whether every segment verified
+   */
+  public void verifyFileAuthenticated(
+    String sourcePath,
+    String hexKey,
+    boolean runInBackground,
+    FileJobOptions options,
+    ResultCallback<Boolean> callback
+  ) {
+    byte[] key = HexUtils.decode(hexKey);
+    FileJobOptions job = started(options);
+    ResultCallback<Boolean> finishingCallback = measured(
+      "verifyFileAuthenticated",
+      () -> sizeOf(sourcePath),
+      finishing(job, callback)
+    );
+
+    if (runInBackground) {
+      this.authenticatedFileRepository.verifyFileInBackground(
+          sourcePath,
+          key,
+          job.getProgress(),
+          job.getCancellation(),
+          finishingCallback
+        );
+    } else {
+      this.authenticatedFileRepository.verifyFile(
+          sourcePath,
+          key,
+          job.getProgress(),
+          job.getCancellation(),
+          finishingCallback
+        );
+    }
+  }
+
+  /**
+   * Decrypts length bytes of a file encrypted with encryptFileAuthenticated
+   * starting at offset, verifying only the segments containing them
+   *
+   * @param sourcePath Encrypted file path
+   * @param destinationPath Path where the decrypted range is going to be written
+   * @param hexKey Decryption key in hex format
+   * @param offset Position of the first plaintext byte to decrypt
+   * @param length Amount of bytes to decrypt
+   * @param runInBackground Determines if decryption should be run on background
+   * @param onlyErrorCallback
+   */
+  public void decryptRangeAuthenticated(
+    String sourcePath,
+    String destinationPath,
+    String hexKey,
+    long offset,
+    long length,
+    boolean runInBackground,
+    OnlyErrorCallback onlyErrorCallback
+  ) {
+    byte[] key = HexUtils.decode(hexKey);
+    OnlyErrorCallback callback = measured(
+      "decryptRangeAuthenticated",
+      () -> length,
+      onlyErrorCallback
+    );
+
+    if (runInBackground) {
+      this.authenticatedFileRepository.decryptRangeInBackground(
+          sourcePath,
+          destinationPath,
+          key,
+          offset,
+          length,
+          callback
+        );
+    } else {
+      this.authenticatedFileRepository.decryptRange(
+          sourcePath,
+          destinationPath,
+          key,
+          offset,
+          length,
+          callback
+        );
+    }
+  }
+
+  /**
+   * Encrypts a batch of files, up to parallelism at the same time. A file
+   * failing does not stop the rest of the batch.
+   *
+   * @param items Files to encrypt, each one with its own key and IV
+   * @param parallelism Max amount of files encrypted at the same time, or 0
+   * for one per core
+   * @param runInBackground Determines if encryption should be run on background
+   * @param callback Receives the error of each file, null for the ones encrypted
+   */
+  public void encryptFiles(
+    List<FileBatchItem> items,
+    int parallelism,
+    boolean runInBackground,
+    ResultCallback<List<Exception>> callback
+  ) {
+    ResultCallback<List<Exception>> measuredCallback = measured(
+      "encryptFiles",
+      () -> sizeOf(sourcesOf(items)),
+      callback
+    );
+
+    if (runInBackground) {
+      this.encryptFileRepository.encryptFilesInBackground(
+          items,
+          batchParallelism(parallelism),
+          measuredCallback
+        );
+    } else {
+      this.encryptFileRepository.encryptFiles(
+          items,
+          batchParallelism(parallelism),
+          measuredCallback
+        );
+    }
+  }
+
+  /**
+   * Decrypts a batch of files, up to parallelism at the same time. A file
+   * failing does not stop the rest of the batch.
+   *
+   * @param items Files to decrypt, each one with its own key and IV
+   * @param parallelism Max amount of files decrypted at the same time, or 0
+   * for one per core
+   * @param runInBackground Determines if decryption should be run on background
+   * @param callback Receives the error of each file, null for the ones decrypted
+   */
+  public void decryptFiles(
+    List<FileBatchItem> items,
+    int parallelism,
+    boolean runInBackground,
+    ResultCallback<List<Exception>> callback
+  ) {
+    ResultCallback<List<Exception>> measuredCallback = measured(
+      "decryptFiles",
+      () -> sizeOf(sourcesOf(items)),
+      callback
+    );
+
+    if (runInBackground) {
+      this.decryptFileRepository.decryptFilesInBackground(
+          items,
+          batchParallelism(parallelism),
+          measuredCallback
+        );
+    } else {
+      this.decryptFileRepository.decryptFiles(
+          items,
+          batchParallelism(parallelism),
+          measuredCallback
+        );
+    }
+  }
+
+  private static int batchParallelism(int parallelism) {
+    return parallelism > 0
+      ? parallelism
+      : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Joins the input files, in order, into outputFile, replacing it. Inputs
+   * are deleted once the output is complete.
+   *
+   * @param inputPaths Paths of the files to join, in order
+   * @param outputPath Path where the joined file is going to be written
+   * @param runInBackground Determines if joining should be run on background
+   * @param onlyErrorCallback
+   */
+  public void joinFiles(
+    String[] inputPaths,
+    String outputPath,
+    boolean runInBackground,
+    OnlyErrorCallback onlyErrorCallback
+  ) {
+    // Inputs are deleted once joined, measure them before
+    long bytes = sizeOf(inputPaths);
+    OnlyErrorCallback callback = measured(
+      "joinFiles",
+      () -> bytes,
+      onlyErrorCallback
+    );
+
+    if (runInBackground) {
+      this.joinFilesRepository.joinFilesInBackground(
+          inputPaths,
+          outputPath,
+          callback
+        );
+    } else {
+      this.joinFilesRepository.joinFiles(
+          inputPaths,
+          outputPath,
+          callback
+        );
+    }
+  }
+
+  /**
+   * Lists the first page of a directory, see ListDirRepository
+   *
+   * @param directoryPath Directory to list
+   * @param glob Pattern entry names must match, nullable
+   * @param recursive Whether to list the content of subdirectories too
+   * @param withAttributes Whether to read the modification time, size and
+   *                       type of each entry
+   * @param pageSize Max amount of entries of each page
+   * @param runInBackground Whether to run in background
+   * @param callback Receives the page and the cursor of the next one
+   */
+  public void listDir(
+    String directoryPath,
+    String glob,
+    boolean recursive,
+    boolean withAttributes,
+    int pageSize,
+    boolean runInBackground,
+    ResultCallback<DirectoryPage> callback
+  ) {
+    if (runInBackground) {
+      this.listDirRepository.listDirInBackground(
+          directoryPath,
+          glob,
+          recursive,
+          withAttributes,
+          pageSize,
+          callback
+        );
+    } else {
+      this.listDirRepository.listDir(
+          directoryPath,
+          glob,
+          recursive,
+          withAttributes,
+          pageSize,
+          callback
+        );
+    }
+  }
+
+  /**
+   * @param cursor Cursor of the previous page
+   * @param runInBackground Whether to run in background
+   * @param callback Receives the page and the cursor of the next one
+   */
+  public void listDirNextPage(
+    int cursor,
+    boolean runInBackground,
+    ResultCallback<DirectoryPage> callback
+  ) {
+    if (runInBackground) {
+      this.listDirRepository.nextPageInBackground(cursor, callback);
+    } else {
+      this.listDirRepository.nextPage(cursor, callback);
+    }
+  }
+
+  /**
+   * Closes a listing before reading all of its pages
+   *
+   * @return False if it does not exist, was already read or expired
+   */
+  public boolean closeListDir(int cursor) {
+    return this.listDirRepository.close(cursor);
+  }
+
+  public byte[] pbkdf2(
+    String password,
+    byte[] salt,
+    int rounds,
+    int derivedKeyLength
+  ) throws NoSuchAlgorithmException, InvalidKeySpecException {
+    return this.keyDerivationRepository.pbkdf2(
+        password,
+        salt,
+        rounds,
+        derivedKeyLength
+      );
+  }
+
+  /**
+   * Derives a key with PBKDF2WithHmacSHA512 on the compute executor
+   *
+   * @param password Password to derive the key from
+   * @param salt Salt
+   * @param rounds Amount of iterations
+   * @param derivedKeyLength Length of the derived key in bytes
+   * @param callback Receives the derived key
+   */
+  public void pbkdf2(
+    String password,
+    byte[] salt,
+    int rounds,
+    int derivedKeyLength,
+    ResultCallback<byte[]> callback
+  ) {
+    this.keyDerivationRepository.pbkdf2InBackground(
+        password,
+        salt,
+        rounds,
+        derivedKeyLength,
+        measured("pbkdf2", () -> 0, callback)
+      );
+  }
+
+  /**
+   * Derives a batch of keys with PBKDF2WithHmacSHA512 on the compute
+   * executor, up to parallelism at the same time
+   *
+   * @param items Keys to derive
+   * @param parallelism Max amount of keys derived at the same time, or 0 for
+   * one per core
+   * @param callback Receives the keys in the order of items
+   */
+  public void pbkdf2Batch(
+    List<KeyDerivationItem> items,
+    int parallelism,
+    ResultCallback<List<byte[]>> callback
+  ) {
+    this.keyDerivationRepository.pbkdf2BatchInBackground(
+        items,
+        batchParallelism(parallelism),
+        measured("pbkdf2Batch", () -> 0, callback)
+      );
+  }
+
+  /**
+   * Encrypts a file into chunks
+   *
+   * @param sourcePath Source file path
+   * @param destinationPaths Array of destination paths for chunks
+   * @param key Encryption key
+   * @param iv Initialization vector
+   * @param chunkSize Size of each chunk in bytes
+   * @param runInBackground Whether to run in background
+   * @param onlyErrorCallback Callback for handling errors
+   */
+  public void encryptFileToChunks(
+    String sourcePath,
+    String[] destinationPaths,
+    byte[] key,
+    byte[] iv,
+    int chunkSize,
+    boolean runInBackground,
+    OnlyErrorCallback onlyErrorCallback
+  ) {
+    encryptFileToChunks(
+      sourcePath,
+      destinationPaths,
+      key,
+      iv,
+      chunkSize,
+      runInBackground,
+      FileJobOptions.DEFAULT,
+      (Exception ex, List<FileDigests> digests) -> onlyErrorCallback.onComplete(ex)
+    );
+  }
+
+  /**
+   * Encrypts a file into chunks, computing the digests of each chunk while it
+   * is encrypted
+   *
+   * @param sourcePath Source file path
+   * @param destinationPaths Array of destination paths for chunks
+   * @param key Encryption key
+   * @param iv Initialization vector
+   * @param chunkSize Size of each chunk in bytes
+   * @param runInBackground Whether to run in background
+   * @param options Progress, job id and digests of each chunk
+   * @param callback Receives the digests of each chunk in order, null
+   * without digests
+   */
+  public void encryptFileToChunks(
+    String sourcePath,
+    String[] destinationPaths,
+    byte[] key,
+    byte[] iv,
+    int chunkSize,
+    boolean runInBackground,
+    FileJobOptions options,
+    ResultCallback<List<FileDigests>> callback
+  ) {
+    FileJobOptions job = started(options);
+    ResultCallback<List<FileDigests>> finishingCallback = measured(
+      job.getDigestSpec() != null ? "encryptFileToChunksWithDigests" : "encryptFileToChunks",
+      () -> sizeOf(sourcePath),
+      finishing(job, callback)
+    );
+
+    if (runInBackground) {
+      this.encryptFileRepository.encryptFileToChunksInBackground(
+          sourcePath,
+          destinationPaths,
+          key,
+          iv,
+          chunkSize,
+          job,
+          finishingCallback
+        );
+    } else {
+      this.encryptFileRepository.encryptFileToChunks(
+          sourcePath,
+          destinationPaths,
+          key,
+          iv,
+          chunkSize,
+          job,
+          finishingCallback
+        );
+    }
+  }
+
+  /**
+   * Encrypts a file into as many chunks as it needs, planned from its length
+   *
+   * @param sourcePath Source file path
+   * @param outputDirectory Directory where chunks are written, created if missing
+   * @param namePattern Name of each chunk, with {index} and optionally {name}
+   * @param key Encryption key
+   * @param iv Initialization vector
+   * @param chunkSize Size of each chunk in bytes
+   * @param runInBackground Whether to run in background
+   * @param options Progress, job id and digests of each chunk
+   * @param callback Receives the chunks that were written
+   */
+  public void encryptFileToChunks(
+    String sourcePath,
+    String outputDirectory,
+    String namePattern,
+    byte[] key,
+    byte[] iv,
+    int chunkSize,
+    boolean runInBackground,
+    FileJobOptions options,
+    ResultCallback<ChunkPlan> callback
+  ) {
+    FileJobOptions job = started(options);
+    ResultCallback<ChunkPlan> finishingCallback = measured(
+      "encryptFileToChunksPlanned",
+      () -> sizeOf(sourcePath),
+      finishing(job, callback)
+    );
+
+    if (runInBackground) {
+      this.encryptFileRepository.encryptFileToChunksInBackground(
+          sourcePath,
+          outputDirectory,
+          namePattern,
+          key,
+          iv,
+          chunkSize,
+          job,
+          finishingCallback
+        );
+    } else {
+      this.encryptFileRepository.encryptFileToChunks(
+          sourcePath,
+          outputDirectory,
+          namePattern,
+          key,
+          iv,
+          chunkSize,
+          job,
+          finishingCallback
+        );
+    }
+  }
+
+  /**
+   * Encrypts a file into chunks, encrypting several chunks at the same time
+   *
+   * @param sourcePath Source file path
+   * @param destinationPaths Array of destination paths for chunks
+   * @param key Encryption key
+   * @param iv Initialization vector
+   * @param chunkSize Size of each chunk in bytes
+   * @param parallelism Max amount of chunks encrypted at the same time
+   * @param runInBackground Whether to run in background
+   * @param chunkCallback Notified as soon as each chunk is ready, nullable
+   * @param onlyErrorCallback Callback for handling errors
+   */
+  public void encryptFileToChunksInParallel(
+    String sourcePath,
+    String[] destinationPaths,
+    byte[] key,
+    byte[] iv,
+    int chunkSize,
+    int parallelism,
+    boolean runInBackground,
+    OnChunkEncryptedCallback chunkCallback,
+    OnlyErrorCallback onlyErrorCallback
+  ) {
+    encryptFileToChunksInParallel(
+      sourcePath,
+      destinationPaths,
+      key,
+      iv,
+      chunkSize,
+      parallelism,
+      runInBackground,
+      FileJobOptions.DEFAULT,
+      chunkCallback,
+      (Exception ex, List<FileDigests> digests) -> onlyErrorCallback.onComplete(ex)
+    );
+  }
+
+  /**
+   * Encrypts a file into chunks, encrypting several chunks at the same time
+   *
+   * @param options Progress, notified from any thread, job id and digests of
+   * each chunk
+   * @param callback Receives the digests of each chunk in order, null
+   * without digests
+   */
+  public void encryptFileToChunksInParallel(
+    String sourcePath,
+    String[] destinationPaths,
+    byte[] key,
+    byte[] iv,
+    int chunkSize,
+    int parallelism,
+    boolean runInBackground,
+    FileJobOptions options,
+    OnChunkEncryptedCallback chunkCallback,
+    ResultCallback<List<FileDigests>> callback
+  ) {
+    FileJobOptions job = started(options);
+    ResultCallback<List<FileDigests>> finishingCallback = measured(
+      "encryptFileToChunksParallel",
+      () -> sizeOf(sourcePath),
+      finishing(job, callback)
+    );
+
+    if (runInBackground) {
+      this.encryptFileRepository.encryptFileToChunksInParallelInBackground(
+          sourcePath,
+          destinationPaths,
+          key,
+          iv,
+          chunkSize,
+          parallelism,
+          job,
+          chunkCallback,
+          finishingCallback
+        );
+    } else {
+      this.encryptFileRepository.encryptFileToChunksInParallel(
+          sourcePath,
+          destinationPaths,
+          key,
+          iv,
+          chunkSize,
+          parallelism,
+          job,
+          chunkCallback,
+          finishingCallback
+        );
+    }
+  }
+
+  /**
+   * Hashes length bytes of a file starting at offset, reading it from disk
+   *
+   * @param path Path of the file to hash
+   * @param algorithm Digest algorithm, like SHA-256 or SHA-512
+   * @param offset Position of the first byte to hash
+   * @param length Amount of bytes to hash, or HashFileRepository.UNTIL_END
+   * @param runInBackground Determines if hashing should be run on background
+   * @param callback Receives the digest
+   */
+  public void hashFile(
+    String path,
+    String algorithm,
+    long offset,
+    long length,
+    boolean runInBackground,
+    ResultCallback<byte[]> callback
+  ) {
+    ResultCallback<byte[]> measuredCallback = measured(
+      "hashFile",
+      () -> {
+        long available = Math.max(0, sizeOf(path) - offset);
+        return length == HashFileRepository.UNTIL_END
+          ? available
+          : Math.min(length, available);
+      },
+      callback
+    );
+
+    if (runInBackground) {
+      this.hashFileRepository.hashFileInBackground(
+          path,
+          algorithm,
+          offset,
+          length,
+          measuredCallback
+        );
+    } else {
+      this.hashFileRepository.hashFile(
+          path,
+          algorithm,
+          offset,
+          length,
+          measuredCallback
+        );
+    }
+  }
+
+  /**
+   * @return Metrics of the operations run through this service, listeners
+   * can be added to it
+   */
+  public CryptoMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @return Amount of cancellable operations running right now
+   */
+  public int getRunningJobs() {
+    return jobs.size();
+  }
+
+  /**
+   * Reserves ids for a caller that numbers its operations itself, so they do
+   * not collide with the ones of a previous caller still running
+   *
+   * @return Id before the first one the caller can use, see
+   * JobRegistry.reserveIds
+   */
+  public int reserveJobIds() {
+    return jobs.reserveIds();
+  }
+
+  /**
+   * Cancels a running file operation. It stops before its next buffer,
+   * deletes its partial output, unless it is resumable, and completes with an
+   * OperationCancelledException.
+   *
+   * @param jobId Id the operation was started with
+   * @return false if there is no operation running with that id
+   */
+  public boolean cancel(int jobId) {
+    return jobs.cancel(jobId);
+  }
+
+  /**
+   * Registers the job of the options, if they have one
+   *
+   * @return The options to run the operation with, cancelled through the job
+   * @throws IllegalStateException If a job with the same id is running
+   */
+  private FileJobOptions started(FileJobOptions options) {
+    CancellationToken cancellation = jobs.start(options.getJobId());
+    return cancellation != null ? options.withCancellation(cancellation) : options;
+  }
+
+  /**
+   * Wraps a callback so the job is unregistered before it is called
+   */
+  private OnlyErrorCallback finishing(
+    FileJobOptions job,
+    OnlyErrorCallback callback
+  ) {
+    return (Exception ex) -> {
+      jobs.finish(job.getJobId(), job.getCancellation());
+      callback.onComplete(ex);
+    };
+  }
+
+  /**
+   * Wraps a callback so the job is unregistered before it is called
+   */
+  private <T> ResultCallback<T> finishing(
+    FileJobOptions job,
+    ResultCallback<T> callback
+  ) {
+    return (Exception ex, T result) -> {
+      jobs.finish(job.getJobId(), job.getCancellation());
+      callback.onComplete(ex, result);
+    };
+  }
+
+  /**
+   * Wraps a callback so the operation is recorded in the metrics before it
+   * is called
+   *
+   * @param operation Name the operation is recorded with
+   * @param bytes     Bytes the operation processes, evaluated once it finishes
+   */
+  private OnlyErrorCallback measured(
+    String operation,
+    ByteCount bytes,
+    OnlyErrorCallback callback
+  ) {
+    long start = System.nanoTime();
+    return (Exception ex) -> {
+      record(operation, bytes, start, ex);
+      callback.onComplete(ex);
+    };
+  }
+
+  /**
+   * Wraps a callback so the operation is recorded in the metrics before it
+   * is called
+   *
+   * @param operation Name the operation is recorded with
+   * @param bytes     Bytes the operation processes, evaluated once it finishes
+   */
+  private <T> ResultCallback<T> measured(
+    String operation,
+    ByteCount bytes,
+    ResultCallback<T> callback
+  ) {
+    long start = System.nanoTime();
+    return (Exception ex, T result) -> {
+      record(operation, bytes, start, ex);
+      callback.onComplete(ex, result);
+    };
+  }
+
+  private void record(
+    String operation,
+    ByteCount bytes,
+    long start,
+    Exception ex
+  ) {
+    metrics.record(
+      operation,
+      bytes.get(),
+      CryptoWorkerPool.currentQueueWaitNanos(),
+      System.nanoTime() - start,
+      ex
+    );
+  }
+
+  private static long sizeOf(String... paths) {
+    long size = 0;
+    for (String path : paths) {
+      if (path != null) {
+        size += new File(path).length();
+      }
+    }
+    return size;
+  }
+
+  private static String[] sourcesOf(List<FileBatchItem> items) {
+    String[] sources = new String[items.size()];
+    for (int i = 0; i < sources.length; i++) {
+      sources[i] = items.get(i).getSourcePath();
+    }
+    return sources;
+  }
+
+  private interface ByteCount {
+    long get();
+  }
+
+  /**
+   * Starts an incremental hash
+   *
+   * @param algorithm Digest algorithm, like SHA-256 or SHA-512
+   * @return Handle of the hash session
+   */
+  public int hashInit(String algorithm) throws NoSuchAlgorithmException {
+    return this.hashSessions.init(algorithm);
+  }
+
+  /**
+   * @param handle Handle returned by hashInit
+   * @param data   Data hashed right away, it is not kept
+   */
+  public void hashUpdate(int handle, byte[] data) {
+    this.hashSessions.update(handle, data);
+  }
+
+  /**
+   * Finishes the hash session, its handle cannot be used anymore
+   *
+   * @param handle Handle returned by hashInit
+   * @return The digest
+   */
+  public byte[] hashDigest(int handle) {
+    return this.hashSessions.digest(handle);
+  }
+
+  public byte[] sha256(List<byte[]> inputs) throws NoSuchAlgorithmException {
+    return digest("SHA-256", inputs);
+  }
+
+  public byte[] sha512(List<byte[]> inputs) throws NoSuchAlgorithmException {
+    return digest("SHA-512", inputs);
+  }
+
+  private static byte[] digest(String algorithm, List<byte[]> inputs)
+    throws NoSuchAlgorithmException {
+    MessageDigest md = ProviderRegistry.getShared().messageDigest(algorithm);
 
     for (byte[] input : inputs) {
       md.update(input);
@@ -0,0 +1,112 @@
+package com.rncrypto.util;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Creates AES-256-CTR ciphers, optionally positioned at any byte of the
+ * keystream. In CTR mode the counter for a given block is the IV plus the
+ * block index, so any offset can be reached without processing what is before.
+ */
+public class CtrCipherFactory {
+
+  public static final int BLOCK_SIZE = 16;
+
+  private static final String TRANSFORMATION = "AES/CTR/NoPadding";
+
+  /**
+   * Generates an AES-256-CTR Cipher positioned at the start of the keystream
+   *
+   * @param mode Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE
+   * @param key  Cipher key
+   * @param iv   Initialization vector
+   * @return Cipher ready to process data from byte 0
+   */
+  public static Cipher create(int mode, byte[] key, byte[] iv)
+    throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException {
+    SecretKeySpec secretKey = new SecretKeySpec(key, 0, key.length, "AES");
+    Cipher cipher = ProviderRegistry.getShared().cipher(TRANSFORMATION);
+
+    if (
+      !cipher.getAlgorithm().toUpperCase().startsWith(("AES/CTR"))
+    ) throw new IllegalArgumentException(
+      "Invalid algorithm, only AES/CTR mode supported"
+    );
+
+    cipher.init(mode, secretKey, new IvParameterSpec(iv));
+
+    return cipher;
+  }
+
+  /**
+   * Initialises the AES-256-CTR Cipher of the calling thread, positioned at
+   * the start of the keystream. Cheaper than create for many small inputs, see
+   * CipherCache for the restrictions on the returned Cipher.
+   *
+   * @param mode Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE
+   * @param key  Cipher key
+   * @param iv   Initialization vector
+   * @return Cipher of this thread ready to process data from byte 0
+   */
+  public static Cipher obtain(int mode, byte[] key, byte[] iv)
+    throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException {
+    return CipherCache.init(TRANSFORMATION, mode, key, iv);
+  }
+
+  /**
+   * Generates an AES-256-CTR Cipher positioned at the given byte offset of the
+   * keystream, so the first byte it processes is the byte at that offset.
+   *
+   * @param mode       Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE
+   * @param key        Cipher key
+   * @param iv         Initialization vector used for byte 0
+   * @param byteOffset Position of the keystream where the cipher starts
+   * @return Cipher ready to process data from byteOffset
+   */
+  public static Cipher createAt(int mode, byte[] key, byte[] iv, long byteOffset)
+    throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException {
+    if (byteOffset < 0) {
+      throw new IllegalArgumentException("Offset cannot be negative.");
+    }
+
+    Cipher cipher = create(
+      mode,
+      key,
+      advanceIv(iv, byteOffset / BLOCK_SIZE)
+    );
+
+    int skip = (int) (byteOffset % BLOCK_SIZE);
+    if (skip > 0) {
+      // Discard the keystream of the partial block before the offset
+      cipher.update(new byte[skip]);
+    }
+
+    return cipher;
+  }
+
+  /**
+   * Computes the counter block for the given block index, adding it to the IV
+   * as a 128-bit big endian integer, which is how AES/CTR increments it.
+   *
+   * @param iv     Initialization vector
+   * @param blocks Amount of blocks to advance
+   * @return A new IV, the given one is not modified
+   */
+  public static byte[] advanceIv(byte[] iv, long blocks) {
+    byte[] counter = iv.clone();
+    long carry = blocks;
+
+    for (int i = counter.length - 1; i >= 0 && carry != 0; i--) {
+      long sum = (counter[i] & 0xFF) + (carry & 0xFF);
+      counter[i] = (byte) sum;
+      carry = (carry >>> 8) + (sum >>> 8);
+    }
+
+    return counter;
+  }
+}
@@ -0,0 +1,97 @@
+package com.rncrypto.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Digest algorithms to compute over the plaintext and over the ciphertext
+ * while a file is encrypted, so the output does not have to be read again to
+ * hash it.
+ */
+public class DigestSpec {
+
+  public static final String SHA256 = "SHA-256";
+  public static final String SHA512 = "SHA-512";
+  public static final String RIPEMD160 = "RIPEMD-160";
+
+  private final List<String> plaintextAlgorithms;
+  private final List<String> ciphertextAlgorithms;
+
+  /**
+   * @param plaintextAlgorithms  Algorithms computed over the plaintext, nullable
+   * @param ciphertextAlgorithms Algorithms computed over the ciphertext, nullable
+   * @throws NoSuchAlgorithmException If any algorithm is not available
+   */
+  public DigestSpec(
+    List<String> plaintextAlgorithms,
+    List<String> ciphertextAlgorithms
+  ) throws NoSuchAlgorithmException {
+    this.plaintextAlgorithms = normalize(plaintextAlgorithms);
+    this.ciphertextAlgorithms = normalize(ciphertextAlgorithms);
+  }
+
+  public List<String> getPlaintextAlgorithms() {
+    return plaintextAlgorithms;
+  }
+
+  public List<String> getCiphertextAlgorithms() {
+    return ciphertextAlgorithms;
+  }
+
+  /**
+   * @return New digests, one per algorithm, for a file or chunk
+   */
+  public FileDigests newDigests() {
+    try {
+      return new FileDigests(plaintextAlgorithms, ciphertextAlgorithms);
+    } catch (NoSuchAlgorithmException e) {
+      // Every algorithm was already instantiated in the constructor
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @param algorithm Digest algorithm name
+   * @return A digest from the installed providers, or the bundled
+   *         implementation for RIPEMD-160 when none of them has it
+   */
+  public static MessageDigest createDigest(String algorithm)
+    throws NoSuchAlgorithmException {
+    try {
+      return ProviderRegistry.getShared().messageDigest(algorithm);
+    } catch (NoSuchAlgorithmException e) {
+      if (isRipemd160(algorithm)) {
+        try {
+          return MessageDigest.getInstance("RIPEMD160");
+        } catch (NoSuchAlgorithmException ignored) {
+          return new Ripemd160();
+        }
+      }
+      throw e;
+    }
+  }
+
+  private static boolean isRipemd160(String algorithm) {
+    return "RIPEMD160".equalsIgnoreCase(algorithm.replace("-", ""));
+  }
+
+  private static List<String> normalize(List<String> algorithms)
+    throws NoSuchAlgorithmException {
+    if (algorithms == null || algorithms.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    LinkedHashSet<String> unique = new LinkedHashSet<>();
+    for (String algorithm : algorithms) {
+      // Fails now instead of after the file has been encrypted
+      createDigest(algorithm);
+      unique.add(isRipemd160(algorithm) ? RIPEMD160 : algorithm);
+    }
+
+    return Collections.unmodifiableList(new ArrayList<>(unique));
+  }
+}
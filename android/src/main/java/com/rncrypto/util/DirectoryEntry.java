@@ -0,0 +1,69 @@
+package com.rncrypto.util;
+
+/**
+ * An entry of a directory listing. Its attributes are only read if the
+ * listing asked for them, otherwise only the name and path are known.
+ */
+public class DirectoryEntry {
+
+  private final String name;
+  private final String path;
+  private final boolean hasAttributes;
+  private final long lastModified;
+  private final long size;
+  private final boolean directory;
+
+  public DirectoryEntry(String name, String path) {
+    this.name = name;
+    this.path = path;
+    this.hasAttributes = false;
+    this.lastModified = 0;
+    this.size = 0;
+    this.directory = false;
+  }
+
+  /**
+   * @param lastModified Last modification time in milliseconds since epoch
+   */
+  public DirectoryEntry(
+    String name,
+    String path,
+    long lastModified,
+    long size,
+    boolean directory
+  ) {
+    this.name = name;
+    this.path = path;
+    this.hasAttributes = true;
+    this.lastModified = lastModified;
+    this.size = size;
+    this.directory = directory;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * @return Whether lastModified, size and directory were read
+   */
+  public boolean hasAttributes() {
+    return hasAttributes;
+  }
+
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public boolean isDirectory() {
+    return directory;
+  }
+}
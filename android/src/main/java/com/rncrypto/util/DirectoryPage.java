@@ -0,0 +1,38 @@
+package com.rncrypto.util;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of a directory listing and the cursor to get the next one with
+ */
+public class DirectoryPage {
+
+  /**
+   * Cursor of the last page of a listing
+   */
+  public static final int END = 0;
+
+  private final List<DirectoryEntry> entries;
+  private final int cursor;
+
+  public DirectoryPage(List<DirectoryEntry> entries, int cursor) {
+    this.entries = Collections.unmodifiableList(entries);
+    this.cursor = cursor;
+  }
+
+  public List<DirectoryEntry> getEntries() {
+    return entries;
+  }
+
+  /**
+   * @return Cursor to get the next page with, or END if there are no more
+   */
+  public int getCursor() {
+    return cursor;
+  }
+
+  public boolean hasMore() {
+    return cursor != END;
+  }
+}
@@ -0,0 +1,143 @@
+package com.rncrypto.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Checkpoint of a resumable encryption: how much of the source is encrypted
+ * and durable in the output, and what source, key and IV it belongs to, so a
+ * checkpoint of another operation is never resumed.
+ *
+ * The key is not stored, only a SHA-256 fingerprint of the key and the IV.
+ */
+public class EncryptionJournal {
+
+  private static final int MAGIC = 0x524e434a; // RNCJ
+  private static final int VERSION = 1;
+  private static final int FINGERPRINT_SIZE = 32;
+
+  private final long sourceLength;
+  private final long sourceModified;
+  private final byte[] fingerprint;
+  private final long offset;
+
+  public EncryptionJournal(
+    long sourceLength,
+    long sourceModified,
+    byte[] fingerprint,
+    long offset
+  ) {
+    this.sourceLength = sourceLength;
+    this.sourceModified = sourceModified;
+    this.fingerprint = fingerprint;
+    this.offset = offset;
+  }
+
+  /**
+   * @return Bytes of the source encrypted and durable in the output
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * @return A journal of the same operation at another offset
+   */
+  public EncryptionJournal at(long offset) {
+    return new EncryptionJournal(
+      sourceLength,
+      sourceModified,
+      fingerprint,
+      offset
+    );
+  }
+
+  /**
+   * @return true if both journals belong to the same source, key and IV
+   */
+  public boolean isSameOperation(EncryptionJournal other) {
+    return (
+      other != null &&
+      sourceLength == other.sourceLength &&
+      sourceModified == other.sourceModified &&
+      MessageDigest.isEqual(fingerprint, other.fingerprint)
+    );
+  }
+
+  public static byte[] fingerprint(byte[] key, byte[] iv)
+    throws NoSuchAlgorithmException {
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    digest.update(key);
+    digest.update(iv);
+    return digest.digest();
+  }
+
+  /**
+   * @return The journal at path, or null if there is none or it is not valid
+   */
+  public static EncryptionJournal read(File path) throws IOException {
+    try (
+      FileInputStream file = new FileInputStream(path);
+      DataInputStream input = new DataInputStream(file)
+    ) {
+      if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+        return null;
+      }
+
+      long sourceLength = input.readLong();
+      long sourceModified = input.readLong();
+      byte[] fingerprint = new byte[FINGERPRINT_SIZE];
+      input.readFully(fingerprint);
+      long offset = input.readLong();
+
+      if (offset < 0 || offset > sourceLength) {
+        return null;
+      }
+      return new EncryptionJournal(
+        sourceLength,
+        sourceModified,
+        fingerprint,
+        offset
+      );
+    } catch (FileNotFoundException e) {
+      return null;
+    } catch (IOException e) {
+      // A truncated or foreign file is not a checkpoint
+      return null;
+    }
+  }
+
+  /**
+   * Writes the journal to path, replacing the previous one with an atomic
+   * rename so a crash while writing it leaves the previous checkpoint
+   */
+  public void write(File path) throws IOException {
+    File temp = new File(path.getPath() + ".tmp");
+
+    try (
+      FileOutputStream file = new FileOutputStream(temp);
+      DataOutputStream output = new DataOutputStream(file)
+    ) {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeLong(sourceLength);
+      output.writeLong(sourceModified);
+      output.write(Arrays.copyOf(fingerprint, FINGERPRINT_SIZE));
+      output.writeLong(offset);
+      output.flush();
+      file.getFD().sync();
+    }
+
+    if (!temp.renameTo(path)) {
+      throw new IOException("Could not move " + temp + " to " + path);
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package com.rncrypto.util;
+
+/**
+ * A file to encrypt or decrypt as part of a batch
+ */
+public class FileBatchItem {
+
+  private final String sourcePath;
+  private final String destinationPath;
+  private final byte[] key;
+  private final byte[] iv;
+
+  public FileBatchItem(
+    String sourcePath,
+    String destinationPath,
+    byte[] key,
+    byte[] iv
+  ) {
+    this.sourcePath = sourcePath;
+    this.destinationPath = destinationPath;
+    this.key = key;
+    this.iv = iv;
+  }
+
+  public String getSourcePath() {
+    return sourcePath;
+  }
+
+  public String getDestinationPath() {
+    return destinationPath;
+  }
+
+  public byte[] getKey() {
+    return key;
+  }
+
+  public byte[] getIv() {
+    return iv;
+  }
+}
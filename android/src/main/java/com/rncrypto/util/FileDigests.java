@@ -0,0 +1,132 @@
+package com.rncrypto.util;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Digests of the plaintext and the ciphertext of a file or chunk, updated
+ * while it is encrypted. Created by DigestSpec.newDigests().
+ */
+public class FileDigests {
+
+  private final List<String> plaintextAlgorithms;
+  private final List<String> ciphertextAlgorithms;
+  private final List<MessageDigest> plaintextDigests;
+  private final List<MessageDigest> ciphertextDigests;
+  private Map<String, byte[]> plaintext;
+  private Map<String, byte[]> ciphertext;
+
+  FileDigests(
+    List<String> plaintextAlgorithms,
+    List<String> ciphertextAlgorithms
+  ) throws NoSuchAlgorithmException {
+    this.plaintextAlgorithms = plaintextAlgorithms;
+    this.ciphertextAlgorithms = ciphertextAlgorithms;
+    this.plaintextDigests = createDigests(plaintextAlgorithms);
+    this.ciphertextDigests = createDigests(ciphertextAlgorithms);
+  }
+
+  public void updatePlaintext(byte[] input, int offset, int length) {
+    update(plaintextDigests, input, offset, length);
+  }
+
+  public void updateCiphertext(byte[] input, int offset, int length) {
+    update(ciphertextDigests, input, offset, length);
+  }
+
+  /**
+   * Updates the plaintext digests with the remaining bytes of the buffer,
+   * leaving its position untouched
+   */
+  public void updatePlaintext(ByteBuffer input) {
+    update(plaintextDigests, input);
+  }
+
+  /**
+   * Updates the ciphertext digests with the remaining bytes of the buffer,
+   * leaving its position untouched
+   */
+  public void updateCiphertext(ByteBuffer input) {
+    update(ciphertextDigests, input);
+  }
+
+  /**
+   * Completes every digest. Once finished, updates are not allowed.
+   */
+  public void finish() {
+    if (plaintext == null) {
+      plaintext = complete(plaintextAlgorithms, plaintextDigests);
+      ciphertext = complete(ciphertextAlgorithms, ciphertextDigests);
+    }
+  }
+
+  /**
+   * @return Plaintext digests by algorithm, in the requested order
+   */
+  public Map<String, byte[]> getPlaintext() {
+    finish();
+    return plaintext;
+  }
+
+  /**
+   * @return Ciphertext digests by algorithm, in the requested order
+   */
+  public Map<String, byte[]> getCiphertext() {
+    finish();
+    return ciphertext;
+  }
+
+  private void update(
+    List<MessageDigest> digests,
+    byte[] input,
+    int offset,
+    int length
+  ) {
+    checkNotFinished();
+    for (int i = 0; i < digests.size(); i++) {
+      digests.get(i).update(input, offset, length);
+    }
+  }
+
+  private void update(List<MessageDigest> digests, ByteBuffer input) {
+    checkNotFinished();
+    int position = input.position();
+    for (int i = 0; i < digests.size(); i++) {
+      digests.get(i).update(input);
+      input.position(position);
+    }
+  }
+
+  private void checkNotFinished() {
+    if (plaintext != null) {
+      throw new IllegalStateException("Digests are already finished.");
+    }
+  }
+
+  private static List<MessageDigest> createDigests(List<String> algorithms)
+    throws NoSuchAlgorithmException {
+    List<MessageDigest> digests = new ArrayList<>(algorithms.size());
+    for (String algorithm : algorithms) {
+      digests.add(DigestSpec.createDigest(algorithm));
+    }
+    return digests;
+  }
+
+  // Keyed by the requested names, providers may name the algorithms differently
+  private static Map<String, byte[]> complete(
+    List<String> algorithms,
+    List<MessageDigest> digests
+  ) {
+    Map<String, byte[]> results = new LinkedHashMap<>();
+    for (int i = 0; i < digests.size(); i++) {
+      results.put(algorithms.get(i), digests.get(i).digest());
+    }
+    return Collections.unmodifiableMap(results);
+  }
+}
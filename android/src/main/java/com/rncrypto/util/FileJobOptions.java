@@ -0,0 +1,95 @@
+package com.rncrypto.util;
+
+/**
+ * Optional settings of a file operation. Every field has a default, so callers
+ * only set the ones they need, like
+ * FileJobOptions.DEFAULT.withProgress(progress).withJobId(jobId). Operations
+ * ignore the fields that do not apply to them, see each one.
+ */
+public class FileJobOptions {
+
+  public static final FileJobOptions DEFAULT = new FileJobOptions(
+    false,
+    null,
+    null,
+    null,
+    JobRegistry.NO_JOB
+  );
+
+  private final boolean parallel;
+  private final OnProgressCallback progress;
+  private final CancellationToken cancellation;
+  private final DigestSpec digestSpec;
+  private final int jobId;
+
+  private FileJobOptions(
+    boolean parallel,
+    OnProgressCallback progress,
+    CancellationToken cancellation,
+    DigestSpec digestSpec,
+    int jobId
+  ) {
+    this.parallel = parallel;
+    this.progress = progress;
+    this.cancellation = cancellation;
+    this.digestSpec = digestSpec;
+    this.jobId = jobId;
+  }
+
+  /**
+   * @param parallel Whether segments of the file are processed on several
+   *                 threads
+   */
+  public FileJobOptions withParallel(boolean parallel) {
+    return new FileJobOptions(parallel, progress, cancellation, digestSpec, jobId);
+  }
+
+  /**
+   * @param progress Notified after every buffer, nullable
+   */
+  public FileJobOptions withProgress(OnProgressCallback progress) {
+    return new FileJobOptions(parallel, progress, cancellation, digestSpec, jobId);
+  }
+
+  /**
+   * @param cancellation Stops the operation when cancelled, nullable
+   */
+  public FileJobOptions withCancellation(CancellationToken cancellation) {
+    return new FileJobOptions(parallel, progress, cancellation, digestSpec, jobId);
+  }
+
+  /**
+   * @param digestSpec Digests to compute while the file is processed, nullable
+   */
+  public FileJobOptions withDigests(DigestSpec digestSpec) {
+    return new FileJobOptions(parallel, progress, cancellation, digestSpec, jobId);
+  }
+
+  /**
+   * @param jobId Id to cancel the operation with through CryptoService, or
+   *              JobRegistry.NO_JOB
+   */
+  public FileJobOptions withJobId(int jobId) {
+    return new FileJobOptions(parallel, progress, cancellation, digestSpec, jobId);
+  }
+
+  public boolean isParallel() {
+    return parallel;
+  }
+
+  public OnProgressCallback getProgress() {
+    return progress;
+  }
+
+  public CancellationToken getCancellation() {
+    return cancellation;
+  }
+
+  public DigestSpec getDigestSpec() {
+    return digestSpec;
+  }
+
+  public int getJobId() {
+    return jobId;
+  }
+}
@@ -0,0 +1,85 @@
+package com.rncrypto.util;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+public class FileUtils {
+
+  private static final boolean NIO_FILE_AVAILABLE = sdkInt() >= 26;
+
+  /**
+   * Deletes the given files, ignoring the ones that do not exist or cannot be
+   * deleted. Used to remove the partial outputs of cancelled operations.
+   *
+   * @param paths Paths of the files to delete, null entries are skipped
+   */
+  public static void deleteQuietly(String... paths) {
+    for (String path : paths) {
+      if (path == null) {
+        continue;
+      }
+
+      File file = new File(path);
+      if (!file.delete() && file.exists()) {
+        System.err.println("Could not delete " + path);
+      }
+    }
+  }
+
+  /**
+   * Opens a file for positional reads. FileChannel.open and java.nio.file need
+   * API 26, channels of java.io files work on every supported version.
+   *
+   * @throws FileNotFoundException If the file does not exist
+   */
+  public static FileChannel openForReading(String path)
+    throws FileNotFoundException {
+    return new RandomAccessFile(path, "r").getChannel();
+  }
+
+  /**
+   * Opens a file for positional writes, creating it or truncating it
+   */
+  public static FileChannel openForWriting(String path)
+    throws FileNotFoundException {
+    return new FileOutputStream(path).getChannel();
+  }
+
+  /**
+   * @return Size of the file in bytes
+   * @throws FileNotFoundException If the file does not exist, unlike
+   *                               File.length that returns 0
+   */
+  public static long sizeOf(String path) throws IOException {
+    try (FileChannel channel = openForReading(path)) {
+      return channel.size();
+    }
+  }
+
+  /**
+   * @return Whether java.nio.file can be used, it is only public from API 26
+   */
+  public static boolean isNioFileAvailable() {
+    return NIO_FILE_AVAILABLE;
+  }
+
+  /**
+   * Reads the SDK level reflectively, so the library also builds for a host
+   * JVM, like the benchmarks
+   *
+   * @return The SDK level, or Integer.MAX_VALUE outside Android
+   */
+  private static int sdkInt() {
+    try {
+      return Class.forName("android.os.Build$VERSION")
+        .getField("SDK_INT")
+        .getInt(null);
+    } catch (ReflectiveOperationException e) {
+      return Integer.MAX_VALUE;
+    }
+  }
+}
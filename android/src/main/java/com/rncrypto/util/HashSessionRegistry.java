@@ -0,0 +1,166 @@
+package com.rncrypto.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Live MessageDigests identified by a handle, so data can be hashed as it is
+ * produced instead of being kept until the digest is needed.
+ *
+ * Sessions that are not updated for longer than the idle timeout are
+ * considered abandoned and evicted. Eviction runs while creating sessions,
+ * so no thread is needed for it.
+ */
+public class HashSessionRegistry {
+
+  public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+  public static final int DEFAULT_MAX_SESSIONS = 1024;
+
+  private final Map<Integer, Session> sessions = new ConcurrentHashMap<>();
+  private final AtomicInteger nextHandle = new AtomicInteger(1);
+  private final long idleTimeoutNanos;
+  private final int maxSessions;
+  private volatile long nextEvictionNanos;
+
+  public HashSessionRegistry() {
+    this(DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_MAX_SESSIONS);
+  }
+
+  /**
+   * @param idleTimeoutMillis Time without updates after which a session is evicted
+   * @param maxSessions       Max amount of sessions open at the same time
+   */
+  public HashSessionRegistry(long idleTimeoutMillis, int maxSessions) {
+    if (idleTimeoutMillis <= 0 || maxSessions <= 0) {
+      throw new IllegalArgumentException(
+        "Idle timeout and max sessions must be greater than zero."
+      );
+    }
+
+    this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+    this.maxSessions = maxSessions;
+    this.nextEvictionNanos = System.nanoTime() + idleTimeoutNanos;
+  }
+
+  /**
+   * @param algorithm Digest algorithm, like SHA-256 or SHA-512
+   * @return Handle of the new session
+   * @throws IllegalStateException If there are too many sessions open
+   */
+  public int init(String algorithm) throws NoSuchAlgorithmException {
+    MessageDigest digest = DigestSpec.createDigest(algorithm);
+    long now = System.nanoTime();
+
+    if (now - nextEvictionNanos >= 0 || sessions.size() >= maxSessions) {
+      evictIdle(now);
+    }
+
+    if (sessions.size() >= maxSessions) {
+      throw new IllegalStateException(
+        "Too many hash sessions open, digest or abandon some of them."
+      );
+    }
+
+    int handle = nextHandle.getAndIncrement();
+    sessions.put(handle, new Session(digest, now));
+    return handle;
+  }
+
+  /**
+   * Feeds the session digest with the given data
+   *
+   * @throws IllegalArgumentException If the session does not exist or expired
+   */
+  public void update(int handle, byte[] data) {
+    Session session = get(handle);
+
+    synchronized (session) {
+      // It may have been digested or evicted while waiting for the lock
+      if (session.finished) {
+        throw unknownSession(handle);
+      }
+      session.digest.update(data);
+      session.lastAccessNanos = System.nanoTime();
+    }
+  }
+
+  /**
+   * Completes the session digest and frees the session
+   *
+   * @throws IllegalArgumentException If the session does not exist or expired
+   */
+  public byte[] digest(int handle) {
+    Session session = sessions.remove(handle);
+    if (session == null) {
+      throw unknownSession(handle);
+    }
+
+    synchronized (session) {
+      session.finished = true;
+      return session.digest.digest();
+    }
+  }
+
+  /**
+   * @return Amount of sessions open
+   */
+  public int size() {
+    return sessions.size();
+  }
+
+  /**
+   * Frees every session not updated within the idle timeout
+   *
+   * @param now Current System.nanoTime()
+   * @return Amount of sessions evicted
+   */
+  int evictIdle(long now) {
+    nextEvictionNanos = now + idleTimeoutNanos;
+    int evicted = 0;
+
+    Iterator<Map.Entry<Integer, Session>> iterator = sessions.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Session session = iterator.next().getValue();
+      synchronized (session) {
+        if (now - session.lastAccessNanos >= idleTimeoutNanos) {
+          session.finished = true;
+          iterator.remove();
+          evicted++;
+        }
+      }
+    }
+
+    return evicted;
+  }
+
+  private Session get(int handle) {
+    Session session = sessions.get(handle);
+    if (session == null) {
+      throw unknownSession(handle);
+    }
+    return session;
+  }
+
+  private static IllegalArgumentException unknownSession(int handle) {
+    return new IllegalArgumentException(
+      "Hash session " + handle + " does not exist or expired."
+    );
+  }
+
+  private static class Session {
+
+    final MessageDigest digest;
+    long lastAccessNanos;
+    boolean finished;
+
+    Session(MessageDigest digest, long now) {
+      this.digest = digest;
+      this.lastAccessNanos = now;
+    }
+  }
+}
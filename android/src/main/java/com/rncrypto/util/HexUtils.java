@@ -0,0 +1,68 @@
+package com.rncrypto.util;
+
+/**
+ * Hex encoding and decoding for the module and the service layer. The service
+ * has to run outside of Android (unit tests and benchmarks on the host JVM)
+ * and cannot depend on fbcore, so both use this one instead.
+ */
+public class HexUtils {
+
+  private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+  /**
+   * @param bytes Bytes to encode
+   * @return Lower case hex string
+   */
+  public static String encode(byte[] bytes) {
+    char[] hex = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      hex[2 * i] = DIGITS[(bytes[i] >> 4) & 0xF];
+      hex[2 * i + 1] = DIGITS[bytes[i] & 0xF];
+    }
+    return new String(hex);
+  }
+
+  /**
+   * Same as fbcore's Hex.decodeHex, which it replaces: only ASCII hex digits
+   * are accepted, and errors are the same IllegalArgumentExceptions
+   *
+   * @param hex Hex string, upper or lower case
+   * @return The decoded bytes
+   */
+  public static byte[] decode(String hex) {
+    int length = hex.length();
+    if ((length & 1) != 0) {
+      throw new IllegalArgumentException("Odd number of characters.");
+    }
+
+    byte[] bytes = new byte[length / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      int high = digit(hex.charAt(2 * i));
+      int low = digit(hex.charAt(2 * i + 1));
+
+      if (high < 0 || low < 0) {
+        throw new IllegalArgumentException("Invalid hexadecimal digit: " + hex);
+      }
+
+      bytes[i] = (byte) ((high << 4) | low);
+    }
+
+    return bytes;
+  }
+
+  /**
+   * Unlike Character.digit, other Unicode digits are not accepted
+   */
+  private static int digit(char c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    }
+    if (c >= 'a' && c <= 'f') {
+      return c - 'a' + 10;
+    }
+    if (c >= 'A' && c <= 'F') {
+      return c - 'A' + 10;
+    }
+    return -1;
+  }
+}
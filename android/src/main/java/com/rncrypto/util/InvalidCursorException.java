@@ -0,0 +1,15 @@
+package com.rncrypto.util;
+
+/**
+ * Thrown when reading a page of a directory listing that was closed, expired
+ * or whose page was already read, so callers can tell it apart from invalid
+ * arguments of the listing itself.
+ */
+public class InvalidCursorException extends IllegalArgumentException {
+
+  private static final long serialVersionUID = 1L;
+
+  public InvalidCursorException(int cursor) {
+    super("Directory listing " + cursor + " does not exist or expired.");
+  }
+}
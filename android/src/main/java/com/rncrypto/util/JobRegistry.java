@@ -0,0 +1,86 @@
+package com.rncrypto.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cancellation tokens of the running file operations, by job id. Ids are
+ * chosen by the caller, so they are known before the operation starts and it
+ * can be cancelled even while it waits for a worker. Each caller numbers its
+ * jobs from a range reserved with reserveIds.
+ */
+public class JobRegistry {
+
+  public static final int NO_JOB = 0;
+  /** Size of each range given by reserveIds */
+  public static final int IDS_PER_RANGE = 1 << 20;
+
+  private static final int RANGES = Integer.MAX_VALUE / IDS_PER_RANGE;
+
+  private final ConcurrentMap<Integer, CancellationToken> jobs =
+    new ConcurrentHashMap<>();
+  private final AtomicInteger reservedRanges = new AtomicInteger();
+
+  /**
+   * Reserves a range of ids for a caller that numbers its jobs with a counter,
+   * like a JS runtime, whose counter starts over when it is reloaded while
+   * jobs of the previous one still run
+   *
+   * @return Id before the first one of the range
+   */
+  public int reserveIds() {
+    int range = (reservedRanges.getAndIncrement() & Integer.MAX_VALUE) % RANGES;
+    return range * IDS_PER_RANGE;
+  }
+
+  /**
+   * Registers a job
+   *
+   * @param jobId Id of the job, NO_JOB if it cannot be cancelled
+   * @return Token the job has to check, null for NO_JOB
+   * @throws IllegalStateException If a job with the same id is running
+   */
+  public CancellationToken start(int jobId) {
+    if (jobId == NO_JOB) {
+      return null;
+    }
+
+    CancellationToken token = new CancellationToken();
+    if (jobs.putIfAbsent(jobId, token) != null) {
+      throw new IllegalStateException("Job " + jobId + " is already running.");
+    }
+    return token;
+  }
+
+  /**
+   * Unregisters a job once it completed
+   *
+   * @param token Token returned by start, nullable
+   */
+  public void finish(int jobId, CancellationToken token) {
+    if (token != null) {
+      jobs.remove(jobId, token);
+    }
+  }
+
+  /**
+   * @return false if there is no job running with the given id
+   */
+  public boolean cancel(int jobId) {
+    CancellationToken token = jobs.get(jobId);
+    if (token == null) {
+      return false;
+    }
+
+    token.cancel();
+    return true;
+  }
+
+  /**
+   * @return Amount of jobs running
+   */
+  public int size() {
+    return jobs.size();
+  }
+}
@@ -0,0 +1,43 @@
+package com.rncrypto.util;
+
+/**
+ * A key to derive with PBKDF2 as part of a batch
+ */
+public class KeyDerivationItem {
+
+  private final String password;
+  private final byte[] salt;
+  private final int rounds;
+  private final int derivedKeyLength;
+
+  /**
+   * @param derivedKeyLength Length of the derived key in bytes
+   */
+  public KeyDerivationItem(
+    String password,
+    byte[] salt,
+    int rounds,
+    int derivedKeyLength
+  ) {
+    this.password = password;
+    this.salt = salt;
+    this.rounds = rounds;
+    this.derivedKeyLength = derivedKeyLength;
+  }
+
+  public String getPassword() {
+    return password;
+  }
+
+  public byte[] getSalt() {
+    return salt;
+  }
+
+  public int getRounds() {
+    return rounds;
+  }
+
+  public int getDerivedKeyLength() {
+    return derivedKeyLength;
+  }
+}
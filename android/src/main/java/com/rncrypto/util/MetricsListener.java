@@ -0,0 +1,11 @@
+package com.rncrypto.util;
+
+public interface MetricsListener {
+  /**
+   * Called once per finished operation, on the thread that finished it.
+   * Keep it cheap, it delays the callback of the operation.
+   *
+   * @param record What the operation processed and how long it took
+   */
+  void onOperationCompleted(OperationRecord record);
+}
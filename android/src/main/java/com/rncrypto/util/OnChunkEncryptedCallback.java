@@ -0,0 +1,12 @@
+package com.rncrypto.util;
+
+public interface OnChunkEncryptedCallback {
+  /**
+   * Called once a chunk is completely written and closed. Chunks can finish
+   * in any order and this can be called from any worker thread.
+   *
+   * @param index Position of the chunk in the destination paths
+   * @param path  Path where the chunk has been written
+   */
+  void onChunkEncrypted(int index, String path);
+}
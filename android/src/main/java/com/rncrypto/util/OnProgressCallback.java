@@ -0,0 +1,15 @@
+package com.rncrypto.util;
+
+public interface OnProgressCallback {
+  long UNKNOWN_TOTAL = -1;
+
+  /**
+   * Called every time a buffer is processed, possibly from several worker
+   * threads at once. Wrap it in a ProgressThrottle before doing anything
+   * expensive with it.
+   *
+   * @param processedBytes Bytes of the input processed so far
+   * @param totalBytes     Bytes of the whole input, or UNKNOWN_TOTAL
+   */
+  void onProgress(long processedBytes, long totalBytes);
+}
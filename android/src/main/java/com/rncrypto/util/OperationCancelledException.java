@@ -0,0 +1,17 @@
+package com.rncrypto.util;
+
+import java.io.IOException;
+
+/**
+ * Thrown by file operations stopped through their CancellationToken. It is an
+ * IOException so it travels the same paths as any other I/O failure, callers
+ * tell it apart by its type.
+ */
+public class OperationCancelledException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  public OperationCancelledException() {
+    super("Operation cancelled.");
+  }
+}
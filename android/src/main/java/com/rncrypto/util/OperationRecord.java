@@ -0,0 +1,83 @@
+package com.rncrypto.util;
+
+/**
+ * Outcome of a single operation, as given to a MetricsListener
+ */
+public class OperationRecord {
+
+  private final String operation;
+  private final long bytes;
+  private final long queueWaitNanos;
+  private final long wallNanos;
+  private final Exception error;
+
+  public OperationRecord(
+    String operation,
+    long bytes,
+    long queueWaitNanos,
+    long wallNanos,
+    Exception error
+  ) {
+    this.operation = operation;
+    this.bytes = bytes;
+    this.queueWaitNanos = queueWaitNanos;
+    this.wallNanos = wallNanos;
+    this.error = error;
+  }
+
+  /**
+   * @return Name of the operation, like encryptFile
+   */
+  public String getOperation() {
+    return operation;
+  }
+
+  /**
+   * @return Bytes of input processed
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * @return Time waiting for a worker before starting, part of the wall time
+   */
+  public long getQueueWaitNanos() {
+    return queueWaitNanos;
+  }
+
+  /**
+   * @return Time since the operation was submitted until it finished, queue
+   * wait included
+   */
+  public long getWallNanos() {
+    return wallNanos;
+  }
+
+  /**
+   * @return Time the operation ran on a worker, the wall time without the
+   * queue wait
+   */
+  public long getRunNanos() {
+    return Math.max(0, wallNanos - queueWaitNanos);
+  }
+
+  /**
+   * @return Error of the operation, null if it succeeded
+   */
+  public Exception getError() {
+    return error;
+  }
+
+  /**
+   * @return Throughput in MB/s over the run time, so time waiting in the
+   * queue does not count, 0 if it is not known
+   */
+  public double getMegabytesPerSecond() {
+    long runNanos = getRunNanos();
+    if (runNanos <= 0) {
+      return 0;
+    }
+    return (double) bytes / (1024 * 1024) / (runNanos / 1e9);
+  }
+}
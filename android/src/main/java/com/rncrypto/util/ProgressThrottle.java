@@ -0,0 +1,71 @@
+package com.rncrypto.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forwards progress only when both enough time and enough bytes have passed
+ * since the last forwarded update, so listeners get a few updates per second
+ * however fast the data is processed. Completion is always forwarded.
+ *
+ * Updates from several threads may arrive out of order, the ones older than
+ * the last forwarded are dropped.
+ */
+public class ProgressThrottle implements OnProgressCallback {
+
+  public static final long DEFAULT_MIN_INTERVAL_MILLIS = 250;
+  public static final long DEFAULT_MIN_BYTES = 1024 * 1024;
+
+  private final OnProgressCallback delegate;
+  private final long minIntervalNanos;
+  private final long minBytes;
+
+  private volatile long reportedBytes = 0;
+  private volatile long reportedNanos = System.nanoTime();
+  private boolean completed = false;
+
+  public ProgressThrottle(OnProgressCallback delegate) {
+    this(delegate, DEFAULT_MIN_INTERVAL_MILLIS, DEFAULT_MIN_BYTES);
+  }
+
+  /**
+   * @param delegate          Callback receiving the forwarded updates
+   * @param minIntervalMillis Min time between two forwarded updates
+   * @param minBytes          Min bytes processed between two forwarded updates
+   */
+  public ProgressThrottle(
+    OnProgressCallback delegate,
+    long minIntervalMillis,
+    long minBytes
+  ) {
+    this.delegate = delegate;
+    this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMillis);
+    this.minBytes = minBytes;
+  }
+
+  @Override
+  public void onProgress(long processedBytes, long totalBytes) {
+    boolean done = totalBytes != UNKNOWN_TOTAL && processedBytes >= totalBytes;
+
+    // Cheap checks first, this runs once per buffer
+    if (!done && processedBytes - reportedBytes < minBytes) {
+      return;
+    }
+
+    long now = System.nanoTime();
+    if (!done && now - reportedNanos < minIntervalNanos) {
+      return;
+    }
+
+    // Forwarded while holding the lock so listeners see updates in order
+    synchronized (this) {
+      if (completed || (!done && processedBytes <= reportedBytes)) {
+        return;
+      }
+      completed = done;
+      reportedBytes = processedBytes;
+      reportedNanos = now;
+
+      delegate.onProgress(processedBytes, totalBytes);
+    }
+  }
+}
@@ -0,0 +1,348 @@
+package com.rncrypto.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Chooses which security provider implements each algorithm the library
+ * uses. Until a calibration runs or is loaded, every algorithm comes from the
+ * platform default provider.
+ *
+ * The calibration runs a short workload on every installed provider offering
+ * the algorithm, discards the ones whose output differs from the default one,
+ * and selects the fastest. It is tagged with a version, like the app version,
+ * so a saved calibration is only loaded by the same version.
+ *
+ * Scores are bytes per second for ciphers and digests, and iterations per
+ * second for key derivation.
+ */
+public class ProviderRegistry {
+
+  public static final String AES_CTR = "AES/CTR/NoPadding";
+  public static final String SHA_256 = "SHA-256";
+  public static final String SHA_512 = "SHA-512";
+  public static final String PBKDF2 = "PBKDF2WithHmacSHA512";
+
+  private static final List<String> ALGORITHMS = Arrays.asList(
+    AES_CTR,
+    SHA_256,
+    SHA_512,
+    PBKDF2
+  );
+
+  private static final int CALIBRATION_PAYLOAD_SIZE = 1024 * 1024;
+  private static final int CALIBRATION_ROUNDS = 2000;
+  private static final int CALIBRATION_PASSES = 3;
+
+  private static final String VERSION_KEY = "version";
+  private static final String SELECTED_PREFIX = "selected.";
+  private static final String SCORE_PREFIX = "score.";
+
+  private static final ProviderRegistry shared = new ProviderRegistry();
+
+  private final Map<String, Provider> selected = new ConcurrentHashMap<>();
+  private volatile Map<String, Map<String, Double>> scores = Collections.emptyMap();
+  private volatile String version;
+
+  public static ProviderRegistry getShared() {
+    return shared;
+  }
+
+  /**
+   * @return The provider selected for the algorithm, null for the default
+   */
+  public Provider providerFor(String algorithm) {
+    return selected.get(algorithm);
+  }
+
+  public Cipher cipher(String transformation)
+    throws NoSuchAlgorithmException, NoSuchPaddingException {
+    Provider provider = selected.get(transformation);
+    return provider != null
+      ? Cipher.getInstance(transformation, provider)
+      : Cipher.getInstance(transformation);
+  }
+
+  public MessageDigest messageDigest(String algorithm)
+    throws NoSuchAlgorithmException {
+    Provider provider = selected.get(algorithm);
+    return provider != null
+      ? MessageDigest.getInstance(algorithm, provider)
+      : MessageDigest.getInstance(algorithm);
+  }
+
+  public SecretKeyFactory secretKeyFactory(String algorithm)
+    throws NoSuchAlgorithmException {
+    Provider provider = selected.get(algorithm);
+    return provider != null
+      ? SecretKeyFactory.getInstance(algorithm, provider)
+      : SecretKeyFactory.getInstance(algorithm);
+  }
+
+  /**
+   * @return Version of the calibration in use, null if there is none
+   */
+  public String getVersion() {
+    return version;
+  }
+
+  /**
+   * @return Name of the provider used for each algorithm
+   */
+  public Map<String, String> getSelection() {
+    Map<String, String> selection = new LinkedHashMap<>();
+    for (String algorithm : ALGORITHMS) {
+      Provider provider = selected.get(algorithm);
+      selection.put(algorithm, provider != null ? provider.getName() : null);
+    }
+    return selection;
+  }
+
+  /**
+   * @return Score of each provider measured for each algorithm, empty if
+   * there is no calibration
+   */
+  public Map<String, Map<String, Double>> getScores() {
+    return scores;
+  }
+
+  /**
+   * Measures every provider of every algorithm and selects the fastest ones.
+   * Takes in the order of a second, run it in background.
+   *
+   * @param version Version the calibration is tagged with
+   */
+  public synchronized void calibrate(String version) {
+    Map<String, Map<String, Double>> measured = new LinkedHashMap<>();
+
+    for (String algorithm : ALGORITHMS) {
+      Map<String, Double> algorithmScores = new LinkedHashMap<>();
+      Provider fastest = null;
+      double best = 0;
+
+      try {
+        byte[] reference = run(algorithm, null);
+
+        for (Provider provider : Security.getProviders()) {
+          Double score = measure(algorithm, provider, reference);
+          if (score == null) {
+            continue;
+          }
+
+          algorithmScores.put(provider.getName(), score);
+          if (score > best) {
+            best = score;
+            fastest = provider;
+          }
+        }
+      } catch (GeneralSecurityException e) {
+        // Not available on this platform, keep the default
+      }
+
+      measured.put(algorithm, algorithmScores);
+      if (fastest != null) {
+        selected.put(algorithm, fastest);
+      } else {
+        selected.remove(algorithm);
+      }
+    }
+
+    this.scores = Collections.unmodifiableMap(measured);
+    this.version = version;
+  }
+
+  /**
+   * Serializes the calibration in use, to be given to load later
+   */
+  public String save() {
+    Properties properties = new Properties();
+    if (version != null) {
+      properties.setProperty(VERSION_KEY, version);
+    }
+
+    for (Map.Entry<String, Provider> entry : selected.entrySet()) {
+      properties.setProperty(
+        SELECTED_PREFIX + entry.getKey(),
+        entry.getValue().getName()
+      );
+    }
+
+    for (Map.Entry<String, Map<String, Double>> algorithm : scores.entrySet()) {
+      for (Map.Entry<String, Double> score : algorithm.getValue().entrySet()) {
+        properties.setProperty(
+          SCORE_PREFIX + algorithm.getKey() + "|" + score.getKey(),
+          String.valueOf(score.getValue())
+        );
+      }
+    }
+
+    StringWriter writer = new StringWriter();
+    try {
+      properties.store(writer, null);
+    } catch (IOException e) {
+      // Writing to a StringWriter does not fail
+      throw new IllegalStateException(e);
+    }
+    return writer.toString();
+  }
+
+  /**
+   * Applies a calibration given by save, unless it was made for another
+   * version or any of its providers is no longer installed
+   *
+   * @param saved   Calibration given by save, nullable
+   * @param version Version the calibration must be tagged with
+   * @return true if it was applied, false if it has to run again
+   */
+  public synchronized boolean load(String saved, String version) {
+    if (saved == null || version == null) {
+      return false;
+    }
+
+    Properties properties = new Properties();
+    try {
+      properties.load(new StringReader(saved));
+    } catch (IOException | IllegalArgumentException e) {
+      return false;
+    }
+
+    if (!version.equals(properties.getProperty(VERSION_KEY))) {
+      return false;
+    }
+
+    Map<String, Provider> loaded = new ConcurrentHashMap<>();
+    Map<String, Map<String, Double>> loadedScores = new LinkedHashMap<>();
+
+    for (String algorithm : ALGORITHMS) {
+      String name = properties.getProperty(SELECTED_PREFIX + algorithm);
+      if (name != null) {
+        Provider provider = Security.getProvider(name);
+        if (provider == null) {
+          return false;
+        }
+        loaded.put(algorithm, provider);
+      }
+      loadedScores.put(algorithm, new LinkedHashMap<>());
+    }
+
+    for (String key : properties.stringPropertyNames()) {
+      int separator = key.indexOf('|');
+      if (!key.startsWith(SCORE_PREFIX) || separator < 0) {
+        continue;
+      }
+
+      Map<String, Double> algorithmScores = loadedScores.get(
+        key.substring(SCORE_PREFIX.length(), separator)
+      );
+      if (algorithmScores != null) {
+        try {
+          algorithmScores.put(
+            key.substring(separator + 1),
+            Double.valueOf(properties.getProperty(key))
+          );
+        } catch (NumberFormatException e) {
+          return false;
+        }
+      }
+    }
+
+    selected.clear();
+    selected.putAll(loaded);
+    this.scores = Collections.unmodifiableMap(loadedScores);
+    this.version = version;
+    return true;
+  }
+
+  /**
+   * @return Score of the provider, or null if it does not offer the
+   * algorithm or its output differs from the reference one
+   */
+  private static Double measure(
+    String algorithm,
+    Provider provider,
+    byte[] reference
+  ) {
+    try {
+      long elapsed = Long.MAX_VALUE;
+
+      // First pass warms up the provider and the JIT
+      for (int pass = 0; pass < CALIBRATION_PASSES; pass++) {
+        long start = System.nanoTime();
+        byte[] output = run(algorithm, provider);
+        if (pass > 0) {
+          elapsed = Math.min(elapsed, System.nanoTime() - start);
+        }
+        if (!Arrays.equals(reference, output)) {
+          return null;
+        }
+      }
+
+      double work = PBKDF2.equals(algorithm)
+        ? CALIBRATION_ROUNDS
+        : CALIBRATION_PAYLOAD_SIZE;
+      return work * 1e9 / Math.max(elapsed, 1);
+    } catch (GeneralSecurityException | RuntimeException e) {
+      // Offers the algorithm but not for keys outside of it, like keystores
+      return null;
+    }
+  }
+
+  /**
+   * Runs the calibration workload of the algorithm
+   *
+   * @param provider Provider to run it with, null for the default one
+   * @return Output of the workload
+   */
+  private static byte[] run(String algorithm, Provider provider)
+    throws GeneralSecurityException {
+    byte[] payload = new byte[CALIBRATION_PAYLOAD_SIZE];
+    byte[] salt = new byte[16];
+
+    if (AES_CTR.equals(algorithm)) {
+      Cipher cipher = provider != null
+        ? Cipher.getInstance(algorithm, provider)
+        : Cipher.getInstance(algorithm);
+      cipher.init(
+        Cipher.ENCRYPT_MODE,
+        new SecretKeySpec(new byte[32], "AES"),
+        new IvParameterSpec(new byte[16])
+      );
+      return cipher.doFinal(payload);
+    }
+
+    if (PBKDF2.equals(algorithm)) {
+      SecretKeyFactory factory = provider != null
+        ? SecretKeyFactory.getInstance(algorithm, provider)
+        : SecretKeyFactory.getInstance(algorithm);
+      return factory
+        .generateSecret(
+          new PBEKeySpec("calibration".toCharArray(), salt, CALIBRATION_ROUNDS, 512)
+        )
+        .getEncoded();
+    }
+
+    MessageDigest digest = provider != null
+      ? MessageDigest.getInstance(algorithm, provider)
+      : MessageDigest.getInstance(algorithm);
+    return digest.digest(payload);
+  }
+}
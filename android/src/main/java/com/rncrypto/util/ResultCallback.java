@@ -0,0 +1,9 @@
+package com.rncrypto.util;
+
+public interface ResultCallback<T> {
+  /**
+   * @param ex     Error of the operation, null if it succeeded
+   * @param result Result of the operation, null if it failed
+   */
+  void onComplete(Exception ex, T result);
+}
@@ -0,0 +1,140 @@
+package com.rncrypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.crypto.AEADBadTagException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AuthenticatedFileRepositoryTest {
+
+  private ExecutorService executor;
+  private AuthenticatedFileRepository repository;
+  private byte[] key;
+  private byte[] data;
+  private File source;
+  private File encrypted;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void setUp() throws Exception {
+    executor = Executors.newFixedThreadPool(4);
+    repository = new AuthenticatedFileRepository(
+      executor,
+      new SegmentedGcmFileCipher(executor, 4, 4096)
+    );
+
+    Random random = new Random(29);
+    key = new byte[32];
+    data = new byte[20 * 1024 + 3];
+    random.nextBytes(key);
+    random.nextBytes(data);
+
+    source = tempFolder.newFile();
+    encrypted = tempFolder.newFile();
+    Files.write(source.toPath(), data);
+
+    AtomicReference<Exception> error = new AtomicReference<>();
+    repository.encryptFile(
+      source.getAbsolutePath(),
+      encrypted.getAbsolutePath(),
+      key,
+      null,
+      null,
+      error::set
+    );
+    assertNull(error.get());
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  private void corrupt() throws Exception {
+    byte[] content = Files.readAllBytes(encrypted.toPath());
+    content[content.length - 1] ^= 1;
+    Files.write(encrypted.toPath(), content);
+  }
+
+  @Test
+  public void testDecryptsInBackground() throws Exception {
+    File decrypted = tempFolder.newFile();
+    AtomicReference<Exception> error = new AtomicReference<>();
+    CountDownLatch done = new CountDownLatch(1);
+
+    repository.decryptFileInBackground(
+      encrypted.getAbsolutePath(),
+      decrypted.getAbsolutePath(),
+      key,
+      null,
+      null,
+      (Exception ex) -> {
+        error.set(ex);
+        done.countDown();
+      }
+    );
+
+    done.await();
+    assertNull(error.get());
+    assertArrayEquals(data, Files.readAllBytes(decrypted.toPath()));
+  }
+
+  @Test
+  public void testFailedVerificationDeletesPlaintext() throws Exception {
+    corrupt();
+    File decrypted = tempFolder.newFile();
+    AtomicReference<Exception> error = new AtomicReference<>();
+
+    repository.decryptFile(
+      encrypted.getAbsolutePath(),
+      decrypted.getAbsolutePath(),
+      key,
+      null,
+      null,
+      error::set
+    );
+
+    assertTrue(error.get() instanceof AEADBadTagException);
+    assertFalse(decrypted.exists());
+  }
+
+  @Test
+  public void testVerifyReportsTampering() throws Exception {
+    AtomicReference<Boolean> valid = new AtomicReference<>();
+    repository.verifyFile(
+      encrypted.getAbsolutePath(),
+      key,
+      null,
+      null,
+      (ex, result) -> valid.set(result)
+    );
+    assertEquals(true, valid.get());
+
+    corrupt();
+    repository.verifyFile(
+      encrypted.getAbsolutePath(),
+      key,
+      null,
+      null,
+      (ex, result) -> valid.set(result)
+    );
+    assertEquals(false, valid.get());
+  }
+}
@@ -0,0 +1,148 @@
+package com.rncrypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Test;
+
+public class CryptoWorkerPoolTest {
+
+  private static final int TIMEOUT_SECONDS = 5;
+  private CryptoWorkerPool pool;
+
+  @After
+  public void tearDown() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testConcurrencyIsBounded() throws Exception {
+    pool = new CryptoWorkerPool(2, 100, CryptoWorkerPool.RejectionPolicy.ABORT);
+
+    int tasks = 20;
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    CountDownLatch done = new CountDownLatch(tasks);
+
+    for (int i = 0; i < tasks; i++) {
+      pool.execute(() -> {
+        int now = running.incrementAndGet();
+        maxRunning.accumulateAndGet(now, Math::max);
+        try {
+          Thread.sleep(5);
+        } catch (InterruptedException ignored) {}
+        running.decrementAndGet();
+        done.countDown();
+      });
+    }
+
+    assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertTrue("At most 2 tasks should run at once", maxRunning.get() <= 2);
+  }
+
+  @Test
+  public void testAbortWhenQueueIsFull() throws Exception {
+    pool = new CryptoWorkerPool(1, 1, CryptoWorkerPool.RejectionPolicy.ABORT);
+
+    CountDownLatch release = new CountDownLatch(1);
+    Runnable blocked = () -> {
+      try {
+        release.await();
+      } catch (InterruptedException ignored) {}
+    };
+
+    // One running, one queued, the third does not fit
+    pool.execute(blocked);
+    pool.execute(blocked);
+
+    try {
+      pool.execute(blocked);
+      fail("Third task should have been rejected");
+    } catch (RejectedExecutionException e) {
+      assertEquals(1, pool.getRejectedCount());
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testRejectionIsReportedThroughCallback() throws Exception {
+    pool = new CryptoWorkerPool(1, 1, CryptoWorkerPool.RejectionPolicy.ABORT);
+
+    CountDownLatch release = new CountDownLatch(1);
+    Runnable blocked = () -> {
+      try {
+        release.await();
+      } catch (InterruptedException ignored) {}
+    };
+    pool.execute(blocked);
+    pool.execute(blocked);
+
+    final Exception[] error = new Exception[1];
+    new EncryptFileRepository(pool)
+      .encryptFileInBackground(
+        "/unused/source",
+        "/unused/destination",
+        new byte[32],
+        new byte[16],
+        ex -> error[0] = ex
+      );
+    release.countDown();
+
+    assertTrue(error[0] instanceof RejectedExecutionException);
+  }
+
+  @Test
+  public void testMaxConcurrencyCanBeChanged() {
+    pool = new CryptoWorkerPool(2, 10, CryptoWorkerPool.RejectionPolicy.ABORT);
+
+    pool.setMaxConcurrency(6);
+    assertEquals(6, pool.getMaxConcurrency());
+
+    pool.setMaxConcurrency(1);
+    assertEquals(1, pool.getMaxConcurrency());
+  }
+
+  @Test
+  public void testTasksKnowHowLongTheyWaited() throws Exception {
+    pool = new CryptoWorkerPool(1, 10, CryptoWorkerPool.RejectionPolicy.ABORT);
+
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+    AtomicLong waited = new AtomicLong(-1);
+
+    pool.execute(() -> {
+      try {
+        release.await();
+      } catch (InterruptedException ignored) {}
+    });
+    pool.execute(() -> {
+      waited.set(CryptoWorkerPool.currentQueueWaitNanos());
+      done.countDown();
+    });
+
+    Thread.sleep(50);
+    release.countDown();
+
+    assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertTrue(waited.get() >= TimeUnit.MILLISECONDS.toNanos(50));
+    assertEquals(0, CryptoWorkerPool.currentQueueWaitNanos());
+  }
+
+  @Test
+  public void testComputePoolIsSeparateFromSharedPool() {
+    assertSame(CryptoWorkerPool.getCompute(), CryptoWorkerPool.getCompute());
+    assertNotSame(CryptoWorkerPool.getShared(), CryptoWorkerPool.getCompute());
+  }
+}
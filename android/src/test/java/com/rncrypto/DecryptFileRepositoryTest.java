@@ -0,0 +1,125 @@
+package com.rncrypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DecryptFileRepositoryTest {
+
+  private EncryptFileRepository encryptRepository;
+  private DecryptFileRepository repository;
+  private byte[] validKey;
+  private byte[] validIv;
+  private byte[] plainData;
+  private File encryptedFile;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void setUp() throws Exception {
+    encryptRepository = new EncryptFileRepository(Runnable::run);
+    repository = new DecryptFileRepository(Runnable::run);
+
+    Random random = new Random(11);
+    validKey = new byte[32];
+    validIv = new byte[16];
+    random.nextBytes(validKey);
+    random.nextBytes(validIv);
+
+    plainData = new byte[64 * 1024 + 9];
+    random.nextBytes(plainData);
+
+    File plainFile = tempFolder.newFile();
+    Files.write(plainFile.toPath(), plainData);
+    encryptedFile = tempFolder.newFile();
+
+    final Exception[] error = new Exception[1];
+    encryptRepository.encryptFile(
+      plainFile.getAbsolutePath(),
+      encryptedFile.getAbsolutePath(),
+      validKey,
+      validIv,
+      ex -> error[0] = ex
+    );
+    assertNull(error[0]);
+  }
+
+  private byte[] decryptRange(long offset, long length) throws Exception {
+    File destination = tempFolder.newFile();
+    final Exception[] error = new Exception[1];
+
+    repository.decryptRange(
+      encryptedFile.getAbsolutePath(),
+      destination.getAbsolutePath(),
+      validKey,
+      validIv,
+      offset,
+      length,
+      ex -> error[0] = ex
+    );
+
+    assertNull(error[0]);
+    return Files.readAllBytes(destination.toPath());
+  }
+
+  @Test
+  public void testDecryptRangeMatchesPlaintext() throws Exception {
+    long[][] ranges = {
+      { 0, 4096 },
+      { 16, 32 },
+      { 7, 100 },
+      { 40000, 12345 },
+      { plainData.length - 3, 3 },
+    };
+
+    for (long[] range : ranges) {
+      int offset = (int) range[0];
+      int length = (int) range[1];
+
+      assertArrayEquals(
+        "Range " + offset + "+" + length + " should match",
+        Arrays.copyOfRange(plainData, offset, offset + length),
+        decryptRange(offset, length)
+      );
+    }
+  }
+
+  @Test
+  public void testDecryptRangeStopsAtEndOfFile() throws Exception {
+    int offset = plainData.length - 10;
+
+    assertArrayEquals(
+      Arrays.copyOfRange(plainData, offset, plainData.length),
+      decryptRange(offset, 1000)
+    );
+    assertEquals(0, decryptRange(plainData.length + 100, 10).length);
+  }
+
+  @Test
+  public void testDecryptRangeRejectsNegativeValues() throws Exception {
+    final Exception[] error = new Exception[1];
+
+    repository.decryptRange(
+      encryptedFile.getAbsolutePath(),
+      tempFolder.newFile().getAbsolutePath(),
+      validKey,
+      validIv,
+      -1,
+      10,
+      ex -> error[0] = ex
+    );
+
+    assertTrue(error[0] instanceof IllegalArgumentException);
+  }
+}
@@ -2,16 +2,37 @@ package com.rncrypto;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import com.rncrypto.util.CancellationToken;
+import com.rncrypto.util.ChunkPlan;
+import com.rncrypto.util.CtrCipherFactory;
+import com.rncrypto.util.DigestSpec;
+import com.rncrypto.util.FileBatchItem;
+import com.rncrypto.util.FileDigests;
+import com.rncrypto.util.FileJobOptions;
+import com.rncrypto.util.OperationCancelledException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -204,6 +225,37 @@ public class EncryptFileRepositoryTest {
     assertEquals(2 * 1024, chunk3.length());
   }
 
+  @Test
+  public void testChunksAreOpenedWhenReached() throws Exception {
+    byte[] testData = new byte[16 * 1024];
+    Arrays.fill(testData, (byte) 0x41);
+    File sourceFile = createTestFile(testData);
+
+    // Last path cannot be created, earlier chunks are written before it fails
+    String[] destinationPaths = {
+      new File(tempFolder.getRoot(), "0.part").getAbsolutePath(),
+      new File(tempFolder.getRoot(), "1.part").getAbsolutePath(),
+      new File(tempFolder.getRoot(), "missing/2.part").getAbsolutePath(),
+      new File(tempFolder.getRoot(), "3.part").getAbsolutePath(),
+    };
+
+    final Exception[] encryptError = new Exception[1];
+
+    repository.encryptFileToChunks(
+      sourceFile.getAbsolutePath(),
+      destinationPaths,
+      validKey,
+      validIv,
+      6 * 1024,
+      error -> encryptError[0] = error
+    );
+
+    assertTrue(encryptError[0] instanceof IOException);
+    assertEquals(6 * 1024, new File(destinationPaths[0]).length());
+    assertEquals(6 * 1024, new File(destinationPaths[1]).length());
+    assertFalse(new File(destinationPaths[3]).exists());
+  }
+
   @Test
   public void testChunkSizeIntegerOverflow() throws Exception {
     byte[] testData = new byte[100];
@@ -323,4 +375,478 @@ public class EncryptFileRepositoryTest {
         remainingBytes, lastChunk.length());
     }
   }
+
+  @Test
+  public void testParallelChunksMatchSerialChunks() throws Exception {
+    byte[] testData = new byte[100 * 1024 + 33];
+    new Random(3).nextBytes(testData);
+    File sourceFile = createTestFile(testData);
+
+    int chunkSize = 10 * 1024 + 5; // Not aligned to the AES block size
+    int chunks = 10;
+    String[] serialPaths = new String[chunks];
+    String[] parallelPaths = new String[chunks];
+    for (int i = 0; i < chunks; i++) {
+      serialPaths[i] = tempFolder.newFile().getAbsolutePath();
+      parallelPaths[i] = tempFolder.newFile().getAbsolutePath();
+    }
+
+    final Exception[] errors = new Exception[2];
+    final boolean[] notified = new boolean[chunks];
+
+    repository.encryptFileToChunks(
+      sourceFile.getAbsolutePath(),
+      serialPaths,
+      validKey,
+      validIv,
+      chunkSize,
+      error -> errors[0] = error
+    );
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    new EncryptFileRepository(executor)
+      .encryptFileToChunksInParallel(
+        sourceFile.getAbsolutePath(),
+        parallelPaths,
+        validKey,
+        validIv,
+        chunkSize,
+        4,
+        (index, path) -> notified[index] = parallelPaths[index].equals(path),
+        error -> errors[1] = error
+      );
+    executor.shutdown();
+
+    assertNull(errors[0]);
+    assertNull(errors[1]);
+    for (int i = 0; i < chunks; i++) {
+      assertTrue("Chunk " + i + " should be notified", notified[i]);
+      assertArrayEquals(
+        "Chunk " + i + " should match",
+        Files.readAllBytes(new File(serialPaths[i]).toPath()),
+        Files.readAllBytes(new File(parallelPaths[i]).toPath())
+      );
+    }
+  }
+
+  @Test
+  public void testParallelChunksFailBeforeWorkWhenNotEnoughOutputs()
+    throws Exception {
+    byte[] testData = new byte[16 * 1024];
+    File sourceFile = createTestFile(testData);
+
+    String[] destinationPaths = { tempFolder.newFile().getAbsolutePath() };
+    final Exception[] encryptError = new Exception[1];
+
+    repository.encryptFileToChunksInParallel(
+      sourceFile.getAbsolutePath(),
+      destinationPaths,
+      validKey,
+      validIv,
+      8 * 1024,
+      2,
+      null,
+      error -> encryptError[0] = error
+    );
+
+    assertTrue(encryptError[0] instanceof IOException);
+    assertEquals(0, new File(destinationPaths[0]).length());
+  }
+
+  private static byte[] sha256(byte[] data) throws Exception {
+    return MessageDigest.getInstance("SHA-256").digest(data);
+  }
+
+  @Test
+  public void testEncryptFileComputesDigestsInline() throws Exception {
+    byte[] testData = new byte[300 * 1024 + 7];
+    new Random(5).nextBytes(testData);
+    File sourceFile = createTestFile(testData);
+    File encryptedFile = tempFolder.newFile();
+
+    final Exception[] encryptError = new Exception[1];
+    final FileDigests[] digests = new FileDigests[1];
+
+    repository.encryptFile(
+      sourceFile.getAbsolutePath(),
+      encryptedFile.getAbsolutePath(),
+      validKey,
+      validIv,
+      FileJobOptions.DEFAULT.withDigests(
+        new DigestSpec(
+          Arrays.asList(DigestSpec.SHA256),
+          Arrays.asList(DigestSpec.SHA256, DigestSpec.RIPEMD160)
+        )
+      ),
+      (error, result) -> {
+        encryptError[0] = error;
+        digests[0] = result;
+      }
+    );
+
+    assertNull(encryptError[0]);
+    byte[] encrypted = Files.readAllBytes(encryptedFile.toPath());
+    assertArrayEquals(sha256(testData), digests[0].getPlaintext().get(DigestSpec.SHA256));
+    assertArrayEquals(sha256(encrypted), digests[0].getCiphertext().get(DigestSpec.SHA256));
+
+    MessageDigest ripemd160 = DigestSpec.createDigest(DigestSpec.RIPEMD160);
+    assertArrayEquals(
+      ripemd160.digest(encrypted),
+      digests[0].getCiphertext().get(DigestSpec.RIPEMD160)
+    );
+  }
+
+  @Test
+  public void testChunkDigestsMatchEachChunk() throws Exception {
+    byte[] testData = new byte[50 * 1024 + 11];
+    new Random(6).nextBytes(testData);
+    File sourceFile = createTestFile(testData);
+
+    int chunkSize = 10 * 1024 + 5;
+    int chunks = 6;
+    String[] serialPaths = new String[chunks];
+    String[] parallelPaths = new String[chunks];
+    for (int i = 0; i < chunks; i++) {
+      serialPaths[i] = tempFolder.newFile().getAbsolutePath();
+      parallelPaths[i] = tempFolder.newFile().getAbsolutePath();
+    }
+
+    DigestSpec spec = new DigestSpec(
+      Arrays.asList(DigestSpec.SHA256),
+      Arrays.asList(DigestSpec.SHA256)
+    );
+    final Exception[] errors = new Exception[2];
+    final List<?>[] results = new List<?>[2];
+
+    repository.encryptFileToChunks(
+      sourceFile.getAbsolutePath(),
+      serialPaths,
+      validKey,
+      validIv,
+      chunkSize,
+      FileJobOptions.DEFAULT.withDigests(spec),
+      (error, digests) -> {
+        errors[0] = error;
+        results[0] = digests;
+      }
+    );
+
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    new EncryptFileRepository(executor)
+      .encryptFileToChunksInParallel(
+        sourceFile.getAbsolutePath(),
+        parallelPaths,
+        validKey,
+        validIv,
+        chunkSize,
+        3,
+        FileJobOptions.DEFAULT.withDigests(spec),
+        null,
+        (error, digests) -> {
+          errors[1] = error;
+          results[1] = digests;
+        }
+      );
+    executor.shutdown();
+
+    assertNull(errors[0]);
+    assertNull(errors[1]);
+    for (int r = 0; r < 2; r++) {
+      String[] paths = r == 0 ? serialPaths : parallelPaths;
+      assertEquals(chunks, results[r].size());
+
+      for (int i = 0; i < chunks; i++) {
+        FileDigests digests = (FileDigests) results[r].get(i);
+        int start = Math.min(i * chunkSize, testData.length);
+        int end = Math.min(start + chunkSize, testData.length);
+
+        assertArrayEquals(
+          "Plaintext of chunk " + i,
+          sha256(Arrays.copyOfRange(testData, start, end)),
+          digests.getPlaintext().get(DigestSpec.SHA256)
+        );
+        assertArrayEquals(
+          "Ciphertext of chunk " + i,
+          sha256(Files.readAllBytes(new File(paths[i]).toPath())),
+          digests.getCiphertext().get(DigestSpec.SHA256)
+        );
+      }
+    }
+  }
+
+  @Test
+  public void testCancelledEncryptionDeletesPartialOutput() throws Exception {
+    byte[] testData = new byte[4 * 1024 * 1024];
+    File sourceFile = createTestFile(testData);
+    File encryptedFile = tempFolder.newFile();
+    CancellationToken cancellation = new CancellationToken();
+    final Exception[] encryptError = new Exception[1];
+
+    repository.encryptFile(
+      sourceFile.getAbsolutePath(),
+      encryptedFile.getAbsolutePath(),
+      validKey,
+      validIv,
+      FileJobOptions.DEFAULT
+        .withProgress((processed, total) -> cancellation.cancel())
+        .withCancellation(cancellation),
+      (error, digests) -> encryptError[0] = error
+    );
+
+    assertTrue(encryptError[0] instanceof OperationCancelledException);
+    assertFalse(encryptedFile.exists());
+  }
+
+  @Test
+  public void testCancelledChunkingDeletesEveryChunk() throws Exception {
+    byte[] testData = new byte[5 * 1024 * 1024];
+    File sourceFile = createTestFile(testData);
+    String[] paths = new String[3];
+    for (int i = 0; i < paths.length; i++) {
+      paths[i] = tempFolder.newFile().getAbsolutePath();
+    }
+    CancellationToken cancellation = new CancellationToken();
+    final Exception[] encryptError = new Exception[1];
+
+    repository.encryptFileToChunks(
+      sourceFile.getAbsolutePath(),
+      paths,
+      validKey,
+      validIv,
+      2 * 1024 * 1024,
+      FileJobOptions.DEFAULT
+        .withProgress((processed, total) -> cancellation.cancel())
+        .withCancellation(cancellation),
+      (error, digests) -> encryptError[0] = error
+    );
+
+    assertTrue(encryptError[0] instanceof OperationCancelledException);
+    for (String path : paths) {
+      assertFalse(new File(path).exists());
+    }
+  }
+
+  @Test
+  public void testCancelledResumableEncryptionKeepsOutputAndJournal()
+    throws Exception {
+    byte[] testData = new byte[4 * 1024 * 1024];
+    File sourceFile = createTestFile(testData);
+    File encryptedFile = tempFolder.newFile();
+    CancellationToken cancellation = new CancellationToken();
+    final Exception[] encryptError = new Exception[1];
+
+    repository.encryptFileResumable(
+      sourceFile.getAbsolutePath(),
+      encryptedFile.getAbsolutePath(),
+      validKey,
+      validIv,
+      FileJobOptions.DEFAULT
+        .withProgress((processed, total) -> cancellation.cancel())
+        .withCancellation(cancellation),
+      (error, resumedFrom) -> encryptError[0] = error
+    );
+
+    assertTrue(encryptError[0] instanceof OperationCancelledException);
+    assertTrue(encryptedFile.exists());
+    assertTrue(
+      new File(
+        ResumableFileCipher.journalPathOf(encryptedFile.getAbsolutePath())
+      ).exists()
+    );
+  }
+
+  @Test
+  public void testPlannedChunksMatchGivenPaths() throws Exception {
+    int chunkSize = 10 * 1024;
+    int[] sizes = { 0, 3 * chunkSize, 3 * chunkSize + 1 };
+
+    for (int size : sizes) {
+      byte[] testData = new byte[size];
+      new Random(size).nextBytes(testData);
+      File sourceFile = createTestFile(testData);
+      File outputDirectory = new File(tempFolder.getRoot(), "planned-" + size);
+      final Exception[] errors = new Exception[2];
+      final ChunkPlan[] plan = new ChunkPlan[1];
+
+      repository.encryptFileToChunks(
+        sourceFile.getAbsolutePath(),
+        outputDirectory.getAbsolutePath(),
+        "{name}.{index}",
+        validKey,
+        validIv,
+        chunkSize,
+        FileJobOptions.DEFAULT,
+        (error, result) -> {
+          errors[0] = error;
+          plan[0] = result;
+        }
+      );
+      assertNull(errors[0]);
+
+      List<ChunkPlan.Chunk> chunks = plan[0].getChunks();
+      assertEquals(Math.max(1, (size + chunkSize - 1) / chunkSize), chunks.size());
+
+      String[] givenPaths = new String[chunks.size()];
+      for (int i = 0; i < givenPaths.length; i++) {
+        givenPaths[i] = tempFolder.newFile().getAbsolutePath();
+      }
+      repository.encryptFileToChunks(
+        sourceFile.getAbsolutePath(),
+        givenPaths,
+        validKey,
+        validIv,
+        chunkSize,
+        error -> errors[1] = error
+      );
+      assertNull(errors[1]);
+
+      for (ChunkPlan.Chunk chunk : chunks) {
+        File written = new File(chunk.getPath());
+        assertEquals(outputDirectory, written.getParentFile());
+        assertEquals(sourceFile.getName() + "." + chunk.getIndex(), written.getName());
+        assertEquals(chunk.getSize(), written.length());
+        assertArrayEquals(
+          Files.readAllBytes(new File(givenPaths[chunk.getIndex()]).toPath()),
+          Files.readAllBytes(written.toPath())
+        );
+      }
+    }
+  }
+
+  @Test
+  public void testBatchReportsEachFile() throws Exception {
+    int files = 6;
+    byte[][] contents = new byte[files][];
+    List<FileBatchItem> encryptItems = new ArrayList<>();
+    List<FileBatchItem> decryptItems = new ArrayList<>();
+    for (int i = 0; i < files; i++) {
+      contents[i] = new byte[1000 * i + 7];
+      new Random(i).nextBytes(contents[i]);
+      byte[] key = Arrays.copyOf(validKey, validKey.length);
+      key[0] = (byte) i;
+
+      String encrypted = tempFolder.newFile().getAbsolutePath();
+      encryptItems.add(
+        new FileBatchItem(
+          createTestFile(contents[i]).getAbsolutePath(),
+          encrypted,
+          key,
+          validIv
+        )
+      );
+      decryptItems.add(
+        new FileBatchItem(
+          encrypted,
+          tempFolder.newFile().getAbsolutePath(),
+          key,
+          validIv
+        )
+      );
+    }
+    encryptItems.add(
+      new FileBatchItem(
+        new File(tempFolder.getRoot(), "missing").getAbsolutePath(),
+        tempFolder.newFile().getAbsolutePath(),
+        validKey,
+        validIv
+      )
+    );
+
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    final List<?>[] results = new List<?>[2];
+    new EncryptFileRepository(executor)
+      .encryptFiles(encryptItems, 3, (error, errors) -> results[0] = errors);
+    new DecryptFileRepository(executor)
+      .decryptFiles(decryptItems, 3, (error, errors) -> results[1] = errors);
+    executor.shutdown();
+
+    assertEquals(files + 1, results[0].size());
+    assertTrue(results[0].get(files) instanceof IOException);
+    for (int i = 0; i < files; i++) {
+      assertNull(results[0].get(i));
+      assertNull(results[1].get(i));
+      assertArrayEquals(
+        contents[i],
+        Files.readAllBytes(
+          new File(decryptItems.get(i).getDestinationPath()).toPath()
+        )
+      );
+    }
+  }
+
+  /**
+   * Produces size bytes without allocating anything per read
+   */
+  private static class PatternInputStream extends InputStream {
+
+    private long remaining;
+
+    PatternInputStream(long size) {
+      this.remaining = size;
+    }
+
+    @Override
+    public int read() {
+      if (remaining <= 0) return -1;
+      remaining--;
+      return (int) (remaining & 0xFF);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (remaining <= 0) return -1;
+      int n = (int) Math.min(len, remaining);
+      for (int i = 0; i < n; i++) {
+        b[off + i] = (byte) (remaining - i);
+      }
+      remaining -= n;
+      return n;
+    }
+  }
+
+  private static class DiscardOutputStream extends OutputStream {
+
+    @Override
+    public void write(int b) {}
+
+    @Override
+    public void write(byte[] b, int off, int len) {}
+  }
+
+  private long allocatedWhileChunking(long size, int chunkSize)
+    throws Exception {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+
+    OutputStream[] outputs = new OutputStream[(int) (size / chunkSize) + 1];
+    for (int i = 0; i < outputs.length; i++) {
+      outputs[i] = new DiscardOutputStream();
+    }
+    Cipher cipher = CtrCipherFactory.create(Cipher.ENCRYPT_MODE, validKey, validIv);
+    InputStream input = new PatternInputStream(size);
+
+    long before = threads.getThreadAllocatedBytes(threadId);
+    repository.encryptToMultipleChunks(input, outputs, cipher, chunkSize);
+    return threads.getThreadAllocatedBytes(threadId) - before;
+  }
+
+  @Test
+  public void testChunkingAllocationDoesNotGrowWithFileSize() throws Exception {
+    Assume.assumeTrue(
+      ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean
+    );
+
+    int chunkSize = 64 * 1024;
+    // Warm up, class loading and JIT allocate on the first runs
+    allocatedWhileChunking(4 * 1024 * 1024, chunkSize);
+
+    long small = allocatedWhileChunking(4 * 1024 * 1024, chunkSize);
+    long big = allocatedWhileChunking(64 * 1024 * 1024, chunkSize);
+
+    // Before, every 4 KB block allocated its own 4 KB result array
+    assertTrue(
+      "64 MB allocated " + big + " bytes, 4 MB allocated " + small,
+      big - small < 256 * 1024
+    );
+  }
 }
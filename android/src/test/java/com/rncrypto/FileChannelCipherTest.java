@@ -0,0 +1,77 @@
+package com.rncrypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.rncrypto.util.BufferSizer;
+import com.rncrypto.util.CtrCipherFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+import javax.crypto.Cipher;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileChannelCipherTest {
+
+  private byte[] key;
+  private byte[] iv;
+  private byte[] data;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void setUp() {
+    Random random = new Random(5);
+    key = new byte[32];
+    iv = new byte[16];
+    data = new byte[300 * 1024 + 11];
+    random.nextBytes(key);
+    random.nextBytes(iv);
+    random.nextBytes(data);
+  }
+
+  private byte[] streamEncrypt() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    new EncryptFileRepository(Runnable::run)
+      .encrypt(
+        new ByteArrayInputStream(data),
+        output,
+        CtrCipherFactory.create(Cipher.ENCRYPT_MODE, key, iv)
+      );
+    return output.toByteArray();
+  }
+
+  private byte[] channelEncrypt(FileChannelCipher channelCipher)
+    throws Exception {
+    File source = tempFolder.newFile();
+    File destination = tempFolder.newFile();
+    Files.write(source.toPath(), data);
+
+    long written = channelCipher.processFile(
+      source.getAbsolutePath(),
+      destination.getAbsolutePath(),
+      CtrCipherFactory.create(Cipher.ENCRYPT_MODE, key, iv)
+    );
+
+    assertEquals(data.length, written);
+    return Files.readAllBytes(destination.toPath());
+  }
+
+  @Test
+  public void testChannelOutputMatchesStreamOutput() throws Exception {
+    assertArrayEquals(streamEncrypt(), channelEncrypt(new FileChannelCipher()));
+  }
+
+  @Test
+  public void testMappedOutputMatchesStreamOutput() throws Exception {
+    FileChannelCipher mapped = new FileChannelCipher(new BufferSizer(4096), true, 0);
+
+    assertArrayEquals(streamEncrypt(), channelEncrypt(mapped));
+  }
+}
@@ -0,0 +1,22 @@
+package com.rncrypto;
+
+import java.io.FileNotFoundException;
+import java.util.concurrent.ExecutorService;
+import org.junit.Test;
+
+/**
+ * Runs the listing tests with java.io, as below API 26
+ */
+public class FileListDirRepositoryTest extends ListDirRepositoryTest {
+
+  @Override
+  ListDirRepository newRepository(ExecutorService executor) {
+    return new ListDirRepository(executor, 4, 60_000, 2, false);
+  }
+
+  @Override
+  @Test(expected = FileNotFoundException.class)
+  public void testMissingDirectoryFails() throws Exception {
+    super.testMissingDirectoryFails();
+  }
+}
@@ -0,0 +1,68 @@
+package com.rncrypto;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.regex.PatternSyntaxException;
+import org.junit.Test;
+
+public class GlobTest {
+
+  private static final String[] NAMES = {
+    "a.part",
+    "b.PART",
+    ".part",
+    "a.part.tmp",
+    "notes.txt",
+    "x]y",
+    "a+b(1).txt",
+    "c",
+    "{a}",
+    "a,b",
+  };
+
+  /**
+   * Compares with the matcher of java.nio.file, which Glob stands in for
+   */
+  private static void assertMatchesLikeNio(String glob) {
+    PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+    for (String name : NAMES) {
+      assertEquals(
+        glob + " on " + name,
+        matcher.matches(Paths.get(name)),
+        Glob.compile(glob).matcher(name).matches()
+      );
+    }
+  }
+
+  @Test
+  public void testMatchesLikeNio() {
+    for (String glob : new String[] {
+      "*",
+      "*.part",
+      "?.part",
+      "*.{part,txt}",
+      "[ab].*",
+      "[!ab]*",
+      "[a-c]",
+      "a+b(1).txt",
+      "\\{a\\}",
+      "a,b",
+      "**",
+    }) {
+      assertMatchesLikeNio(glob);
+    }
+  }
+
+  @Test(expected = PatternSyntaxException.class)
+  public void testUnclosedGroupFails() {
+    Glob.compile("{a,b");
+  }
+
+  @Test(expected = PatternSyntaxException.class)
+  public void testUnclosedClassFails() {
+    Glob.compile("[ab");
+  }
+}
@@ -0,0 +1,145 @@
+package com.rncrypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.rncrypto.util.BufferSizer;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HashFileRepositoryTest {
+
+  private HashFileRepository repository;
+  private byte[] testData;
+  private File testFile;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void setUp() throws IOException {
+    // Small buffers so every file needs several reads
+    repository = new HashFileRepository(Runnable::run, new BufferSizer(4096));
+
+    testData = new byte[100 * 1024 + 17];
+    new Random(9).nextBytes(testData);
+    testFile = tempFolder.newFile();
+    try (FileOutputStream fos = new FileOutputStream(testFile)) {
+      fos.write(testData);
+    }
+  }
+
+  private byte[] hash(String algorithm, long offset, long length)
+    throws Exception {
+    final Exception[] error = new Exception[1];
+    final byte[][] digest = new byte[1][];
+
+    repository.hashFile(
+      testFile.getAbsolutePath(),
+      algorithm,
+      offset,
+      length,
+      (ex, result) -> {
+        error[0] = ex;
+        digest[0] = result;
+      }
+    );
+
+    if (error[0] != null) {
+      throw error[0];
+    }
+    return digest[0];
+  }
+
+  private static byte[] expected(String algorithm, byte[] data)
+    throws NoSuchAlgorithmException {
+    return MessageDigest.getInstance(algorithm).digest(data);
+  }
+
+  @Test
+  public void testWholeFileMatchesMessageDigest() throws Exception {
+    assertArrayEquals(
+      expected("SHA-256", testData),
+      hash("SHA-256", 0, HashFileRepository.UNTIL_END)
+    );
+    assertArrayEquals(
+      expected("SHA-512", testData),
+      hash("SHA-512", 0, HashFileRepository.UNTIL_END)
+    );
+  }
+
+  @Test
+  public void testRangeOnlyHashesItsBytes() throws Exception {
+    assertArrayEquals(
+      expected("SHA-256", Arrays.copyOfRange(testData, 5000, 5000 + 33333)),
+      hash("SHA-256", 5000, 33333)
+    );
+  }
+
+  @Test
+  public void testRangePastTheEndHashesUntilTheEnd() throws Exception {
+    int offset = testData.length - 100;
+
+    assertArrayEquals(
+      expected("SHA-256", Arrays.copyOfRange(testData, offset, testData.length)),
+      hash("SHA-256", offset, Long.MAX_VALUE)
+    );
+    assertArrayEquals(
+      expected("SHA-256", new byte[0]),
+      hash("SHA-256", testData.length + 10, 10)
+    );
+  }
+
+  @Test
+  public void testInvalidArgumentsAreReported() throws Exception {
+    final Exception[] errors = new Exception[2];
+
+    repository.hashFile(
+      testFile.getAbsolutePath(),
+      "SHA-256",
+      -1,
+      10,
+      (ex, result) -> errors[0] = ex
+    );
+    repository.hashFile(
+      testFile.getAbsolutePath(),
+      "NOT-A-HASH",
+      0,
+      10,
+      (ex, result) -> errors[1] = ex
+    );
+
+    assertTrue(errors[0] instanceof IllegalArgumentException);
+    assertTrue(errors[1] instanceof NoSuchAlgorithmException);
+  }
+
+  @Test
+  public void testMissingFileIsReported() {
+    final Exception[] error = new Exception[1];
+    final byte[][] digest = new byte[1][];
+
+    repository.hashFile(
+      new File(tempFolder.getRoot(), "missing").getAbsolutePath(),
+      "SHA-256",
+      0,
+      HashFileRepository.UNTIL_END,
+      (ex, result) -> {
+        error[0] = ex;
+        digest[0] = result;
+      }
+    );
+
+    assertTrue(error[0] instanceof IOException);
+    assertNull(digest[0]);
+  }
+}
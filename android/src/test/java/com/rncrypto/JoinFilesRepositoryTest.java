@@ -0,0 +1,73 @@
+package com.rncrypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JoinFilesRepositoryTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private final JoinFilesRepository repository = new JoinFilesRepository(
+    Runnable::run
+  );
+
+  @Test
+  public void testJoinReplacesOutputAndDeletesParts() throws Exception {
+    int[] sizes = { 100000, 0, 7, 65536 };
+    String[] parts = new String[sizes.length];
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    for (int i = 0; i < sizes.length; i++) {
+      byte[] data = new byte[sizes[i]];
+      new Random(i).nextBytes(data);
+      File part = tempFolder.newFile();
+      Files.write(part.toPath(), data);
+      parts[i] = part.getAbsolutePath();
+      expected.write(data);
+    }
+    File output = tempFolder.newFile();
+    Files.write(output.toPath(), new byte[] { 1, 2, 3 });
+    final Exception[] error = new Exception[1];
+
+    repository.joinFiles(parts, output.getAbsolutePath(), ex -> error[0] = ex);
+
+    assertNull(error[0]);
+    assertArrayEquals(expected.toByteArray(), Files.readAllBytes(output.toPath()));
+    for (String part : parts) {
+      assertFalse(new File(part).exists());
+    }
+    assertEquals(1, tempFolder.getRoot().list().length);
+  }
+
+  @Test
+  public void testFailedJoinLeavesOutputAndPartsUntouched() throws Exception {
+    File part = tempFolder.newFile();
+    Files.write(part.toPath(), new byte[] { 4, 5, 6 });
+    String[] parts = {
+      part.getAbsolutePath(),
+      new File(tempFolder.getRoot(), "missing").getAbsolutePath(),
+    };
+    File output = tempFolder.newFile();
+    Files.write(output.toPath(), new byte[] { 1, 2, 3 });
+    final Exception[] error = new Exception[1];
+
+    repository.joinFiles(parts, output.getAbsolutePath(), ex -> error[0] = ex);
+
+    assertNotNull(error[0]);
+    assertArrayEquals(new byte[] { 1, 2, 3 }, Files.readAllBytes(output.toPath()));
+    assertTrue(part.exists());
+    assertEquals(2, tempFolder.getRoot().list().length);
+  }
+}
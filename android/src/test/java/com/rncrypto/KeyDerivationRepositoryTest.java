@@ -0,0 +1,96 @@
+package com.rncrypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.rncrypto.util.KeyDerivationItem;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KeyDerivationRepositoryTest {
+
+  private ExecutorService executor;
+  private KeyDerivationRepository repository;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+    repository = new KeyDerivationRepository(executor);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Test
+  public void testBatchDerivesEveryKeyInOrder() throws Exception {
+    List<KeyDerivationItem> items = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      items.add(
+        new KeyDerivationItem(
+          "password" + i,
+          ("salt" + i).getBytes(StandardCharsets.UTF_8),
+          100 + i,
+          32 + i
+        )
+      );
+    }
+
+    AtomicReference<Exception> error = new AtomicReference<>();
+    AtomicReference<List<byte[]>> keys = new AtomicReference<>();
+    repository.pbkdf2Batch(
+      items,
+      4,
+      (ex, result) -> {
+        error.set(ex);
+        keys.set(result);
+      }
+    );
+
+    assertNull(error.get());
+    assertEquals(items.size(), keys.get().size());
+    for (int i = 0; i < items.size(); i++) {
+      KeyDerivationItem item = items.get(i);
+      assertArrayEquals(
+        repository.pbkdf2(
+          item.getPassword(),
+          item.getSalt(),
+          item.getRounds(),
+          item.getDerivedKeyLength()
+        ),
+        keys.get().get(i)
+      );
+    }
+  }
+
+  @Test
+  public void testInvalidItemFailsTheBatch() {
+    List<KeyDerivationItem> items = new ArrayList<>();
+    items.add(new KeyDerivationItem("password", new byte[16], 100, 32));
+    items.add(new KeyDerivationItem("password", new byte[16], 0, 32));
+
+    AtomicReference<Exception> error = new AtomicReference<>();
+    AtomicReference<List<byte[]>> keys = new AtomicReference<>();
+    repository.pbkdf2Batch(
+      items,
+      2,
+      (ex, result) -> {
+        error.set(ex);
+        keys.set(result);
+      }
+    );
+
+    assertNotNull(error.get());
+    assertNull(keys.get());
+  }
+}
@@ -0,0 +1,284 @@
+package com.rncrypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.rncrypto.util.DirectoryEntry;
+import com.rncrypto.util.DirectoryPage;
+import com.rncrypto.util.InvalidCursorException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ListDirRepositoryTest {
+
+  private ExecutorService executor;
+  private ListDirRepository repository;
+  private File root;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void setUp() throws IOException {
+    executor = Executors.newFixedThreadPool(4);
+    repository = newRepository(executor);
+
+    // root: 25 parts and a notes.txt, sub: 3 parts, sub/deeper: 1 part
+    root = tempFolder.newFolder("root");
+    for (int i = 0; i < 25; i++) {
+      write(new File(root, i + ".part"), i);
+    }
+    write(new File(root, "notes.txt"), 3);
+    File sub = new File(root, "sub");
+    File deeper = new File(sub, "deeper");
+    deeper.mkdirs();
+    for (int i = 0; i < 3; i++) {
+      write(new File(sub, "s" + i + ".part"), i);
+    }
+    write(new File(deeper, "d.part"), 7);
+  }
+
+  /**
+   * Lists with java.nio.file, as from API 26
+   */
+  ListDirRepository newRepository(ExecutorService executor) {
+    return new ListDirRepository(executor, 4, 60_000, 2, true);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  private static void write(File file, int size) throws IOException {
+    Files.write(file.toPath(), new byte[size]);
+  }
+
+  private DirectoryPage first(
+    String glob,
+    boolean recursive,
+    boolean withAttributes,
+    int pageSize
+  ) throws Exception {
+    Object[] result = new Object[2];
+    repository.listDir(
+      root.getPath(),
+      glob,
+      recursive,
+      withAttributes,
+      pageSize,
+      (ex, page) -> {
+        result[0] = ex;
+        result[1] = page;
+      }
+    );
+    if (result[0] != null) {
+      throw (Exception) result[0];
+    }
+    return (DirectoryPage) result[1];
+  }
+
+  private DirectoryPage next(int cursor) throws Exception {
+    Object[] result = new Object[2];
+    repository.nextPage(
+      cursor,
+      (ex, page) -> {
+        result[0] = ex;
+        result[1] = page;
+      }
+    );
+    if (result[0] != null) {
+      throw (Exception) result[0];
+    }
+    return (DirectoryPage) result[1];
+  }
+
+  /**
+   * Reads every page of a listing, by path
+   */
+  private Map<String, DirectoryEntry> readAll(DirectoryPage page, int pageSize)
+    throws Exception {
+    Map<String, DirectoryEntry> entries = new HashMap<>();
+    while (true) {
+      assertTrue(page.getEntries().size() <= pageSize);
+      for (DirectoryEntry entry : page.getEntries()) {
+        assertNull("Listed twice", entries.put(entry.getPath(), entry));
+      }
+      if (!page.hasMore()) {
+        return entries;
+      }
+      page = next(page.getCursor());
+    }
+  }
+
+  @Test
+  public void testPagesCoverEveryEntryOnce() throws Exception {
+    Map<String, DirectoryEntry> entries = readAll(first(null, false, true, 7), 7);
+
+    assertEquals(27, entries.size());
+    DirectoryEntry part = entries.get(new File(root, "12.part").getAbsolutePath());
+    assertEquals("12.part", part.getName());
+    assertEquals(12, part.getSize());
+    assertFalse(part.isDirectory());
+    assertTrue(entries.get(new File(root, "sub").getAbsolutePath()).isDirectory());
+    assertEquals(0, repository.size());
+  }
+
+  @Test
+  public void testNamesOnlyHaveNoAttributes() throws Exception {
+    Map<String, DirectoryEntry> entries = readAll(
+      first(null, false, false, 1000),
+      1000
+    );
+
+    assertEquals(27, entries.size());
+    for (DirectoryEntry entry : entries.values()) {
+      assertFalse(entry.hasAttributes());
+    }
+  }
+
+  @Test
+  public void testGlobFiltersNames() throws Exception {
+    Map<String, DirectoryEntry> entries = readAll(
+      first("*.part", false, false, 10),
+      10
+    );
+
+    assertEquals(25, entries.size());
+  }
+
+  @Test
+  public void testRecursiveFindsNestedMatches() throws Exception {
+    Map<String, DirectoryEntry> entries = readAll(
+      first("*.part", true, false, 4),
+      4
+    );
+
+    assertEquals(29, entries.size());
+    assertTrue(
+      entries.containsKey(
+        new File(root, "sub/deeper/d.part").getAbsolutePath()
+      )
+    );
+    // Found through the attributes, even if they were not asked for
+    assertTrue(entries.values().iterator().next().hasAttributes());
+  }
+
+  @Test
+  public void testClosedListingCannotBeRead() throws Exception {
+    DirectoryPage page = first(null, false, false, 5);
+
+    assertTrue(repository.close(page.getCursor()));
+    assertFalse(repository.close(page.getCursor()));
+    try {
+      next(page.getCursor());
+      throw new AssertionError("Expected the cursor to be invalid");
+    } catch (InvalidCursorException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testArgumentErrorsAreNotCursorErrors() throws Exception {
+    for (int pageSize : new int[] { 0, 5 }) {
+      try {
+        // An unclosed group is not a valid glob
+        first(pageSize == 0 ? null : "{a,b", false, false, pageSize);
+        throw new AssertionError("Expected the arguments to be invalid");
+      } catch (IllegalArgumentException e) {
+        assertFalse(e instanceof InvalidCursorException);
+      }
+    }
+  }
+
+  @Test
+  public void testBrokenLinksAreListedWithoutAttributes() throws Exception {
+    File link = new File(root, "broken.part");
+    Files.createSymbolicLink(link.toPath(), new File(root, "missing").toPath());
+
+    Map<String, DirectoryEntry> entries = readAll(
+      first(null, false, true, 1000),
+      1000
+    );
+
+    assertEquals(28, entries.size());
+    assertFalse(entries.get(link.getAbsolutePath()).hasAttributes());
+    assertTrue(entries.get(new File(root, "notes.txt").getAbsolutePath()).hasAttributes());
+  }
+
+  @Test
+  public void testRecursionDoesNotFollowLinks() throws Exception {
+    File link = new File(root, "sub/loop");
+    Files.createSymbolicLink(link.toPath(), root.toPath());
+
+    Map<String, DirectoryEntry> entries = readAll(
+      first(null, true, true, 1000),
+      1000
+    );
+
+    assertEquals(27 + 3 + 1 + 1 + 1, entries.size());
+    assertFalse(entries.get(link.getAbsolutePath()).isDirectory());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testLimitsOpenListings() throws Exception {
+    first(null, false, false, 5);
+    first(null, false, false, 5);
+    first(null, false, false, 5);
+  }
+
+  @Test
+  public void testIdleListingsAreEvicted() throws Exception {
+    first(null, false, false, 5);
+    first(null, false, false, 5);
+
+    assertEquals(0, repository.evictIdle(System.nanoTime()));
+    assertEquals(2, repository.evictIdle(System.nanoTime() + 61_000_000_000L));
+    assertEquals(0, repository.size());
+  }
+
+  @Test(expected = NoSuchFileException.class)
+  public void testMissingDirectoryFails() throws Exception {
+    root = new File(root, "missing");
+    first(null, false, false, 5);
+  }
+
+  @Test
+  public void testBackgroundListing() throws Exception {
+    List<DirectoryPage> pages = new ArrayList<>();
+    CountDownLatch done = new CountDownLatch(1);
+
+    repository.listDirInBackground(
+      root.getPath(),
+      null,
+      true,
+      true,
+      1000,
+      (ex, page) -> {
+        pages.add(page);
+        done.countDown();
+      }
+    );
+
+    done.await();
+    assertEquals(1, pages.size());
+    assertFalse(pages.get(0).hasMore());
+    assertEquals(27 + 3 + 1 + 1, pages.get(0).getEntries().size());
+  }
+}
@@ -0,0 +1,238 @@
+package com.rncrypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.rncrypto.util.CancellationToken;
+import com.rncrypto.util.CtrCipherFactory;
+import com.rncrypto.util.OperationCancelledException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Cipher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParallelCtrFileCipherTest {
+
+  private static final int SEGMENT_SIZE = 4096;
+
+  private ExecutorService executor;
+  private ParallelCtrFileCipher parallelCipher;
+  private byte[] key;
+  private byte[] iv;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+    parallelCipher = new ParallelCtrFileCipher(executor, 4, SEGMENT_SIZE);
+
+    Random random = new Random(42);
+    key = new byte[32];
+    iv = new byte[16];
+    random.nextBytes(key);
+    random.nextBytes(iv);
+    // Forces the counter to carry across several IV bytes
+    for (int i = 8; i < 16; i++) {
+      iv[i] = (byte) 0xFF;
+    }
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  private byte[] serialEncrypt(byte[] data) throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    new EncryptFileRepository(Runnable::run)
+      .encrypt(
+        new ByteArrayInputStream(data),
+        output,
+        CtrCipherFactory.create(Cipher.ENCRYPT_MODE, key, iv)
+      );
+    return output.toByteArray();
+  }
+
+  private byte[] parallelProcess(byte[] data, int mode) throws Exception {
+    File source = tempFolder.newFile();
+    File destination = tempFolder.newFile();
+    Files.write(source.toPath(), data);
+
+    parallelCipher.processFile(
+      source.getAbsolutePath(),
+      destination.getAbsolutePath(),
+      mode,
+      key,
+      iv
+    );
+
+    return Files.readAllBytes(destination.toPath());
+  }
+
+  @Test
+  public void testParallelEncryptionMatchesSerial() throws Exception {
+    int[] sizes = { 0, 1, 15, 16, SEGMENT_SIZE, SEGMENT_SIZE + 7, 10 * SEGMENT_SIZE + 123 };
+
+    for (int size : sizes) {
+      byte[] data = new byte[size];
+      new Random(size).nextBytes(data);
+
+      assertArrayEquals(
+        "Output differs for " + size + " bytes",
+        serialEncrypt(data),
+        parallelProcess(data, Cipher.ENCRYPT_MODE)
+      );
+    }
+  }
+
+  @Test
+  public void testParallelDecryptionRestoresPlaintext() throws Exception {
+    byte[] data = new byte[7 * SEGMENT_SIZE + 5];
+    new Random(7).nextBytes(data);
+
+    byte[] decrypted = parallelProcess(serialEncrypt(data), Cipher.DECRYPT_MODE);
+
+    assertArrayEquals(data, decrypted);
+  }
+
+  @Test
+  public void testChunksDecryptIntoTheOriginalFile() throws Exception {
+    byte[] data = new byte[3 * SEGMENT_SIZE + 101];
+    new Random(11).nextBytes(data);
+    File source = tempFolder.newFile();
+    Files.write(source.toPath(), data);
+
+    // Chunks not aligned to blocks nor segments, and an empty last one
+    int chunkSize = 2 * SEGMENT_SIZE + 5;
+    String[] chunks = new String[3];
+    for (int i = 0; i < chunks.length; i++) {
+      chunks[i] = tempFolder.newFile().getAbsolutePath();
+    }
+    parallelCipher.processFileToChunks(
+      source.getAbsolutePath(),
+      chunks,
+      Cipher.ENCRYPT_MODE,
+      key,
+      iv,
+      chunkSize,
+      2,
+      null
+    );
+
+    File destination = tempFolder.newFile();
+    parallelCipher.processChunksToFile(
+      chunks,
+      destination.getAbsolutePath(),
+      Cipher.DECRYPT_MODE,
+      key,
+      iv,
+      null,
+      null
+    );
+
+    assertArrayEquals(data, Files.readAllBytes(destination.toPath()));
+  }
+
+  @Test
+  public void testProgressCoversTheWholeFile() throws Exception {
+    byte[] data = new byte[9 * SEGMENT_SIZE + 3];
+    File source = tempFolder.newFile();
+    Files.write(source.toPath(), data);
+    ConcurrentLinkedQueue<long[]> updates = new ConcurrentLinkedQueue<>();
+
+    parallelCipher.processFile(
+      source.getAbsolutePath(),
+      tempFolder.newFile().getAbsolutePath(),
+      Cipher.ENCRYPT_MODE,
+      key,
+      iv,
+      (processed, total) -> updates.add(new long[] { processed, total }),
+      null
+    );
+
+    long max = 0;
+    for (long[] update : updates) {
+      assertEquals(data.length, update[1]);
+      assertTrue(update[0] > 0 && update[0] <= data.length);
+      max = Math.max(max, update[0]);
+    }
+    assertEquals(data.length, max);
+  }
+
+  @Test
+  public void testCancellationStopsEverySegment() throws Exception {
+    byte[] data = new byte[64 * SEGMENT_SIZE];
+    File source = tempFolder.newFile();
+    Files.write(source.toPath(), data);
+    CancellationToken cancellation = new CancellationToken();
+    AtomicLong lastProcessed = new AtomicLong();
+
+    try {
+      parallelCipher.processFile(
+        source.getAbsolutePath(),
+        tempFolder.newFile().getAbsolutePath(),
+        Cipher.ENCRYPT_MODE,
+        key,
+        iv,
+        (processed, total) -> {
+          lastProcessed.set(processed);
+          cancellation.cancel();
+        },
+        cancellation
+      );
+      fail("Expected the operation to be cancelled");
+    } catch (OperationCancelledException e) {
+      // Each thread finishes at most the buffer it was processing
+      assertTrue(lastProcessed.get() < data.length);
+    }
+  }
+
+  @Test
+  public void testWorksWhenHelpersAreRejected() throws Exception {
+    parallelCipher = new ParallelCtrFileCipher(
+      task -> {
+        throw new RejectedExecutionException();
+      },
+      4,
+      SEGMENT_SIZE
+    );
+    byte[] data = new byte[5 * SEGMENT_SIZE];
+    new Random(5).nextBytes(data);
+
+    byte[] encrypted = parallelProcess(data, Cipher.ENCRYPT_MODE);
+
+    assertEquals(data.length, encrypted.length);
+    assertArrayEquals(serialEncrypt(data), encrypted);
+  }
+
+  @Test
+  public void testCipherAtOffsetMatchesKeystream() throws Exception {
+    byte[] data = new byte[1000];
+    new Random(1).nextBytes(data);
+    byte[] expected = serialEncrypt(data);
+
+    int offset = 333;
+    Cipher cipher = CtrCipherFactory.createAt(Cipher.ENCRYPT_MODE, key, iv, offset);
+    byte[] tail = cipher.doFinal(data, offset, data.length - offset);
+
+    for (int i = 0; i < tail.length; i++) {
+      assertEquals(expected[offset + i], tail[i]);
+    }
+  }
+}
@@ -0,0 +1,190 @@
+package com.rncrypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import com.rncrypto.util.BufferSizer;
+import com.rncrypto.util.CancellationToken;
+import com.rncrypto.util.CtrCipherFactory;
+import com.rncrypto.util.DigestSpec;
+import com.rncrypto.util.FileDigests;
+import com.rncrypto.util.OperationCancelledException;
+import java.io.File;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import javax.crypto.Cipher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PipelinedChannelCipherTest {
+
+  private byte[] key;
+  private byte[] iv;
+  private byte[] data;
+  private CryptoWorkerPool pool;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void setUp() {
+    Random random = new Random(9);
+    key = new byte[32];
+    iv = new byte[16];
+    data = new byte[300 * 1024 + 11];
+    random.nextBytes(key);
+    random.nextBytes(iv);
+    random.nextBytes(data);
+    pool = new CryptoWorkerPool(2, 10, CryptoWorkerPool.RejectionPolicy.ABORT);
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  private byte[] encrypt(FileChannelCipher channelCipher, FileDigests digests)
+    throws Exception {
+    File source = tempFolder.newFile();
+    File destination = tempFolder.newFile();
+    Files.write(source.toPath(), data);
+
+    long written = channelCipher.processFile(
+      source.getAbsolutePath(),
+      destination.getAbsolutePath(),
+      CtrCipherFactory.create(Cipher.ENCRYPT_MODE, key, iv),
+      digests,
+      null,
+      null
+    );
+
+    assertEquals(data.length, written);
+    return Files.readAllBytes(destination.toPath());
+  }
+
+  private PipelinedChannelCipher pipelined(Executor executor) {
+    PipelinedChannelCipher channelCipher = new PipelinedChannelCipher(
+      executor,
+      new BufferSizer(4096),
+      3,
+      0
+    );
+    channelCipher.setEnabled(true);
+    return channelCipher;
+  }
+
+  @Test
+  public void testOutputMatchesSequentialOutput() throws Exception {
+    byte[] expected = encrypt(new FileChannelCipher(), null);
+
+    // Reused rings must not carry anything from the previous file
+    PipelinedChannelCipher channelCipher = pipelined(pool);
+    assertArrayEquals(expected, encrypt(channelCipher, null));
+    assertArrayEquals(expected, encrypt(channelCipher, null));
+  }
+
+  @Test
+  public void testDigestsMatchInputAndOutput() throws Exception {
+    FileDigests digests = new DigestSpec(
+      Collections.singletonList(DigestSpec.SHA256),
+      Collections.singletonList(DigestSpec.SHA256)
+    )
+      .newDigests();
+
+    byte[] encrypted = encrypt(pipelined(pool), digests);
+    digests.finish();
+
+    MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+    assertArrayEquals(sha256.digest(data), digests.getPlaintext().get(DigestSpec.SHA256));
+    assertArrayEquals(sha256.digest(encrypted), digests.getCiphertext().get(DigestSpec.SHA256));
+  }
+
+  @Test
+  public void testFallsBackWhenHelpersAreRejected() throws Exception {
+    byte[] expected = encrypt(new FileChannelCipher(), null);
+
+    PipelinedChannelCipher channelCipher = pipelined(
+      task -> {
+        throw new RejectedExecutionException();
+      }
+    );
+
+    assertArrayEquals(expected, encrypt(channelCipher, null));
+  }
+
+  @Test
+  public void testDisabledByDefault() throws Exception {
+    byte[] expected = encrypt(new FileChannelCipher(), null);
+
+    PipelinedChannelCipher channelCipher = new PipelinedChannelCipher(
+      task -> fail("Helpers must not start when disabled"),
+      new BufferSizer(4096),
+      3,
+      0
+    );
+    assertFalse(channelCipher.isEnabled());
+
+    assertArrayEquals(expected, encrypt(channelCipher, null));
+  }
+
+  @Test
+  public void testFallsBackWhenHelpersDoNotStart() throws Exception {
+    byte[] expected = encrypt(new FileChannelCipher(), null);
+
+    // Only the writer is run, the reader never starts
+    CryptoWorkerPool single = new CryptoWorkerPool(1, 10, CryptoWorkerPool.RejectionPolicy.ABORT);
+    boolean[] first = { true };
+    PipelinedChannelCipher channelCipher = pipelined(
+      task -> {
+        if (first[0]) {
+          first[0] = false;
+          single.execute(task);
+        }
+      }
+    );
+
+    try {
+      assertArrayEquals(expected, encrypt(channelCipher, null));
+    } finally {
+      single.shutdown();
+    }
+  }
+
+  @Test
+  public void testCancelledStopsEveryStage() throws Exception {
+    File source = tempFolder.newFile();
+    File destination = tempFolder.newFile();
+    Files.write(source.toPath(), data);
+    CancellationToken cancellation = new CancellationToken();
+
+    try {
+      pipelined(pool)
+        .processFile(
+          source.getAbsolutePath(),
+          destination.getAbsolutePath(),
+          CtrCipherFactory.create(Cipher.ENCRYPT_MODE, key, iv),
+          null,
+          (processed, total) -> cancellation.cancel(),
+          cancellation
+        );
+      fail("Expected the operation to be cancelled");
+    } catch (OperationCancelledException e) {
+      // Expected
+    }
+
+    // Both helpers are free again
+    assertArrayEquals(
+      encrypt(new FileChannelCipher(), null),
+      encrypt(pipelined(pool), null)
+    );
+  }
+}
@@ -0,0 +1,146 @@
+package com.rncrypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.rncrypto.util.BufferSizer;
+import com.rncrypto.util.CancellationToken;
+import com.rncrypto.util.CtrCipherFactory;
+import com.rncrypto.util.EncryptionJournal;
+import com.rncrypto.util.OperationCancelledException;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+import javax.crypto.Cipher;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResumableFileCipherTest {
+
+  private static final int CHECKPOINT_INTERVAL = 3 * BufferSizer.MIN_SIZE;
+
+  private ResumableFileCipher cipher;
+  private byte[] key;
+  private byte[] iv;
+  private byte[] data;
+  private File source;
+  private File destination;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void setUp() throws Exception {
+    cipher = new ResumableFileCipher(
+      new BufferSizer(BufferSizer.MIN_SIZE),
+      CHECKPOINT_INTERVAL
+    );
+
+    Random random = new Random(42);
+    key = new byte[32];
+    iv = new byte[16];
+    data = new byte[100_003];
+    random.nextBytes(key);
+    random.nextBytes(iv);
+    random.nextBytes(data);
+
+    source = tempFolder.newFile();
+    destination = tempFolder.newFile();
+    Files.write(source.toPath(), data);
+  }
+
+  private byte[] expected() throws Exception {
+    return CtrCipherFactory.create(Cipher.ENCRYPT_MODE, key, iv).doFinal(data);
+  }
+
+  private long encrypt(CancellationToken cancellation, long cancelAt)
+    throws Exception {
+    return cipher.encryptFile(
+      source.getAbsolutePath(),
+      destination.getAbsolutePath(),
+      key,
+      iv,
+      (processed, total) -> {
+        if (processed >= cancelAt) {
+          cancellation.cancel();
+        }
+      },
+      cancellation
+    );
+  }
+
+  private long interrupt(long at) throws Exception {
+    try {
+      encrypt(new CancellationToken(), at);
+      fail("Encryption should have been interrupted");
+    } catch (OperationCancelledException expected) {}
+
+    EncryptionJournal journal = EncryptionJournal.read(
+      new File(ResumableFileCipher.journalPathOf(destination.getAbsolutePath()))
+    );
+    return journal.getOffset();
+  }
+
+  @Test
+  public void testEncryptsInOnePass() throws Exception {
+    assertEquals(0, encrypt(null, Long.MAX_VALUE));
+
+    assertArrayEquals(expected(), Files.readAllBytes(destination.toPath()));
+    assertFalse(
+      new File(ResumableFileCipher.journalPathOf(destination.getAbsolutePath()))
+        .exists()
+    );
+  }
+
+  @Test
+  public void testResumesFromLastCheckpoint() throws Exception {
+    long checkpoint = interrupt(50_000);
+    assertTrue(checkpoint > 0);
+    assertEquals(0, checkpoint % CHECKPOINT_INTERVAL);
+
+    long[] firstProcessed = { -1 };
+    long resumedFrom = cipher.encryptFile(
+      source.getAbsolutePath(),
+      destination.getAbsolutePath(),
+      key,
+      iv,
+      (processed, total) -> {
+        if (firstProcessed[0] < 0) {
+          firstProcessed[0] = processed;
+        }
+      },
+      null
+    );
+
+    assertEquals(checkpoint, resumedFrom);
+    // Work done before the checkpoint is not done again
+    assertEquals(checkpoint + BufferSizer.MIN_SIZE, firstProcessed[0]);
+    assertArrayEquals(expected(), Files.readAllBytes(destination.toPath()));
+  }
+
+  @Test
+  public void testStartsOverIfOutputTailDoesNotMatch() throws Exception {
+    long checkpoint = interrupt(50_000);
+
+    byte[] output = Files.readAllBytes(destination.toPath());
+    output[(int) checkpoint - 1] ^= 1;
+    Files.write(destination.toPath(), output);
+
+    assertEquals(0, encrypt(null, Long.MAX_VALUE));
+    assertArrayEquals(expected(), Files.readAllBytes(destination.toPath()));
+  }
+
+  @Test
+  public void testStartsOverWithAnotherKey() throws Exception {
+    interrupt(50_000);
+    key[0] ^= 1;
+
+    assertEquals(0, encrypt(null, Long.MAX_VALUE));
+    assertArrayEquals(expected(), Files.readAllBytes(destination.toPath()));
+  }
+}
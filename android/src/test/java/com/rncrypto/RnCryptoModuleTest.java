@@ -0,0 +1,73 @@
+package com.rncrypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.react.bridge.Callback;
+import com.rncrypto.util.OperationCancelledException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class RnCryptoModuleTest {
+
+  /**
+   * Records the arguments of each call, failing on any type the bridge
+   * cannot convert
+   */
+  private static class RecordingCallback implements Callback {
+
+    final List<Object[]> calls = new ArrayList<>();
+
+    @Override
+    public void invoke(Object... args) {
+      for (Object arg : args) {
+        if (arg == null) {
+          continue;
+        }
+        assertTrue(
+          "Cannot convert argument of type " + arg.getClass(),
+          arg instanceof String ||
+          arg instanceof Number ||
+          arg instanceof Boolean
+        );
+      }
+      calls.add(args);
+    }
+  }
+
+  @Test
+  public void testCancellationReachesCallbackAsMessage() {
+    RecordingCallback cb = new RecordingCallback();
+
+    RnCryptoModule.completion(cb).onComplete(new OperationCancelledException());
+
+    assertEquals(1, cb.calls.size());
+    assertEquals(
+      Arrays.asList("Operation cancelled."),
+      Arrays.asList(cb.calls.get(0))
+    );
+  }
+
+  @Test
+  public void testSuccessReachesCallbackAsNull() {
+    RecordingCallback cb = new RecordingCallback();
+
+    RnCryptoModule.completion(cb).onComplete(null);
+
+    assertEquals(1, cb.calls.size());
+    assertEquals(1, cb.calls.get(0).length);
+  }
+
+  @Test
+  public void testErrorsWithoutMessageAreNotSuccesses() {
+    RecordingCallback cb = new RecordingCallback();
+
+    RnCryptoModule.completion(cb).onComplete(new IOException());
+
+    assertNotNull(cb.calls.get(0)[0]);
+  }
+}
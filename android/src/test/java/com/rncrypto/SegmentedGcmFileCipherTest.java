@@ -0,0 +1,246 @@
+package com.rncrypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.crypto.AEADBadTagException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentedGcmFileCipherTest {
+
+  private static final int SEGMENT_SIZE = 4096;
+  private static final int STRIDE = SEGMENT_SIZE + SegmentedGcmFileCipher.TAG_SIZE;
+
+  private ExecutorService executor;
+  private SegmentedGcmFileCipher gcmCipher;
+  private byte[] key;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+    gcmCipher = new SegmentedGcmFileCipher(executor, 4, SEGMENT_SIZE);
+    key = new byte[32];
+    new Random(23).nextBytes(key);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  private File createFile(byte[] content) throws IOException {
+    File file = tempFolder.newFile();
+    Files.write(file.toPath(), content);
+    return file;
+  }
+
+  private byte[] randomData(int size) {
+    byte[] data = new byte[size];
+    new Random(size).nextBytes(data);
+    return data;
+  }
+
+  private File encrypt(byte[] data) throws Exception {
+    File encrypted = tempFolder.newFile();
+    gcmCipher.encryptFile(
+      createFile(data).getAbsolutePath(),
+      encrypted.getAbsolutePath(),
+      key,
+      null,
+      null
+    );
+    return encrypted;
+  }
+
+  private byte[] decrypt(File encrypted) throws Exception {
+    File decrypted = tempFolder.newFile();
+    gcmCipher.decryptFile(
+      encrypted.getAbsolutePath(),
+      decrypted.getAbsolutePath(),
+      key,
+      null,
+      null
+    );
+    return Files.readAllBytes(decrypted.toPath());
+  }
+
+  private void assertDoesNotVerify(File encrypted) throws Exception {
+    try {
+      gcmCipher.verifyFile(encrypted.getAbsolutePath(), key, null, null);
+      fail("Expected the file not to verify");
+    } catch (AEADBadTagException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testRoundTripAroundSegmentBoundaries() throws Exception {
+    int[] sizes = { 0, 1, SEGMENT_SIZE - 1, SEGMENT_SIZE, SEGMENT_SIZE + 1, 3 * SEGMENT_SIZE + 5 };
+
+    for (int size : sizes) {
+      byte[] data = randomData(size);
+      File encrypted = encrypt(data);
+
+      assertEquals(
+        SegmentedGcmFileCipher.encryptedSize(size, SEGMENT_SIZE),
+        encrypted.length()
+      );
+      assertArrayEquals("Size " + size, data, decrypt(encrypted));
+      gcmCipher.verifyFile(encrypted.getAbsolutePath(), key, null, null);
+    }
+  }
+
+  @Test
+  public void testEveryFileGetsItsOwnKeyAndNonces() throws Exception {
+    byte[] data = randomData(2 * SEGMENT_SIZE);
+
+    assertFalse(
+      Arrays.equals(
+        Files.readAllBytes(encrypt(data).toPath()),
+        Files.readAllBytes(encrypt(data).toPath())
+      )
+    );
+  }
+
+  @Test
+  public void testModifiedByteDoesNotVerify() throws Exception {
+    File encrypted = encrypt(randomData(3 * SEGMENT_SIZE));
+    byte[] content = Files.readAllBytes(encrypted.toPath());
+    content[SegmentedGcmFileCipher.HEADER_SIZE + STRIDE + 10] ^= 1;
+    Files.write(encrypted.toPath(), content);
+
+    assertDoesNotVerify(encrypted);
+  }
+
+  @Test
+  public void testModifiedHeaderDoesNotVerify() throws Exception {
+    File encrypted = encrypt(randomData(SEGMENT_SIZE));
+    byte[] content = Files.readAllBytes(encrypted.toPath());
+    // Inside the salt, every segment authenticates the header
+    content[12] ^= 1;
+    Files.write(encrypted.toPath(), content);
+
+    assertDoesNotVerify(encrypted);
+  }
+
+  @Test
+  public void testDroppedLastSegmentDoesNotVerify() throws Exception {
+    File encrypted = encrypt(randomData(3 * SEGMENT_SIZE));
+    byte[] content = Files.readAllBytes(encrypted.toPath());
+    Files.write(
+      encrypted.toPath(),
+      Arrays.copyOf(content, SegmentedGcmFileCipher.HEADER_SIZE + 2 * STRIDE)
+    );
+
+    assertDoesNotVerify(encrypted);
+  }
+
+  @Test
+  public void testSwappedSegmentsDoNotVerify() throws Exception {
+    File encrypted = encrypt(randomData(3 * SEGMENT_SIZE));
+    byte[] content = Files.readAllBytes(encrypted.toPath());
+    int first = SegmentedGcmFileCipher.HEADER_SIZE;
+    byte[] swapped = content.clone();
+    System.arraycopy(content, first, swapped, first + STRIDE, STRIDE);
+    System.arraycopy(content, first + STRIDE, swapped, first, STRIDE);
+    Files.write(encrypted.toPath(), swapped);
+
+    assertDoesNotVerify(encrypted);
+  }
+
+  @Test
+  public void testWrongKeyDoesNotVerify() throws Exception {
+    File encrypted = encrypt(randomData(SEGMENT_SIZE));
+    key[0] ^= 1;
+
+    assertDoesNotVerify(encrypted);
+  }
+
+  @Test
+  public void testRangeReadsOnlyItsSegments() throws Exception {
+    byte[] data = randomData(4 * SEGMENT_SIZE + 100);
+    File encrypted = encrypt(data);
+
+    // A corrupted first segment does not affect ranges that skip it
+    byte[] content = Files.readAllBytes(encrypted.toPath());
+    content[SegmentedGcmFileCipher.HEADER_SIZE] ^= 1;
+    Files.write(encrypted.toPath(), content);
+
+    File range = tempFolder.newFile();
+    long offset = SEGMENT_SIZE + 10;
+    long written = gcmCipher.decryptRange(
+      encrypted.getAbsolutePath(),
+      range.getAbsolutePath(),
+      key,
+      offset,
+      2 * SEGMENT_SIZE
+    );
+
+    assertEquals(2 * SEGMENT_SIZE, written);
+    assertArrayEquals(
+      Arrays.copyOfRange(data, (int) offset, (int) offset + 2 * SEGMENT_SIZE),
+      Files.readAllBytes(range.toPath())
+    );
+
+    // Past the end it is cut at the last byte of the plaintext
+    written = gcmCipher.decryptRange(
+      encrypted.getAbsolutePath(),
+      range.getAbsolutePath(),
+      key,
+      data.length - 50,
+      1000
+    );
+    assertEquals(50, written);
+    assertArrayEquals(
+      Arrays.copyOfRange(data, data.length - 50, data.length),
+      Files.readAllBytes(range.toPath())
+    );
+  }
+
+  @Test
+  public void testRejectsOversizedSegmentsInHeader() throws Exception {
+    File encrypted = encrypt(randomData(100));
+
+    // Segment size follows the magic and the version byte
+    byte[] content = Files.readAllBytes(encrypted.toPath());
+    ByteBuffer.wrap(content, 5, 4).putInt(SegmentedGcmFileCipher.MAX_SEGMENT_SIZE + 1);
+    Files.write(encrypted.toPath(), content);
+
+    try {
+      decrypt(encrypted);
+      fail("Expected the header to be rejected");
+    } catch (IOException e) {
+      assertEquals(
+        "Invalid segment size " + (SegmentedGcmFileCipher.MAX_SEGMENT_SIZE + 1) + ".",
+        e.getMessage()
+      );
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testRejectsFilesInOtherFormats() throws Exception {
+    gcmCipher.verifyFile(
+      createFile(randomData(1000)).getAbsolutePath(),
+      key,
+      null,
+      null
+    );
+  }
+}
@@ -0,0 +1,54 @@
+package com.rncrypto.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BufferSizerTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void testFixedSizeIsAlwaysUsed() {
+    BufferSizer bufferSizer = new BufferSizer(8192);
+
+    assertEquals(8192, bufferSizer.sizeFor(10));
+    assertEquals(8192, bufferSizer.sizeFor(1L << 32));
+    assertEquals(8192, bufferSizer.sizeFor(BufferSizer.UNKNOWN_LENGTH));
+  }
+
+  @Test
+  public void testAutoSizeIsNotBiggerThanTheData() {
+    BufferSizer bufferSizer = new BufferSizer();
+
+    assertEquals(BufferSizer.MIN_SIZE, bufferSizer.sizeFor(0));
+    assertEquals(BufferSizer.MIN_SIZE, bufferSizer.sizeFor(100));
+    assertEquals(32 * 1024, bufferSizer.sizeFor(20 * 1024));
+    assertEquals(BufferSizer.DEFAULT_AUTO_SIZE, bufferSizer.sizeFor(1L << 32));
+    assertEquals(
+      BufferSizer.DEFAULT_AUTO_SIZE,
+      bufferSizer.sizeFor(BufferSizer.UNKNOWN_LENGTH)
+    );
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsTooSmallSizes() {
+    new BufferSizer(16);
+  }
+
+  @Test
+  public void testCalibrationPicksACandidateOnce() throws Exception {
+    BufferSizer bufferSizer = new BufferSizer();
+
+    int size = bufferSizer.calibrate(tempFolder.getRoot());
+
+    assertTrue(size >= 64 * 1024 && size <= 1024 * 1024);
+    assertEquals(size, bufferSizer.sizeFor(1L << 32));
+    assertEquals(size, bufferSizer.calibrate(tempFolder.getRoot()));
+    assertEquals(0, tempFolder.getRoot().list().length);
+  }
+}
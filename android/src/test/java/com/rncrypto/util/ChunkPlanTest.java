@@ -0,0 +1,73 @@
+package com.rncrypto.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChunkPlanTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private ChunkPlan plan(long length, int chunkSize, String pattern)
+    throws Exception {
+    return ChunkPlan.create(
+      "/data/video.mp4",
+      length,
+      chunkSize,
+      new File(tempFolder.getRoot(), "chunks").getPath(),
+      pattern
+    );
+  }
+
+  @Test
+  public void testCoversTheWholeFile() throws Exception {
+    List<ChunkPlan.Chunk> chunks = plan(25, 10, "{index}").getChunks();
+
+    assertEquals(3, chunks.size());
+    assertEquals(20, chunks.get(2).getOffset());
+    assertEquals(10, chunks.get(1).getSize());
+    assertEquals(5, chunks.get(2).getSize());
+  }
+
+  @Test
+  public void testExactMultipleHasNoEmptyChunk() throws Exception {
+    List<ChunkPlan.Chunk> chunks = plan(30, 10, "{index}").getChunks();
+
+    assertEquals(3, chunks.size());
+    assertEquals(10, chunks.get(2).getSize());
+  }
+
+  @Test
+  public void testEmptyFileGetsOneEmptyChunk() throws Exception {
+    List<ChunkPlan.Chunk> chunks = plan(0, 10, "{index}").getChunks();
+
+    assertEquals(1, chunks.size());
+    assertEquals(0, chunks.get(0).getSize());
+  }
+
+  @Test
+  public void testNamesChunksInsideTheDirectory() throws Exception {
+    String[] paths = plan(15, 10, "{name}.part{index}").getPaths();
+    File directory = new File(tempFolder.getRoot(), "chunks");
+
+    assertTrue(directory.isDirectory());
+    assertEquals(new File(directory, "video.mp4.part0").getPath(), paths[0]);
+    assertEquals(new File(directory, "video.mp4.part1").getPath(), paths[1]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPatternNeedsAnIndex() throws Exception {
+    plan(15, 10, "{name}.part");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPatternCannotLeaveTheDirectory() throws Exception {
+    plan(15, 10, "../{index}");
+  }
+}
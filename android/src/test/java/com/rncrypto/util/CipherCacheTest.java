@@ -0,0 +1,62 @@
+package com.rncrypto.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.crypto.Cipher;
+import org.junit.Test;
+
+public class CipherCacheTest {
+
+  private static byte[] random(int length, long seed) {
+    byte[] bytes = new byte[length];
+    new Random(seed).nextBytes(bytes);
+    return bytes;
+  }
+
+  @Test
+  public void testReusesTheCipherOfTheThread() throws Exception {
+    Cipher first = CtrCipherFactory.obtain(Cipher.ENCRYPT_MODE, random(32, 1), random(16, 2));
+    Cipher second = CtrCipherFactory.obtain(Cipher.DECRYPT_MODE, random(32, 3), random(16, 4));
+
+    assertSame(first, second);
+  }
+
+  @Test
+  public void testReinitialisedCipherMatchesANewOne() throws Exception {
+    byte[] data = random(1000, 5);
+
+    for (int i = 0; i < 4; i++) {
+      // Same key with another IV, then another key
+      byte[] key = random(32, i / 2);
+      byte[] iv = random(16, 10 + i);
+
+      assertArrayEquals(
+        CtrCipherFactory.create(Cipher.ENCRYPT_MODE, key, iv).doFinal(data),
+        CtrCipherFactory.obtain(Cipher.ENCRYPT_MODE, key, iv).doFinal(data)
+      );
+    }
+  }
+
+  @Test
+  public void testThreadsDoNotShareCiphers() throws Exception {
+    byte[] key = random(32, 6);
+    byte[] iv = random(16, 7);
+    AtomicReference<Cipher> other = new AtomicReference<>();
+
+    Thread thread = new Thread(() -> {
+      try {
+        other.set(CtrCipherFactory.obtain(Cipher.ENCRYPT_MODE, key, iv));
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    thread.start();
+    thread.join();
+
+    assertNotSame(other.get(), CtrCipherFactory.obtain(Cipher.ENCRYPT_MODE, key, iv));
+  }
+}
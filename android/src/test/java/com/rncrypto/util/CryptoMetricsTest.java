@@ -0,0 +1,103 @@
+package com.rncrypto.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class CryptoMetricsTest {
+
+  private static final long MB = 1024 * 1024;
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  public void testCountsOutcomesSeparately() {
+    CryptoMetrics metrics = new CryptoMetrics();
+
+    metrics.record("encryptFile", 10 * MB, 0, SECOND, null);
+    metrics.record("encryptFile", 10 * MB, 0, SECOND, new OperationCancelledException());
+    metrics.record("encryptFile", 10 * MB, 0, SECOND, new IOException());
+    metrics.record("encryptFile", 10 * MB, 0, SECOND, new IOException());
+
+    CryptoMetrics.OperationStats.Snapshot stats = metrics
+      .snapshot()
+      .get("encryptFile");
+    assertEquals(4, stats.getCount());
+    assertEquals(1, stats.getCancelled());
+    assertEquals(2, stats.getErrors());
+    assertEquals(10 * MB, stats.getBytes());
+    assertEquals(Long.valueOf(2), stats.getErrorTypes().get("IOException"));
+  }
+
+  @Test
+  public void testThroughputHistogram() {
+    CryptoMetrics metrics = new CryptoMetrics();
+
+    // 0.5, 10 and 2000 MB/s
+    metrics.record("decryptFile", MB / 2, 0, SECOND, null);
+    metrics.record("decryptFile", 10 * MB, 0, SECOND, null);
+    metrics.record("decryptFile", 2000 * MB, 0, SECOND, null);
+
+    long[] expected = new long[CryptoMetrics.THROUGHPUT_BUCKETS.length + 1];
+    expected[0] = 1;
+    expected[4] = 1;
+    expected[expected.length - 1] = 1;
+    assertArrayEquals(
+      expected,
+      metrics.snapshot().get("decryptFile").getThroughputHistogram()
+    );
+  }
+
+  @Test
+  public void testThroughputExcludesQueueWait() {
+    CryptoMetrics metrics = new CryptoMetrics();
+
+    // 10 MB in 1s of work after 9s in the queue is 10 MB/s, not 1 MB/s
+    metrics.record("encryptFile", 10 * MB, 9 * SECOND, 10 * SECOND, null);
+
+    long[] expected = new long[CryptoMetrics.THROUGHPUT_BUCKETS.length + 1];
+    expected[4] = 1;
+    assertArrayEquals(
+      expected,
+      metrics.snapshot().get("encryptFile").getThroughputHistogram()
+    );
+  }
+
+  @Test
+  public void testConcurrentRecordsAreNotLost() throws Exception {
+    CryptoMetrics metrics = new CryptoMetrics();
+    List<OperationRecord> records = new ArrayList<>();
+    metrics.addListener(record -> {
+      synchronized (records) {
+        records.add(record);
+      }
+    });
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    for (int i = 0; i < 4; i++) {
+      executor.execute(() -> {
+        for (int j = 0; j < 1000; j++) {
+          metrics.record("hashFile", 1, 2, 3 + j, null);
+        }
+      });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+    CryptoMetrics.OperationStats.Snapshot stats = metrics
+      .snapshot()
+      .get("hashFile");
+    assertEquals(4000, stats.getCount());
+    assertEquals(4000, stats.getBytes());
+    assertEquals(8000, stats.getQueueWaitNanos());
+    assertEquals(1002, stats.getMaxWallNanos());
+    assertEquals(4000, records.size());
+  }
+}
@@ -0,0 +1,79 @@
+package com.rncrypto.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class DigestSpecTest {
+
+  private static String ripemd160(byte[] data) throws Exception {
+    return HexUtils.encode(DigestSpec.createDigest("RIPEMD-160").digest(data));
+  }
+
+  @Test
+  public void testRipemd160KnownVectors() throws Exception {
+    assertEquals(
+      "9c1185a5c5e9fc54612808977ee8f548b2258d31",
+      ripemd160(new byte[0])
+    );
+    assertEquals(
+      "8eb208f7e05d987a9b044a8e98c6b087f15a0bfc",
+      ripemd160("abc".getBytes(StandardCharsets.US_ASCII))
+    );
+    assertEquals(
+      "5d0689ef49d2fae572b881b123a85ffa21595f36",
+      ripemd160("message digest".getBytes(StandardCharsets.US_ASCII))
+    );
+    assertEquals(
+      "b0e20b6e3116640286ed3a87a5713079b21f5189",
+      ripemd160(
+        (
+          "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789"
+        ).getBytes(StandardCharsets.US_ASCII)
+      )
+    );
+
+    byte[] million = new byte[1000000];
+    Arrays.fill(million, (byte) 'a');
+    assertEquals("52783243c1697bdbe16d37f97f68f08325dc1528", ripemd160(million));
+  }
+
+  @Test
+  public void testRipemd160SplitUpdatesMatchSingleUpdate() throws Exception {
+    byte[] data = new byte[1000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+
+    MessageDigest digest = new Ripemd160();
+    for (int offset = 0; offset < data.length; offset += 37) {
+      digest.update(data, offset, Math.min(37, data.length - offset));
+    }
+
+    assertEquals(ripemd160(data), HexUtils.encode(digest.digest()));
+  }
+
+  @Test(expected = NoSuchAlgorithmException.class)
+  public void testUnknownAlgorithmFailsUpFront() throws Exception {
+    new DigestSpec(Collections.singletonList("SHA-3000"), null);
+  }
+
+  @Test
+  public void testDuplicatedAlgorithmsAreComputedOnce() throws Exception {
+    DigestSpec spec = new DigestSpec(
+      Arrays.asList("RIPEMD160", DigestSpec.RIPEMD160, DigestSpec.SHA256),
+      null
+    );
+
+    assertEquals(
+      Arrays.asList(DigestSpec.RIPEMD160, DigestSpec.SHA256),
+      spec.getPlaintextAlgorithms()
+    );
+    assertEquals(0, spec.getCiphertextAlgorithms().size());
+  }
+}
@@ -0,0 +1,125 @@
+package com.rncrypto.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class HashSessionRegistryTest {
+
+  @Test
+  public void testIncrementalDigestMatchesSingleDigest() throws Exception {
+    HashSessionRegistry registry = new HashSessionRegistry();
+    byte[] data = new byte[10000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (i * 31);
+    }
+
+    int handle = registry.init("SHA-512");
+    for (int offset = 0; offset < data.length; offset += 999) {
+      byte[] piece = new byte[Math.min(999, data.length - offset)];
+      System.arraycopy(data, offset, piece, 0, piece.length);
+      registry.update(handle, piece);
+    }
+
+    assertArrayEquals(
+      MessageDigest.getInstance("SHA-512").digest(data),
+      registry.digest(handle)
+    );
+  }
+
+  @Test
+  public void testDigestFreesTheSession() throws Exception {
+    HashSessionRegistry registry = new HashSessionRegistry();
+    int handle = registry.init("SHA-256");
+    registry.digest(handle);
+
+    assertEquals(0, registry.size());
+    try {
+      registry.update(handle, new byte[1]);
+      fail("A digested session cannot be updated");
+    } catch (IllegalArgumentException expected) {}
+    try {
+      registry.digest(handle);
+      fail("A digested session cannot be digested again");
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  @Test
+  public void testIdleSessionsAreEvicted() throws Exception {
+    HashSessionRegistry registry = new HashSessionRegistry(1000, 10);
+    int first = registry.init("SHA-256");
+    int second = registry.init("SHA-256");
+
+    // Recent sessions are kept, the same sessions 2 seconds later are idle
+    assertEquals(0, registry.evictIdle(System.nanoTime()));
+    assertEquals(2, registry.size());
+    long later = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(2000);
+    assertEquals(2, registry.evictIdle(later));
+
+    try {
+      registry.update(first, new byte[1]);
+      fail("An evicted session cannot be updated");
+    } catch (IllegalArgumentException expected) {}
+    try {
+      registry.digest(second);
+      fail("An evicted session cannot be digested");
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  @Test
+  public void testSessionsOverTheLimitAreRejected() throws Exception {
+    HashSessionRegistry registry = new HashSessionRegistry(60000, 2);
+    registry.init("SHA-256");
+    int second = registry.init("SHA-256");
+
+    try {
+      registry.init("SHA-256");
+      fail("A third session should not fit");
+    } catch (IllegalStateException expected) {}
+
+    registry.digest(second);
+    registry.init("SHA-256");
+    assertEquals(2, registry.size());
+  }
+
+  @Test
+  public void testConcurrentSessionsDoNotMix() throws Exception {
+    HashSessionRegistry registry = new HashSessionRegistry();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<byte[]>> results = new ArrayList<>();
+
+    for (int s = 0; s < 32; s++) {
+      final byte value = (byte) s;
+      results.add(
+        executor.submit(() -> {
+          int handle = registry.init("SHA-256");
+          for (int i = 0; i < 100; i++) {
+            registry.update(handle, new byte[] { value });
+          }
+          return registry.digest(handle);
+        })
+      );
+    }
+
+    for (int s = 0; s < results.size(); s++) {
+      byte[] expected = new byte[100];
+      Arrays.fill(expected, (byte) s);
+      assertArrayEquals(
+        MessageDigest.getInstance("SHA-256").digest(expected),
+        results.get(s).get(5, TimeUnit.SECONDS)
+      );
+    }
+    executor.shutdown();
+    assertEquals(0, registry.size());
+  }
+}
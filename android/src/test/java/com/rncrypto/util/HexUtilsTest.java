@@ -0,0 +1,28 @@
+package com.rncrypto.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HexUtilsTest {
+
+  @Test
+  public void testRoundTrip() {
+    byte[] bytes = { 0, 1, (byte) 0x7f, (byte) 0x80, (byte) 0xff };
+
+    assertEquals("00017f80ff", HexUtils.encode(bytes));
+    assertArrayEquals(bytes, HexUtils.decode("00017F80ff"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsOddLength() {
+    HexUtils.decode("abc");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsNonAsciiDigits() {
+    // Fullwidth digits, Character.digit would accept them
+    HexUtils.decode("\uff10\uff11");
+  }
+}
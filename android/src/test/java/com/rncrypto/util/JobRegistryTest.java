@@ -0,0 +1,66 @@
+package com.rncrypto.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class JobRegistryTest {
+
+  @Test
+  public void testCancelReachesTheToken() {
+    JobRegistry registry = new JobRegistry();
+    CancellationToken token = registry.start(7);
+
+    assertFalse(token.isCancelled());
+    assertTrue(registry.cancel(7));
+    assertTrue(token.isCancelled());
+  }
+
+  @Test
+  public void testFinishedJobsCannotBeCancelled() {
+    JobRegistry registry = new JobRegistry();
+    CancellationToken token = registry.start(7);
+
+    registry.finish(7, token);
+
+    assertFalse(registry.cancel(7));
+    assertFalse(token.isCancelled());
+    assertEquals(0, registry.size());
+  }
+
+  @Test
+  public void testRunningIdIsRejected() {
+    JobRegistry registry = new JobRegistry();
+    CancellationToken first = registry.start(7);
+
+    try {
+      registry.start(7);
+      throw new AssertionError("Expected the id to be rejected");
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+    assertTrue(registry.cancel(7));
+    assertTrue(first.isCancelled());
+  }
+
+  @Test
+  public void testReservedRangesDoNotOverlap() {
+    JobRegistry registry = new JobRegistry();
+    int first = registry.reserveIds();
+    int second = registry.reserveIds();
+
+    assertEquals(JobRegistry.NO_JOB, first);
+    assertEquals(first + JobRegistry.IDS_PER_RANGE, second);
+  }
+
+  @Test
+  public void testNoJobIsNotRegistered() {
+    JobRegistry registry = new JobRegistry();
+
+    assertNull(registry.start(JobRegistry.NO_JOB));
+    assertEquals(0, registry.size());
+  }
+}
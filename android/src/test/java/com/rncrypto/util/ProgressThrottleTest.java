@@ -0,0 +1,72 @@
+package com.rncrypto.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class ProgressThrottleTest {
+
+  private final List<long[]> forwarded = new ArrayList<>();
+
+  private ProgressThrottle throttle(long minIntervalMillis, long minBytes) {
+    return new ProgressThrottle(
+      (processed, total) -> forwarded.add(new long[] { processed, total }),
+      minIntervalMillis,
+      minBytes
+    );
+  }
+
+  @Test
+  public void testUpdatesBelowTheByteThresholdAreDropped() {
+    ProgressThrottle throttle = throttle(0, 1000);
+
+    for (long processed = 100; processed < 1000; processed += 100) {
+      throttle.onProgress(processed, 10000);
+    }
+    assertEquals(0, forwarded.size());
+
+    throttle.onProgress(1000, 10000);
+    throttle.onProgress(1500, 10000);
+    assertEquals(1, forwarded.size());
+    assertEquals(1000, forwarded.get(0)[0]);
+  }
+
+  @Test
+  public void testUpdatesWithinTheIntervalAreDropped() {
+    ProgressThrottle throttle = throttle(60000, 1);
+
+    for (long processed = 1; processed < 100; processed++) {
+      throttle.onProgress(processed, 100);
+    }
+
+    assertEquals(0, forwarded.size());
+  }
+
+  @Test
+  public void testCompletionIsAlwaysForwardedOnce() {
+    ProgressThrottle throttle = throttle(60000, 1000000);
+
+    throttle.onProgress(50, 100);
+    throttle.onProgress(100, 100);
+    throttle.onProgress(100, 100);
+
+    assertEquals(1, forwarded.size());
+    assertEquals(100, forwarded.get(0)[0]);
+    assertEquals(100, forwarded.get(0)[1]);
+  }
+
+  @Test
+  public void testOlderUpdatesAreDropped() {
+    ProgressThrottle throttle = throttle(0, 1);
+
+    throttle.onProgress(500, OnProgressCallback.UNKNOWN_TOTAL);
+    throttle.onProgress(300, OnProgressCallback.UNKNOWN_TOTAL);
+    throttle.onProgress(700, OnProgressCallback.UNKNOWN_TOTAL);
+
+    assertEquals(2, forwarded.size());
+    assertEquals(500, forwarded.get(0)[0]);
+    assertEquals(700, forwarded.get(1)[0]);
+  }
+}
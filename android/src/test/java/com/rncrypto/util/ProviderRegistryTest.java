@@ -0,0 +1,84 @@
+package com.rncrypto.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.MessageDigest;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.junit.Test;
+
+public class ProviderRegistryTest {
+
+  @Test
+  public void testUsesDefaultProvidersUntilCalibrated() throws Exception {
+    ProviderRegistry registry = new ProviderRegistry();
+
+    assertNull(registry.getVersion());
+    assertNull(registry.providerFor(ProviderRegistry.AES_CTR));
+    assertTrue(registry.getScores().isEmpty());
+    assertEquals(
+      Cipher.getInstance(ProviderRegistry.AES_CTR).getProvider(),
+      registry.cipher(ProviderRegistry.AES_CTR).getProvider()
+    );
+  }
+
+  @Test
+  public void testCalibrationSelectsAMeasuredProvider() throws Exception {
+    ProviderRegistry registry = new ProviderRegistry();
+    registry.calibrate("1.0 (1)");
+
+    assertEquals("1.0 (1)", registry.getVersion());
+    for (String algorithm : registry.getSelection().keySet()) {
+      String provider = registry.getSelection().get(algorithm);
+      assertNotNull(algorithm, provider);
+      assertTrue(registry.getScores().get(algorithm).containsKey(provider));
+    }
+
+    byte[] key = new byte[32];
+    byte[] iv = new byte[16];
+    byte[] data = new byte[100];
+    Cipher cipher = registry.cipher(ProviderRegistry.AES_CTR);
+    cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+    assertArrayEquals(
+      CtrCipherFactory.create(Cipher.ENCRYPT_MODE, key, iv).doFinal(data),
+      cipher.doFinal(data)
+    );
+    assertArrayEquals(
+      MessageDigest.getInstance("SHA-512").digest(data),
+      registry.messageDigest(ProviderRegistry.SHA_512).digest(data)
+    );
+  }
+
+  @Test
+  public void testSavedCalibrationLoadsOnlyForTheSameVersion() {
+    ProviderRegistry calibrated = new ProviderRegistry();
+    calibrated.calibrate("1.0 (1)");
+    String saved = calibrated.save();
+
+    ProviderRegistry otherVersion = new ProviderRegistry();
+    assertFalse(otherVersion.load(saved, "1.1 (2)"));
+    assertNull(otherVersion.providerFor(ProviderRegistry.SHA_256));
+
+    ProviderRegistry sameVersion = new ProviderRegistry();
+    assertTrue(sameVersion.load(saved, "1.0 (1)"));
+    assertEquals(calibrated.getSelection(), sameVersion.getSelection());
+    assertEquals(calibrated.getScores(), sameVersion.getScores());
+  }
+
+  @Test
+  public void testRejectsCalibrationOfMissingProviders() {
+    String saved =
+      "version=1.0 (1)\n" + "selected.SHA-256=NotInstalled\n";
+
+    ProviderRegistry registry = new ProviderRegistry();
+    assertFalse(registry.load(saved, "1.0 (1)"));
+    assertFalse(registry.load("not a calibration", "1.0 (1)"));
+    assertNull(registry.getVersion());
+  }
+}
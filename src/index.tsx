@@ -1,6 +1,39 @@
 import { Buffer } from 'buffer';
-import { NativeModules, Platform } from 'react-native';
-import { HMAC, UpdatableHash } from './types/crypto';
+import { DeviceEventEmitter, NativeModules, Platform } from 'react-native';
+import {
+  ChunkManifestEntry,
+  CryptoStats,
+  DigestAlgorithm,
+  DigestOptions,
+  DirectoryPage,
+  FileBatchItem,
+  FileBatchResult,
+  FileDigests,
+  HMAC,
+  ListDirOptions,
+  Pbkdf2Item,
+  ProviderReport,
+  UpdatableHash,
+} from './types/crypto';
+
+export { DigestAlgorithm } from './types/crypto';
+export type {
+  ChunkManifestEntry,
+  CryptoStats,
+  DigestOptions,
+  DirectoryEntry,
+  DirectoryPage,
+  FileBatchItem,
+  FileBatchResult,
+  FileDigests,
+  ListDirOptions,
+  OperationStats,
+  Pbkdf2Item,
+  ProviderReport,
+} from './types/crypto';
+
+type ProgressListener = (processed: number, total: number) => void;
+
 const LINKING_ERROR =
   `The package 'rn-crypto' doesn't seem to be linked. Make sure: \n\n` +
   Platform.select({ ios: "- You have run 'pod install'\n", default: '' }) +
@@ -18,6 +51,79 @@ const RnCrypto = NativeModules.RnCrypto
       }
     );
 
+/**
+ * Listens to the progress events of the job on path while the operation runs,
+ * the returned callback stops listening and then calls cb
+ */
+function withProgress<T extends unknown[]>(
+  jobId: number,
+  path: string,
+  onProgress: ProgressListener | undefined,
+  cb: (...args: T) => void
+): (...args: T) => void {
+  if (!onProgress) {
+    return cb;
+  }
+
+  const subscription = DeviceEventEmitter.addListener(
+    'RnCryptoProgress',
+    (progress: {
+      jobId: number;
+      path: string;
+      processed: number;
+      total: number;
+    }) => {
+      // The path tells apart a job left running by a previous JS runtime
+      if (progress.jobId === jobId && progress.path === path) {
+        onProgress(progress.processed, progress.total);
+      }
+    }
+  );
+
+  return (...args: T) => {
+    subscription.remove();
+    cb(...args);
+  };
+}
+
+// Starts from a base the native module reserves for this runtime, a counter
+// starting at 0 again after a reload would reuse ids of jobs still running
+let lastJobId: number =
+  Platform.OS === 'android' ? NativeModules.RnCrypto?.JOB_ID_BASE ?? 0 : 0;
+
+function nextJobId(): number {
+  lastJobId += 1;
+  return lastJobId;
+}
+
+/**
+ * Job ids are only taken by the Android module, iOS operations cannot be
+ * cancelled. It is followed by whether to emit progress events for the job.
+ */
+function jobIdArgs(
+  jobId: number,
+  onProgress: ProgressListener | undefined
+): (number | boolean)[] {
+  return Platform.OS === 'android' ? [jobId, onProgress !== undefined] : [];
+}
+
+/**
+ * Cancels a running file operation. It stops within one buffer, its partial
+ * output is deleted, except for encryptFileResumable which keeps it to be
+ * resumed, and its callback receives an "Operation cancelled." error.
+ * Android only.
+ *
+ * @param jobId Id returned by the operation
+ * @returns A promise that resolves with false if the operation already finished
+ */
+export function cancel(jobId: number): Promise<boolean> {
+  if (Platform.OS !== 'android') {
+    return Promise.resolve(false);
+  }
+
+  return RnCrypto.cancel(jobId);
+}
+
 export function multiply(a: number, b: number): Promise<number> {
   return RnCrypto.multiply(a, b);
 }
@@ -42,6 +148,134 @@ export function listDir(dir: string): Promise<FileEntry[]> {
   return RnCrypto.listDir(dir);
 }
 
+/**
+ * Lists the first page of a directory, for directories too large to list at
+ * once. The rest of pages are read with listDirNext, a listing not read for a
+ * few minutes is closed. Android only.
+ *
+ * @param dir Directory to list
+ * @param options glob filters entries by name, e.g. '*.part'. recursive lists
+ * subdirectories too, paths are then the way to tell entries apart.
+ * attributes, true by default, reads mtime, size and type of each entry, only
+ * the name and path are read without them, which is much faster.
+ * pageSize is the max amount of entries of each page, 1000 by default
+ * @returns A promise that resolves with the entries of the page and the cursor
+ * of the next one, null on the last page. A page may have less entries than
+ * pageSize, even none when filtering, only a null cursor means the end.
+ * Rejects on other platforms.
+ */
+export function listDirPage(
+  dir: string,
+  options: ListDirOptions = {}
+): Promise<DirectoryPage> {
+  if (Platform.OS !== 'android') {
+    return Promise.reject(
+      new Error('listDirPage is only available on Android')
+    );
+  }
+
+  return RnCrypto.listDirPage(dir, options);
+}
+
+/**
+ * Reads the next page of a listing started with listDirPage. Android only.
+ *
+ * @param cursor Cursor of the previous page
+ * @returns A promise that resolves with the page, or rejects with
+ * INVALID_CURSOR if the listing was closed or already read. Rejects on other
+ * platforms.
+ */
+export function listDirNext(cursor: number): Promise<DirectoryPage> {
+  if (Platform.OS !== 'android') {
+    return Promise.reject(
+      new Error('listDirNext is only available on Android')
+    );
+  }
+
+  return RnCrypto.listDirNext(cursor);
+}
+
+/**
+ * Closes a listing without reading the rest of its pages. Android only.
+ *
+ * @param cursor Cursor of the last page read
+ * @returns A promise that resolves with false if it was already closed
+ */
+export function listDirClose(cursor: number): Promise<boolean> {
+  if (Platform.OS !== 'android') {
+    return Promise.resolve(false);
+  }
+
+  return RnCrypto.listDirClose(cursor);
+}
+
+/**
+ * Sets how many file operations (encrypt, decrypt, chunking) can run at the
+ * same time. Extra operations are queued until a worker is free. Android only.
+ *
+ * @param maxConcurrency Max amount of concurrent file operations
+ * @returns A promise that resolves with the applied limit
+ */
+export function setMaxConcurrency(maxConcurrency: number): Promise<number> {
+  return RnCrypto.setMaxConcurrency(maxConcurrency);
+}
+
+/**
+ * Sets the size of the buffers used to read and write files. Use 0 to let
+ * the library pick a size for each file. Android only.
+ *
+ * @param bufferSize Buffer size in bytes, or 0 for automatic
+ * @returns A promise that resolves with the applied size
+ */
+export function setBufferSize(bufferSize: number): Promise<number> {
+  return RnCrypto.setBufferSize(bufferSize);
+}
+
+/**
+ * Sets whether whole files overlap reads, cipher and writes. It pays off on
+ * slow storage like SD cards, on internal flash it can be slower. Disabled by
+ * default. Android only.
+ *
+ * @param enabled Whether whole files are pipelined
+ * @returns A promise that resolves with the applied value
+ */
+export function setPipelinedIo(enabled: boolean): Promise<boolean> {
+  return RnCrypto.setPipelinedIo(enabled);
+}
+
+/**
+ * Measures once which buffer size performs better on this device. The
+ * result is used when the buffer size is automatic. Android only.
+ *
+ * @returns A promise that resolves with the buffer size found
+ */
+export function calibrateBufferSize(): Promise<number> {
+  return RnCrypto.calibrateBufferSize();
+}
+
+/**
+ * Reports the metrics of the file operations, hashing and key derivation run
+ * so far, and the state of the worker pool, to be sent to telemetry. Android
+ * only.
+ *
+ * @returns A promise that resolves with the stats
+ */
+export function getStats(): Promise<CryptoStats> {
+  return RnCrypto.getStats();
+}
+
+/**
+ * Reports which security provider is used for AES, SHA and PBKDF2, chosen by
+ * a short calibration that runs once per app version, and the score of every
+ * provider measured. Android only.
+ *
+ * @returns A promise that resolves with the report, or rejects with
+ * PROVIDER_SELECTION_FAILED if the calibration could not run
+ */
+export function getProviderReport(): Promise<ProviderReport> {
+  return RnCrypto.getProviderReport();
+}
+
 /**
  * Encrypts a given file in AES256-CTR writing it encrypted on the encryptedFilePath
  * @param plainFilePath Path where file is located
@@ -49,15 +283,105 @@ export function listDir(dir: string): Promise<FileEntry[]> {
  * @param hexKey Encryption key in hex format
  * @param hexIv IV in hex format
  * @param cb Only error callback
+ * @param onProgress Called a few times per second with the bytes processed
+ * and the total. Android only
+ * @returns Id to cancel the operation with cancel(), Android only
  */
 export function encryptFile(
   plainFilePath: string,
   encryptedFilePath: string,
   hexKey: string,
   hexIv: string,
-  cb: (err: Error) => void
-): void {
-  RnCrypto.encryptFile(plainFilePath, encryptedFilePath, hexKey, hexIv, cb);
+  cb: (err: Error) => void,
+  onProgress?: ProgressListener
+): number {
+  const jobId = nextJobId();
+  RnCrypto.encryptFile(
+    plainFilePath,
+    encryptedFilePath,
+    hexKey,
+    hexIv,
+    ...jobIdArgs(jobId, onProgress),
+    withProgress(jobId, plainFilePath, onProgress, cb)
+  );
+
+  return jobId;
+}
+
+/**
+ * Encrypts a given file in AES256-CTR like encryptFile, computing in the same
+ * pass the digests of its plaintext and ciphertext, so the encrypted file does
+ * not need to be read again to hash it. Android only.
+ * @param plainFilePath Path where file is located
+ * @param encryptedFilePath Path where file encrypted is going to be written
+ * @param hexKey Encryption key in hex format
+ * @param hexIv IV in hex format
+ * @param digests Algorithms to compute over the plaintext and the ciphertext
+ * @param cb Receives an error or the digests in hex format
+ * @param onProgress Called a few times per second with the bytes processed
+ * and the total. Android only
+ * @returns Id to cancel the operation with cancel(), Android only
+ */
+export function encryptFileWithDigests(
+  plainFilePath: string,
+  encryptedFilePath: string,
+  hexKey: string,
+  hexIv: string,
+  digests: DigestOptions,
+  cb: (err: Error | null, digests?: FileDigests) => void,
+  onProgress?: ProgressListener
+): number {
+  const jobId = nextJobId();
+  RnCrypto.encryptFileWithDigests(
+    plainFilePath,
+    encryptedFilePath,
+    hexKey,
+    hexIv,
+    digests,
+    jobId,
+    onProgress !== undefined,
+    withProgress(jobId, plainFilePath, onProgress, cb)
+  );
+
+  return jobId;
+}
+
+/**
+ * Encrypts a given file in AES256-CTR like encryptFile, saving checkpoints
+ * while doing it. If the encryption is interrupted, calling it again with the
+ * same arguments continues from the last checkpoint instead of starting over.
+ * Cancelling it keeps the partial output and its checkpoint, so a later call
+ * continues from it. Android only.
+ * @param plainFilePath Path where file is located
+ * @param encryptedFilePath Path where file encrypted is going to be written
+ * @param hexKey Encryption key in hex format
+ * @param hexIv IV in hex format
+ * @param cb Receives an error or the byte offset the encryption resumed from,
+ * 0 if it started from the beginning
+ * @param onProgress Called a few times per second with the bytes processed
+ * and the total
+ * @returns Id to cancel the operation with cancel()
+ */
+export function encryptFileResumable(
+  plainFilePath: string,
+  encryptedFilePath: string,
+  hexKey: string,
+  hexIv: string,
+  cb: (err: Error | null, resumedFrom?: number) => void,
+  onProgress?: ProgressListener
+): number {
+  const jobId = nextJobId();
+  RnCrypto.encryptFileResumable(
+    plainFilePath,
+    encryptedFilePath,
+    hexKey,
+    hexIv,
+    jobId,
+    onProgress !== undefined,
+    withProgress(jobId, plainFilePath, onProgress, cb)
+  );
+
+  return jobId;
 }
 
 /**
@@ -67,23 +391,323 @@ export function encryptFile(
  * @param hexKey Encryption key in hex format
  * @param hexIv IV in hex format
  * @param cb Only error callback
+ * @param onProgress Called a few times per second with the bytes processed
+ * and the total. Android only
+ * @returns Id to cancel the operation with cancel(), Android only
  */
 export function decryptFile(
   encryptedFilePath: string,
   plainFilePath: string,
   hexKey: string,
   hexIv: string,
+  cb: (err: Error) => void,
+  onProgress?: ProgressListener
+): number {
+  const jobId = nextJobId();
+  RnCrypto.decryptFile(
+    encryptedFilePath,
+    plainFilePath,
+    hexKey,
+    hexIv,
+    ...jobIdArgs(jobId, onProgress),
+    withProgress(jobId, encryptedFilePath, onProgress, cb)
+  );
+
+  return jobId;
+}
+
+/**
+ * Encrypts a given file in AES256-CTR using several threads, each one
+ * encrypting a segment of the file. Output is the same as encryptFile.
+ * Recommended for big files. Android only.
+ * @param plainFilePath Path where file is located
+ * @param encryptedFilePath Path where file encrypted is going to be written
+ * @param hexKey Encryption key in hex format
+ * @param hexIv IV in hex format
+ * @param cb Only error callback
+ * @param onProgress Called a few times per second with the bytes processed
+ * and the total. Android only
+ * @returns Id to cancel the operation with cancel(), Android only
+ */
+export function encryptFileParallel(
+  plainFilePath: string,
+  encryptedFilePath: string,
+  hexKey: string,
+  hexIv: string,
+  cb: (err: Error) => void,
+  onProgress?: ProgressListener
+): number {
+  const jobId = nextJobId();
+  RnCrypto.encryptFileParallel(
+    plainFilePath,
+    encryptedFilePath,
+    hexKey,
+    hexIv,
+    jobId,
+    onProgress !== undefined,
+    withProgress(jobId, plainFilePath, onProgress, cb)
+  );
+
+  return jobId;
+}
+
+/**
+ * Decrypts a given encrypted file using several threads, each one
+ * decrypting a segment of the file. Output is the same as decryptFile.
+ * Recommended for big files. Android only.
+ * @param encryptedFilePath Path where encrypted file is located
+ * @param plainFilePath Path where file decrypted is going to be written
+ * @param hexKey Encryption key in hex format
+ * @param hexIv IV in hex format
+ * @param cb Only error callback
+ * @param onProgress Called a few times per second with the bytes processed
+ * and the total. Android only
+ * @returns Id to cancel the operation with cancel(), Android only
+ */
+export function decryptFileParallel(
+  encryptedFilePath: string,
+  plainFilePath: string,
+  hexKey: string,
+  hexIv: string,
+  cb: (err: Error) => void,
+  onProgress?: ProgressListener
+): number {
+  const jobId = nextJobId();
+  RnCrypto.decryptFileParallel(
+    encryptedFilePath,
+    plainFilePath,
+    hexKey,
+    hexIv,
+    jobId,
+    onProgress !== undefined,
+    withProgress(jobId, encryptedFilePath, onProgress, cb)
+  );
+
+  return jobId;
+}
+
+/**
+ * Decrypts a file encrypted into chunks with encryptFileToChunks, writing the
+ * plaintext on plainFilePath. Each chunk is decrypted straight into its place,
+ * so the chunks do not have to be joined first. Chunks are not deleted.
+ * Android only.
+ * @param encryptedFilePaths Paths of the encrypted chunks, in order
+ * @param plainFilePath Path where file decrypted is going to be written
+ * @param hexKey Encryption key in hex format
+ * @param hexIv IV of the whole file in hex format
+ * @param cb Only error callback
+ * @param onProgress Called a few times per second with the bytes processed
+ * and the total. Android only
+ * @returns Id to cancel the operation with cancel(), Android only
+ */
+export function decryptChunksToFile(
+  encryptedFilePaths: string[],
+  plainFilePath: string,
+  hexKey: string,
+  hexIv: string,
+  cb: (err: Error | null) => void,
+  onProgress?: ProgressListener
+): number {
+  const jobId = nextJobId();
+  RnCrypto.decryptChunksToFile(
+    encryptedFilePaths,
+    plainFilePath,
+    hexKey,
+    hexIv,
+    jobId,
+    onProgress !== undefined,
+    withProgress(jobId, plainFilePath, onProgress, cb)
+  );
+
+  return jobId;
+}
+
+/**
+ * Encrypts a batch of files in AES256-CTR with a single call to the native
+ * module, up to parallelism files at the same time. A file failing does not
+ * stop the rest of the batch. Android only.
+ * @param items Files to encrypt, each one with its own key and IV
+ * @param parallelism Max amount of files encrypted at the same time, one per
+ * core by default
+ * @returns A promise that resolves with the outcome of each file, in the same
+ * order as items
+ */
+export function encryptFiles(
+  items: FileBatchItem[],
+  parallelism = 0
+): Promise<FileBatchResult[]> {
+  return RnCrypto.encryptFiles(items, parallelism);
+}
+
+/**
+ * Decrypts a batch of files with a single call to the native module, up to
+ * parallelism files at the same time. A file failing does not stop the rest
+ * of the batch. Android only.
+ * @param items Files to decrypt, each one with its own key and IV
+ * @param parallelism Max amount of files decrypted at the same time, one per
+ * core by default
+ * @returns A promise that resolves with the outcome of each file, in the same
+ * order as items
+ */
+export function decryptFiles(
+  items: FileBatchItem[],
+  parallelism = 0
+): Promise<FileBatchResult[]> {
+  return RnCrypto.decryptFiles(items, parallelism);
+}
+
+/**
+ * Decrypts only a range of a given encrypted file, without decrypting what
+ * is before it. Useful for seeking media or sniffing the file type. Android only.
+ * @param encryptedFilePath Path where encrypted file is located
+ * @param plainFilePath Path where the decrypted range is going to be written
+ * @param hexKey Encryption key in hex format
+ * @param hexIv IV of the whole file in hex format
+ * @param offset Position of the first byte to decrypt
+ * @param length Amount of bytes to decrypt
+ * @param cb Only error callback
+ */
+export function decryptRange(
+  encryptedFilePath: string,
+  plainFilePath: string,
+  hexKey: string,
+  hexIv: string,
+  offset: number,
+  length: number,
   cb: (err: Error) => void
 ): void {
-  RnCrypto.decryptFile(encryptedFilePath, plainFilePath, hexKey, hexIv, cb);
+  RnCrypto.decryptRange(
+    encryptedFilePath,
+    plainFilePath,
+    hexKey,
+    hexIv,
+    offset,
+    length,
+    cb
+  );
+}
+
+/**
+ * Encrypts a given file in AES256-GCM, split in segments of 1 MB that are
+ * each authenticated, so decryptFileAuthenticated detects any modification of
+ * the file. Segments are encrypted on several threads. The output can only be
+ * read by the *Authenticated functions. Android only.
+ * @param plainFilePath Path where file is located
+ * @param encryptedFilePath Path where file encrypted is going to be written
+ * @param hexKey Encryption key of 32 bytes in hex format
+ * @param cb Only error callback
+ * @param onProgress Called a few times per second with the bytes processed
+ * and the total
+ * @returns Id to cancel the operation with cancel()
+ */
+export function encryptFileAuthenticated(
+  plainFilePath: string,
+  encryptedFilePath: string,
+  hexKey: string,
+  cb: (err: Error) => void,
+  onProgress?: ProgressListener
+): number {
+  const jobId = nextJobId();
+  RnCrypto.encryptFileAuthenticated(
+    plainFilePath,
+    encryptedFilePath,
+    hexKey,
+    jobId,
+    onProgress !== undefined,
+    withProgress(jobId, plainFilePath, onProgress, cb)
+  );
+
+  return jobId;
 }
 
 /**
- * Joins multiple input files into a single output file
+ * Decrypts a file encrypted with encryptFileAuthenticated, verifying every
+ * segment. If the file was modified or the key is wrong it fails and no
+ * output is left. Android only.
+ * @param encryptedFilePath Path where encrypted file is located
+ * @param plainFilePath Path where file decrypted is going to be written
+ * @param hexKey Encryption key in hex format
+ * @param cb Only error callback
+ * @param onProgress Called a few times per second with the bytes processed
+ * and the total
+ * @returns Id to cancel the operation with cancel()
+ */
+export function decryptFileAuthenticated(
+  encryptedFilePath: string,
+  plainFilePath: string,
+  hexKey: string,
+  cb: (err: Error) => void,
+  onProgress?: ProgressListener
+): number {
+  const jobId = nextJobId();
+  RnCrypto.decryptFileAuthenticated(
+    encryptedFilePath,
+    plainFilePath,
+    hexKey,
+    jobId,
+    onProgress !== undefined,
+    withProgress(jobId, encryptedFilePath, onProgress, cb)
+  );
+
+  return jobId;
+}
+
+/**
+ * Checks a file encrypted with encryptFileAuthenticated without writing its
+ * plaintext anywhere. Android only.
+ * @param encryptedFilePath Path where encrypted file is located
+ * @param hexKey Encryption key in hex format
+ * @returns A promise that resolves with false if the file was modified or
+ * the key is wrong
+ */
+export function verifyFileAuthenticated(
+  encryptedFilePath: string,
+  hexKey: string
+): Promise<boolean> {
+  return RnCrypto.verifyFileAuthenticated(
+    encryptedFilePath,
+    hexKey,
+    nextJobId(),
+    false
+  );
+}
+
+/**
+ * Decrypts only a range of a file encrypted with encryptFileAuthenticated,
+ * reading and verifying only the segments containing it. Android only.
+ * @param encryptedFilePath Path where encrypted file is located
+ * @param plainFilePath Path where the decrypted range is going to be written
+ * @param hexKey Encryption key in hex format
+ * @param offset Position of the first byte to decrypt
+ * @param length Amount of bytes to decrypt
+ * @param cb Only error callback
+ */
+export function decryptRangeAuthenticated(
+  encryptedFilePath: string,
+  plainFilePath: string,
+  hexKey: string,
+  offset: number,
+  length: number,
+  cb: (err: Error) => void
+): void {
+  RnCrypto.decryptRangeAuthenticated(
+    encryptedFilePath,
+    plainFilePath,
+    hexKey,
+    offset,
+    length,
+    cb
+  );
+}
+
+/**
+ * Joins multiple input files into a single output file, replacing it. Input
+ * files are deleted once joined. On Android the files are joined on a
+ * background thread and the output is only replaced once complete.
  *
  * @param inputFiles Array of input file paths to be joined
  * @param outputFile Destination file path where files will be combined
- * @returns A promise that resolves with a success message
+ * @param callback Only error callback
  */
 export function joinFiles(
   inputFiles: string[],
@@ -93,6 +717,25 @@ export function joinFiles(
   return RnCrypto.joinFiles(inputFiles, outputFile, callback);
 }
 
+/**
+ * Hashes a file, or a range of it, reading it from disk on a background
+ * thread. The content of the file is never loaded in the JS heap. Android only.
+ * @param path Path of the file to hash
+ * @param algorithm Digest algorithm to use
+ * @param offset Position of the first byte to hash, 0 by default
+ * @param length Amount of bytes to hash, until the end of the file by default
+ * @returns A buffer containing the digest
+ */
+export async function hashFile(
+  path: string,
+  algorithm: DigestAlgorithm,
+  offset = 0,
+  length = -1
+): Promise<Buffer> {
+  const result = await RnCrypto.hashFile(path, algorithm, offset, length);
+  return Buffer.from(result, 'hex');
+}
+
 function getNativeHMAC(hmac: HMAC) {
   if (hmac === HMAC.sha256) {
     return RnCrypto.sha256;
@@ -111,6 +754,9 @@ function getNativeHMAC(hmac: HMAC) {
  * @param hexIv IV in hex format
  * @param chunkSize Size of each chunk in bytes
  * @param cb Callback function that receives an error if one occurs
+ * @param onProgress Called a few times per second with the bytes processed
+ * and the total. Android only
+ * @returns Id to cancel the operation with cancel(), Android only
  */
 export function encryptFileToChunks(
   plainFilePath: string,
@@ -118,16 +764,166 @@ export function encryptFileToChunks(
   hexKey: string,
   hexIv: string,
   chunkSize: number,
-  cb: (err: Error | null) => void
-): void {
+  cb: (err: Error | null) => void,
+  onProgress?: ProgressListener
+): number {
+  const jobId = nextJobId();
   RnCrypto.encryptFileToChunks(
     plainFilePath,
     encryptedFilePaths,
     hexKey,
     hexIv,
     chunkSize,
-    cb
+    ...jobIdArgs(jobId, onProgress),
+    withProgress(jobId, plainFilePath, onProgress, cb)
+  );
+
+  return jobId;
+}
+
+/**
+ * Encrypts a file into multiple chunks like encryptFileToChunks, computing in
+ * the same pass the digests of each chunk plaintext and ciphertext. Android only.
+ * @param plainFilePath Path where the source file is located
+ * @param encryptedFilePaths Array of paths where encrypted chunks will be written
+ * @param hexKey Encryption key in hex format
+ * @param hexIv IV in hex format
+ * @param chunkSize Size of each chunk in bytes
+ * @param digests Algorithms to compute over the plaintext and the ciphertext
+ * @param cb Receives an error or the digests of each chunk in hex format, in
+ * the same order as encryptedFilePaths
+ * @param onProgress Called a few times per second with the bytes processed
+ * and the total. Android only
+ * @returns Id to cancel the operation with cancel(), Android only
+ */
+export function encryptFileToChunksWithDigests(
+  plainFilePath: string,
+  encryptedFilePaths: string[],
+  hexKey: string,
+  hexIv: string,
+  chunkSize: number,
+  digests: DigestOptions,
+  cb: (err: Error | null, digests?: FileDigests[]) => void,
+  onProgress?: ProgressListener
+): number {
+  const jobId = nextJobId();
+  RnCrypto.encryptFileToChunksWithDigests(
+    plainFilePath,
+    encryptedFilePaths,
+    hexKey,
+    hexIv,
+    chunkSize,
+    digests,
+    jobId,
+    onProgress !== undefined,
+    withProgress(jobId, plainFilePath, onProgress, cb)
+  );
+
+  return jobId;
+}
+
+/**
+ * Encrypts a file into multiple chunks like encryptFileToChunks, working out
+ * natively how many chunks the file needs, so there is no need to stat it and
+ * build the paths first. Android only.
+ * @param plainFilePath Path where the source file is located
+ * @param outputDirectory Directory where chunks will be written, created if missing
+ * @param namePattern Name of each chunk, {index} is replaced by the index of
+ * the chunk starting at 0 and {name} by the source file name, e.g. '{name}.{index}'
+ * @param hexKey Encryption key in hex format
+ * @param hexIv IV in hex format
+ * @param chunkSize Size of each chunk in bytes
+ * @param digests Algorithms to compute over the plaintext and the ciphertext
+ * of each chunk, or null
+ * @param cb Receives an error or the path, offset, size and digests of each
+ * chunk, in order
+ * @param onProgress Called a few times per second with the bytes processed
+ * and the total
+ * @returns Id to cancel the operation with cancel()
+ */
+export function encryptFileToChunksPlanned(
+  plainFilePath: string,
+  outputDirectory: string,
+  namePattern: string,
+  hexKey: string,
+  hexIv: string,
+  chunkSize: number,
+  digests: DigestOptions | null,
+  cb: (err: Error | null, chunks?: ChunkManifestEntry[]) => void,
+  onProgress?: ProgressListener
+): number {
+  const jobId = nextJobId();
+  RnCrypto.encryptFileToChunksPlanned(
+    plainFilePath,
+    outputDirectory,
+    namePattern,
+    hexKey,
+    hexIv,
+    chunkSize,
+    digests,
+    jobId,
+    onProgress !== undefined,
+    withProgress(jobId, plainFilePath, onProgress, cb)
   );
+
+  return jobId;
+}
+
+/**
+ * Encrypts a file into multiple chunks using AES256-CTR, encrypting several
+ * chunks at the same time. Output is the same as encryptFileToChunks. Android only.
+ * @param plainFilePath Path where the source file is located
+ * @param encryptedFilePaths Array of paths where encrypted chunks will be written
+ * @param hexKey Encryption key in hex format
+ * @param hexIv IV in hex format
+ * @param chunkSize Size of each chunk in bytes
+ * @param parallelism Max amount of chunks encrypted at the same time
+ * @param cb Callback function that receives an error if one occurs
+ * @param onChunkEncrypted Called as soon as each chunk is ready to be used,
+ * chunks can finish in any order
+ * @param onProgress Called a few times per second with the bytes processed
+ * and the total. Android only
+ * @returns Id to cancel the operation with cancel(), Android only
+ */
+export function encryptFileToChunksParallel(
+  plainFilePath: string,
+  encryptedFilePaths: string[],
+  hexKey: string,
+  hexIv: string,
+  chunkSize: number,
+  parallelism: number,
+  cb: (err: Error | null) => void,
+  onChunkEncrypted?: (index: number, path: string) => void,
+  onProgress?: ProgressListener
+): number {
+  const jobId = nextJobId();
+  const subscription = onChunkEncrypted
+    ? DeviceEventEmitter.addListener(
+        'RnCryptoChunkEncrypted',
+        (chunk: { jobId: number; index: number; path: string }) => {
+          if (chunk.jobId === jobId) {
+            onChunkEncrypted(chunk.index, chunk.path);
+          }
+        }
+      )
+    : null;
+
+  RnCrypto.encryptFileToChunksParallel(
+    plainFilePath,
+    encryptedFilePaths,
+    hexKey,
+    hexIv,
+    chunkSize,
+    parallelism,
+    jobId,
+    onProgress !== undefined,
+    withProgress(jobId, plainFilePath, onProgress, (err: Error | null) => {
+      subscription?.remove();
+      cb(err);
+    })
+  );
+
+  return jobId;
 }
 
 /**
@@ -153,14 +949,47 @@ export async function pbkdf2(
   );
   return Buffer.from(result, 'hex');
 }
+
+/**
+ * Derives several pbkdf2 keys at once. On Android they are derived in
+ * parallel across the cores of the device
+ *
+ * @param items Keys to derive
+ * @param parallelism Max amount of keys derived at the same time, 0 for one
+ * per core. Android only
+ * @returns A promise that resolves with a buffer for each item, in order
+ */
+export async function pbkdf2Batch(
+  items: Pbkdf2Item[],
+  parallelism = 0
+): Promise<Buffer[]> {
+  if (Platform.OS !== 'android') {
+    return Promise.all(
+      items.map((item) =>
+        pbkdf2(item.password, item.salt, item.rounds, item.length)
+      )
+    );
+  }
+
+  const results: string[] = await RnCrypto.pbkdf2Batch(items, parallelism);
+  return results.map((result) => Buffer.from(result, 'hex'));
+}
+
 /**
  * Creates a hash that can be updated
  * during the creation
  *
+ * On Android every update is hashed natively as soon as it is given, so
+ * nothing is kept in memory until the digest is requested.
+ *
  * @param hmac HMAC to use
  * @returns A buffer containing the final hash
  */
 export function createHash(hmac: HMAC): UpdatableHash {
+  if (Platform.OS === 'android') {
+    return createNativeHash(hmac);
+  }
+
   const values: string[] = [];
   const digest = async () => {
     const nativeHmac = getNativeHMAC(hmac);
@@ -185,3 +1014,50 @@ export function createHash(hmac: HMAC): UpdatableHash {
     digest,
   };
 }
+
+const nativeHashAlgorithms: { [hmac in HMAC]: DigestAlgorithm } = {
+  [HMAC.sha256]: DigestAlgorithm.sha256,
+  [HMAC.sha512]: DigestAlgorithm.sha512,
+};
+
+/**
+ * Hash backed by a native hash session. Updates are chained so they reach
+ * the session in order, and the first error is reported by digest.
+ */
+function createNativeHash(hmac: HMAC): UpdatableHash {
+  const handle: Promise<number> = RnCrypto.hashInit(nativeHashAlgorithms[hmac]);
+  let pending: Promise<number> = handle;
+
+  const digest = async () => {
+    const hexResult = await RnCrypto.hashDigest(await pending);
+    return Buffer.from(hexResult, 'hex');
+  };
+  const update = (value: Buffer | string) => {
+    const hexValue =
+      typeof value === 'string'
+        ? Buffer.from(value).toString('hex')
+        : value.toString('hex');
+
+    pending = pending.then(async (sessionHandle) => {
+      try {
+        await RnCrypto.hashUpdate(sessionHandle, hexValue);
+      } catch (err) {
+        // digest will not reach the session once pending rejects, so it is
+        // freed here instead of waiting for it to be evicted
+        await RnCrypto.hashDigest(sessionHandle).catch(() => undefined);
+        throw err;
+      }
+      return sessionHandle;
+    });
+
+    return {
+      update,
+      digest,
+    };
+  };
+
+  return {
+    update,
+    digest,
+  };
+}
@@ -9,3 +9,134 @@ export enum HMAC {
   sha256 = 'sha256',
   sha512 = 'sha512',
 }
+
+export enum DigestAlgorithm {
+  sha256 = 'SHA-256',
+  sha512 = 'SHA-512',
+  ripemd160 = 'RIPEMD-160',
+}
+
+export interface DigestOptions {
+  plaintext?: DigestAlgorithm[];
+  ciphertext?: DigestAlgorithm[];
+}
+
+/**
+ * Hex digests by algorithm, of the plaintext and of the ciphertext
+ */
+export interface FileDigests {
+  plaintext: { [algorithm: string]: string };
+  ciphertext: { [algorithm: string]: string };
+}
+
+/**
+ * A chunk written by encryptFileToChunksPlanned, offset is the position of
+ * its first byte in the source file. digests is only set if requested.
+ */
+export interface ChunkManifestEntry {
+  path: string;
+  offset: number;
+  size: number;
+  digests?: FileDigests;
+}
+
+/**
+ * A file to encrypt or decrypt in a batch, with its key and IV in hex format
+ */
+export interface FileBatchItem {
+  source: string;
+  destination: string;
+  key: string;
+  iv: string;
+}
+
+/**
+ * Outcome of each file of a batch, error is null if it succeeded
+ */
+export interface FileBatchResult {
+  source: string;
+  destination: string;
+  error: string | null;
+}
+
+/**
+ * A key to derive with pbkdf2, length is the derived key length in bytes
+ */
+export interface Pbkdf2Item {
+  password: string;
+  salt: string;
+  rounds: number;
+  length: number;
+}
+
+/**
+ * Security provider used for each algorithm and the score each provider got
+ * in the calibration. Scores are bytes per second for AES and SHA, and
+ * iterations per second for PBKDF2. selected is null for an algorithm using
+ * the platform default provider.
+ */
+export interface ProviderReport {
+  appVersion: string | null;
+  cached: boolean;
+  selected: { [algorithm: string]: string | null };
+  scores: { [algorithm: string]: { [provider: string]: number } };
+}
+
+/**
+ * Metrics of an operation, like encryptFile, since the app started. Times are
+ * in milliseconds, bytes only count the operations that succeeded.
+ */
+export interface OperationStats {
+  count: number;
+  errors: number;
+  cancelled: number;
+  bytes: number;
+  /** From submission to completion, queueWaitMs included */
+  wallMs: number;
+  maxWallMs: number;
+  queueWaitMs: number;
+  /**
+   * Operations that succeeded by throughput over the time they ran, without
+   * the queue wait. Item i counts the ones below throughputBuckets[i] MB/s and
+   * the last one the rest
+   */
+  throughputHistogram: number[];
+  errorTypes: { [exception: string]: number };
+}
+
+export interface CryptoStats {
+  operations: { [operation: string]: OperationStats };
+  throughputBuckets: number[];
+  workers: {
+    maxConcurrency: number;
+    active: number;
+    queued: number;
+    completed: number;
+    rejected: number;
+  };
+  runningJobs: number;
+}
+
+export interface ListDirOptions {
+  glob?: string;
+  recursive?: boolean;
+  attributes?: boolean;
+  pageSize?: number;
+}
+
+/**
+ * An entry of listDirPage, mtime (in seconds), size and type (1 for
+ * directories, 0 otherwise) are only set if attributes were read
+ */
+export interface DirectoryEntry {
+  name: string;
+  path: string;
+  mtime?: number;
+  size?: number;
+  type?: number;
+}
+
+export interface DirectoryPage {
+  entries: DirectoryEntry[];
+  cursor: number | null;
+}